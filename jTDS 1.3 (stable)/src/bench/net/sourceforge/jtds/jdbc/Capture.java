@@ -0,0 +1,123 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * <p> Loads server responses from packet captures written by the
+ * <code>PacketLogger</code> of the <code>SqlForwarder</code> tool, so real
+ * server traffic can be replayed by a {@link ReplaySocket}. </p>
+ *
+ * <p> A capture contains the hex dumps of all packets sent in both directions,
+ * each dump terminated by an empty line. Requests and responses alternate,
+ * the last packet of each being flagged by a non-zero status byte. </p>
+ *
+ * <p> Captures not found in the file system are looked up on the class path
+ * next to this class, where the captures shipped with the benchmarks are
+ * stored. </p>
+ */
+final class Capture
+{
+
+   /**
+    * TDS packet type of a server response
+    */
+   private static final int REPLY = 0x04;
+
+   private Capture()
+   {
+   }
+
+   /**
+    * Loads a single server response from a capture.
+    *
+    * @param file
+    *    the capture file or the name of a capture shipped with the benchmarks
+    *
+    * @param index
+    *    the zero based index of the response within the capture, the login
+    *    responses included
+    *
+    * @return
+    *    the packets of the response
+    */
+   static byte[] load( String file, int index )
+      throws IOException
+   {
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      ByteArrayOutputStream packet = new ByteArrayOutputStream();
+      int responses = 0;
+
+      InputStream in = new File( file ).exists() ? new FileInputStream( file ) : Capture.class.getResourceAsStream( file );
+
+      if( in == null )
+      {
+         throw new IOException( "capture " + file + " not found" );
+      }
+
+      try( BufferedReader reader = new BufferedReader( new InputStreamReader( in, "ISO-8859-1" ) ) )
+      {
+         String line;
+
+         do
+         {
+            line = reader.readLine();
+
+            if( line == null || line.trim().length() == 0 )
+            {
+               byte[] data = packet.toByteArray();
+               packet.reset();
+
+               if( data.length >= 8 && ( data[0] & 0xFF ) == REPLY )
+               {
+                  if( responses == index )
+                  {
+                     response.write( data, 0, data.length );
+                  }
+
+                  if( data[1] != 0 && responses ++ == index )
+                  {
+                     return response.toByteArray();
+                  }
+               }
+            }
+            else
+            {
+               // "0010: 00 01 02 ... 0F    ascii"
+               int start = line.indexOf( ':' ) + 1;
+
+               for( int i = start; i + 3 <= line.length() && line.charAt( i ) == ' ' && line.charAt( i + 1 ) != ' '; i += 3 )
+               {
+                  packet.write( Integer.parseInt( line.substring( i + 1, i + 3 ), 16 ) );
+               }
+            }
+         }
+         while( line != null );
+      }
+
+      throw new IOException( "capture " + file + " contains only " + responses + " responses" );
+   }
+
+}
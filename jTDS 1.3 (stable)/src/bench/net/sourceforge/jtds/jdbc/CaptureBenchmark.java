@@ -0,0 +1,172 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p> Replays a complete result set through the driver: token parsing, row
+ * decoding and result set access. </p>
+ *
+ * <p> By default the shipped capture <code>orders.log</code> is replayed, a
+ * result set of 250 rows with <code>INT</code>, <code>BIGINT</code>,
+ * <code>FLOAT</code>, <code>VARCHAR</code> and <code>NVARCHAR</code> columns.
+ * It has been recorded by the <code>SqlForwarder</code> tool between the
+ * driver and <code>FakeTdsServer</code> (TDS 7.1), so the token stream is
+ * generated rather than sent by SQL Server. Captures of a real server can be
+ * replayed by passing a <code>PacketLogger</code> capture, e.g. </p>
+ *
+ * <pre>
+ * ant bench -Dbench.args="CaptureBenchmark -p capture=select.log -p response=2 -p tds=9.0"
+ * </pre>
+ *
+ * <p> where <code>response</code> is the zero based index of the server
+ * response within the capture (login responses included). An empty
+ * <code>capture</code> replays a built-in response of {@link #ROWS} rows,
+ * which also covers <code>DECIMAL</code> and <code>DATETIME</code>
+ * columns. </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CaptureBenchmark
+{
+
+   /**
+    * number of rows of the built-in response
+    */
+   static final int ROWS = 1000;
+
+   /**
+    * the capture file, empty for the built-in response
+    */
+   @Param( "orders.log" )
+   String            capture;
+
+   /**
+    * index of the response to replay within the capture
+    */
+   @Param( "2" )
+   int               response;
+
+   /**
+    * TDS version of the capture
+    */
+   @Param( "8.0" )
+   String            tds;
+
+   private Statement _Statement;
+
+   @Setup
+   public void setup()
+      throws Exception
+   {
+      byte[] packets;
+
+      if( capture.length() == 0 )
+      {
+         ResponseBuilder builder = new ResponseBuilder().intColumn( "id" ).bigintColumn( "customer" ).floatColumn( "weight" ).decimalColumn( "total", 18, 2 )
+                                                        .datetimeColumn( "created" ).varcharColumn( "state", 20 ).nvarcharColumn( "note", 200 );
+
+         for( int i = 0; i < ROWS; i ++ )
+         {
+            builder.row( Integer.valueOf( i ), Long.valueOf( i * 31L ), Double.valueOf( i / 3.0 ), BigDecimal.valueOf( i * 1999L, 2 ),
+                         new Timestamp( 1262304000000L + i * 60000L ), i % 2 == 0 ? "SHIPPED" : "OPEN", i % 10 == 0 ? null : "note for order " + i );
+         }
+
+         packets = builder.done( ROWS ).build();
+      }
+      else
+      {
+         packets = Capture.load( capture, response );
+      }
+
+      _Statement = new ReplaySocket( packets, DefaultProperties.getTdsVersion( tds ).intValue() ).connect().createStatement();
+   }
+
+   @TearDown
+   public void tearDown()
+      throws Exception
+   {
+      _Statement.close();
+   }
+
+   /**
+    * Reads all columns using <code>getObject()</code>.
+    */
+   @Benchmark
+   public void getObject( Blackhole bh )
+      throws Exception
+   {
+      try( ResultSet rs = _Statement.executeQuery( "select" ) )
+      {
+         int columns = rs.getMetaData().getColumnCount();
+
+         while( rs.next() )
+         {
+            for( int c = 1; c <= columns; c ++ )
+            {
+               bh.consume( rs.getObject( c ) );
+            }
+         }
+      }
+   }
+
+   /**
+    * Reads all columns using <code>getString()</code>.
+    */
+   @Benchmark
+   public void getString( Blackhole bh )
+      throws Exception
+   {
+      try( ResultSet rs = _Statement.executeQuery( "select" ) )
+      {
+         int columns = rs.getMetaData().getColumnCount();
+
+         while( rs.next() )
+         {
+            for( int c = 1; c <= columns; c ++ )
+            {
+               bh.consume( rs.getString( c ) );
+            }
+         }
+      }
+   }
+
+}
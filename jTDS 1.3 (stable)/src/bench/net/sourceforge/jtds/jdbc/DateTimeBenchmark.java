@@ -0,0 +1,95 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p> Measures the conversion between the SQL Server <code>DATETIME</code>
+ * representation (days since 1900 and 1/300 seconds since midnight) and the
+ * JDBC date/time types implemented by {@link DateTime}. </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class DateTimeBenchmark
+{
+
+   private Timestamp _Timestamp;
+
+   private int       _Date;
+
+   private int       _Time;
+
+   @Setup
+   public void setup()
+      throws Exception
+   {
+      _Timestamp = Timestamp.valueOf( "2012-07-15 13:45:12.347" );
+
+      DateTime dt = new DateTime( _Timestamp );
+      _Date = dt.getDate();
+      _Time = dt.getTime();
+   }
+
+   /**
+    * Packs a timestamp, as done for parameters.
+    */
+   @Benchmark
+   public long pack()
+      throws Exception
+   {
+      DateTime dt = new DateTime( _Timestamp );
+      return (long) dt.getDate() << 32 | dt.getTime();
+   }
+
+   /**
+    * Unpacks a server value into a timestamp, as done for result sets.
+    */
+   @Benchmark
+   public Timestamp unpack()
+   {
+      return new DateTime( _Date, _Time ).toTimestamp();
+   }
+
+   /**
+    * Unpacks a server value into its string representation, as done by
+    * <code>getString()</code> and parameter substitution.
+    */
+   @Benchmark
+   public String format()
+   {
+      return new DateTime( _Date, _Time ).toString();
+   }
+
+}
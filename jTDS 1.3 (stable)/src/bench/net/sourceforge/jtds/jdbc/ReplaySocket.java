@@ -0,0 +1,218 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+/**
+ * <p> In-memory stand-in for a {@link SharedSocket}, used by the benchmarks to
+ * run the protocol layer without a server. </p>
+ *
+ * <p> Requests sent through the socket are discarded, every read is served
+ * from a recorded server response that is replayed over and over again. Since
+ * the driver always reads a complete response per request, each request sees
+ * the recorded response once. </p>
+ */
+final class ReplaySocket extends SharedSocket
+{
+
+   /**
+    * the replayed input stream
+    */
+   private final Replay _Replay;
+
+   /**
+    * Creates a socket replaying the given server response.
+    *
+    * @param response
+    *    the recorded response, a sequence of complete TDS packets
+    *
+    * @param tdsVersion
+    *    the TDS version
+    */
+   ReplaySocket( byte[] response, int tdsVersion )
+   {
+      super( null, new MemoryBudget( Long.MAX_VALUE / 2, Long.MAX_VALUE / 4, 8 ), tdsVersion, Driver.SQLSERVER );
+
+      _Replay = new Replay( response );
+      setIn( new DataInputStream( _Replay ) );
+      setOut( new DataOutputStream( new OutputStream()
+      {
+         @Override
+         public void write( int b )
+         {
+         }
+
+         @Override
+         public void write( byte[] b, int off, int len )
+         {
+         }
+      } ) );
+   }
+
+   /**
+    * Replaces the recorded response.
+    *
+    * @param response
+    *    the recorded response, a sequence of complete TDS packets
+    */
+   void setResponse( byte[] response )
+   {
+      _Replay.reset( response );
+   }
+
+   @Override
+   boolean isConnected()
+   {
+      return true;
+   }
+
+   /**
+    * <p> Creates a connection on top of this socket, without a login. </p>
+    *
+    * <p> The connection uses the <code>Cp1252</code> server charset, the
+    * collation of {@link ResponseBuilder#COLLATION} and the default properties
+    * unless changed using {@link #setProperty}. </p>
+    *
+    * @return
+    *    the connection
+    */
+   JtdsConnection connect()
+      throws Exception
+   {
+      Constructor<JtdsConnection> ctor = JtdsConnection.class.getDeclaredConstructor();
+      ctor.setAccessible( true );
+      JtdsConnection connection = ctor.newInstance();
+
+      setProperty( connection, "socket"        , this                                               );
+      setProperty( connection, "serverType"    , Driver.SQLSERVER                                   );
+      setProperty( connection, "tdsVersion"    , getTdsVersion()                                    );
+      setProperty( connection, "netPacketSize" , ResponseBuilder.PACKET_SIZE                        );
+      setProperty( connection, "lobBuffer"     , Long.parseLong( DefaultProperties.LOB_BUFFER_SIZE ) );
+      setProperty( connection, "prepareSql"    , Integer.parseInt( DefaultProperties.PREPARE_SQLSERVER ) );
+      setProperty( connection, "useLOBs"       , true                                               );
+      setProperty( connection, "serverCharset" , "Cp1252"                                           );
+      setProperty( connection, "charsetInfo"   , CharsetInfo.getCharset( "Cp1252" )                 );
+      setProperty( connection, "collation"     , ResponseBuilder.COLLATION                          );
+      setCharsetInfo( CharsetInfo.getCharset( "Cp1252" ) );
+
+      return connection;
+   }
+
+   /**
+    * Sends a dummy request, so the next response can be read from the
+    * response stream belonging to the given request stream.
+    *
+    * @param out
+    *    the request stream
+    */
+   static void request( RequestStream out )
+      throws IOException
+   {
+      out.setPacketType( TdsCore.QUERY_PKT );
+      out.write( (byte) 0 );
+      out.flush();
+   }
+
+   /**
+    * Changes a private field of a connection created by {@link #connect()}.
+    *
+    * @param connection
+    *    the connection
+    *
+    * @param name
+    *    the name of the field
+    *
+    * @param value
+    *    the new value
+    */
+   static void setProperty( JtdsConnection connection, String name, Object value )
+      throws Exception
+   {
+      Field field = JtdsConnection.class.getDeclaredField( name );
+      field.setAccessible( true );
+      field.set( connection, value );
+   }
+
+   /**
+    * Input stream endlessly cycling over a byte array.
+    */
+   private static final class Replay extends InputStream
+   {
+
+      private byte[] _Data;
+
+      private int    _Position;
+
+      Replay( byte[] data )
+      {
+         reset( data );
+      }
+
+      void reset( byte[] data )
+      {
+         if( data.length == 0 )
+         {
+            throw new IllegalArgumentException( "empty response" );
+         }
+
+         _Data     = data;
+         _Position = 0;
+      }
+
+      @Override
+      public int read()
+      {
+         if( _Position == _Data.length )
+         {
+            _Position = 0;
+         }
+
+         return _Data[_Position ++] & 0xFF;
+      }
+
+      @Override
+      public int read( byte[] b, int off, int len )
+         throws IOException
+      {
+         if( _Position == _Data.length )
+         {
+            _Position = 0;
+         }
+
+         int count = Math.min( len, _Data.length - _Position );
+         System.arraycopy( _Data, _Position, b, off, count );
+         _Position += count;
+         return count;
+      }
+
+      @Override
+      public int available()
+      {
+         return _Data.length - _Position;
+      }
+
+   }
+
+}
@@ -0,0 +1,362 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p> Builds TDS 7.1 (SQL Server 2000) server responses for the benchmarks,
+ * producing the same byte sequence as a packet capture of the corresponding
+ * server reply. </p>
+ *
+ * <p> Columns are declared first, followed by any number of rows and a final
+ * {@link #done(int)}. </p>
+ */
+final class ResponseBuilder
+{
+
+   /**
+    * size of the generated network packets
+    */
+   static final int                   PACKET_SIZE   = 4096;
+
+   /**
+    * TDS type codes used by the builder
+    */
+   static final int                   SYBINTN       = 0x26,
+                                      SYBFLTN       = 0x6D,
+                                      SYBDECIMAL    = 0x6A,
+                                      SYBDATETIMN   = 0x6F,
+                                      XSYBVARCHAR   = 0xA7,
+                                      XSYBNVARCHAR  = 0xE7;
+
+   /**
+    * collation of character columns, SQL_Latin1_General_CP1_CI_AS
+    */
+   static final byte[]                COLLATION     = { 0x09, 0x04, (byte) 0xD0, 0x00, 0x34 };
+
+   /**
+    * the column types declared so far
+    */
+   private final List<int[]>          _Columns      = new ArrayList<>();
+
+   /**
+    * the column names declared so far
+    */
+   private final List<String>         _Names        = new ArrayList<>();
+
+   /**
+    * the token stream
+    */
+   private final ByteArrayOutputStream _Tokens      = new ByteArrayOutputStream();
+
+   /**
+    * flag indicating that the column meta data has been written
+    */
+   private boolean                    _MetaData;
+
+   /**
+    * Declares an <code>INT</code> column.
+    */
+   ResponseBuilder intColumn( String name )
+   {
+      return column( name, SYBINTN, 4, 0, 0 );
+   }
+
+   /**
+    * Declares a <code>BIGINT</code> column.
+    */
+   ResponseBuilder bigintColumn( String name )
+   {
+      return column( name, SYBINTN, 8, 0, 0 );
+   }
+
+   /**
+    * Declares a <code>FLOAT</code> column.
+    */
+   ResponseBuilder floatColumn( String name )
+   {
+      return column( name, SYBFLTN, 8, 0, 0 );
+   }
+
+   /**
+    * Declares a <code>DECIMAL</code> column.
+    */
+   ResponseBuilder decimalColumn( String name, int precision, int scale )
+   {
+      return column( name, SYBDECIMAL, 17, precision, scale );
+   }
+
+   /**
+    * Declares a <code>DATETIME</code> column.
+    */
+   ResponseBuilder datetimeColumn( String name )
+   {
+      return column( name, SYBDATETIMN, 8, 0, 0 );
+   }
+
+   /**
+    * Declares a <code>VARCHAR</code> column.
+    */
+   ResponseBuilder varcharColumn( String name, int length )
+   {
+      return column( name, XSYBVARCHAR, length, 0, 0 );
+   }
+
+   /**
+    * Declares a <code>NVARCHAR</code> column.
+    */
+   ResponseBuilder nvarcharColumn( String name, int length )
+   {
+      return column( name, XSYBNVARCHAR, length * 2, 0, 0 );
+   }
+
+   private ResponseBuilder column( String name, int type, int size, int precision, int scale )
+   {
+      if( _MetaData )
+      {
+         throw new IllegalStateException( "column meta data already written" );
+      }
+
+      _Columns.add( new int[] { type, size, precision, scale } );
+      _Names.add( name );
+      return this;
+   }
+
+   /**
+    * Appends a row, the values have to match the declared column types.
+    *
+    * @param values
+    *    the column values, {@code null} for SQL NULL
+    */
+   ResponseBuilder row( Object... values )
+   {
+      writeMetaData();
+      _Tokens.write( 0xD1 );
+      return values( values );
+   }
+
+   /**
+    * Appends column values without a row token, as they are read by {@link
+    * TdsData#readData}.
+    *
+    * @param values
+    *    the column values, {@code null} for SQL NULL
+    */
+   ResponseBuilder values( Object... values )
+   {
+      for( int c = 0; c < _Columns.size(); c ++ )
+      {
+         int[] col = _Columns.get( c );
+         Object value = values[c];
+
+         if( value == null )
+         {
+            if( col[0] == XSYBVARCHAR || col[0] == XSYBNVARCHAR )
+            {
+               writeLE( 0xFFFF, 2 );
+            }
+            else
+            {
+               _Tokens.write( 0 );
+            }
+
+            continue;
+         }
+
+         switch( col[0] )
+         {
+            case SYBINTN:
+               _Tokens.write( col[1] );
+               writeLE( ( (Number) value ).longValue(), col[1] );
+               break;
+
+            case SYBFLTN:
+               _Tokens.write( 8 );
+               writeLE( Double.doubleToLongBits( ( (Number) value ).doubleValue() ), 8 );
+               break;
+
+            case SYBDECIMAL:
+               BigInteger unscaled = ( (BigDecimal) value ).setScale( col[3] ).unscaledValue();
+               int bytes = col[2] <= 9 ? 4 : col[2] <= 19 ? 8 : col[2] <= 28 ? 12 : 16;
+               byte[] magnitude = unscaled.abs().toByteArray();
+
+               _Tokens.write( bytes + 1 );
+               _Tokens.write( unscaled.signum() < 0 ? 0 : 1 );
+
+               for( int i = 0; i < bytes; i ++ )
+               {
+                  int index = magnitude.length - 1 - i;
+                  _Tokens.write( index >= 0 ? magnitude[index] : 0 );
+               }
+               break;
+
+            case SYBDATETIMN:
+               DateTime dt;
+
+               try
+               {
+                  dt = new DateTime( (Timestamp) value );
+               }
+               catch( SQLException e )
+               {
+                  throw new IllegalArgumentException( e );
+               }
+
+               _Tokens.write( 8 );
+               writeLE( dt.getDate(), 4 );
+               writeLE( dt.getTime(), 4 );
+               break;
+
+            case XSYBVARCHAR:
+               byte[] chars = Support.encodeString( "Cp1252", (String) value );
+               writeLE( chars.length, 2 );
+               _Tokens.write( chars, 0, chars.length );
+               break;
+
+            case XSYBNVARCHAR:
+               writeLE( ( (String) value ).length() * 2, 2 );
+               string( (String) value );
+               break;
+
+            default:
+               throw new IllegalStateException();
+         }
+      }
+
+      return this;
+   }
+
+   /**
+    * Appends a string as UCS-2 without any length prefix, as it is read by
+    * {@link ResponseStream#readString(int)}.
+    */
+   ResponseBuilder string( String value )
+   {
+      for( int i = 0; i < value.length(); i ++ )
+      {
+         writeLE( value.charAt( i ), 2 );
+      }
+
+      return this;
+   }
+
+   /**
+    * Appends the final <code>DONE</code> token.
+    *
+    * @param rowCount
+    *    the row count to report
+    */
+   ResponseBuilder done( int rowCount )
+   {
+      writeMetaData();
+      _Tokens.write( 0xFD );
+      writeLE( 0x10, 2 ); // DONE_COUNT
+      writeLE( 0xC1, 2 ); // SELECT
+      writeLE( rowCount, 4 );
+      return this;
+   }
+
+   /**
+    * Splits the token stream into network packets.
+    *
+    * @return
+    *    the response packets
+    */
+   byte[] build()
+   {
+      byte[] tokens = _Tokens.toByteArray();
+      ByteArrayOutputStream packets = new ByteArrayOutputStream( tokens.length + tokens.length / 256 + 8 );
+      int payload = PACKET_SIZE - 8;
+      int number = 1;
+
+      for( int offset = 0; offset < tokens.length || offset == 0; offset += payload, number ++ )
+      {
+         int length = Math.min( payload, tokens.length - offset );
+         int total = length + 8;
+
+         packets.write( 0x04 ); // reply
+         packets.write( offset + length >= tokens.length ? 1 : 0 );
+         packets.write( total >> 8 );
+         packets.write( total );
+         packets.write( 0 );
+         packets.write( 0 );
+         packets.write( number );
+         packets.write( 0 );
+         packets.write( tokens, offset, length );
+      }
+
+      return packets.toByteArray();
+   }
+
+   private void writeMetaData()
+   {
+      if( _MetaData )
+      {
+         return;
+      }
+
+      _MetaData = true;
+      _Tokens.write( 0x81 );
+      writeLE( _Columns.size(), 2 );
+
+      for( int c = 0; c < _Columns.size(); c ++ )
+      {
+         int[] col = _Columns.get( c );
+         String name = _Names.get( c );
+
+         writeLE( 0, 2 ); // user type
+         writeLE( 0x01, 2 ); // nullable
+         _Tokens.write( col[0] );
+
+         if( col[0] == XSYBVARCHAR || col[0] == XSYBNVARCHAR )
+         {
+            writeLE( col[1], 2 );
+            _Tokens.write( COLLATION, 0, COLLATION.length );
+         }
+         else
+         {
+            _Tokens.write( col[1] );
+         }
+
+         if( col[0] == SYBDECIMAL )
+         {
+            _Tokens.write( col[2] );
+            _Tokens.write( col[3] );
+         }
+
+         _Tokens.write( name.length() );
+         string( name );
+      }
+   }
+
+   private void writeLE( long value, int bytes )
+   {
+      for( int i = 0; i < bytes; i ++ )
+      {
+         _Tokens.write( (int) ( value >> 8 * i ) );
+      }
+   }
+
+}
@@ -0,0 +1,171 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p> Compares the primitive getters of {@link JtdsResultSet} with the generic
+ * conversion path through {@link Support#convert(Object, Object, int,
+ * String)} they used before, for <code>INT</code>, <code>BIGINT</code>,
+ * <code>FLOAT</code> and <code>DECIMAL</code> columns. </p>
+ *
+ * <p> Each invocation executes a query returning {@link #ROWS} rows replayed
+ * by a {@link ReplaySocket} and reads the single column of every row. </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ResultSetGetterBenchmark
+{
+
+   /**
+    * number of rows per query
+    */
+   static final int ROWS = 1000;
+
+   @Param( { "INT", "BIGINT", "FLOAT", "DECIMAL" } )
+   String             type;
+
+   @Param( { "false", "true" } )
+   boolean            lazyRows;
+
+   private JtdsConnection _Connection;
+
+   private Statement  _Statement;
+
+   private int        _JdbcType;
+
+   @Setup
+   public void setup()
+      throws Exception
+   {
+      ResponseBuilder response = new ResponseBuilder();
+
+      switch( type )
+      {
+         case "INT"    : response.intColumn( "c" );            _JdbcType = Types.INTEGER; break;
+         case "BIGINT" : response.bigintColumn( "c" );         _JdbcType = Types.BIGINT;  break;
+         case "FLOAT"  : response.floatColumn( "c" );          _JdbcType = Types.DOUBLE;  break;
+         case "DECIMAL": response.decimalColumn( "c", 18, 4 ); _JdbcType = Types.DOUBLE;  break;
+         default       : throw new IllegalArgumentException( type );
+      }
+
+      for( int i = 0; i < ROWS; i ++ )
+      {
+         switch( type )
+         {
+            case "INT"    : response.row( Integer.valueOf( i * 7919 ) ); break;
+            case "BIGINT" : response.row( Long.valueOf( i * 2147483659L ) ); break;
+            case "FLOAT"  : response.row( Double.valueOf( i * 1.5 ) ); break;
+            default       : response.row( BigDecimal.valueOf( i * 12345L, 4 ) ); break;
+         }
+      }
+
+      _Connection = new ReplaySocket( response.done( ROWS ).build(), Driver.TDS80 ).connect();
+      ReplaySocket.setProperty( _Connection, "useLazyRows", lazyRows );
+      _Statement = _Connection.createStatement();
+   }
+
+   @TearDown
+   public void tearDown()
+      throws Exception
+   {
+      _Statement.close();
+   }
+
+   /**
+    * Reads the column using the primitive getter.
+    */
+   @Benchmark
+   public double getter()
+      throws Exception
+   {
+      double sum = 0;
+
+      try( ResultSet rs = _Statement.executeQuery( "select c from t" ) )
+      {
+         switch( _JdbcType )
+         {
+            case Types.INTEGER:
+               while( rs.next() )
+               {
+                  sum += rs.getInt( 1 );
+               }
+               break;
+
+            case Types.BIGINT:
+               while( rs.next() )
+               {
+                  sum += rs.getLong( 1 );
+               }
+               break;
+
+            default:
+               while( rs.next() )
+               {
+                  sum += rs.getDouble( 1 );
+               }
+         }
+      }
+
+      return sum;
+   }
+
+   /**
+    * Reads the column as object and converts it the way the getters did before
+    * the primitive fast paths were added.
+    */
+   @Benchmark
+   public double convert()
+      throws Exception
+   {
+      double sum = 0;
+
+      try( ResultSet rs = _Statement.executeQuery( "select c from t" ) )
+      {
+         while( rs.next() )
+         {
+            sum += ( (Number) Support.convert( rs, rs.getObject( 1 ), _JdbcType, null ) ).doubleValue();
+         }
+      }
+
+      return sum;
+   }
+
+}
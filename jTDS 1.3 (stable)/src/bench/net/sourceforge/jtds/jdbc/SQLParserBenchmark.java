@@ -0,0 +1,91 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p> Measures {@link SQLParser#parse}, both the actual parsing and the
+ * lookup in the parser's statement cache. </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SQLParserBenchmark
+{
+
+   @Param( { "SELECT", "INSERT", "CALL", "ESCAPES" } )
+   String                 statement;
+
+   private String         _Sql;
+
+   private JtdsConnection _Connection;
+
+   @Setup
+   public void setup()
+      throws Exception
+   {
+      switch( statement )
+      {
+         case "SELECT" : _Sql = "SELECT o.id, o.total, c.name FROM orders o JOIN customers c ON c.id = o.customer WHERE o.id = ? AND c.region = ? ORDER BY o.total DESC"; break;
+         case "INSERT" : _Sql = "INSERT INTO orders (id, customer, total, created, note) VALUES (?, ?, ?, ?, 'it''s a ''quoted'' literal')"; break;
+         case "CALL"   : _Sql = "{?= call dbo.update_order(?, ?, ?)}"; break;
+         case "ESCAPES": _Sql = "SELECT {fn ucase(name)}, {fn convert(total, SQL_VARCHAR)} FROM orders WHERE created > {ts '2012-01-01 00:00:00'} AND {fn length(name)} > ? /* ? */ -- ?"; break;
+         default       : throw new IllegalArgumentException( statement );
+      }
+
+      _Connection = new ReplaySocket( new ResponseBuilder().done( 0 ).build(), Driver.TDS80 ).connect();
+   }
+
+   /**
+    * Parses the statement, bypassing the statement cache.
+    */
+   @Benchmark
+   public Object parse()
+      throws Exception
+   {
+      return SQLParser.parse( _Sql, new ArrayList(), _Connection, true );
+   }
+
+   /**
+    * Parses the statement, served from the statement cache.
+    */
+   @Benchmark
+   public Object cached()
+      throws Exception
+   {
+      return SQLParser.parse( _Sql, new ArrayList(), _Connection, false );
+   }
+
+}
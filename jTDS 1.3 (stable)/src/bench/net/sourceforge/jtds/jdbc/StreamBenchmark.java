@@ -0,0 +1,123 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p> Measures the string encoding of {@link RequestStream#write(String)} and
+ * the decoding of {@link ResponseStream#readString(int)} (UCS-2, TDS 7.0+).
+ * </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@OperationsPerInvocation( StreamBenchmark.STRINGS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StreamBenchmark
+{
+
+   /**
+    * number of strings per invocation
+    */
+   static final int STRINGS = 100;
+
+   @Param( { "16", "256", "4000" } )
+   int                    length;
+
+   @Param( { "false", "true" } )
+   boolean                unicode;
+
+   private String         _String;
+
+   private RequestStream  _Out;
+
+   private ResponseStream _In;
+
+   @Setup
+   public void setup()
+      throws Exception
+   {
+      StringBuilder sb = new StringBuilder( length );
+
+      for( int i = 0; i < length; i ++ )
+      {
+         sb.append( unicode && i % 4 == 0 ? (char) ( 0x0410 + i % 32 ) : (char) ( 'a' + i % 26 ) );
+      }
+
+      _String = sb.toString();
+
+      ResponseBuilder response = new ResponseBuilder();
+
+      for( int i = 0; i < STRINGS; i ++ )
+      {
+         response.string( _String );
+      }
+
+      ReplaySocket socket = new ReplaySocket( response.build(), Driver.TDS80 );
+      _Out = socket.getRequestStream( ResponseBuilder.PACKET_SIZE, TdsData.DEFAULT_PRECISION_38 );
+      _In  = socket.getResponseStream( _Out, ResponseBuilder.PACKET_SIZE );
+      _Out.setPacketType( TdsCore.QUERY_PKT );
+   }
+
+   /**
+    * Encodes {@link #STRINGS} strings, the request is never completed so full
+    * packets are sent (and discarded) continuously.
+    */
+   @Benchmark
+   public void write()
+      throws Exception
+   {
+      for( int i = 0; i < STRINGS; i ++ )
+      {
+         _Out.write( _String );
+      }
+   }
+
+   /**
+    * Decodes {@link #STRINGS} strings.
+    */
+   @Benchmark
+   public void readString( Blackhole bh )
+      throws Exception
+   {
+      ReplaySocket.request( _Out );
+
+      for( int i = 0; i < STRINGS; i ++ )
+      {
+         bh.consume( _In.readString( length ) );
+      }
+   }
+
+}
@@ -0,0 +1,108 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p> Measures {@link Support#substituteParameters}, used to embed parameter
+ * values into the SQL text if statements are not prepared
+ * (<code>prepareSQL=0</code>) or sent as language events. </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SubstituteParametersBenchmark
+{
+
+   @Param( { "1", "10", "50" } )
+   int                    rows;
+
+   private String         _Sql;
+
+   private ParamInfo[]    _Params;
+
+   private JtdsConnection _Connection;
+
+   @Setup
+   public void setup()
+      throws Exception
+   {
+      _Connection = new ReplaySocket( new ResponseBuilder().done( 0 ).build(), Driver.TDS80 ).connect();
+
+      // multi-row insert, 5 parameters per row
+      StringBuilder sql = new StringBuilder( "INSERT INTO orders (id, customer, total, created, note) VALUES " );
+
+      for( int r = 0; r < rows; r ++ )
+      {
+         sql.append( r == 0 ? "" : ", " ).append( "(?, ?, ?, ?, ?)" );
+      }
+
+      ArrayList<ParamInfo> params = new ArrayList<>();
+      _Sql = SQLParser.parse( sql.toString(), params, _Connection, false )[0];
+      _Params = params.toArray( new ParamInfo[params.size()] );
+
+      for( int r = 0; r < rows; r ++ )
+      {
+         set( _Params[r * 5    ], Types.INTEGER  , Integer.valueOf( r ) );
+         set( _Params[r * 5 + 1], Types.VARCHAR  , "customer " + r );
+         set( _Params[r * 5 + 2], Types.DECIMAL  , BigDecimal.valueOf( r * 12345L, 2 ) );
+         set( _Params[r * 5 + 3], Types.TIMESTAMP, new DateTime( new Timestamp( 1262304000000L + r * 3600000L ) ) );
+         set( _Params[r * 5 + 4], Types.VARCHAR  , "it's row " + r );
+      }
+   }
+
+   /**
+    * Initializes a parameter the way {@link JtdsPreparedStatement} does.
+    */
+   private static void set( ParamInfo pi, int jdbcType, Object value )
+   {
+      pi.jdbcType = jdbcType;
+      pi.value    = value;
+      pi.isSet    = true;
+      pi.length   = value instanceof String ? ( (String) value ).length() : 0;
+      pi.scale    = value instanceof BigDecimal ? ( (BigDecimal) value ).scale() : 0;
+   }
+
+   @Benchmark
+   public String substituteParameters()
+      throws Exception
+   {
+      return Support.substituteParameters( _Sql, _Params, _Connection );
+   }
+
+}
@@ -0,0 +1,183 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p> Measures {@link TdsData#readData} and {@link TdsData#writeParam} for the
+ * most common column and parameter types. </p>
+ *
+ * <p> The column descriptor is obtained by letting the driver process a
+ * recorded result set, {@link #readData} then decodes {@link #VALUES} column
+ * values per invocation from a replayed response. </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@OperationsPerInvocation( TdsDataBenchmark.VALUES )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TdsDataBenchmark
+{
+
+   /**
+    * number of values per invocation
+    */
+   static final int VALUES = 1000;
+
+   @Param( { "INT", "BIGINT", "FLOAT", "DECIMAL", "DATETIME", "VARCHAR", "NVARCHAR" } )
+   String                 type;
+
+   private JtdsConnection _Connection;
+
+   private RequestStream  _Out;
+
+   private ResponseStream _In;
+
+   private ColInfo        _Column;
+
+   private ParamInfo      _Param;
+
+   @Setup
+   public void setup()
+      throws Exception
+   {
+      ReplaySocket socket = new ReplaySocket( declare( new ResponseBuilder() ).row( value( 0 ) ).done( 1 ).build(), Driver.TDS80 );
+      _Connection = socket.connect();
+
+      // let the driver decode the column meta data
+      try( Statement st = _Connection.createStatement(); ResultSet rs = st.executeQuery( "select c" ) )
+      {
+         rs.next();
+         _Column = ( (JtdsResultSet) rs ).getColumns()[0];
+      }
+
+      ResponseBuilder data = declare( new ResponseBuilder() );
+
+      for( int i = 0; i < VALUES; i ++ )
+      {
+         data.values( value( i ) );
+      }
+
+      socket.setResponse( data.build() );
+      _Out = socket.getRequestStream( ResponseBuilder.PACKET_SIZE, TdsData.DEFAULT_PRECISION_38 );
+      _In  = socket.getResponseStream( _Out, ResponseBuilder.PACKET_SIZE );
+
+      Object value = value( 1 );
+      int jdbcType;
+
+      switch( type )
+      {
+         case "INT"     : jdbcType = Types.INTEGER;   break;
+         case "BIGINT"  : jdbcType = Types.BIGINT;    break;
+         case "FLOAT"   : jdbcType = Types.DOUBLE;    break;
+         case "DECIMAL" : jdbcType = Types.DECIMAL;   break;
+         case "DATETIME": jdbcType = Types.TIMESTAMP; value = new DateTime( (Timestamp) value ); break;
+         default        : jdbcType = Types.VARCHAR;   break;
+      }
+
+      _Param = new ParamInfo( jdbcType, value, "NVARCHAR".equals( type ) ? ParamInfo.UNICODE : ParamInfo.INPUT );
+
+      if( value instanceof BigDecimal )
+      {
+         _Param.precision = TdsData.DEFAULT_PRECISION_38;
+         _Param.scale     = ( (BigDecimal) value ).scale();
+      }
+
+      TdsData.getNativeType( _Connection, _Param );
+   }
+
+   private ResponseBuilder declare( ResponseBuilder response )
+   {
+      switch( type )
+      {
+         case "INT"     : return response.intColumn( "c" );
+         case "BIGINT"  : return response.bigintColumn( "c" );
+         case "FLOAT"   : return response.floatColumn( "c" );
+         case "DECIMAL" : return response.decimalColumn( "c", 18, 4 );
+         case "DATETIME": return response.datetimeColumn( "c" );
+         case "VARCHAR" : return response.varcharColumn( "c", 100 );
+         case "NVARCHAR": return response.nvarcharColumn( "c", 100 );
+         default        : throw new IllegalArgumentException( type );
+      }
+   }
+
+   private Object value( int i )
+   {
+      switch( type )
+      {
+         case "INT"     : return Integer.valueOf( i * 7919 );
+         case "BIGINT"  : return Long.valueOf( i * 2147483659L );
+         case "FLOAT"   : return Double.valueOf( i * 1.5 );
+         case "DECIMAL" : return BigDecimal.valueOf( i * 12345L, 4 );
+         case "DATETIME": return new Timestamp( 1262304000000L + i * 3600000L );
+         default        : return "customer name " + i;
+      }
+   }
+
+   /**
+    * Decodes {@link #VALUES} column values.
+    */
+   @Benchmark
+   public void readData( Blackhole bh )
+      throws Exception
+   {
+      ReplaySocket.request( _Out );
+
+      for( int i = 0; i < VALUES; i ++ )
+      {
+         bh.consume( TdsData.readData( _Connection, _In, _Column ) );
+      }
+   }
+
+   /**
+    * Encodes {@link #VALUES} RPC parameters, the request is never completed
+    * so full packets are sent (and discarded) continuously.
+    */
+   @Benchmark
+   public void writeParam()
+      throws Exception
+   {
+      for( int i = 0; i < VALUES; i ++ )
+      {
+         TdsData.writeParam( _Out, _Connection.getCharsetInfo(), _Connection.getCollation(), _Param );
+      }
+   }
+
+}
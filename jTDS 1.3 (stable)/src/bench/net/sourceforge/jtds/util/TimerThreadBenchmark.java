@@ -0,0 +1,112 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p> Measures setting and cancelling a query timeout with
+ * {@link TimerThread}, the way <code>TdsCore</code> does it for every
+ * statement execution, while a given number of other timers is outstanding.
+ * The cost should be independent of the number of outstanding timers. </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TimerThreadBenchmark
+{
+
+   private static final TimerThread.TimerListener NOOP = new TimerThread.TimerListener()
+   {
+      @Override
+      public void timerExpired()
+      {
+      }
+   };
+
+   @Param( { "0", "1000", "10000" } )
+   int                 outstanding;
+
+   private TimerThread _Timer;
+
+   private Object[]    _Handles;
+
+   @Setup
+   public void setup()
+   {
+      _Timer = new TimerThread();
+      _Timer.start();
+
+      // timers expiring before the measured ones but not during the run,
+      // spread over all buckets
+      _Handles = new Object[outstanding];
+
+      for( int i = 0; i < outstanding; i ++ )
+      {
+         _Handles[i] = _Timer.setTimer( 1800000 + i % 1000 * TimerThread.TICK, NOOP );
+      }
+   }
+
+   @TearDown
+   public void tearDown()
+   {
+      for( Object handle : _Handles )
+      {
+         _Timer.cancelTimer( handle );
+      }
+
+      _Timer.interrupt();
+   }
+
+   /**
+    * Sets and cancels a timer from a single thread.
+    */
+   @Benchmark
+   public boolean setAndCancel()
+   {
+      return _Timer.cancelTimer( _Timer.setTimer( 3600000, NOOP ) );
+   }
+
+   /**
+    * Sets and cancels timers from 8 concurrent threads.
+    */
+   @Benchmark
+   @Threads( 8 )
+   public boolean setAndCancelConcurrent()
+   {
+      return _Timer.cancelTimer( _Timer.setTimer( 3600000, NOOP ) );
+   }
+
+}
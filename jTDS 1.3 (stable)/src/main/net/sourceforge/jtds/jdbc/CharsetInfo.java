@@ -17,7 +17,12 @@
 //
 package net.sourceforge.jtds.jdbc;
 
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Properties;
 import java.util.Enumeration;
@@ -211,6 +216,13 @@ public final class CharsetInfo {
     private final String charset;
     /** Indicates whether current charset is wide (ie multi-byte). */
     private final boolean wideChars;
+    /** The resolved Java character set, <code>null</code> until first used. */
+    private volatile Charset javaCharset;
+    /**
+     * Indicates whether characters 0x00-0x7F are encoded as single bytes
+     * with the same value; only valid once <code>javaCharset</code> is set.
+     */
+    private boolean asciiCompatible;
 
     /**
      * Constructs a <code>CharsetInfo</code> object from a character set
@@ -239,6 +251,84 @@ public final class CharsetInfo {
         return wideChars;
     }
 
+    /**
+     * Retrieves the Java character set, resolving it on first use. Falls back
+     * to the platform default charset if the charset is not supported by the
+     * JVM, the same way <code>String.getBytes(String)</code> callers in this
+     * driver do.
+     */
+    public Charset getJavaCharset() {
+        Charset cs = javaCharset;
+
+        if (cs == null) {
+            try {
+                cs = Charset.forName(charset);
+            } catch (IllegalArgumentException e) {
+                // IllegalCharsetNameException or UnsupportedCharsetException
+                cs = Charset.defaultCharset();
+            }
+            asciiCompatible = isAsciiCompatible(cs);
+            // Volatile write publishes asciiCompatible as well
+            javaCharset = cs;
+        }
+
+        return cs;
+    }
+
+    /**
+     * Retrieves whether strings only consisting of characters 0x00-0x7F are
+     * encoded as one byte per character with the same value, and byte arrays
+     * only consisting of bytes 0x00-0x7F decode to these characters. This is
+     * true for all single-byte code pages and most multi-byte ones, as lead
+     * bytes are always above 0x7F; it allows such values to be converted
+     * without a <code>CharsetEncoder</code> or <code>CharsetDecoder</code>.
+     */
+    public boolean isAsciiCompatible() {
+        getJavaCharset();
+        return asciiCompatible;
+    }
+
+    /**
+     * Creates a new decoder for this character set, replacing malformed and
+     * unmappable input like the <code>String</code> constructors do. Decoders
+     * are not thread safe, so each stream uses its own.
+     */
+    CharsetDecoder newDecoder() {
+        return getJavaCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Creates a new encoder for this character set, replacing malformed and
+     * unmappable input like <code>String.getBytes()</code> does. Encoders are
+     * not thread safe, so each stream uses its own.
+     */
+    CharsetEncoder newEncoder() {
+        return getJavaCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Checks whether the characters 0x00-0x7F round-trip as single bytes of
+     * the same value.
+     */
+    private static boolean isAsciiCompatible(Charset cs) {
+        char[] chars = new char[0x80];
+        byte[] bytes = new byte[0x80];
+
+        for (int i = 0; i < 0x80; i++) {
+            chars[i] = (char) i;
+            bytes[i] = (byte) i;
+        }
+
+        String ascii = new String(chars);
+
+        return Arrays.equals(ascii.getBytes(cs), bytes)
+                && ascii.equals(new String(bytes, cs));
+    }
+
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -63,12 +63,16 @@ public final class DefaultProperties {
     public static final String BIND_ADDRESS = "";
     /** Default <code>bufferMaxMemory</code> property. */
     public static final String BUFFER_MAX_MEMORY = "1024";
+    /** Default <code>bufferConnectionMemory</code> property. */
+    public static final String BUFFER_CONNECTION_MEMORY = "256";
     /** Default <code>bufferMinPackets</code> property. */
     public static final String BUFFER_MIN_PACKETS = "8";
     /** Default <code>cacheMetaData</code> property. */
     public static final String CACHEMETA = "false";
     /** Default <code>charset</code> property. */
     public static final String CHARSET = "";
+    /** Default <code>cursorPrefetch</code> property. */
+    public static final String CURSOR_PREFETCH = "0";
     /** Default <code>databaseName</code> property. */
     public static final String DATABASE_NAME = "";
     /** Default <code>instance</code> property. */
@@ -85,6 +89,8 @@ public final class DefaultProperties {
     public static final String MAC_ADDRESS = "000000000000";
     /** Default <code>maxStatements</code> property. */
     public static final String MAX_STATEMENTS = "500";
+    /** Default <code>metaDataCacheTtl</code> property. */
+    public static final String METADATA_CACHE_TTL = "0";
     /** Default <code>namedPipe</code> property. */
     public static final String NAMED_PIPE = "false";
     /** Default <code>namedPipePath</code> property for SQL Server. */
@@ -99,6 +105,8 @@ public final class DefaultProperties {
     public static final String PACKET_SIZE_70_80 = "0"; // server sets packet size
     /** Default <code>password</code> property. */
     public static final String PASSWORD = "";
+    /** Default <code>pipeline</code> property. */
+    public static final String PIPELINE = "false";
     /** Default <code>portNumber</code> property for SQL Server. */
     public static final String PORT_NUMBER_SQLSERVER = "1433";
     /** Default <code>portNumber</code> property for Sybase. */
@@ -113,6 +121,8 @@ public final class DefaultProperties {
     public static final String PROG_NAME = "jTDS";
     /** Default <code>tcpNoDelay</code> property. */
     public static final String TCP_NODELAY = "true";
+    /** Default <code>useBulkInsert</code> property. */
+    public static final String USEBULKINSERT = "false";
     /** Default <code>tmpDir</code> property. */
     public static final String BUFFER_DIR = new File(System.getProperty("java.io.tmpdir")).toString();
     /** Default <code>sendStringParametersAsUnicode</code> property. */
@@ -123,12 +133,20 @@ public final class DefaultProperties {
     public static final String USEJCIFS = "false";
     /** Default <code>useLOBs</code> property. */
     public static final String USELOBS = "true";
+    /** Default <code>useLazyRows</code> property. */
+    public static final String USELAZYROWS = "false";
+    /** Default <code>usePrepExec</code> property. */
+    public static final String USEPREPEXEC = "false";
     /** Default <code>useNTLMv2</code> property. */
     public static final String USENTLMV2 = "false";
     /** Default <code>useKerberos</code> property. */
     public static final String USEKERBEROS = "false";
     /** Default <code>user</code> property. */
     public static final String USER = "";
+    /** Default <code>shareMetaData</code> property. */
+    public static final String SHAREMETA = "false";
+    /** Default <code>warmStart</code> property. */
+    public static final String WARM_START = "false";
     /** Default <code>wsid</code> property. */
     public static final String WSID = "";
     /** Default <code>XaEmulation</code> property. */
@@ -160,6 +178,8 @@ public final class DefaultProperties {
 
     /** Default <code>ssl</code> property. */
     public static final String SSL = Ssl.SSL_OFF;
+    /** Default <code>streamLobs</code> property. */
+    public static final String STREAMLOBS = "false";
 
     /** Default TDS version based on server type */
     private static final HashMap tdsDefaults;
@@ -221,6 +241,7 @@ public final class DefaultProperties {
 
         addDefaultPropertyIfNotSet(props, Driver.USER, USER);
         addDefaultPropertyIfNotSet(props, Driver.PASSWORD, PASSWORD);
+        addDefaultPropertyIfNotSet(props, Driver.PIPELINE, PIPELINE);
 
         addDefaultPropertyIfNotSet(props, Driver.DATABASENAME, DATABASE_NAME);
         addDefaultPropertyIfNotSet(props, Driver.INSTANCE, INSTANCE);
@@ -238,23 +259,32 @@ public final class DefaultProperties {
         addDefaultPropertyIfNotSet(props, Driver.PROCESSID, PROCESS_ID);
         addDefaultPropertyIfNotSet(props, Driver.MACADDRESS, MAC_ADDRESS);
         addDefaultPropertyIfNotSet(props, Driver.MAXSTATEMENTS, MAX_STATEMENTS);
+        addDefaultPropertyIfNotSet(props, Driver.METADATACACHETTL, METADATA_CACHE_TTL);
         addDefaultPropertyIfNotSet(props, Driver.NAMEDPIPE, NAMED_PIPE);
         addDefaultPropertyIfNotSet(props, Driver.PACKETSIZE, Driver.TDS, packetSizeDefaults);
         addDefaultPropertyIfNotSet(props, Driver.CACHEMETA, CACHEMETA);
+        addDefaultPropertyIfNotSet(props, Driver.SHAREMETA, SHAREMETA);
         addDefaultPropertyIfNotSet(props, Driver.CHARSET, CHARSET);
         addDefaultPropertyIfNotSet(props, Driver.LANGUAGE, LANGUAGE);
         addDefaultPropertyIfNotSet(props, Driver.PREPARESQL, Driver.SERVERTYPE, prepareSQLDefaults);
         addDefaultPropertyIfNotSet(props, Driver.SENDSTRINGPARAMETERSASUNICODE, USE_UNICODE);
         addDefaultPropertyIfNotSet(props, Driver.TCPNODELAY, TCP_NODELAY);
+        addDefaultPropertyIfNotSet(props, Driver.USEBULKINSERT, USEBULKINSERT);
         addDefaultPropertyIfNotSet(props, Driver.XAEMULATION, XAEMULATION);
         addDefaultPropertyIfNotSet(props, Driver.LOGFILE, LOGFILE);
         addDefaultPropertyIfNotSet(props, Driver.SSL, SSL);
+        addDefaultPropertyIfNotSet(props, Driver.STREAMLOBS, STREAMLOBS);
+        addDefaultPropertyIfNotSet(props, Driver.WARMSTART, WARM_START);
         addDefaultPropertyIfNotSet(props, Driver.USECURSORS, USECURSORS);
         addDefaultPropertyIfNotSet(props, Driver.USENTLMV2, USENTLMV2);
         addDefaultPropertyIfNotSet(props, Driver.USEKERBEROS, USEKERBEROS);
         addDefaultPropertyIfNotSet(props, Driver.BUFFERMAXMEMORY, BUFFER_MAX_MEMORY);
+        addDefaultPropertyIfNotSet(props, Driver.BUFFERCONNECTIONMEMORY, BUFFER_CONNECTION_MEMORY);
         addDefaultPropertyIfNotSet(props, Driver.BUFFERMINPACKETS, BUFFER_MIN_PACKETS);
+        addDefaultPropertyIfNotSet(props, Driver.CURSORPREFETCH, CURSOR_PREFETCH);
         addDefaultPropertyIfNotSet(props, Driver.USELOBS, USELOBS);
+        addDefaultPropertyIfNotSet(props, Driver.USELAZYROWS, USELAZYROWS);
+        addDefaultPropertyIfNotSet(props, Driver.USEPREPEXEC, USEPREPEXEC);
         addDefaultPropertyIfNotSet(props, Driver.BINDADDRESS, BIND_ADDRESS);
         addDefaultPropertyIfNotSet(props, Driver.USEJCIFS, USEJCIFS);
         addDefaultPropertyIfNotSet(props, Driver.BUFFERDIR, BUFFER_DIR);
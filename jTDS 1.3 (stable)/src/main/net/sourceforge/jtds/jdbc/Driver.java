@@ -82,9 +82,11 @@ public class Driver implements java.sql.Driver {
     public static final String BINDADDRESS   = "prop.bindaddress";
     public static final String BUFFERDIR     = "prop.bufferdir";
     public static final String BUFFERMAXMEMORY = "prop.buffermaxmemory";
+    public static final String BUFFERCONNECTIONMEMORY = "prop.bufferconnectionmemory";
     public static final String BUFFERMINPACKETS = "prop.bufferminpackets";
     public static final String CACHEMETA     = "prop.cachemetadata";
     public static final String CHARSET       = "prop.charset";
+    public static final String CURSORPREFETCH = "prop.cursorprefetch";
     public static final String DATABASENAME  = "prop.databasename";
     public static final String DOMAIN        = "prop.domain";
     public static final String INSTANCE      = "prop.instance";
@@ -95,27 +97,35 @@ public class Driver implements java.sql.Driver {
     public static final String LOGINTIMEOUT  = "prop.logintimeout";
     public static final String MACADDRESS    = "prop.macaddress";
     public static final String MAXSTATEMENTS = "prop.maxstatements";
+    public static final String METADATACACHETTL = "prop.metadatacachettl";
     public static final String NAMEDPIPE     = "prop.namedpipe";
     public static final String PACKETSIZE    = "prop.packetsize";
     public static final String PASSWORD      = "prop.password";
+    public static final String PIPELINE      = "prop.pipeline";
     public static final String PORTNUMBER    = "prop.portnumber";
     public static final String PREPARESQL    = "prop.preparesql";
     public static final String PROGNAME      = "prop.progname";
     public static final String SERVERNAME    = "prop.servername";
     public static final String SERVERTYPE    = "prop.servertype";
+    public static final String SHAREMETA     = "prop.sharemetadata";
     public static final String SOTIMEOUT     = "prop.sotimeout";
     public static final String SOKEEPALIVE   = "prop.sokeepalive";
     public static final String PROCESSID     = "prop.processid";
     public static final String SSL           = "prop.ssl";
+    public static final String STREAMLOBS    = "prop.streamlobs";
     public static final String TCPNODELAY    = "prop.tcpnodelay";
     public static final String TDS           = "prop.tds";
+    public static final String USEBULKINSERT = "prop.usebulkinsert";
     public static final String USECURSORS    = "prop.usecursors";
     public static final String USEJCIFS      = "prop.usejcifs";
     public static final String USENTLMV2     = "prop.usentlmv2";
     public static final String USEKERBEROS   = "prop.usekerberos";
     public static final String USELOBS       = "prop.uselobs";
+    public static final String USELAZYROWS   = "prop.uselazyrows";
+    public static final String USEPREPEXEC   = "prop.useprepexec";
     public static final String USER          = "prop.user";
     public static final String SENDSTRINGPARAMETERSASUNICODE = "prop.useunicode";
+    public static final String WARMSTART     = "prop.warmstart";
     public static final String WSID          = "prop.wsid";
     public static final String XAEMULATION   = "prop.xaemulation";
 
@@ -273,7 +283,14 @@ public class Driver implements java.sql.Driver {
         choicesMap.put(Messages.get(Driver.TCPNODELAY), booleanChoices);
         choicesMap.put(Messages.get(Driver.SENDSTRINGPARAMETERSASUNICODE), booleanChoices);
         choicesMap.put(Messages.get(Driver.USECURSORS), booleanChoices);
+        choicesMap.put(Messages.get(Driver.STREAMLOBS), booleanChoices);
+        choicesMap.put(Messages.get(Driver.USEPREPEXEC), booleanChoices);
+        choicesMap.put(Messages.get(Driver.USEBULKINSERT), booleanChoices);
+        choicesMap.put(Messages.get(Driver.PIPELINE), booleanChoices);
+        choicesMap.put(Messages.get(Driver.USELAZYROWS), booleanChoices);
         choicesMap.put(Messages.get(Driver.USELOBS), booleanChoices);
+        choicesMap.put(Messages.get(Driver.WARMSTART), booleanChoices);
+        choicesMap.put(Messages.get(Driver.SHAREMETA), booleanChoices);
         choicesMap.put(Messages.get(Driver.XAEMULATION), booleanChoices);
 
         final String[] prepareSqlChoices = new String[]{
@@ -0,0 +1,151 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p> Remembers the facts a {@link JtdsConnection} discovers while connecting
+ * to a server, used if the <code>warmStart</code> connection property is
+ * set. </p>
+ *
+ * <p> A new connection otherwise looks up the port of a named instance via
+ * UDP, may query the server character set (Sybase and SQL Server 6.5) and
+ * queries the maximum decimal precision, in addition to the login itself.
+ * With a known endpoint these steps are skipped, so a storm of new
+ * connections, e.g. after a failover, doesn't repeat them for every
+ * connection. </p>
+ *
+ * <p> An entry is only used if the server reports the same TDS and product
+ * version it did when the entry was created, and is discarded if a login
+ * using it fails, so the next connection discovers the facts again. The
+ * port of a named instance is only used if the server listening on it
+ * confirms the instance name in the <code>PRELOGIN</code> handshake, another
+ * instance may have been started on that dynamic port. </p>
+ */
+final class EndpointCache
+{
+
+   /**
+    * the discovered facts, keyed by the endpoint as configured
+    */
+   private static final ConcurrentMap<String,EndpointCache> _Endpoints = new ConcurrentHashMap<>();
+
+   private final int    _Port;
+
+   private final String _Charset;
+
+   private final int    _MaxPrecision;
+
+   private final int    _TdsVersion;
+
+   private final String _ProductVersion;
+
+   /**
+    * @param port
+    *    the resolved port number
+    *
+    * @param charset
+    *    the server character set if it had to be queried, <code>null</code>
+    *    otherwise
+    *
+    * @param maxPrecision
+    *    the maximum decimal precision
+    *
+    * @param tdsVersion
+    *    the negotiated TDS version
+    *
+    * @param productVersion
+    *    the server product version
+    */
+   EndpointCache( int port, String charset, int maxPrecision, int tdsVersion, String productVersion )
+   {
+      _Port           = port;
+      _Charset        = charset;
+      _MaxPrecision   = maxPrecision;
+      _TdsVersion     = tdsVersion;
+      _ProductVersion = productVersion;
+   }
+
+   /**
+    * Builds the key of an endpoint from the connection properties that
+    * determine which server is reached and how.
+    */
+   static String key( int serverType, String serverName, int port, String instance, boolean namedPipe, int tdsVersion )
+   {
+      return serverType + "|" + serverName.toLowerCase() + '|' + port + '|' + instance.toLowerCase() + '|' + namedPipe + '|' + tdsVersion;
+   }
+
+   /**
+    * @return
+    *    the facts discovered for an endpoint or <code>null</code> if unknown
+    */
+   static EndpointCache get( String key )
+   {
+      return _Endpoints.get( key );
+   }
+
+   /**
+    * Stores the facts discovered for an endpoint.
+    */
+   static void put( String key, EndpointCache endpoint )
+   {
+      _Endpoints.put( key, endpoint );
+   }
+
+   /**
+    * Discards the facts of an endpoint, unless they have been replaced by
+    * another connection in the meantime.
+    */
+   static void remove( String key, EndpointCache endpoint )
+   {
+      _Endpoints.remove( key, endpoint );
+   }
+
+   /**
+    * @return
+    *    whether the server reported the same versions during login as it did
+    *    when the facts were discovered
+    */
+   boolean matches( int tdsVersion, String productVersion )
+   {
+      return _TdsVersion == tdsVersion && ( _ProductVersion == null ? productVersion == null : _ProductVersion.equals( productVersion ) );
+   }
+
+   int getPort()
+   {
+      return _Port;
+   }
+
+   /**
+    * @return
+    *    the server character set or <code>null</code> if it's sent by the
+    *    server during login
+    */
+   String getCharset()
+   {
+      return _Charset;
+   }
+
+   int getMaxPrecision()
+   {
+      return _MaxPrecision;
+   }
+
+}
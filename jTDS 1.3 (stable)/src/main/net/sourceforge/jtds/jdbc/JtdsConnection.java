@@ -30,6 +30,10 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.sourceforge.jtds.jdbc.cache.*;
 import net.sourceforge.jtds.util.*;
@@ -87,6 +91,12 @@ public class JtdsConnection implements java.sql.Connection {
                                                          "SET IMPLICIT_TRANSACTIONS OFF\r\n" +
                                                          "SET QUOTED_IDENTIFIER ON\r\n"+
                                                          "SET TEXTSIZE 2147483647";
+    /**
+     * SQL Server initial connection string without the
+     * <code>SELECT @@MAX_PRECISION</code> query, used if the maximum
+     * precision is known from an earlier connection. */
+    private static final String SQL_SERVER_INITIAL_SET =
+            SQL_SERVER_INITIAL_SQL.substring(SQL_SERVER_INITIAL_SQL.indexOf("SET "));
     /**
      * SQL Server custom transaction isolation level.
      */
@@ -110,6 +120,8 @@ public class JtdsConnection implements java.sql.Connection {
     private String databaseName;
     /** The current database name. */
     private String currentDatabase;
+    /** The database selected after login, restored by a connection reset. */
+    private String loginDatabase;
     /** The Windows Domain name. */
     private String domainName;
     /** The database user ID. */
@@ -131,9 +143,9 @@ public class JtdsConnection implements java.sql.Connection {
     /** The server protocol version. */
     private int tdsVersion;
     /** The network TCP/IP socket. */
-    private final SharedSocket socket;
+    private SharedSocket socket;
     /** The cored TDS protocol object. */
-    private final TdsCore baseTds;
+    private TdsCore baseTds;
     /** The initial network packet size. */
     private int netPacketSize = TdsCore.MIN_PKT_SIZE;
     /** User requested packet size. */
@@ -160,6 +172,8 @@ public class JtdsConnection implements java.sql.Connection {
     private int transactionIsolation = java.sql.Connection.TRANSACTION_READ_COMMITTED;
     /** Default auto commit state. */
     private volatile boolean autoCommit = true;
+    /** The auto commit state after login, restored by a connection reset. */
+    private boolean loginAutoCommit;
     /** Diagnostc messages for this connection. */
     private final SQLDiagnostic messages;
     /** Connection's current rowcount limit. */
@@ -182,6 +196,8 @@ public class JtdsConnection implements java.sql.Connection {
     private long lobBuffer;
     /** The maximum number of statements to keep open. */
     private int maxStatements;
+    /** The number of seconds catalog results are cached, 0 to disable. */
+    private int metaDataCacheTtl;
     /** Statement cache.*/
     private StatementCache statementCache;
     /** Send parameters as unicode. */
@@ -192,6 +208,18 @@ public class JtdsConnection implements java.sql.Connection {
     private boolean lastUpdateCount;
     /** TCP_NODELAY */
     private boolean tcpNoDelay = true;
+    /** Decode primitive column values lazily. */
+    private boolean useLazyRows;
+    /** Stream large LOB values in the last column from the network. */
+    private boolean streamLobs;
+    /** Send requests without waiting for outstanding responses. */
+    private boolean pipeline;
+    /** Reuse the server facts discovered by earlier connections. */
+    private boolean warmStart;
+    /** Execute batched single row inserts as bulk loads. */
+    private boolean useBulkInsert;
+    /** Prepare statements with their first execution. */
+    private boolean usePrepExec;
     /** Login timeout value in seconds or 0. */
     private int loginTimeout;
     /** Sybase capability mask.*/
@@ -206,6 +234,8 @@ public class JtdsConnection implements java.sql.Connection {
     private boolean xaEmulation = true;
     /** Mutual exclusion lock to control access to connection. */
     private final Semaphore mutex = new Semaphore(1);
+    /** Executor for asynchronous statements, created on first use. */
+    private ThreadPoolExecutor asyncExecutor;
     /** Socket timeout value in seconds or 0. */
     private int socketTimeout;
     /** True to enable socket keep alive. */
@@ -218,14 +248,22 @@ public class JtdsConnection implements java.sql.Connection {
     private int batchSize;
     /** Use metadata cache for prepared statements. */
     private boolean useMetadataCache;
+    /** Share cached statement meta data with other connections. */
+    private boolean shareMetaData;
     /** Use fast forward cursors for forward only result sets. */
     private boolean useCursors;
     /** The directory to buffer data to */
     private File bufferDir;
     /** The global buffer memory limit for all connections (in kilobytes). */
     private int bufferMaxMemory;
+    /** The buffer memory limit for this connection (in kilobytes). */
+    private int bufferConnectionMemory;
     /** The minimum number of packets per statement to buffer to memory. */
     private int bufferMinPackets;
+    /** The budget for buffering server responses of this connection. */
+    private MemoryBudget memoryBudget;
+    /** The maximum number of rows to prefetch from forward only cursors. */
+    private int cursorPrefetch;
     /** Map large types (IMAGE and TEXT/NTEXT) to LOBs by default. */
     private boolean useLOBs;
     /** A cached <code>TdsCore</code> instance to reuse on new statements. */
@@ -282,30 +320,30 @@ public class JtdsConnection implements java.sql.Connection {
         unpackProperties(info);
         messages = new SQLDiagnostic(serverType);
         //
+        // Look up the facts discovered by earlier connections, if enabled
+        //
+        String endpointKey = null;
+        EndpointCache endpoint = null;
+        if (warmStart) {
+            endpointKey = EndpointCache.key(serverType, serverName, portNumber,
+                    instanceName, namedPipe, tdsVersion);
+            endpoint = EndpointCache.get(endpointKey);
+        }
+        //
         // Get the instance port, if it is specified.
-        // Named pipes use instance names differently.
+        // Named pipes use instance names differently. A cached port is only
+        // used if the pre login packet can verify the instance listening.
         //
-        if (instanceName.length() > 0 && !namedPipe) {
-            try {
-                final MSSqlServerInfo msInfo = new MSSqlServerInfo(serverName);
-
-                portNumber = msInfo.getPortForInstance(instanceName);
-            } catch (SQLException e) {
-               // may already have a valid portNumber but Microsoft SQL Server Browser disabled
-               if (portNumber <= 0) {
-                  throw e;
-               }
-            }
-
-            if (portNumber == -1) {
-                throw new SQLException(
-                                      Messages.get("error.msinfo.badinst", serverName, instanceName),
-                                      "08003");
-            }
+        final int configuredPort = portNumber;
+        final boolean cachedPort = instanceName.length() > 0 && !namedPipe
+                && endpoint != null && tdsVersion >= Driver.TDS80;
+        if (cachedPort) {
+            portNumber = endpoint.getPort();
+        } else if (instanceName.length() > 0 && !namedPipe) {
+            lookupInstancePort(configuredPort);
         }
 
-        SharedSocket.setMemoryBudget(bufferMaxMemory * 1024);
-        SharedSocket.setMinMemPkts(bufferMinPackets);
+        memoryBudget = new MemoryBudget(bufferMaxMemory * 1024L, bufferConnectionMemory * 1024L, bufferMinPackets);
         SQLWarning warn;
 
         Object timer = null;
@@ -326,6 +364,20 @@ public class JtdsConnection implements java.sql.Connection {
             if (namedPipe) {
                 // Use named pipe
                 socket = createNamedPipe(this);
+            } else if (cachedPort) {
+                // Use plain TCP/IP socket, connecting to the cached instance
+                // port. The instance may have been restarted on another
+                // dynamic port, so look the port up again if that fails.
+                SharedSocket cached;
+                try {
+                    cached = new SharedSocket(this);
+                } catch (IOException e) {
+                    EndpointCache.remove(endpointKey, endpoint);
+                    endpoint = null;
+                    lookupInstancePort(configuredPort);
+                    cached = new SharedSocket(this);
+                }
+                socket = cached;
             } else {
                 // Use plain TCP/IP socket
                 socket = new SharedSocket(this);
@@ -361,8 +413,17 @@ public class JtdsConnection implements java.sql.Connection {
             //
             // Negotiate SSL connection if required
             //
-            if (tdsVersion >= Driver.TDS80 && !namedPipe) {
-                baseTds.negotiateSSL(instanceName, ssl);
+            if (tdsVersion >= Driver.TDS80 && !namedPipe
+                    && !baseTds.negotiateSSL(instanceName, ssl, cachedPort)) {
+                // Another instance listens on the cached port now, e.g.
+                // after both were restarted; look the port up again
+                socket.close();
+                EndpointCache.remove(endpointKey, endpoint);
+                endpoint = null;
+                lookupInstancePort(configuredPort);
+                socket = new SharedSocket(this);
+                baseTds = new TdsCore(this, messages);
+                baseTds.negotiateSSL(instanceName, ssl, false);
             }
 
             //
@@ -391,6 +452,13 @@ public class JtdsConnection implements java.sql.Connection {
             // the TDS version for the socket and there are no other objects
             // with cached TDS versions at this point.
             tdsVersion = baseTds.getTdsVersion();
+            if (endpoint != null
+                    && !endpoint.matches(tdsVersion, databaseProductVersion)) {
+                // Not the server the facts were discovered on, e.g. after a
+                // failover; discover them again
+                EndpointCache.remove(endpointKey, endpoint);
+                endpoint = null;
+            }
             if (tdsVersion < Driver.TDS70 && databaseName.length() > 0) {
                 // Need to select the default database
                 setCatalog(databaseName);
@@ -399,15 +467,32 @@ public class JtdsConnection implements java.sql.Connection {
             // If charset is still unknown and the collation is not set either,
             // determine the charset by querying (we're using Sybase or SQL Server
             // 6.5)
+            String queriedCharset = null;
             if ((serverCharset == null || serverCharset.length() == 0)
                     && collation == null) {
-                loadCharset(determineServerCharset());
+                if (endpoint != null && endpoint.getCharset() != null) {
+                    queriedCharset = endpoint.getCharset();
+                } else {
+                    queriedCharset = determineServerCharset();
+                }
+                loadCharset(queriedCharset);
             }
 
             // Initial database settings.
             // Sets: auto commit mode  = true
             //       transaction isolation = read committed.
-            if (serverType == Driver.SYBASE) {
+            if (endpoint != null) {
+                // Nothing to discover, send the settings without waiting for
+                // the response; it's read before the next request of baseTds
+                // or spooled by the next request of any other statement. If
+                // the settings failed, that read closes the connection.
+                if (serverType != Driver.SYBASE) {
+                    maxPrecision = endpoint.getMaxPrecision();
+                }
+                baseTds.sendSQL(serverType == Driver.SYBASE
+                        ? SYBASE_INITIAL_SQL : SQL_SERVER_INITIAL_SET);
+                baseTds.setCheckResponse();
+            } else if (serverType == Driver.SYBASE) {
                 baseTds.submitSQL(SYBASE_INITIAL_SQL);
             } else {
                 // Also discover the maximum decimal precision:  28 (default)
@@ -422,6 +507,15 @@ public class JtdsConnection implements java.sql.Connection {
                 rs.close();
                 stmt.close();
             }
+
+            if (warmStart && endpoint == null) {
+                EndpointCache.put(endpointKey, new EndpointCache(portNumber,
+                        queriedCharset, maxPrecision, tdsVersion,
+                        databaseProductVersion));
+            }
+
+            loginDatabase = currentDatabase;
+            loginAutoCommit = autoCommit;
         } catch (UnknownHostException e) {
             loginError = true;
             throw Support.linkException(
@@ -450,6 +544,9 @@ public class JtdsConnection implements java.sql.Connection {
         finally {
             // fix for bug [1755448], socket not closed after login error
             if (loginError) {
+                 if (endpoint != null) {
+                     EndpointCache.remove(endpointKey, endpoint);
+                 }
                  close();
             } else if (timer != null) {
                 // Cancel loginTimer
@@ -464,6 +561,35 @@ public class JtdsConnection implements java.sql.Connection {
         messages.warnings = warn;
     }
 
+    /**
+     * Looks up the port of the named instance using the SQL Server Browser
+     * service.
+     *
+     * @param configuredPort the port given in the URL or properties, used if
+     *                       the browser service can't be reached
+     * @throws SQLException if the port can't be determined
+     */
+    private void lookupInstancePort(int configuredPort) throws SQLException {
+        portNumber = configuredPort;
+
+        try {
+            final MSSqlServerInfo msInfo = new MSSqlServerInfo(serverName);
+
+            portNumber = msInfo.getPortForInstance(instanceName);
+        } catch (SQLException e) {
+           // may already have a valid portNumber but Microsoft SQL Server Browser disabled
+           if (portNumber <= 0) {
+              throw e;
+           }
+        }
+
+        if (portNumber == -1) {
+            throw new SQLException(
+                                  Messages.get("error.msinfo.badinst", serverName, instanceName),
+                                  "08003");
+        }
+    }
+
    /**
     * Ensure all resources are released.
     */
@@ -698,18 +824,49 @@ public class JtdsConnection implements java.sql.Connection {
             if (serverType == Driver.SYBASE) {
                 pstmt.setParamMetaData(proc.getParamMetaData());
             }
+
+            if (proc.getType() == ProcEntry.PREPEXEC) {
+                // Handle not obtained yet, try again with this execution
+                proc.setType(ProcEntry.PREPARE);
+                pstmt.getTds().setPrepExec(proc);
+            }
         } else {
             //
             // No, so create the stored procedure now
             //
             proc = new ProcEntry();
 
-            if (serverType == Driver.SQLSERVER) {
+            //
+            // Parameter definitions and result set meta data are shared
+            // with other connections, only the handle is connection specific
+            //
+            StatementMetaData shared = null;
+
+            if (serverType == Driver.SQLSERVER && useMetadataCache && shareMetaData
+                    && prepareSql == TdsCore.PREPARE && !cursorNeeded) {
+                shared = StatementMetaData.get(getMetaDataKey() + key, params);
+                proc.setParamDefinitions(shared.getParamDefinitions());
+                proc.setColMetaData(shared.getColumns());
+                pstmt.setColMetaData(proc.getColMetaData());
+            }
+
+            if (serverType == Driver.SQLSERVER && usePrepExec
+                    && prepareSql == TdsCore.PREPARE && !cursorNeeded) {
+                //
+                // Prepare with the first execution, using sp_prepexec
+                // instead of sp_execute. Until the handle is returned
+                // the name is null, so the statement (and any other
+                // using the same SQL) is executed using sp_executesql.
+                //
+                proc.setType(ProcEntry.PREPARE);
+                pstmt.getTds().setPrepExec(proc);
+            } else if (serverType == Driver.SQLSERVER) {
                 proc.setName(
                         baseTds.microsoftPrepare(
                                 sql, params, cursorNeeded,
                                 pstmt.getResultSetType(),
-                                pstmt.getResultSetConcurrency()));
+                                pstmt.getResultSetConcurrency(),
+                                proc.getParamDefinitions()));
 
                 if (proc.toString() == null) {
                     proc.setType(ProcEntry.PREP_FAILED);
@@ -718,7 +875,13 @@ public class JtdsConnection implements java.sql.Connection {
                 } else {
                     proc.setType((cursorNeeded) ? ProcEntry.CURSOR : ProcEntry.PREPARE);
                     // Meta data may be returned by sp_prepare
-                    proc.setColMetaData(baseTds.getColumns());
+                    ColInfo[] columns = baseTds.getColumns();
+
+                    if (shared != null && columns != null) {
+                        columns = shared.share(columns);
+                    }
+
+                    proc.setColMetaData(columns);
                     pstmt.setColMetaData(proc.getColMetaData());
                 }
                 // TODO Find some way of getting parameter meta data for MS
@@ -802,6 +965,16 @@ public class JtdsConnection implements java.sql.Connection {
         return maxStatements;
     }
 
+    /**
+     * Retrieves the number of seconds catalog results returned by
+     * <code>DatabaseMetaData</code> may be served from the cache.
+     *
+     * @return the metaDataCacheTtl setting, 0 if caching is disabled
+     */
+    int getMetaDataCacheTtl() {
+        return metaDataCacheTtl;
+    }
+
     /**
      * Retrieves the server type.
      *
@@ -922,6 +1095,36 @@ public class JtdsConnection implements java.sql.Connection {
         return useMetadataCache;
     }
 
+    /**
+     * Retrieves whether the cached meta data of prepared statements is shared
+     * with other connections, see {@link StatementMetaData}.
+     *
+     * @return the shareMetaData setting
+     */
+    boolean getShareMetaData() {
+        return shareMetaData;
+    }
+
+    /**
+     * Retrieves the key identifying the statement meta data shared with other
+     * connections (see {@link StatementMetaData}), i.e. the server, login and
+     * character set of this connection. The database is already part of the
+     * statement key.
+     *
+     * @return the connection part of the shared meta data key
+     */
+    String getMetaDataKey() {
+        StringBuilder key = new StringBuilder(64);
+
+        key.append(serverName).append(':').append(portNumber)
+           .append('/').append(instanceName)
+           .append('/').append(tdsVersion)
+           .append('/').append(user)
+           .append('/').append(getCharset()).append('/');
+
+        return key.toString();
+    }
+
     /**
      * Indicates whether fast forward only cursors should be used for forward
      * only result sets.
@@ -999,6 +1202,24 @@ public class JtdsConnection implements java.sql.Connection {
         return bufferMaxMemory;
     }
 
+    /**
+     * Retrieves the maximum amount of memory in Kb to buffer for this connection.
+     *
+     * @return the maximum amount of memory in Kb to buffer for this connection
+     */
+    int getBufferConnectionMemory() {
+        return bufferConnectionMemory;
+    }
+
+    /**
+     * Retrieves the buffer memory budget of this connection.
+     *
+     * @return the {@link MemoryBudget} used to buffer server responses
+     */
+    MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
     /**
      * Retrieves the minimum number of packets to buffer per {@link Statement} for this connection.
      *
@@ -1008,6 +1229,16 @@ public class JtdsConnection implements java.sql.Connection {
         return bufferMinPackets;
     }
 
+    /**
+     * Retrieves the maximum number of rows read only, forward only cursors
+     * should prefetch while the previous rows are read.
+     *
+     * @return the cursorPrefetch setting, 0 if prefetching is disabled
+     */
+    int getCursorPrefetch() {
+        return cursorPrefetch;
+    }
+
     /**
      * Retrieves the database name for this connection.
      *
@@ -1144,6 +1375,57 @@ public class JtdsConnection implements java.sql.Connection {
         return tcpNoDelay;
     }
 
+    /**
+     * Retrieves whether primitive column values of forward only, read only
+     * result sets should be decoded lazily.
+     *
+     * @return the useLazyRows setting
+     */
+    boolean getUseLazyRows() {
+        return useLazyRows;
+    }
+
+    /**
+     * Retrieves whether large TEXT, NTEXT and IMAGE values in the last column
+     * of forward only, read only result sets should be read directly from the
+     * network when requested as a stream.
+     *
+     * @return the streamLobs setting
+     */
+    boolean getStreamLobs() {
+        return streamLobs;
+    }
+
+    /**
+     * Retrieves whether requests may be sent while responses to requests of
+     * other statements are still outstanding.
+     *
+     * @return the pipeline setting
+     */
+    boolean getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Retrieves whether the server facts discovered by earlier connections to
+     * the same server are reused, see {@link EndpointCache}.
+     *
+     * @return the warmStart setting
+     */
+    boolean getWarmStart() {
+        return warmStart;
+    }
+
+    /**
+     * Retrieves whether batches of single row inserts are executed as bulk
+     * loads, see {@link JtdsPreparedStatement#executeMSBatch}.
+     *
+     * @return the useBulkInsert setting
+     */
+    boolean getUseBulkInsert() {
+        return useBulkInsert;
+    }
+
     /**
      * Retrieves the useJCIFS setting for this connection.
      *
@@ -1202,8 +1484,15 @@ public class JtdsConnection implements java.sql.Connection {
         useCursors = (serverType == Driver.SQLSERVER) && parseBooleanProperty(info,Driver.USECURSORS);
         useLOBs = parseBooleanProperty(info,Driver.USELOBS);
         useMetadataCache = parseBooleanProperty(info,Driver.CACHEMETA);
+        shareMetaData = parseBooleanProperty(info,Driver.SHAREMETA);
         xaEmulation = parseBooleanProperty(info,Driver.XAEMULATION);
         useJCIFS = parseBooleanProperty(info,Driver.USEJCIFS);
+        useLazyRows = parseBooleanProperty(info,Driver.USELAZYROWS);
+        streamLobs = parseBooleanProperty(info,Driver.STREAMLOBS);
+        pipeline = parseBooleanProperty(info,Driver.PIPELINE);
+        warmStart = parseBooleanProperty(info,Driver.WARMSTART);
+        useBulkInsert = parseBooleanProperty(info,Driver.USEBULKINSERT);
+        usePrepExec = parseBooleanProperty(info,Driver.USEPREPEXEC);
         charsetSpecified = serverCharset.length() > 0;
         useNTLMv2 = parseBooleanProperty(info,Driver.USENTLMV2);
         useKerberos = parseBooleanProperty(info,Driver.USEKERBEROS);
@@ -1257,6 +1546,13 @@ public class JtdsConnection implements java.sql.Connection {
         maxStatements = parseIntegerProperty(info, Driver.MAXSTATEMENTS);
 
         statementCache = new ProcedureCache(maxStatements);
+
+        metaDataCacheTtl = parseIntegerProperty(info, Driver.METADATACACHETTL);
+        if (metaDataCacheTtl < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.METADATACACHETTL)), "08001");
+        }
+
         prepareSql = parseIntegerProperty(info, Driver.PREPARESQL);
         if (prepareSql < 0) {
             prepareSql = 0;
@@ -1294,11 +1590,23 @@ public class JtdsConnection implements java.sql.Connection {
                     Messages.get(Driver.BUFFERMAXMEMORY)), "08001");
         }
 
+        bufferConnectionMemory = parseIntegerProperty(info, Driver.BUFFERCONNECTIONMEMORY);
+        if (bufferConnectionMemory < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.BUFFERCONNECTIONMEMORY)), "08001");
+        }
+
         bufferMinPackets = parseIntegerProperty(info, Driver.BUFFERMINPACKETS);
         if (bufferMinPackets < 1) {
             throw new SQLException(Messages.get("error.connection.badprop",
                     Messages.get(Driver.BUFFERMINPACKETS)), "08001");
         }
+
+        cursorPrefetch = parseIntegerProperty(info, Driver.CURSORPREFETCH);
+        if (cursorPrefetch < 0) {
+            throw new SQLException(Messages.get("error.connection.badprop",
+                    Messages.get(Driver.CURSORPREFETCH)), "08001");
+        }
     }
 
     /**
@@ -1588,7 +1896,10 @@ public class JtdsConnection implements java.sql.Connection {
      */
     protected void setDatabase(final String newDb, final String oldDb)
             throws SQLException {
-        if (currentDatabase != null && !oldDb.equalsIgnoreCase(currentDatabase)) {
+        // After a connection reset the server may report the change back to
+        // the login database that has already been assumed
+        if (currentDatabase != null && !oldDb.equalsIgnoreCase(currentDatabase)
+                && !newDb.equalsIgnoreCase(currentDatabase)) {
             throw new SQLException(Messages.get("error.connection.dbmismatch",
                                                       oldDb, databaseName),
                                    "HY096");
@@ -2059,6 +2370,45 @@ public class JtdsConnection implements java.sql.Connection {
         return result;
     }
 
+   /**
+    * <p> Queues an asynchronously executed statement. </p>
+    *
+    * <p> All asynchronous statements of a connection are executed one after
+    * the other by a single daemon thread, which is started on demand and
+    * terminates after having been idle for a minute. So any number of pending
+    * statements only ever ties up one thread per connection. </p>
+    *
+    * @param future
+    *    the statement execution
+    *
+    * @throws SQLException
+    *    if the connection is closed
+    */
+   synchronized void executeAsync( StatementFuture<?> future )
+      throws SQLException
+   {
+      checkOpen();
+
+      if( asyncExecutor == null )
+      {
+         asyncExecutor = new ThreadPoolExecutor( 1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+         {
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+               Thread thread = new Thread( runnable, "jTDS AsyncThread" );
+               thread.setDaemon( true );
+               return thread;
+            }
+         } );
+
+         asyncExecutor.allowCoreThreadTimeOut( true );
+      }
+
+      future.setExecutor( asyncExecutor );
+      asyncExecutor.execute( future );
+   }
+
     //
     // ------------------- java.sql.Connection interface methods -------------------
     //
@@ -2100,6 +2450,20 @@ public class JtdsConnection implements java.sql.Connection {
     synchronized public void close() throws SQLException {
         if (!closed) {
             try {
+                //
+                // Cancel pending asynchronous statements, the running one
+                // fails when its statement is closed
+                //
+                if (asyncExecutor != null) {
+                    ArrayList<Runnable> pending = new ArrayList<>();
+                    asyncExecutor.getQueue().drainTo(pending);
+                    asyncExecutor.shutdown();
+
+                    for (Runnable future : pending) {
+                        ((StatementFuture<?>) future).cancel(false);
+                    }
+                }
+
                 //
                 // Close any open statements
                 //
@@ -2194,6 +2558,54 @@ public class JtdsConnection implements java.sql.Connection {
         clearSavepoints();
     }
 
+    /**
+     * Resets the connection to the state it had right after it was opened,
+     * e.g. before a pooled connection is handed out again. The server rolls
+     * back any open transaction, closes cursors, drops temporary tables and
+     * prepared statements and restores the login database and session
+     * settings.
+     * <p>
+     * The reset is requested using the RESETCONNECTION status bit of the
+     * batch restoring the settings jTDS applies after login, which is sent
+     * without waiting for the response. So unlike an explicit reset batch no
+     * additional round trip is required. The response is read before the
+     * next request of the connection itself or spooled by the next request of
+     * any statement; if the reset failed, reading it closes the connection.
+     * Statements created before the reset must not be used afterwards.
+     *
+     * @return <code>false</code> if the server doesn't support connection
+     *         resets, i.e. for Sybase and TDS versions before 7.1, in which
+     *         case the connection is left unchanged
+     * @throws SQLException if the connection is closed, a previous reset
+     *         failed or the request could not be sent
+     */
+    synchronized public boolean resetConnection() throws SQLException {
+        checkOpen();
+        checkLocal("resetConnection");
+
+        if (serverType == Driver.SYBASE || tdsVersion < Driver.TDS80) {
+            return false;
+        }
+
+        baseTds.setResetConnection();
+        baseTds.sendSQL(SQL_SERVER_INITIAL_SET);
+        baseTds.setCheckResponse();
+
+        // Everything the server discarded has to be discarded here as well
+        autoCommit = loginAutoCommit;
+        currentDatabase = loginDatabase;
+        transactionIsolation = java.sql.Connection.TRANSACTION_READ_COMMITTED;
+        readOnly = false;
+        rowCount = 0;
+        textSize = 0;
+        statementCache = new ProcedureCache(maxStatements);
+        procInTran.clear();
+        clearSavepoints();
+        messages.clearWarnings();
+
+        return true;
+    }
+
    public boolean getAutoCommit()
       throws SQLException
    {
@@ -2858,12 +3270,42 @@ public class JtdsConnection implements java.sql.Connection {
         throw new AbstractMethodError();
     }
 
-    /* (non-Javadoc)
+    /**
+     * Checks whether the connection is still usable by sending an empty
+     * language batch, which the server answers with a single DONE token. This
+     * is cheaper than executing a query, since there is nothing to parse or
+     * plan and no result set to read.
+     *
+     * @param timeout the number of seconds to wait for the reply or 0 to wait
+     *        indefinitely
+     * @return <code>true</code> if the server replied in time
+     * @throws SQLException if <code>timeout</code> is negative
      * @see java.sql.Connection#isValid(int)
      */
-    public boolean isValid(int timeout) throws SQLException {
-	    // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+    synchronized public boolean isValid(int timeout) throws SQLException {
+        if (timeout < 0) {
+            throw new SQLException(
+                    Messages.get("error.generic.badparam",
+                            Integer.toString(timeout), "timeout"), "HY092");
+        }
+
+        if (closed) {
+            return false;
+        }
+
+        // Don't let the ping discard the warnings the application may still read
+        SQLWarning warn = messages.warnings;
+
+        try {
+            baseTds.executeSQL(" ", null, null, true, timeout, -1, -1, true);
+            baseTds.clearResponseQueue();
+            messages.checkErrors();
+            return !closed;
+        } catch (SQLException e) {
+            return false;
+        } finally {
+            messages.warnings = warn;
+        }
     }
 
     /* (non-Javadoc)
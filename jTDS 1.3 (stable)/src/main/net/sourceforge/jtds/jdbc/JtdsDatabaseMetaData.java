@@ -19,6 +19,7 @@ package net.sourceforge.jtds.jdbc;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -52,6 +53,8 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
     private final int tdsVersion;
     private final int serverType;
     private final JtdsConnection connection;
+    /** Cache for catalog results or <code>null</code> if disabled. */
+    private final MetaDataCache cache;
 
     /**
      * Length of a sysname object (table name, catalog name etc.) -- 128 for
@@ -73,6 +76,22 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         if (tdsVersion >= Driver.TDS70) {
             sysnameLength = 128;
         }
+        cache = connection.getMetaDataCacheTtl() > 0
+                ? MetaDataCache.getInstance(connection) : null;
+    }
+
+    /**
+     * Discards the cached results of <code>getColumns</code>,
+     * <code>getPrimaryKeys</code>, <code>getIndexInfo</code>, the foreign key
+     * methods and <code>getProcedureColumns</code> for all connections to the
+     * server using the same login, e.g. after the schema has been changed.
+     * Has no effect unless the <code>metaDataCacheTtl</code> connection
+     * property is set.
+     */
+    public void clearCache() {
+        if (cache != null) {
+            cache.clear();
+        }
     }
 
     //----------------------------------------------------------------------
@@ -409,6 +428,14 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.VARCHAR,         Types.VARCHAR,
                              Types.VARCHAR,         Types.SMALLINT,
                              Types.VARCHAR };
+
+        List<Object> key = cacheKey("getColumns", catalog,
+                new Object[] {schemaPattern, tableNamePattern, columnNamePattern});
+        CachedResultSet cached = getCachedResult(key, colNames, colTypes);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_columns ?, ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -488,7 +515,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cacheResult(key, rsTmp);
     }
 
     /**
@@ -592,6 +619,15 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.SMALLINT, Types.VARCHAR,
                              Types.VARCHAR,  Types.SMALLINT};
 
+        List<Object> key = cacheKey("getCrossReference",
+                primaryCatalog != null ? primaryCatalog : foreignCatalog,
+                new Object[] {primaryCatalog, primarySchema, primaryTable,
+                              foreignCatalog, foreignSchema, foreignTable});
+        CachedResultSet cached = getCachedResult(key, colNames, colTypes);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_fkeys ?, ?, ?, ?, ?, ?";
 
         if (primaryCatalog != null) {
@@ -628,7 +664,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cacheResult(key, rsTmp);
     }
 
     /**
@@ -961,6 +997,14 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.VARCHAR,     Types.VARCHAR,
                              Types.INTEGER,     Types.INTEGER,
                              Types.VARCHAR};
+
+        List<Object> key = cacheKey("getIndexInfo", catalog,
+                new Object[] {schema, table, Boolean.valueOf(unique), Boolean.valueOf(approximate)});
+        CachedResultSet cached = getCachedResult(key, colNames, colTypes);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_statistics ?, ?, ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -986,7 +1030,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cacheResult(key, rsTmp);
     }
 
     //----------------------------------------------------------------------
@@ -1290,6 +1334,13 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         int    colTypes[] = {Types.VARCHAR,  Types.VARCHAR,
                              Types.VARCHAR,  Types.VARCHAR,
                              Types.SMALLINT, Types.VARCHAR};
+
+        List<Object> key = cacheKey("getPrimaryKeys", catalog, new Object[] {schema, table});
+        CachedResultSet cached = getCachedResult(key, colNames, colTypes);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_pkeys ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog, query));
@@ -1312,7 +1363,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
 
-        return rsTmp;
+        return cacheResult(key, rsTmp);
     }
 
     /**
@@ -1395,6 +1446,13 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
                              Types.SMALLINT,    Types.SMALLINT,
                              Types.VARCHAR};
 
+        List<Object> key = cacheKey("getProcedureColumns", catalog,
+                new Object[] {schemaPattern, procedureNamePattern, columnNamePattern});
+        CachedResultSet cached = getCachedResult(key, colNames, colTypes);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "sp_sproc_columns ?, ?, ?, ?, ?";
 
         CallableStatement s = connection.prepareCall(syscall(catalog,query));
@@ -1472,7 +1530,7 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         rs.close();
         rsTmp.moveToCurrentRow();
         rsTmp.setConcurrency(ResultSet.CONCUR_READ_ONLY);
-        return rsTmp;
+        return cacheResult(key, rsTmp);
     }
 
     /**
@@ -3454,6 +3512,72 @@ public class JtdsDatabaseMetaData implements java.sql.DatabaseMetaData {
         return buf.toString();
     }
 
+    /**
+     * Builds the key of a cached catalog result.
+     *
+     * @param method the name of the <code>DatabaseMetaData</code> method
+     * @param catalog the catalog argument, <code>null</code> for the current
+     *        database
+     * @param args the remaining arguments
+     * @return the key or <code>null</code> if the cache is disabled
+     * @throws SQLException if the connection is closed
+     */
+    private List<Object> cacheKey(String method, String catalog, Object[] args)
+            throws SQLException {
+        if (cache == null) {
+            return null;
+        }
+        Object[] key = new Object[args.length + 2];
+        key[0] = method;
+        key[1] = catalog != null ? catalog : connection.getCatalog();
+        System.arraycopy(args, 0, key, 2, args.length);
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Returns a copy of a cached catalog result.
+     *
+     * @param key the key built by {@link #cacheKey}, may be <code>null</code>
+     * @param colNames the column names of the result
+     * @param colTypes the column types of the result
+     * @return the result set or <code>null</code> if nothing is cached
+     * @throws SQLException if an error occurs
+     */
+    private CachedResultSet getCachedResult(List<Object> key,
+                                            String[] colNames,
+                                            int[] colTypes)
+            throws SQLException {
+        Object[][] rows = key == null ? null : cache.get(key);
+        if (rows == null) {
+            return null;
+        }
+        JtdsStatement dummyStmt = (JtdsStatement) connection.createStatement();
+        CachedResultSet rs = new CachedResultSet(dummyStmt, colNames, colTypes);
+        for (int i = 0; i < rows.length; i++) {
+            rs.addRow(rows[i]);
+        }
+        rs.setConcurrency(ResultSet.CONCUR_READ_ONLY);
+        return rs;
+    }
+
+    /**
+     * Adds the rows of a catalog result to the cache.
+     *
+     * @param key the key built by {@link #cacheKey}, may be <code>null</code>
+     * @param rs the result set, positioned before the first row
+     * @return <code>rs</code>
+     */
+    private CachedResultSet cacheResult(List<Object> key, CachedResultSet rs) {
+        if (key != null) {
+            Object[][] rows = new Object[rs.rowData.size()][];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = ((Object[]) rs.rowData.get(i)).clone();
+            }
+            cache.put(key, rows, connection.getMetaDataCacheTtl());
+        }
+        return rs;
+    }
+
     /**
      * Format the supplied procedure call as a valid JDBC call escape.
      *
@@ -41,8 +41,12 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * jTDS implementation of the java.sql.PreparedStatement interface.
@@ -80,6 +84,14 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
     private final static NumberFormat f = NumberFormat.getInstance();
     /** Collection of handles used by this statement */
     Collection handles;
+    /** Source of the numbers used to name the temporary tables of table values. */
+    private static final AtomicInteger tableCounter = new AtomicInteger();
+    /** The number used to name the temporary tables of this statement, 0 if not assigned yet. */
+    private int tableId;
+    /** The temporary tables created for table values, dropped on close. */
+    private ArrayList tableNames;
+    /** Whether the columns of a bulk insert can be bulk loaded, <code>null</code> if not checked yet. */
+    private Boolean bulkLoadable;
 
     /**
      * Construct a new preparedStatement object.
@@ -453,6 +465,18 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
          // simple batch
          return super.executeMSBatch( size, executeSize, counts );
       }
+
+      if( connection.getUseBulkInsert() && ! returnKeys && "insert".equals( sqlWord ) && connection.getTdsVersion() >= Driver.TDS80 )
+      {
+         String[] target = SQLParser.parseBulkInsert( sql );
+         ParamInfo[] columns = target == null || ! isBulkLoadable( target ) ? null : TdsData.getBulkColumns( connection, Arrays.copyOfRange( target, 1, target.length ), batchValues );
+
+         if( columns != null )
+         {
+            return executeBulkInsert( target[0], columns, size, executeSize, counts );
+         }
+      }
+
       SQLException sqlEx = null;
       String procHandle[] = null;
 
@@ -496,6 +520,139 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
       return sqlEx;
    }
 
+   /**
+    * <p> Checks whether the target columns of a single row insert can be bulk
+    * loaded, i.e. the table exists and none of the columns is an identity
+    * column. <code>INSERT BULK</code> would replace the explicit values of an
+    * identity column by generated ones, while a plain insert fails unless
+    * <code>IDENTITY_INSERT</code> is on for the table. </p>
+    *
+    * <p> The columns are checked once per statement, by selecting them from
+    * the table without returning rows. </p>
+    *
+    * @param target
+    *    the table name followed by the column names, see {@link
+    *    SQLParser#parseBulkInsert}
+    *
+    * @return
+    *    whether the insert can be executed as a bulk load
+    */
+   private boolean isBulkLoadable( String[] target )
+   {
+      if( bulkLoadable == null )
+      {
+         StringBuilder query = new StringBuilder( "SELECT TOP 0 " );
+
+         for( int i = 1; i < target.length; i ++ )
+         {
+            if( i > 1 )
+            {
+               query.append( ", " );
+            }
+
+            query.append( target[i] );
+         }
+
+         query.append( " FROM " ).append( target[0] );
+
+         boolean loadable = false;
+
+         try
+         {
+            tds.submitSQL( query.toString() );
+            ColInfo[] columns = tds.getColumns();
+            loadable = columns != null && columns.length == target.length - 1;
+
+            for( int i = 0; loadable && i < columns.length; i ++ )
+            {
+               loadable = ! columns[i].isIdentity;
+            }
+         }
+         catch( SQLException e )
+         {
+            // the plain insert reports the error, if any
+         }
+
+         bulkLoadable = Boolean.valueOf( loadable );
+      }
+
+      return bulkLoadable.booleanValue();
+   }
+
+   /**
+    * <p> Execute a batch of single row inserts as bulk loads, each loading up
+    * to <code>executeSize</code> rows in one request. </p>
+    *
+    * <p> Each bulk load inserts all of its rows or none, so on success an
+    * update count of 1 is returned for each row (or
+    * <code>SUCCESS_NO_INFO</code> if the server reports a different number of
+    * inserted rows) and on failure the execution stops without update counts
+    * for the rows of the failed bulk load. </p>
+    *
+    * @param table
+    *    the target table
+    *
+    * @param columns
+    *    the column descriptors, see {@link TdsData#getBulkColumns}
+    *
+    * @param size
+    *    total size of the batch
+    *
+    * @param executeSize
+    *    maximum number of rows to send in one request
+    *
+    * @param counts
+    *    the returned update counts
+    *
+    * @return
+    *    chained exceptions linked to a <code>SQLException</code>
+    *
+    * @throws SQLException
+    *    if a serious error occurs during execution
+    */
+   private SQLException executeBulkInsert( String table, ParamInfo[] columns, int size, int executeSize, ArrayList counts )
+      throws SQLException
+   {
+      SQLException sqlEx = null;
+
+      for( int i = 0; i < size; i += executeSize )
+      {
+         List rows = batchValues.subList( i, Math.min( i + executeSize, size ) );
+         ArrayList loaded = new ArrayList( 1 );
+
+         try
+         {
+            tds.bulkInsert( table, columns, rows, queryTimeout );
+         }
+         catch( SQLException e )
+         {
+            if( "08S01".equals( e.getSQLState() ) )
+            {
+               throw e;
+            }
+
+            // INSERT BULK rejected, e.g. because of a mismatching column type
+            return e;
+         }
+
+         sqlEx = tds.getBatchCounts( loaded, sqlEx );
+
+         if( sqlEx != null )
+         {
+            break;
+         }
+
+         Integer count = loaded.size() == 1 && ( (Integer) loaded.get( 0 ) ).intValue() == rows.size() ? Integer.valueOf( 1 ) : JtdsStatement.SUCCESS_NO_INFO;
+
+         for( int r = 0; r < rows.size(); r ++ )
+         {
+            counts.add( count );
+         }
+      }
+
+      return sqlEx;
+   }
+
    /**
     * <p> Execute the SQL batch on a Sybase server. </p>
     *
@@ -618,6 +775,12 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
             throws SQLException {
         checkOpen();
 
+        if (x instanceof TableValue) {
+            // loaded into a temporary table on execution
+            setParameter(parameterIndex, x, java.sql.Types.OTHER, 0, 0);
+            return;
+        }
+
         int length = 0;
 
         if (targetSqlType == java.sql.Types.CLOB) {
@@ -667,8 +830,20 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
      */
     protected void setParameter(int parameterIndex, Object x, int targetSqlType, int scale, int length)
         throws SQLException {
-        ParamInfo pi = getParameter(parameterIndex);
+        setParameter(getParameter(parameterIndex), x, targetSqlType, scale, length);
+    }
 
+    /**
+     * Update a ParamInfo object.
+     *
+     * @param pi The parameter descriptor.
+     * @param x The value to set.
+     * @param targetSqlType The java.sql.Types constant describing the data.
+     * @param scale The decimal scale -1 if not set.
+     * @param length The length of the data item.
+     */
+    private void setParameter(ParamInfo pi, Object x, int targetSqlType, int scale, int length)
+        throws SQLException {
         if ("ERROR".equals(Support.getJdbcTypeName(targetSqlType))) {
             throw new SQLException(Messages.get("error.generic.badtype",
                                 Integer.toString(targetSqlType)), "HY092");
@@ -711,6 +886,188 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         pi.isUnicode = connection.getUseUnicode();
     }
 
+    /**
+     * Checks whether any parameter is set to a {@link TableValue}.
+     *
+     * @return <code>true</code> if the statement has table values
+     */
+    private boolean hasTableValues() {
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i].value instanceof TableValue) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Loads the parameters set to a {@link TableValue} into temporary tables.
+     * <p/>
+     * Each table is created (or recreated) with the column types determined
+     * by {@link TdsData#getBulkColumns} and its rows are sent in a single bulk
+     * load request. The parameter markers of the table values are replaced by
+     * the table names, which only depend on the statement and the parameter
+     * index, so the substituted statement can still be prepared once.
+     *
+     * @param sqlBuf receives the SQL statement with the table names substituted
+     * @return the remaining parameters, with their marker positions adjusted
+     * @throws SQLException if the rows can't be bulk loaded or loading fails
+     */
+    private ParamInfo[] loadTableValues(StringBuilder sqlBuf) throws SQLException {
+        if (procName != null || this instanceof JtdsCallableStatement
+                || connection.getServerType() != Driver.SQLSERVER
+                || connection.getTdsVersion() < Driver.TDS80) {
+            throw new SQLException(Messages.get("error.tablevalue.notsup"), "HYC00");
+        }
+
+        if (tableId == 0) {
+            tableId = tableCounter.incrementAndGet();
+        }
+
+        ArrayList params = new ArrayList(parameters.length);
+        int start = 0;
+
+        for (int i = 0; i < parameters.length; i++) {
+            ParamInfo pi = parameters[i];
+            sqlBuf.append(sql, start, pi.markerPos);
+            start = pi.markerPos + 1;
+
+            if (!(pi.value instanceof TableValue)) {
+                pi = (ParamInfo) pi.clone();
+                pi.markerPos = sqlBuf.length();
+                sqlBuf.append('?');
+                params.add(pi);
+                continue;
+            }
+
+            TableValue table = (TableValue) pi.value;
+            String name = "#jtds_tvp" + tableId + '_' + (i + 1);
+            String[] names = new String[table.getColumnCount()];
+
+            for (int c = 0; c < names.length; c++) {
+                names[c] = table.getQuotedName(c);
+            }
+
+            List rows = getTableRows(table);
+            ParamInfo[] columns = TdsData.getBulkColumns(connection, names, rows);
+
+            if (columns == null) {
+                throw new SQLException(Messages.get("error.tablevalue.badtype"), "HY004");
+            }
+
+            StringBuilder create = new StringBuilder(64 + names.length * 32);
+            create.append("IF OBJECT_ID('tempdb..").append(name).append("') IS NOT NULL DROP TABLE ").append(name);
+            create.append(" CREATE TABLE ").append(name).append(" (");
+
+            for (int c = 0; c < columns.length; c++) {
+                if (c > 0) {
+                    create.append(", ");
+                }
+                create.append(columns[c].name).append(' ').append(columns[c].sqlType);
+                if (columns[c].sqlType.indexOf("char") >= 0) {
+                    // compare like the columns of the current database
+                    create.append(" COLLATE DATABASE_DEFAULT");
+                }
+                create.append(" NULL");
+            }
+
+            create.append(')');
+
+            // not sent as a parameterized statement, the table would only
+            // exist in the scope of sp_executesql
+            tds.executeSQL(create.toString(), null, null, true, queryTimeout, -1, -1, true);
+            tds.clearResponseQueue();
+            tds.getMessages().checkErrors();
+
+            if (tableNames == null) {
+                tableNames = new ArrayList();
+            }
+            if (!tableNames.contains(name)) {
+                tableNames.add(name);
+            }
+
+            // the last row only determines the types of empty tables
+            if (rows.size() > 1) {
+                tds.bulkInsert(name, columns, rows.subList(0, rows.size() - 1), queryTimeout);
+                tds.clearResponseQueue();
+                tds.getMessages().checkErrors();
+            }
+
+            sqlBuf.append(name);
+        }
+
+        sqlBuf.append(sql, start, sql.length());
+
+        return (ParamInfo[]) params.toArray(new ParamInfo[params.size()]);
+    }
+
+    /**
+     * Converts the rows of a {@link TableValue} into parameter descriptors,
+     * the same way <code>setObject()</code> would. Columns without a
+     * declared type get the type of their first non-null value, or
+     * <code>VARCHAR</code> if there is none.
+     *
+     * @param table the table value
+     * @return the rows, followed by a row of <code>null</code> values
+     * @throws SQLException if a row has the wrong number of values or a
+     *                      value can't be converted
+     */
+    private List getTableRows(TableValue table) throws SQLException {
+        int[] types = new int[table.getColumnCount()];
+        ArrayList rows = new ArrayList();
+
+        for (int c = 0; c < types.length; c++) {
+            types[c] = table.getType(c);
+        }
+
+        for (Iterator it = table.rows(); it.hasNext();) {
+            Object[] row = (Object[]) it.next();
+
+            if (row == null || row.length != types.length) {
+                throw new SQLException(Messages.get("error.tablevalue.badrow",
+                        Integer.toString(rows.size() + 1),
+                        Integer.toString(types.length)), "07009");
+            }
+
+            for (int c = 0; c < types.length; c++) {
+                if (types[c] == java.sql.Types.NULL && row[c] != null) {
+                    types[c] = Support.getJdbcType(row[c]);
+                }
+            }
+
+            rows.add(row);
+        }
+
+        rows.add(new Object[types.length]);
+
+        for (int c = 0; c < types.length; c++) {
+            if (types[c] == java.sql.Types.NULL) {
+                types[c] = java.sql.Types.VARCHAR;
+            }
+        }
+
+        for (int r = 0; r < rows.size(); r++) {
+            Object[] row = (Object[]) rows.get(r);
+            ParamInfo[] params = new ParamInfo[types.length];
+
+            for (int c = 0; c < types.length; c++) {
+                Object x = row[c];
+
+                if (x != null) {
+                    x = Support.convert(this, x, types[c], connection.getCharset());
+                }
+
+                params[c] = new ParamInfo(-1, connection.getUseUnicode());
+                setParameter(params[c], x, types[c], -1, 0);
+            }
+
+            rows.set(r, params);
+        }
+
+        return rows;
+    }
+
     /**
      * Update the cached column meta data information.
      *
@@ -743,6 +1100,25 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
 
     @Override
     public void close() throws SQLException {
+        if (tableNames != null && !isClosed() && !connection.isClosed()) {
+            StringBuilder drop = new StringBuilder(tableNames.size() * 80);
+
+            for (int i = 0; i < tableNames.size(); i++) {
+                String name = (String) tableNames.get(i);
+                drop.append("IF OBJECT_ID('tempdb..").append(name).append("') IS NOT NULL DROP TABLE ").append(name).append(' ');
+            }
+
+            try {
+                reset();
+                tds.executeSQL(drop.toString(), null, null, true, 0, -1, -1, true);
+                tds.clearResponseQueue();
+            } catch (SQLException e) {
+                // ignore, the tables are dropped with the session anyway
+            }
+
+            tableNames = null;
+        }
+
         try {
             super.close();
         } finally {
@@ -758,7 +1134,16 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         checkOpen();
         reset();
 
-        if (procName == null && !(this instanceof JtdsCallableStatement)) {
+        if (hasTableValues()) {
+            StringBuilder sqlBuf = new StringBuilder(sql.length() + 32);
+
+            // as below, also keeps rollback() from dropping the tables
+            synchronized (connection) {
+                ParamInfo[] params = loadTableValues(sqlBuf);
+                String spName = connection.prepareSQL(this, sqlBuf.toString(), params, returnKeys, false);
+                executeSQL(sqlBuf.toString(), spName, params, true, false);
+            }
+        } else if (procName == null && !(this instanceof JtdsCallableStatement)) {
             // Sync on the connection to make sure rollback() isn't called
             // between the moment when the statement is prepared and the moment
             // when it's executed.
@@ -778,6 +1163,10 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
     public void addBatch() throws SQLException {
         checkOpen();
 
+        if (hasTableValues()) {
+            throw new SQLException(Messages.get("error.tablevalue.notsup"), "HYC00");
+        }
+
         if (batchValues == null) {
             batchValues = new ArrayList();
         }
@@ -815,7 +1204,16 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         reset();
         boolean useCursor = useCursor(returnKeys, sqlWord);
 
-        if (procName == null && !(this instanceof JtdsCallableStatement)) {
+        if (hasTableValues()) {
+            StringBuilder sqlBuf = new StringBuilder(sql.length() + 32);
+
+            // as below, also keeps rollback() from dropping the tables
+            synchronized (connection) {
+                ParamInfo[] params = loadTableValues(sqlBuf);
+                String spName = connection.prepareSQL(this, sqlBuf.toString(), params, returnKeys, useCursor);
+                return executeSQL(sqlBuf.toString(), spName, params, false, useCursor);
+            }
+        } else if (procName == null && !(this instanceof JtdsCallableStatement)) {
             // Sync on the connection to make sure rollback() isn't called
             // between the moment when the statement is prepared and the moment
             // when it's executed.
@@ -1060,7 +1458,16 @@ public class JtdsPreparedStatement extends JtdsStatement implements PreparedStat
         reset();
         boolean useCursor = useCursor(false, null);
 
-        if (procName == null && !(this instanceof JtdsCallableStatement)) {
+        if (hasTableValues()) {
+            StringBuilder sqlBuf = new StringBuilder(sql.length() + 32);
+
+            // as below, also keeps rollback() from dropping the tables
+            synchronized (connection) {
+                ParamInfo[] params = loadTableValues(sqlBuf);
+                String spName = connection.prepareSQL(this, sqlBuf.toString(), params, false, useCursor);
+                return executeSQLQuery(sqlBuf.toString(), spName, params, useCursor);
+            }
+        } else if (procName == null && !(this instanceof JtdsCallableStatement)) {
             // Sync on the connection to make sure rollback() isn't called
             // between the moment when the statement is prepared and the moment
             // when it's executed.
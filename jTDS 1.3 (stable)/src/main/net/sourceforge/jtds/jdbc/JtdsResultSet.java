@@ -17,6 +17,7 @@
 
 package net.sourceforge.jtds.jdbc;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -112,6 +113,10 @@ public class JtdsResultSet implements ResultSet {
     protected String cursorName;
     /** Cache to optimize findColumn(String) lookups */
     private HashMap columnMap;
+    /** Buffer holding the primitive values of the current row, if lazily decoded. */
+    private RowBuffer lazyRow;
+    /** True if a LOB value in the last column may still be in the response. */
+    private boolean streamLobs;
 
     /*
      * Private instance variables.
@@ -147,6 +152,20 @@ public class JtdsResultSet implements ResultSet {
         if (columns != null) {
             columnCount  = getColumnCount(columns);
             rowsInResult = (statement.getTds().isDataInResultSet()) ? 1 : 0;
+
+            // subclasses don't read their rows directly from the TdsCore
+            if (getClass() == JtdsResultSet.class
+                    && resultSetType == ResultSet.TYPE_FORWARD_ONLY
+                    && concurrency == ResultSet.CONCUR_READ_ONLY
+                    && columns == statement.getTds().getColumns()) {
+                if (getConnection().getUseLazyRows()) {
+                    lazyRow = statement.getTds().getRowBuffer();
+                }
+                if (getConnection().getStreamLobs()) {
+                    statement.getTds().streamLobs();
+                    streamLobs = true;
+                }
+            }
         }
     }
 
@@ -287,11 +306,99 @@ public class JtdsResultSet implements ResultSet {
 
         Object data = currentRow[index - 1];
 
+        if (data == null && lazyRow != null) {
+            data = lazyRow.materialize(index - 1, currentRow);
+        } else if (data instanceof StreamedLob) {
+            StreamedLob lob = (StreamedLob) data;
+
+            if (lob.isStreamed()) {
+                throw new SQLException(Messages.get("error.resultset.streamed",
+                                                    Integer.toString(index)),
+                                       "HY010");
+            }
+
+            try {
+                data = lob.materialize();
+            } catch (IOException e) {
+                throw Support.linkException(
+                        new SQLException(Messages.get("error.generic.ioerror",
+                                                      e.getMessage()),
+                                         "08S01"), e);
+            }
+
+            currentRow[index - 1] = data;
+        }
+
         wasNull = data == null;
 
         return data;
     }
 
+    /**
+     * Retrieves the value of the specified column if it's a TEXT, NTEXT or
+     * IMAGE value that is still in the server response and can be streamed.
+     *
+     * @param index         the column index in the row
+     * @param characterData <code>true</code> if the value has to be a TEXT or
+     *                      NTEXT value, <code>false</code> for an IMAGE value
+     * @return the value or <code>null</code> if not streamable
+     */
+    private StreamedLob getPendingLob(int index, boolean characterData)
+            throws SQLException {
+        checkOpen();
+
+        if (currentRow == null || index < 1 || index > columnCount
+                || !(currentRow[index - 1] instanceof StreamedLob)) {
+            return null;
+        }
+
+        StreamedLob lob = (StreamedLob) currentRow[index - 1];
+
+        if (!lob.isPending() || lob.isCharacterData() != characterData) {
+            return null;
+        }
+
+        wasNull = false;
+
+        return lob;
+    }
+
+    /**
+     * Check whether the specified column's value is held in the row buffer and
+     * can be retrieved as a primitive value without creating a wrapper object.
+     *
+     * @param index the column index in the row
+     * @return <code>true</code> if the value is available from {@link #lazyRow}
+     * @throws SQLException if the connection is closed;
+     *         if <code>index</code> is less than <code>1</code>;
+     *         if <code>index</code> is greater that the number of columns;
+     *         if there is no current row
+     */
+    private boolean isLazyColumn(int index) throws SQLException {
+        if (lazyRow == null) {
+            return false;
+        }
+
+        checkOpen();
+
+        if (index < 1 || index > columnCount) {
+            throw new SQLException(Messages.get("error.resultset.colindex",
+                                                      Integer.toString(index)),
+                                                       "07009");
+        }
+
+        if (currentRow == null) {
+            throw new SQLException(Messages.get("error.resultset.norow"), "24000");
+        }
+
+        if (lazyRow.isPending(index - 1)) {
+            wasNull = false;
+            return true;
+        }
+
+        return false;
+    }
+
     /**
      * Check that this connection is still open.
      *
@@ -398,11 +505,17 @@ public class JtdsResultSet implements ResultSet {
             rowData = new ArrayList(INITIAL_ROW_COUNT);
         }
         if (currentRow != null) {
+            if (lazyRow != null) {
+                lazyRow.materialize(currentRow);
+            }
             // Need to create local copy of currentRow
             // as this is currently a reference to the
             // row defined in TdsCore
             currentRow = copyRow(currentRow);
         }
+        // Remaining rows are materialized by TdsCore.getRowData()
+        lazyRow = null;
+        streamLobs = false;
         //
         // Now load the remaining result set rows into memory
         //
@@ -505,6 +618,7 @@ public class JtdsResultSet implements ResultSet {
             } finally {
                 closed = true;
                 statement = null;
+                lazyRow = null;
             }
         }
     }
@@ -608,12 +722,18 @@ public class JtdsResultSet implements ResultSet {
                 }
             } else {
                 // Need to read from server response
+                if (streamLobs) {
+                    // The current row is not accessed anymore
+                    statement.getTds().discardLob();
+                }
                 if (!statement.getTds().getNextRow()) {
                     statement.cacheResults();
                     pos = POS_AFTER_LAST;
                     currentRow = null;
                 } else {
-                    currentRow = statement.getTds().getRowData();
+                    currentRow = (lazyRow != null)
+                            ? statement.getTds().getBufferedRowData()
+                            : statement.getTds().getRowData();
                     pos++;
                     rowsInResult = pos;
                 }
@@ -664,27 +784,108 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public byte getByte(int columnIndex) throws SQLException {
-        return ((Integer) Support.convert(this, getColumn(columnIndex), java.sql.Types.TINYINT, null)).byteValue();
+        if (isLazyColumn(columnIndex)) {
+            return lazyRow.getByte(columnIndex - 1);
+        }
+
+        Object value = getColumn(columnIndex);
+
+        if (value instanceof Integer) {
+            int i = ((Integer) value).intValue();
+
+            if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+                return (byte) i;
+            }
+        } else if (value == null) {
+            return 0;
+        }
+
+        return ((Integer) Support.convert(this, value, java.sql.Types.TINYINT, null)).byteValue();
     }
 
     public short getShort(int columnIndex) throws SQLException {
-        return ((Integer) Support.convert(this, getColumn(columnIndex), java.sql.Types.SMALLINT, null)).shortValue();
+        if (isLazyColumn(columnIndex)) {
+            return lazyRow.getShort(columnIndex - 1);
+        }
+
+        Object value = getColumn(columnIndex);
+
+        if (value instanceof Integer) {
+            int i = ((Integer) value).intValue();
+
+            if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+                return (short) i;
+            }
+        } else if (value == null) {
+            return 0;
+        }
+
+        return ((Integer) Support.convert(this, value, java.sql.Types.SMALLINT, null)).shortValue();
     }
 
     public int getInt(int columnIndex) throws SQLException {
-        return ((Integer) Support.convert(this, getColumn(columnIndex), java.sql.Types.INTEGER, null)).intValue();
+        if (isLazyColumn(columnIndex)) {
+            return lazyRow.getInt(columnIndex - 1);
+        }
+
+        Object value = getColumn(columnIndex);
+
+        if (value instanceof Integer) {
+            return ((Integer) value).intValue();
+        } else if (value == null) {
+            return 0;
+        }
+
+        return ((Integer) Support.convert(this, value, java.sql.Types.INTEGER, null)).intValue();
     }
 
     public long getLong(int columnIndex) throws SQLException {
-        return ((Long) Support.convert(this, getColumn(columnIndex), java.sql.Types.BIGINT, null)).longValue();
+        if (isLazyColumn(columnIndex)) {
+            return lazyRow.getLong(columnIndex - 1);
+        }
+
+        Object value = getColumn(columnIndex);
+
+        if (value instanceof Long || value instanceof Integer) {
+            return ((Number) value).longValue();
+        } else if (value == null) {
+            return 0;
+        }
+
+        return ((Long) Support.convert(this, value, java.sql.Types.BIGINT, null)).longValue();
     }
 
     public float getFloat(int columnIndex) throws SQLException {
-        return ((Float) Support.convert(this, getColumn(columnIndex), java.sql.Types.REAL, null)).floatValue();
+        if (isLazyColumn(columnIndex)) {
+            return lazyRow.getFloat(columnIndex - 1);
+        }
+
+        Object value = getColumn(columnIndex);
+
+        if (value instanceof Float || value instanceof Integer || value instanceof Long) {
+            return ((Number) value).floatValue();
+        } else if (value == null) {
+            return 0;
+        }
+
+        return ((Float) Support.convert(this, value, java.sql.Types.REAL, null)).floatValue();
     }
 
     public double getDouble(int columnIndex) throws SQLException {
-        return ((Double) Support.convert(this, getColumn(columnIndex), java.sql.Types.DOUBLE, null)).doubleValue();
+        if (isLazyColumn(columnIndex)) {
+            return lazyRow.getDouble(columnIndex - 1);
+        }
+
+        Object value = getColumn(columnIndex);
+
+        if (value instanceof Double || value instanceof Float || value instanceof Integer
+                || value instanceof Long || value instanceof BigDecimal) {
+            return ((Number) value).doubleValue();
+        } else if (value == null) {
+            return 0;
+        }
+
+        return ((Double) Support.convert(this, value, java.sql.Types.DOUBLE, null)).doubleValue();
     }
 
     public void setFetchDirection(int direction) throws SQLException {
@@ -737,7 +938,19 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public boolean getBoolean(int columnIndex) throws SQLException {
-        return ((Boolean) Support.convert(this, getColumn(columnIndex), JtdsStatement.BOOLEAN, null)).booleanValue();
+        if (isLazyColumn(columnIndex)) {
+            return lazyRow.getBoolean(columnIndex - 1);
+        }
+
+        Object value = getColumn(columnIndex);
+
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue();
+        } else if (value == null) {
+            return false;
+        }
+
+        return ((Boolean) Support.convert(this, value, JtdsStatement.BOOLEAN, null)).booleanValue();
     }
 
     public boolean relative(int row) throws SQLException {
@@ -794,6 +1007,12 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        StreamedLob lob = getPendingLob(columnIndex, false);
+
+        if (lob != null) {
+            return lob.getBinaryStream();
+        }
+
         Blob blob = getBlob(columnIndex);
 
         if (blob == null) {
@@ -838,6 +1057,18 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public Reader getCharacterStream(int columnIndex) throws SQLException {
+        StreamedLob lob = getPendingLob(columnIndex, true);
+
+        if (lob != null) {
+            try {
+                return lob.getCharacterStream();
+            } catch (UnsupportedEncodingException e) {
+                throw new SQLException(Messages.get("error.generic.ioerror",
+                                                    e.getMessage()),
+                                       "HY000");
+            }
+        }
+
         Clob clob = getClob(columnIndex);
 
         if (clob == null) {
@@ -1055,7 +1286,13 @@ public class JtdsResultSet implements ResultSet {
     }
 
     public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
-        return (BigDecimal) Support.convert(this, getColumn(columnIndex), java.sql.Types.DECIMAL, null);
+        Object value = getColumn(columnIndex);
+
+        if (value instanceof BigDecimal || value == null) {
+            return (BigDecimal) value;
+        }
+
+        return (BigDecimal) Support.convert(this, value, java.sql.Types.DECIMAL, null);
     }
 
     public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
@@ -25,6 +25,8 @@ import java.sql.SQLWarning;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -1460,6 +1462,117 @@ public class JtdsStatement implements java.sql.Statement
         return executeSQLQuery(sql, null, null, useCursor(false, null));
     }
 
+   /**
+    * <p> Executes the given SQL statement asynchronously, see
+    * {@link #execute(String)}. This is a jTDS specific extension. </p>
+    *
+    * <p> The statement is queued and executed by a single thread per
+    * connection, in the order statements have been submitted, so the calling
+    * thread is not blocked while waiting for the server's response. The
+    * statement must not be used for anything else until the returned future
+    * is done, and executing a statement again closes its current result set
+    * as usual, so use a separate statement for every pending query. </p>
+    *
+    * <p> The query timeout applies as for synchronous execution, canceling
+    * the future with <code>mayInterruptIfRunning</code> set cancels the
+    * request on the server using {@link #cancel()}. If execution fails,
+    * {@link Future#get()} throws an <code>ExecutionException</code> caused by
+    * the <code>SQLException</code>. </p>
+    *
+    * @param sql
+    *    the SQL statement to execute
+    *
+    * @return
+    *    a future returning <code>true</code> if the first result is a
+    *    <code>ResultSet</code>, <code>false</code> if it's an update count or
+    *    there are no results
+    *
+    * @throws SQLException
+    *    if this statement or its connection is closed
+    */
+   public Future<Boolean> executeAsync( final String sql )
+      throws SQLException
+   {
+      return submit( new Callable<Boolean>()
+      {
+         @Override
+         public Boolean call()
+            throws SQLException
+         {
+            return Boolean.valueOf( execute( sql ) );
+         }
+      } );
+   }
+
+   /**
+    * Executes the given SQL query asynchronously, see
+    * {@link #executeQuery(String)} and {@link #executeAsync(String)}. This is
+    * a jTDS specific extension.
+    *
+    * @param sql
+    *    the SQL query to execute
+    *
+    * @return
+    *    a future returning the <code>ResultSet</code> of the query
+    *
+    * @throws SQLException
+    *    if this statement or its connection is closed
+    */
+   public Future<ResultSet> executeQueryAsync( final String sql )
+      throws SQLException
+   {
+      return submit( new Callable<ResultSet>()
+      {
+         @Override
+         public ResultSet call()
+            throws SQLException
+         {
+            return executeQuery( sql );
+         }
+      } );
+   }
+
+   /**
+    * Executes the given SQL update asynchronously, see
+    * {@link #executeUpdate(String)} and {@link #executeAsync(String)}. This is
+    * a jTDS specific extension.
+    *
+    * @param sql
+    *    the SQL statement to execute
+    *
+    * @return
+    *    a future returning the update count
+    *
+    * @throws SQLException
+    *    if this statement or its connection is closed
+    */
+   public Future<Integer> executeUpdateAsync( final String sql )
+      throws SQLException
+   {
+      return submit( new Callable<Integer>()
+      {
+         @Override
+         public Integer call()
+            throws SQLException
+         {
+            return Integer.valueOf( executeUpdate( sql ) );
+         }
+      } );
+   }
+
+   /**
+    * Queues a task for asynchronous execution by the connection.
+    */
+   private <V> Future<V> submit( Callable<V> task )
+      throws SQLException
+   {
+      checkOpen();
+
+      StatementFuture<V> future = new StatementFuture<>( this, task );
+      connection.executeAsync( future );
+      return future;
+   }
+
    /**
     * @return
     *    whether this {@link JtdsStatement} has been closed
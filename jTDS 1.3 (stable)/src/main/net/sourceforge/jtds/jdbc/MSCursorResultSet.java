@@ -100,6 +100,14 @@ public class MSCursorResultSet extends JtdsResultSet {
     private int cursorPos;
     /** The cursor is being built asynchronously. */
     private boolean asyncCursor;
+    /** Maximum number of rows to prefetch at once, 0 if prefetching is disabled. */
+    private int prefetchMax;
+    /** Number of rows to prefetch with the next request, grows up to {@link #prefetchMax}. */
+    private int prefetchSize;
+    /** Number of rows requested by the outstanding prefetch, 0 if none. */
+    private int prefetchRows;
+    /** Time the outstanding prefetch was sent, from <code>System.nanoTime()</code>. */
+    private long prefetchSent;
 
     //
     // Fixed sp_XXX parameters
@@ -156,6 +164,15 @@ public class MSCursorResultSet extends JtdsResultSet {
             // Obtain a provisional row count for the result set
             cursorFetch(FETCH_REPEAT, 0);
         }
+
+        // Only plain forward scrolls can be prefetched; positioned updates
+        // and scrolling refer to the last block fetched by the server
+        if (resultSetType == TYPE_FORWARD_ONLY && concurrency == CONCUR_READ_ONLY
+                && !asyncCursor) {
+            prefetchMax = statement.connection.getCursorPrefetch();
+            prefetchSize = fetchSize;
+            prefetch(statement.getTds());
+        }
     }
 
     /**
@@ -669,10 +686,53 @@ public class MSCursorResultSet extends JtdsResultSet {
 
         statement.clearWarnings();
 
+        if (prefetchRows > 0) {
+            if (fetchType == FETCH_NEXT) {
+                return fetchPrefetched(tds);
+            }
+
+            // The server cursor has already moved past the prefetched block
+            prefetchRows = 0;
+            tds.clearResponseQueue();
+            statement.getMessages().checkErrors();
+        }
+
         if (fetchType != FETCH_ABSOLUTE && fetchType != FETCH_RELATIVE) {
             rowNum = 1;
         }
 
+        if (rowCache.length != fetchSize) {
+            // If the fetch size changed, update the cache size
+            rowCache = new Object[fetchSize][];
+        }
+
+        sendFetch(tds, fetchType, rowNum, fetchSize);
+
+        // Load rows
+        processOutput(tds, false);
+        updatePosition(fetchType);
+
+        if (fetchType == FETCH_NEXT) {
+            prefetch(tds);
+        }
+
+        return getCurrentRow() != null;
+    }
+
+    /**
+     * Sends a <code>sp_cursorfetch</code> request for a block of rows,
+     * followed by a <code>FETCH_INFO</code> request for the new cursor
+     * position. The response has to be processed using {@link
+     * #processOutput} and {@link #updatePosition}.
+     *
+     * @param tds       the <code>TdsCore</code> instance
+     * @param fetchType the type of fetch eg FETCH_ABSOLUTE
+     * @param rowNum    the row number to fetch
+     * @param numRows   the number of rows to fetch
+     * @throws SQLException if an error occurs
+     */
+    private void sendFetch(TdsCore tds, Integer fetchType, int rowNum, int numRows)
+            throws SQLException {
         ParamInfo[] param = new ParamInfo[4];
         // Setup cursor handle param
         param[0] = PARAM_CURSOR_HANDLE;
@@ -685,14 +745,11 @@ public class MSCursorResultSet extends JtdsResultSet {
         PARAM_ROWNUM_IN.value = new Integer(rowNum);
         param[2] = PARAM_ROWNUM_IN;
         // Setup numRows parameter
-        if (((Integer) PARAM_NUMROWS_IN.value).intValue() != fetchSize) {
-            // If the fetch size changed, update the parameter and cache size
-            PARAM_NUMROWS_IN.value = new Integer(fetchSize);
-            rowCache = new Object[fetchSize][];
-        }
+        PARAM_NUMROWS_IN.value = new Integer(numRows);
         param[3] = PARAM_NUMROWS_IN;
 
-        synchronized (tds) {
+        tds.lock();
+        try {
             // No meta data, no timeout (we're not sending it yet), no row
             // limit, don't send yet
             tds.executeSQL(null, "sp_cursorfetch", param, true, 0, 0,
@@ -713,11 +770,18 @@ public class MSCursorResultSet extends JtdsResultSet {
             // (no limit), leave max field size as it is, send now
             tds.executeSQL(null, "sp_cursorfetch", param, true,
                     statement.getQueryTimeout(), -1, -1, true);
+        } finally {
+            tds.unlock();
         }
+    }
 
-        // Load rows
-        processOutput(tds, false);
-
+    /**
+     * Updates the cursor position and row count from the output parameters of
+     * the <code>FETCH_INFO</code> request sent by {@link #sendFetch}.
+     *
+     * @param fetchType the type of the fetch
+     */
+    private void updatePosition(Integer fetchType) throws SQLException {
         cursorPos = ((Integer) PARAM_ROWNUM_OUT.getOutValue()).intValue();
         if (fetchType != FETCH_REPEAT) {
             // Do not change ResultSet position when refreshing
@@ -729,6 +793,60 @@ public class MSCursorResultSet extends JtdsResultSet {
             // -n = Async cursor = rows loaded so far
             rowsInResult = 0 - rowsInResult;
         }
+    }
+
+    /**
+     * Requests the next block of rows while the application is still reading
+     * the current one, if prefetching is enabled and the current block is
+     * full (i.e. there may be more rows). The response is left unread until
+     * the application moves past the current block, see {@link
+     * #fetchPrefetched}.
+     *
+     * @param tds the <code>TdsCore</code> instance
+     * @throws SQLException if an error occurs
+     */
+    private void prefetch(TdsCore tds) throws SQLException {
+        if (prefetchMax <= 0 || rowCache.length == 0
+                || rowCache[rowCache.length - 1] == null) {
+            return;
+        }
+
+        prefetchSize = Math.max(prefetchSize, fetchSize);
+        sendFetch(tds, FETCH_NEXT, 1, prefetchSize);
+        prefetchRows = prefetchSize;
+        prefetchSent = System.nanoTime();
+    }
+
+    /**
+     * Loads the block of rows requested by {@link #prefetch} and requests the
+     * next one. If the application had to wait for a substantial part of the
+     * time since the block was requested, i.e. it reads the rows faster than
+     * they arrive, the block size is doubled, up to the
+     * <code>cursorPrefetch</code> connection property.
+     *
+     * @param tds the <code>TdsCore</code> instance
+     * @return <code>true</code> if a result set row is returned
+     * @throws SQLException if an error occurs
+     */
+    private boolean fetchPrefetched(TdsCore tds) throws SQLException {
+        long requested = System.nanoTime();
+
+        if (rowCache.length != prefetchRows) {
+            rowCache = new Object[prefetchRows][];
+        }
+        prefetchRows = 0;
+
+        // Load rows
+        processOutput(tds, false);
+        updatePosition(FETCH_NEXT);
+
+        long loaded = System.nanoTime();
+
+        if ((loaded - requested) * 4 > loaded - prefetchSent) {
+            prefetchSize = Math.max(fetchSize, Math.min(prefetchSize * 2, prefetchMax));
+        }
+
+        prefetch(tds);
 
         return getCurrentRow() != null;
     }
@@ -830,7 +948,8 @@ public class MSCursorResultSet extends JtdsResultSet {
             }
         }
 
-        synchronized (tds) {
+        tds.lock();
+        try {
             // With meta data (we're not expecting any ResultSets), no timeout
             // (because we're not sending the request yet), don't alter max
             // rows, don't alter max field size, don't send yet
@@ -856,6 +975,8 @@ public class MSCursorResultSet extends JtdsResultSet {
             // don't alter max rows, don't alter max field size, send now
             tds.executeSQL(null, "sp_cursorfetch", param, true,
                     statement.getQueryTimeout(), -1, -1, true);
+        } finally {
+            tds.unlock();
         }
 
         // Consume the sp_cursor response
@@ -0,0 +1,409 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p> Hierarchical memory budget for buffering server responses. </p>
+ *
+ * <p> Memory is accounted at three levels: </p>
+ * <ol>
+ * <li> a global limit shared by all connections (<code>bufferMaxMemory</code>),
+ *      memory is reserved from it lock-free using compare-and-set</li>
+ * <li> a per-connection quota (<code>bufferConnectionMemory</code>), so a single
+ *      connection cannot use up the global limit</li>
+ * <li> a per-statement quota of half the connection quota, so one statement
+ *      cannot push all other statements of its connection to disk; each
+ *      statement may however always buffer <code>bufferMinPackets</code>
+ *      packets in memory</li>
+ * </ol>
+ *
+ * <p> The static methods of this class expose the global usage and a number of
+ * counters that can be used to monitor the driver's spill behavior. The
+ * counters are striped to avoid contention between connections. </p>
+ */
+public final class MemoryBudget
+{
+
+   /**
+    * number of stripes used by the event counters, must be a power of 2
+    */
+   private static final int           STRIPES         = 16;
+
+   /**
+    * global memory limit, only ever raised
+    */
+   private static final AtomicLong    _GlobalLimit    = new AtomicLong( Long.parseLong( DefaultProperties.BUFFER_MAX_MEMORY ) * 1024 );
+
+   /**
+    * global memory usage
+    */
+   private static final AtomicLong    _GlobalUsage    = new AtomicLong();
+
+   /**
+    * peak global memory usage
+    */
+   private static final AtomicLong    _PeakUsage      = new AtomicLong();
+
+   /**
+    * number of memory reservations granted
+    */
+   private static final Counter       _Granted        = new Counter();
+
+   /**
+    * number of memory reservations denied because of the global limit
+    */
+   private static final Counter       _DeniedGlobal   = new Counter();
+
+   /**
+    * number of memory reservations denied because of a connection quota
+    */
+   private static final Counter       _DeniedConn     = new Counter();
+
+   /**
+    * number of memory reservations forced beyond the limits by the minimum
+    * number of in-memory packets per statement
+    */
+   private static final Counter       _Forced         = new Counter();
+
+   /**
+    * number of packets spooled to disk
+    */
+   private static final Counter       _SpilledPackets = new Counter();
+
+   /**
+    * number of bytes spooled to disk
+    */
+   private static final Counter       _SpilledBytes   = new Counter();
+
+   /**
+    * the connection quota in bytes
+    */
+   private final long                 _Quota;
+
+   /**
+    * the statement quota in bytes
+    */
+   private final long                 _StatementQuota;
+
+   /**
+    * minimum number of packets per statement to buffer in memory
+    */
+   private final int                  _MinPackets;
+
+   /**
+    * memory used by the connection
+    */
+   private final AtomicLong           _Usage          = new AtomicLong();
+
+   /**
+    * <p> Creates the budget for a connection. </p>
+    *
+    * @param globalLimit
+    *    the global memory limit in bytes, the global limit is raised to this
+    *    value if currently lower
+    *
+    * @param quota
+    *    the connection quota in bytes
+    *
+    * @param minPackets
+    *    the number of packets each statement may buffer in memory, regardless
+    *    of the limits
+    */
+   MemoryBudget( long globalLimit, long quota, int minPackets )
+   {
+      long current;
+
+      while( ( current = _GlobalLimit.get() ) < globalLimit && ! _GlobalLimit.compareAndSet( current, globalLimit ) );
+
+      _Quota          = quota;
+      _StatementQuota = quota / 2;
+      _MinPackets     = minPackets;
+   }
+
+   /**
+    * @return
+    *    the connection quota in bytes
+    */
+   long getQuota()
+   {
+      return _Quota;
+   }
+
+   /**
+    * @return
+    *    the statement quota in bytes
+    */
+   long getStatementQuota()
+   {
+      return _StatementQuota;
+   }
+
+   /**
+    * @return
+    *    the number of packets each statement may buffer in memory, regardless
+    *    of the limits
+    */
+   int getMinPackets()
+   {
+      return _MinPackets;
+   }
+
+   /**
+    * @return
+    *    the memory currently used by the connection in bytes
+    */
+   long getUsage()
+   {
+      return _Usage.get();
+   }
+
+   /**
+    * <p> Tries to reserve memory within the connection quota and the global
+    * limit. </p>
+    *
+    * @param bytes
+    *    number of bytes to reserve
+    *
+    * @return
+    *    {@code true} if the memory has been reserved
+    */
+   boolean tryReserve( long bytes )
+   {
+      long used;
+
+      do
+      {
+         used = _Usage.get();
+
+         if( used + bytes > _Quota )
+         {
+            _DeniedConn.increment();
+            return false;
+         }
+      }
+      while( ! _Usage.compareAndSet( used, used + bytes ) );
+
+      long global;
+
+      do
+      {
+         global = _GlobalUsage.get();
+
+         if( global + bytes > _GlobalLimit.get() )
+         {
+            _Usage.addAndGet( - bytes );
+            _DeniedGlobal.increment();
+            return false;
+         }
+      }
+      while( ! _GlobalUsage.compareAndSet( global, global + bytes ) );
+
+      _Granted.increment();
+      updatePeak( global + bytes );
+      return true;
+   }
+
+   /**
+    * <p> Reserves memory ignoring the limits. </p>
+    *
+    * @param bytes
+    *    number of bytes to reserve
+    */
+   void reserve( long bytes )
+   {
+      _Usage.addAndGet( bytes );
+      _Forced.increment();
+      updatePeak( _GlobalUsage.addAndGet( bytes ) );
+   }
+
+   /**
+    * <p> Releases memory previously reserved. </p>
+    *
+    * @param bytes
+    *    number of bytes to release
+    */
+   void release( long bytes )
+   {
+      if( bytes > 0 )
+      {
+         _Usage.addAndGet( - bytes );
+         _GlobalUsage.addAndGet( - bytes );
+      }
+   }
+
+   /**
+    * <p> Records a packet that has been spooled to disk. </p>
+    *
+    * @param bytes
+    *    size of the packet
+    */
+   static void spilled( int bytes )
+   {
+      _SpilledPackets.increment();
+      _SpilledBytes.add( bytes );
+   }
+
+   /**
+    * @return
+    *    the global memory limit in bytes
+    */
+   public static long getGlobalLimit()
+   {
+      return _GlobalLimit.get();
+   }
+
+   /**
+    * @return
+    *    the memory currently used by all connections in bytes
+    */
+   public static long getGlobalUsage()
+   {
+      return _GlobalUsage.get();
+   }
+
+   /**
+    * @return
+    *    the peak memory usage of all connections in bytes
+    */
+   public static long getPeakUsage()
+   {
+      return _PeakUsage.get();
+   }
+
+   /**
+    * @return
+    *    the number of memory reservations granted within the limits
+    */
+   public static long getGrantedCount()
+   {
+      return _Granted.sum();
+   }
+
+   /**
+    * @return
+    *    the number of memory reservations denied because of the global limit
+    */
+   public static long getGlobalDeniedCount()
+   {
+      return _DeniedGlobal.sum();
+   }
+
+   /**
+    * @return
+    *    the number of memory reservations denied because of a connection quota
+    */
+   public static long getConnectionDeniedCount()
+   {
+      return _DeniedConn.sum();
+   }
+
+   /**
+    * @return
+    *    the number of memory reservations exceeding the limits to buffer the
+    *    minimum number of packets per statement
+    */
+   public static long getForcedCount()
+   {
+      return _Forced.sum();
+   }
+
+   /**
+    * @return
+    *    the number of packets spooled to disk
+    */
+   public static long getSpilledPackets()
+   {
+      return _SpilledPackets.sum();
+   }
+
+   /**
+    * @return
+    *    the number of bytes spooled to disk
+    */
+   public static long getSpilledBytes()
+   {
+      return _SpilledBytes.sum();
+   }
+
+   /**
+    * @return
+    *    a summary of the global usage and counters, for logging
+    */
+   static String getStatistics()
+   {
+      return "usage=" + getGlobalUsage() / 1024 + "KB, peak=" + getPeakUsage() / 1024 + "KB, limit=" + getGlobalLimit() / 1024
+           + "KB, granted=" + getGrantedCount() + ", denied(global)=" + getGlobalDeniedCount() + ", denied(connection)=" + getConnectionDeniedCount()
+           + ", forced=" + getForcedCount() + ", spilled=" + getSpilledPackets() + " packets/" + getSpilledBytes() / 1024 + "KB";
+   }
+
+   /**
+    * Raises the peak usage if lower than the given value.
+    */
+   private static void updatePeak( long usage )
+   {
+      long peak;
+
+      while( usage > ( peak = _PeakUsage.get() ) && ! _PeakUsage.compareAndSet( peak, usage ) );
+   }
+
+   /**
+    * <p> Event counter striped over a number of cells by thread, so concurrent
+    * updates from different connections rarely hit the same cache line. </p>
+    */
+   private static final class Counter
+   {
+
+      /**
+       * distance between two cells in the array, to keep them in different
+       * cache lines
+       */
+      private static final int     PADDING = 8;
+
+      /**
+       * the cells
+       */
+      private final AtomicLongArray _Cells = new AtomicLongArray( STRIPES * PADDING );
+
+      void increment()
+      {
+         add( 1 );
+      }
+
+      void add( long value )
+      {
+         _Cells.addAndGet( (int) ( Thread.currentThread().getId() & ( STRIPES - 1 ) ) * PADDING, value );
+      }
+
+      long sum()
+      {
+         long sum = 0;
+
+         for( int i = 0; i < STRIPES; i ++ )
+         {
+            sum += _Cells.get( i * PADDING );
+         }
+
+         return sum;
+      }
+
+   }
+
+}
@@ -0,0 +1,154 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sourceforge.jtds.jdbc.cache.ConcurrentLRUCache;
+
+/**
+ * <p> Caches the rows returned by the catalog procedures behind the {@link
+ * JtdsDatabaseMetaData} methods, used if the <code>metaDataCacheTtl</code>
+ * connection property is set. </p>
+ *
+ * <p> There is one cache per server and login, shared by all connections
+ * using them, since catalog procedures only return what the login has been
+ * granted access to. Entries are keyed by the method, the database and the
+ * method arguments, expire after the TTL of the connection that added them
+ * and are evicted least recently used first once the cache holds more than
+ * {@link #CACHE_ROWS} rows. </p>
+ */
+final class MetaDataCache
+{
+
+   /**
+    * maximum total number of rows cached per server and login
+    */
+   static final int                                       CACHE_ROWS = 100000;
+
+   /**
+    * the caches, keyed by server and login
+    */
+   private static final ConcurrentMap<String,MetaDataCache> _Caches   = new ConcurrentHashMap<>();
+
+   private final ConcurrentLRUCache<List<Object>,Entry>      _Entries  = new ConcurrentLRUCache<>( CACHE_ROWS, 4, new ConcurrentLRUCache.Weigher<List<Object>,Entry>()
+   {
+      @Override
+      public int weigh( List<Object> key, Entry value )
+      {
+         return value._Rows.length + 1;
+      }
+   } );
+
+   private MetaDataCache()
+   {
+   }
+
+   /**
+    * Returns the cache shared by all connections to the same server using
+    * the same login.
+    *
+    * @param connection
+    *    the connection
+    */
+   static MetaDataCache getInstance( JtdsConnection connection )
+   {
+      String server = connection.getServerName() + ':' + connection.getPortNumber() + '/' + connection.getInstanceName() + '/' + connection.getDomainName() + '\\' + connection.getUser();
+
+      MetaDataCache cache = _Caches.get( server );
+
+      if( cache == null )
+      {
+         MetaDataCache created = new MetaDataCache();
+         cache = _Caches.putIfAbsent( server, created );
+
+         if( cache == null )
+         {
+            cache = created;
+         }
+      }
+
+      return cache;
+   }
+
+   /**
+    * Returns the cached rows for a key.
+    *
+    * @param key
+    *    method name, database and arguments of the catalog call
+    *
+    * @return
+    *    the rows or <code>null</code> if nothing has been cached for the key
+    *    or the entry has expired
+    */
+   Object[][] get( List<Object> key )
+   {
+      Entry entry = _Entries.get( key );
+      return entry == null || entry._Expires - System.nanoTime() < 0 ? null : entry._Rows;
+   }
+
+   /**
+    * Caches the rows for a key.
+    *
+    * @param key
+    *    method name, database and arguments of the catalog call
+    *
+    * @param rows
+    *    the rows, not modified afterwards
+    *
+    * @param ttl
+    *    the number of seconds the rows may be returned by {@link #get}
+    */
+   void put( List<Object> key, Object[][] rows, int ttl )
+   {
+      _Entries.put( key, new Entry( rows, System.nanoTime() + ttl * 1000000000L ) );
+   }
+
+   /**
+    * Discards all cached rows.
+    */
+   void clear()
+   {
+      _Entries.clear();
+   }
+
+   /**
+    * <p> The cached rows and their expiry time. </p>
+    */
+   private static class Entry
+   {
+
+      final Object[][] _Rows;
+
+      /**
+       * the value of {@link System#nanoTime()} after which the entry is
+       * stale
+       */
+      final long       _Expires;
+
+      Entry( Object[][] rows, long expires )
+      {
+         _Rows    = rows;
+         _Expires = expires;
+      }
+
+   }
+
+}
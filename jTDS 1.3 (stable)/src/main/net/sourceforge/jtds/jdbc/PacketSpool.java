@@ -0,0 +1,789 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * <p> Per-connection store for TDS packets that have been read from the
+ * network on behalf of a {@link SharedSocket.VirtualSocket} other than the one
+ * currently sending a request. </p>
+ *
+ * <p> Packets are stored in fixed size pages, taken from segments that are
+ * either allocated off-heap (direct buffers) or, once the connection's
+ * {@link MemoryBudget} has been exceeded, located in a spool file. A packet occupies a chain
+ * of pages and the packets of each virtual socket are linked to a FIFO queue,
+ * so no per-packet objects are created. Freed pages are reused by subsequent
+ * packets; the spool file is created on first use and kept until the
+ * connection is closed. Memory segments are released to the budget as soon
+ * as the spool is empty; one of them is kept for reuse, but no longer counts
+ * against the budget until it's used again. </p>
+ *
+ * <p> The spool uses its own monitor, which is only held while copying packet
+ * data, so a virtual socket can be closed while another one is blocked reading
+ * from the network. </p>
+ */
+class PacketSpool
+{
+
+   /**
+    * size of a single page
+    */
+   static final int                PAGE_SIZE       = 512;
+
+   /**
+    * number of pages per segment
+    */
+   static final int                SEGMENT_PAGES   = 128;
+
+   /**
+    * size of a single segment, large enough to hold the largest TDS packet
+    */
+   static final int                SEGMENT_SIZE    = PAGE_SIZE * SEGMENT_PAGES;
+
+   /**
+    * end of chain/queue marker
+    */
+   static final int                NONE            = -1;
+
+   /**
+    * length of the TDS packet header
+    */
+   private static final int        HDR_LEN         = 8;
+
+   /**
+    * global flag to indicate that security constraints mean that attempts to
+    * create work files will fail
+    */
+   private static volatile boolean _SecurityViolation;
+
+   /**
+    * the directory to create the spool file in or {@code null} for the
+    * default temporary directory
+    */
+   private final File              _BufferDir;
+
+   /**
+    * the connection's memory budget
+    */
+   private final MemoryBudget      _Budget;
+
+   /**
+    * buffer used to read packet headers
+    */
+   private final byte[]            _Header         = new byte[HDR_LEN];
+
+   /**
+    * memory segments, {@code null} if the segment is either unused or located
+    * in the spool file
+    */
+   private ByteBuffer[]            _Memory         = new ByteBuffer[4];
+
+   /**
+    * position of file segments in the spool file, -1 for unused and memory
+    * segments
+    */
+   private long[]                  _FilePos        = newFilePos( 4 );
+
+   /**
+    * number of segment slots in use
+    */
+   private int                     _Segments;
+
+   /**
+    * a memory segment released by {@link #trim()}, kept to avoid allocating
+    * a new direct buffer for the next packet; not reserved from the budget
+    */
+   private ByteBuffer              _Spare;
+
+   /**
+    * link to the next page of a packet
+    */
+   private int[]                   _Next           = new int[4 * SEGMENT_PAGES];
+
+   /**
+    * link to the next packet in a queue, only valid for the first page of a
+    * packet
+    */
+   private int[]                   _NextPacket     = new int[4 * SEGMENT_PAGES];
+
+   /**
+    * stack of free pages located in memory segments
+    */
+   private int[]                   _FreeMem        = new int[4 * SEGMENT_PAGES];
+
+   /**
+    * number of pages in {@link #_FreeMem}
+    */
+   private int                     _FreeMemCount;
+
+   /**
+    * stack of free pages located in file segments
+    */
+   private int[]                   _FreeFile       = new int[4 * SEGMENT_PAGES];
+
+   /**
+    * number of pages in {@link #_FreeFile}
+    */
+   private int                     _FreeFileCount;
+
+   /**
+    * number of pages currently holding packet data
+    */
+   private int                     _UsedPages;
+
+   /**
+    * pages of the packet currently being released, see {@link #free(int)}
+    */
+   private final int[]             _Scratch        = new int[SEGMENT_PAGES];
+
+   /**
+    * the spool file, {@code null} until needed
+    */
+   private File                    _File;
+
+   /**
+    * I/O channel for {@link #_File}
+    */
+   private FileChannel             _Channel;
+
+   /**
+    * size of the spool file
+    */
+   private long                    _FileLength;
+
+   /**
+    * flag indicating that the spool has been closed
+    */
+   private boolean                 _Closed;
+
+   /**
+    * Creates a new, empty spool. No memory is allocated before the first
+    * packet is stored.
+    *
+    * @param bufferDir
+    *    the directory to create the spool file in or {@code null} for the
+    *    default temporary directory
+    *
+    * @param budget
+    *    the connection's memory budget
+    */
+   PacketSpool( File bufferDir, MemoryBudget budget )
+   {
+      _BufferDir = bufferDir;
+      _Budget    = budget;
+   }
+
+   /**
+    * Appends a packet to the queue of a virtual socket.
+    *
+    * @param vsock
+    *    the virtual socket owning the data
+    *
+    * @param buffer
+    *    buffer containing the packet, including the header; the buffer may be
+    *    reused by the caller after this method returns
+    *
+    * @throws IOException
+    *    if the spool file cannot be written
+    */
+   synchronized void enqueue( SharedSocket.VirtualSocket vsock, byte[] buffer )
+      throws IOException
+   {
+      checkOpen();
+
+      int len   = SharedSocket.getPktLen( buffer );
+      int pages = ( len + PAGE_SIZE - 1 ) / PAGE_SIZE;
+      int mem   = vsock.memPages;
+      int first = allocate( vsock, pages );
+
+      try
+      {
+         transfer( first, buffer, len, true );
+      }
+      catch( IOException ioe )
+      {
+         free( vsock, first );
+         throw ioe;
+      }
+
+      if( vsock.memPages - mem < pages )
+      {
+         MemoryBudget.spilled( len );
+      }
+
+      _NextPacket[first] = NONE;
+
+      if( vsock.lastPacket == NONE )
+      {
+         vsock.firstPacket = first;
+      }
+      else
+      {
+         _NextPacket[vsock.lastPacket] = first;
+      }
+
+      vsock.lastPacket = first;
+      vsock.inputPkts ++;
+   }
+
+   /**
+    * Removes the first packet from the queue of a virtual socket.
+    *
+    * @param vsock
+    *    the virtual socket owning the data
+    *
+    * @param buffer
+    *    buffer to receive the packet, may be {@code null}
+    *
+    * @return
+    *    the given buffer if large enough, a newly allocated buffer otherwise or
+    *    {@code null} if there is no packet queued for the virtual socket
+    *
+    * @throws IOException
+    *    if the spool file cannot be read
+    */
+   synchronized byte[] dequeue( SharedSocket.VirtualSocket vsock, byte[] buffer )
+      throws IOException
+   {
+      checkOpen();
+
+      int first = vsock.firstPacket;
+
+      if( first == NONE )
+      {
+         return null;
+      }
+
+      try
+      {
+         // read the header first to determine the packet length
+         transfer( first, _Header, HDR_LEN, false );
+         int len = SharedSocket.getPktLen( _Header );
+
+         if( buffer == null || buffer.length < len )
+         {
+            buffer = new byte[len];
+         }
+
+         transfer( first, buffer, len, false );
+      }
+      finally
+      {
+         unlink( vsock );
+      }
+
+      return buffer;
+   }
+
+   /**
+    * Removes all packets from the queue of a virtual socket.
+    *
+    * @param vsock
+    *    the virtual socket owning the data
+    */
+   synchronized void discard( SharedSocket.VirtualSocket vsock )
+   {
+      if( _Closed )
+      {
+         // storage is already gone
+         vsock.firstPacket = NONE;
+         vsock.lastPacket  = NONE;
+         vsock.inputPkts   = 0;
+         vsock.memPages    = 0;
+         return;
+      }
+
+      while( vsock.firstPacket != NONE )
+      {
+         unlink( vsock );
+      }
+   }
+
+   /**
+    * Releases all memory and deletes the spool file.
+    */
+   synchronized void close()
+   {
+      if( _Closed )
+      {
+         return;
+      }
+
+      _Closed = true;
+
+      int memory = 0;
+
+      for( int s = 0; s < _Segments; s ++ )
+      {
+         if( _Memory[s] != null )
+         {
+            memory += SEGMENT_SIZE;
+            _Memory[s] = null;
+         }
+      }
+
+      _Budget.release( memory );
+
+      _Spare = null;
+      Arrays.fill( _FilePos, -1 );
+      _Segments      = 0;
+      _FreeMemCount  = 0;
+      _FreeFileCount = 0;
+      _UsedPages     = 0;
+
+      closeFile();
+   }
+
+   /**
+    * Throws an {@link IOException} if the spool has been closed.
+    */
+   private void checkOpen()
+      throws IOException
+   {
+      if( _Closed )
+      {
+         throw new IOException( "Packet spool closed" );
+      }
+   }
+
+   /**
+    * Removes the first packet from a virtual socket's queue and releases its
+    * pages.
+    */
+   private void unlink( SharedSocket.VirtualSocket vsock )
+   {
+      int first = vsock.firstPacket;
+
+      vsock.firstPacket = _NextPacket[first];
+
+      if( vsock.firstPacket == NONE )
+      {
+         vsock.lastPacket = NONE;
+      }
+
+      vsock.inputPkts --;
+      free( vsock, first );
+   }
+
+   /**
+    * Copies packet data between a page chain and a buffer, merging runs of
+    * adjacent pages into a single copy or I/O operation.
+    *
+    * @param page
+    *    the first page of the chain
+    *
+    * @param buffer
+    *    the buffer
+    *
+    * @param len
+    *    number of bytes to copy
+    *
+    * @param write
+    *    {@code true} to copy from the buffer to the pages
+    */
+   private void transfer( int page, byte[] buffer, int len, boolean write )
+      throws IOException
+   {
+      int off = 0;
+
+      while( off < len )
+      {
+         int start = page;
+         int last  = page;
+
+         // extend run while the next page directly follows within the segment
+         while( _Next[last] == last + 1 && ( last + 1 ) % SEGMENT_PAGES != 0 && ( last - start + 1 ) * PAGE_SIZE < len - off )
+         {
+            last ++;
+         }
+
+         int count   = Math.min( ( last - start + 1 ) * PAGE_SIZE, len - off );
+         int segment = start / SEGMENT_PAGES;
+         int pos     = start % SEGMENT_PAGES * PAGE_SIZE;
+
+         ByteBuffer memory = _Memory[segment];
+
+         if( memory != null )
+         {
+            memory.position( pos );
+
+            if( write )
+            {
+               memory.put( buffer, off, count );
+            }
+            else
+            {
+               memory.get( buffer, off, count );
+            }
+         }
+         else
+         {
+            ByteBuffer data = ByteBuffer.wrap( buffer, off, count );
+            long       at   = _FilePos[segment] + pos;
+
+            while( data.hasRemaining() )
+            {
+               int n = write ? _Channel.write( data, at ) : _Channel.read( data, at );
+
+               if( n < 0 )
+               {
+                  throw new EOFException( "Unexpected end of packet spool file" );
+               }
+
+               at += n;
+            }
+         }
+
+         off += count;
+         page = _Next[last];
+      }
+   }
+
+   /**
+    * Allocates a chain of pages.
+    *
+    * @param vsock
+    *    the virtual socket the pages are allocated for
+    *
+    * @param pages
+    *    number of pages required
+    *
+    * @return
+    *    the first page of the chain
+    */
+   private int allocate( SharedSocket.VirtualSocket vsock, int pages )
+      throws IOException
+   {
+      // the minimum number of packets is always buffered in memory
+      boolean forceMemory = vsock.inputPkts < _Budget.getMinPackets();
+
+      int first = NONE;
+      int prev  = NONE;
+
+      try
+      {
+         for( int i = 0; i < pages; i ++ )
+         {
+            int page = take( vsock, forceMemory );
+            _Next[page] = NONE;
+
+            if( prev == NONE )
+            {
+               first = page;
+            }
+            else
+            {
+               _Next[prev] = page;
+            }
+
+            prev = page;
+         }
+      }
+      catch( IOException ioe )
+      {
+         if( first != NONE )
+         {
+            free( vsock, first );
+         }
+
+         throw ioe;
+      }
+
+      return first;
+   }
+
+   /**
+    * Takes a single free page, adding a new segment if required. Memory pages
+    * are used as long as the statement quota isn't exceeded and there is
+    * either a free page or the connection quota and global limit allow to
+    * allocate another segment.
+    */
+   private int take( SharedSocket.VirtualSocket vsock, boolean forceMemory )
+      throws IOException
+   {
+      boolean memory = forceMemory || (long) ( vsock.memPages + 1 ) * PAGE_SIZE <= _Budget.getStatementQuota();
+
+      if( memory && _FreeMemCount == 0 )
+      {
+         if( forceMemory )
+         {
+            _Budget.reserve( SEGMENT_SIZE );
+            addMemorySegment();
+         }
+         else if( _Budget.tryReserve( SEGMENT_SIZE ) )
+         {
+            addMemorySegment();
+         }
+      }
+
+      if( ! memory || _FreeMemCount == 0 )
+      {
+         if( _FreeFileCount > 0 || addFileSegment() )
+         {
+            _UsedPages ++;
+            return _FreeFile[-- _FreeFileCount];
+         }
+
+         // not allowed to spool to disk so carry on in memory
+         if( _FreeMemCount == 0 )
+         {
+            _Budget.reserve( SEGMENT_SIZE );
+            addMemorySegment();
+         }
+      }
+
+      _UsedPages ++;
+      vsock.memPages ++;
+      return _FreeMem[-- _FreeMemCount];
+   }
+
+   /**
+    * Returns all pages of a chain to the free lists.
+    */
+   private void free( SharedSocket.VirtualSocket vsock, int first )
+   {
+      int count = 0;
+
+      for( int page = first; page != NONE; page = _Next[page] )
+      {
+         _Scratch[count ++] = page;
+      }
+
+      // push in reverse order to hand out ascending, adjacent pages later
+      while( count > 0 )
+      {
+         int page = _Scratch[-- count];
+
+         if( _Memory[page / SEGMENT_PAGES] != null )
+         {
+            _FreeMem[_FreeMemCount ++] = page;
+            vsock.memPages --;
+         }
+         else
+         {
+            _FreeFile[_FreeFileCount ++] = page;
+         }
+
+         _UsedPages --;
+      }
+
+      if( _UsedPages == 0 )
+      {
+         trim();
+      }
+   }
+
+   /**
+    * Releases all memory segments once the spool is empty, keeping one of
+    * them as {@link #_Spare}; file segments are kept for reuse.
+    */
+   private void trim()
+   {
+      int release = 0;
+
+      for( int s = 0; s < _Segments; s ++ )
+      {
+         if( _Memory[s] != null )
+         {
+            if( _Spare == null )
+            {
+               _Spare = _Memory[s];
+            }
+
+            _Memory[s] = null;
+            release += SEGMENT_SIZE;
+         }
+      }
+
+      if( release > 0 )
+      {
+         _Budget.release( release );
+
+         // rebuild free lists
+         _FreeMemCount  = 0;
+         _FreeFileCount = 0;
+
+         for( int s = _Segments - 1; s >= 0; s -- )
+         {
+            if( _Memory[s] != null )
+            {
+               pushSegment( s, _FreeMem, _FreeMemCount );
+               _FreeMemCount += SEGMENT_PAGES;
+            }
+            else if( _FilePos[s] >= 0 )
+            {
+               pushSegment( s, _FreeFile, _FreeFileCount );
+               _FreeFileCount += SEGMENT_PAGES;
+            }
+         }
+      }
+   }
+
+   /**
+    * Adds a new off-heap segment, the memory has to be reserved from the
+    * budget by the caller.
+    */
+   private void addMemorySegment()
+   {
+      int s = newSegment();
+
+      if( _Spare != null )
+      {
+         _Memory[s] = _Spare;
+         _Spare     = null;
+      }
+      else
+      {
+         _Memory[s] = ByteBuffer.allocateDirect( SEGMENT_SIZE );
+      }
+
+      pushSegment( s, _FreeMem, _FreeMemCount );
+      _FreeMemCount += SEGMENT_PAGES;
+   }
+
+   /**
+    * Adds a new segment located in the spool file, creating the file first if
+    * necessary.
+    *
+    * @return
+    *    {@code false} if security constraints don't allow to create files
+    */
+   private boolean addFileSegment()
+      throws IOException
+   {
+      if( _Channel == null )
+      {
+         if( _SecurityViolation )
+         {
+            return false;
+         }
+
+         try
+         {
+            _File = File.createTempFile( "jtds", ".tmp", _BufferDir );
+            // _File.deleteOnExit(); memory leak, see http://bugs.java.com/bugdatabase/view_bug.do?bug_id=6664633
+            _Channel    = new RandomAccessFile( _File, "rw" ).getChannel();
+            _FileLength = 0;
+         }
+         catch( SecurityException se )
+         {
+            _SecurityViolation = true;
+            closeFile();
+            return false;
+         }
+      }
+
+      int s = newSegment();
+      _FilePos[s] = _FileLength;
+      _FileLength += SEGMENT_SIZE;
+      pushSegment( s, _FreeFile, _FreeFileCount );
+      _FreeFileCount += SEGMENT_PAGES;
+      return true;
+   }
+
+   /**
+    * Pushes all pages of a segment onto a free list, lowest page on top.
+    */
+   private static void pushSegment( int segment, int[] stack, int count )
+   {
+      int base = segment * SEGMENT_PAGES;
+
+      for( int i = SEGMENT_PAGES - 1; i >= 0; i -- )
+      {
+         stack[count ++] = base + i;
+      }
+   }
+
+   /**
+    * Finds an unused segment slot, growing the page tables if necessary.
+    *
+    * @return
+    *    the index of the segment slot
+    */
+   private int newSegment()
+   {
+      for( int s = 0; s < _Segments; s ++ )
+      {
+         if( _Memory[s] == null && _FilePos[s] < 0 )
+         {
+            return s;
+         }
+      }
+
+      if( _Segments == _Memory.length )
+      {
+         int size = _Segments * 2;
+         int pages = size * SEGMENT_PAGES;
+
+         _Memory     = Arrays.copyOf( _Memory, size );
+         _Next       = Arrays.copyOf( _Next, pages );
+         _NextPacket = Arrays.copyOf( _NextPacket, pages );
+         _FreeMem    = Arrays.copyOf( _FreeMem, pages );
+         _FreeFile   = Arrays.copyOf( _FreeFile, pages );
+
+         long[] pos = newFilePos( size );
+         System.arraycopy( _FilePos, 0, pos, 0, _Segments );
+         _FilePos = pos;
+      }
+
+      return _Segments ++;
+   }
+
+   /**
+    * Closes and deletes the spool file, if any.
+    */
+   private void closeFile()
+   {
+      try
+      {
+         if( _Channel != null )
+         {
+            _Channel.close();
+         }
+      }
+      catch( IOException ioe )
+      {
+         // ignore errors
+      }
+      finally
+      {
+         if( _File != null )
+         {
+            _File.delete();
+         }
+
+         _Channel = null;
+         _File    = null;
+      }
+   }
+
+   private static long[] newFilePos( int size )
+   {
+      long[] pos = new long[size];
+      Arrays.fill( pos, -1 );
+      return pos;
+   }
+
+}
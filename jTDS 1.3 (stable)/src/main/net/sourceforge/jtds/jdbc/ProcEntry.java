@@ -31,15 +31,26 @@ public class ProcEntry {
     public static final int CURSOR      = 3;
     /** The entry references a failed prepare. */
     public static final int PREP_FAILED = 4;
+    /**
+     * The entry references a statement handle that will be returned by the
+     * next <code>sp_prepexec</code> execution of the statement.
+     */
+    public static final int PREPEXEC    = 5;
 
-    /** Stored procedure name or statement handle. */
-    private String name;
+    /**
+     * Stored procedure name or statement handle. Volatile, as the handle
+     * returned by <code>sp_prepexec</code> is set by whichever thread reads
+     * the response, without holding the connection's monitor.
+     */
+    private volatile String name;
     /** Column meta data (Sybase only). */
     private ColInfo[] colMetaData;
     /** Parameter meta data (Sybase only). */
     private ParamInfo[] paramMetaData;
-    /** Type of statement referenced by this entry. */
-    private int type;
+    /** Shared parameter definitions (SQL Server only). */
+    private String paramDefinitions;
+    /** Type of statement referenced by this entry, volatile like {@link #name}. */
+    private volatile int type;
     /** Usage count for this statement. */
     private int refCount;
 
@@ -106,6 +117,24 @@ public class ProcEntry {
         this.paramMetaData = paramMetaData;
     }
 
+    /**
+     * Retrieves the parameter definitions shared with other connections.
+     *
+     * @return the parameter definitions or <code>null</code> if not shared
+     */
+    public String getParamDefinitions() {
+        return paramDefinitions;
+    }
+
+    /**
+     * Sets the parameter definitions shared with other connections.
+     *
+     * @param paramDefinitions the parameter definitions
+     */
+    public void setParamDefinitions(String paramDefinitions) {
+        this.paramDefinitions = paramDefinitions;
+    }
+
     /**
      * Sets the statement implementation type.
      *
@@ -133,12 +162,16 @@ public class ProcEntry {
                 sql.append("DROP PROC ").append(name).append('\n');
                 break;
             case PREPARE:
-                sql.append("EXEC sp_unprepare ").append(name).append('\n');
+                if (name != null) {
+                    // null while sp_prepexec is pending
+                    sql.append("EXEC sp_unprepare ").append(name).append('\n');
+                }
                 break;
             case CURSOR:
                 sql.append("EXEC sp_cursorunprepare ").append(name).append('\n');
                 break;
             case PREP_FAILED:
+            case PREPEXEC:
                 break;
             default:
                 throw new IllegalStateException("Invalid cached statement type " + type);
@@ -18,11 +18,13 @@
 package net.sourceforge.jtds.jdbc;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
 
 import net.sourceforge.jtds.jdbc.SharedSocket.VirtualSocket;
 import net.sourceforge.jtds.util.*;
@@ -57,6 +59,14 @@ public class RequestStream {
     private final int bufferSize;
     /** The maximum decimal precision. */
     private final int maxPrecision;
+    /** The charset of the cached encoder. */
+    private CharsetInfo encoderCharset;
+    /** Encoder reused as long as strings of the same charset are written. */
+    private CharsetEncoder encoder;
+    /** True if the server should reset the connection before the next request. */
+    private boolean resetConnection;
+    /** True if the last packet written was not the last one of its request. */
+    private boolean continuation;
 
     /**
      * Construct a RequestStream object.
@@ -308,21 +318,28 @@ public class RequestStream {
     void write(String s) throws IOException {
         if (socket.getTdsVersion() >= Driver.TDS70) {
             int len = s.length();
+            int i = 0;
 
-            for (int i = 0; i < len; ++i) {
-                int c = s.charAt(i);
+            while (i < len) {
+                int count = Math.min(len - i, (buffer.length - bufferPtr) >> 1);
 
-                if (bufferPtr == buffer.length) {
-                    putPacket(0);
+                if (count == 0) {
+                    // Character split at the end of the packet
+                    writeChar(s.charAt(i++));
+                    continue;
                 }
 
-                buffer[bufferPtr++] = (byte) c;
+                byte[] buf = buffer;
+                int ptr = bufferPtr;
 
-                if (bufferPtr == buffer.length) {
-                    putPacket(0);
+                for (int end = i + count; i < end; i++) {
+                    char c = s.charAt(i);
+
+                    buf[ptr++] = (byte) c;
+                    buf[ptr++] = (byte) (c >> 8);
                 }
 
-                buffer[bufferPtr++] = (byte) (c >> 8);
+                bufferPtr = ptr;
             }
         } else {
             writeAscii(s);
@@ -339,21 +356,48 @@ public class RequestStream {
         int i = off;
         int limit = (off + len) > s.length ? s.length : off + len;
 
-        for ( ; i < limit; i++) {
-            char c = s[i];
+        while (i < limit) {
+            int count = Math.min(limit - i, (buffer.length - bufferPtr) >> 1);
 
-            if (bufferPtr == buffer.length) {
-                putPacket(0);
+            if (count == 0) {
+                // Character split at the end of the packet
+                writeChar(s[i++]);
+                continue;
             }
 
-            buffer[bufferPtr++] = (byte) c;
+            byte[] buf = buffer;
+            int ptr = bufferPtr;
 
-            if (bufferPtr == buffer.length) {
-                putPacket(0);
+            for (int end = i + count; i < end; i++) {
+                char c = s[i];
+
+                buf[ptr++] = (byte) c;
+                buf[ptr++] = (byte) (c >> 8);
             }
 
-            buffer[bufferPtr++] = (byte) (c >> 8);
+            bufferPtr = ptr;
+        }
+    }
+
+    /**
+     * Writes a single UCS2-LE (Unicode) encoded character, which may be split
+     * between two packets.
+     *
+     * @param c the character to write
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeChar(char c) throws IOException {
+        if (bufferPtr == buffer.length) {
+            putPacket(0);
+        }
+
+        buffer[bufferPtr++] = (byte) c;
+
+        if (bufferPtr == buffer.length) {
+            putPacket(0);
         }
+
+        buffer[bufferPtr++] = (byte) (c >> 8);
     }
 
     /**
@@ -363,17 +407,60 @@ public class RequestStream {
      * @throws IOException
      */
     void writeAscii(String s) throws IOException {
-        String charsetName = socket.getCharset();
+        CharsetInfo info = socket.getCharsetInfo();
 
-        if (charsetName != null) {
-            try {
-                write(s.getBytes(charsetName));
-            } catch (UnsupportedEncodingException e) {
-                write(s.getBytes());
-            }
-        } else {
+        if (info == null) {
             write(s.getBytes());
+            return;
+        }
+
+        int len = s.length();
+        int i = 0;
+
+        if (info.isAsciiCompatible()) {
+            // Write ASCII characters straight into the packet buffer, until
+            // the first character that has to be encoded
+            while (i < len) {
+                if (bufferPtr == buffer.length) {
+                    putPacket(0);
+                }
+
+                byte[] buf = buffer;
+                int ptr = bufferPtr;
+                int end = Math.min(len, i + buf.length - ptr);
+                char c = 0;
+
+                while (i < end && (c = s.charAt(i)) < 0x80) {
+                    buf[ptr++] = (byte) c;
+                    i++;
+                }
+
+                bufferPtr = ptr;
+
+                if (c >= 0x80) {
+                    break;
+                }
+            }
+
+            if (i == len) {
+                return;
+            }
+        }
+
+        if (info != encoderCharset) {
+            encoder = info.newEncoder();
+            encoderCharset = info;
         }
+
+        CharBuffer in = CharBuffer.wrap(s, i, len);
+        ByteBuffer out = ByteBuffer.allocate(
+                (int) Math.ceil((len - i) * (double) encoder.maxBytesPerChar()));
+
+        encoder.reset();
+        encoder.encode(in, out, true);
+        encoder.flush(out);
+
+        write(out.array(), 0, out.position());
     }
 
     /**
@@ -509,6 +596,16 @@ public class RequestStream {
         }
     }
 
+    /**
+     * Requests the server to reset the session state before it processes the
+     * next SQL batch, RPC or transaction manager request written to this
+     * stream, by setting the RESETCONNECTION status bit in the header of its
+     * first packet. Only supported by TDS 7.1 and later.
+     */
+    void setResetConnection() {
+        resetConnection = true;
+    }
+
     /**
      * Flush the packet to the output stream setting the last packet flag.
      *
@@ -554,8 +651,18 @@ public class RequestStream {
             throw new IOException("RequestStream is closed");
         }
 
+        int status = last; // last segment indicator
+
+        if (resetConnection && !continuation
+                && (pktType == TdsCore.QUERY_PKT || pktType == TdsCore.RPC_PKT
+                        || pktType == TdsCore.MSDTC_PKT)) {
+            // Only valid in the first packet of a request
+            status |= TdsCore.STATUS_RESETCONNECTION;
+            resetConnection = false;
+        }
+
         buffer[0] = pktType;
-        buffer[1] = (byte) last; // last segment indicator
+        buffer[1] = (byte) status;
         buffer[2] = (byte) (bufferPtr >> 8);
         buffer[3] = (byte) bufferPtr;
         buffer[4] = 0;
@@ -569,5 +676,6 @@ public class RequestStream {
 
         buffer = socket.sendNetPacket(_VirtualSocket, buffer);
         bufferPtr = TdsCore.PKT_HDR_LEN;
+        continuation = last == 0;
     }
 }
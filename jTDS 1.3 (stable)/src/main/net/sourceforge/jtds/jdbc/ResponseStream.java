@@ -20,7 +20,9 @@ package net.sourceforge.jtds.jdbc;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
 
 import net.sourceforge.jtds.jdbc.SharedSocket.VirtualSocket;
 import net.sourceforge.jtds.util.*;
@@ -57,6 +59,10 @@ public class ResponseStream {
     private final byte[] byteBuffer = new byte[255];
     /** A shared char buffer. */
     private final char[] charBuffer = new char[255];
+    /** The charset of the cached decoder. */
+    private CharsetInfo decoderCharset;
+    /** Decoder reused as long as strings of the same charset are read. */
+    private CharsetDecoder decoder;
 
     /**
      * Constructs a <code>RequestStream</code> object.
@@ -103,6 +109,16 @@ public class ResponseStream {
         return b;
     }
 
+    /**
+     * Retrieves the number of bytes left in the current packet, which can be
+     * read without reading from the network.
+     *
+     * @return the number of unread bytes in the current packet
+     */
+    int available() {
+        return bufferLen - bufferPtr;
+    }
+
     /**
      * Reads the next input byte from the server response stream.
      *
@@ -166,23 +182,55 @@ public class ResponseStream {
      * @throws IOException if an I/O error occurs
      */
     int read(char[] c) throws IOException {
-        for (int i = 0; i < c.length; i++) {
-            if (bufferPtr >= bufferLen) {
-                getPacket();
-            }
+        readChars(c, c.length);
 
-            int b1 = buffer[bufferPtr++] & 0xFF;
+        return c.length;
+    }
 
-            if (bufferPtr >= bufferLen) {
-                getPacket();
+    /**
+     * Reads UCS2-LE (Unicode) encoded characters from the server response
+     * stream.
+     * <p/>
+     * All characters available in the current packet are decoded in one
+     * loop, only a character split between two packets is read byte by byte.
+     *
+     * @param c   the char array to fill
+     * @param len the number of characters to read
+     * @throws IOException if an I/O error occurs
+     */
+    private void readChars(char[] c, int len) throws IOException {
+        int i = 0;
+
+        while (i < len) {
+            int count = Math.min(len - i, (bufferLen - bufferPtr) >> 1);
+
+            if (count == 0) {
+                // Character split at the end of the packet (or no more data)
+                if (bufferPtr >= bufferLen) {
+                    getPacket();
+                }
+
+                int b1 = buffer[bufferPtr++] & 0xFF;
+
+                if (bufferPtr >= bufferLen) {
+                    getPacket();
+                }
+
+                int b2 = buffer[bufferPtr++] << 8;
+
+                c[i++] = (char) (b2 | b1);
+                continue;
             }
 
-            int b2 = buffer[bufferPtr++] << 8;
+            byte[] buf = buffer;
+            int ptr = bufferPtr;
 
-            c[i] = (char) (b2 | b1);
-        }
+            for (int end = i + count; i < end; i++, ptr += 2) {
+                c[i] = (char) ((buf[ptr + 1] << 8) | (buf[ptr] & 0xFF));
+            }
 
-        return c.length;
+            bufferPtr = ptr;
+        }
     }
 
     /**
@@ -238,21 +286,7 @@ public class ResponseStream {
     String readUnicodeString(int len) throws IOException {
         char[] chars = (len > charBuffer.length) ? new char[len] : charBuffer;
 
-        for (int i = 0; i < len; i++) {
-            if (bufferPtr >= bufferLen) {
-                getPacket();
-            }
-
-            int b1 = buffer[bufferPtr++] & 0xFF;
-
-            if (bufferPtr >= bufferLen) {
-                getPacket();
-            }
-
-            int b2 = buffer[bufferPtr++] << 8;
-
-            chars[i] = (char) (b2 | b1);
-        }
+        readChars(chars, len);
 
         return new String(chars, 0, len);
     }
@@ -295,16 +329,50 @@ public class ResponseStream {
      * @throws IOException if an I/O error occurs
      */
     String readString(int len, CharsetInfo info) throws IOException {
-        String charsetName = info.getCharset();
-        byte[] bytes = (len > byteBuffer.length) ? new byte[len] : byteBuffer;
+        byte[] bytes;
+        int off;
+
+        if (len <= bufferLen - bufferPtr) {
+            // Decode straight from the packet buffer
+            bytes = buffer;
+            off = bufferPtr;
+            bufferPtr += len;
+        } else {
+            bytes = (len > byteBuffer.length) ? new byte[len] : byteBuffer;
+            off = 0;
+            read(bytes, 0, len);
+        }
 
-        read(bytes, 0, len);
+        if (info.isAsciiCompatible()) {
+            // Most values only contain ASCII characters, which don't need a
+            // decoder for these charsets
+            char[] chars = (len > charBuffer.length) ? new char[len] : charBuffer;
+            int i = 0;
 
-        try {
-            return new String(bytes, 0, len, charsetName);
-        } catch (UnsupportedEncodingException e) {
-            return new String(bytes, 0, len);
+            while (i < len && bytes[off + i] >= 0) {
+                chars[i] = (char) bytes[off + i];
+                i++;
+            }
+
+            if (i == len) {
+                return new String(chars, 0, len);
+            }
+        }
+
+        if (info != decoderCharset) {
+            decoder = info.newDecoder();
+            decoderCharset = info;
         }
+
+        int max = (int) Math.ceil(len * (double) decoder.maxCharsPerByte());
+        char[] chars = (max > charBuffer.length) ? new char[max] : charBuffer;
+        CharBuffer out = CharBuffer.wrap(chars);
+
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(bytes, off, len), out, true);
+        decoder.flush(out);
+
+        return new String(chars, 0, out.position());
     }
 
     /**
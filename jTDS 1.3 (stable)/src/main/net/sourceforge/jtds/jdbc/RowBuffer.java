@@ -0,0 +1,352 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * <p> Reusable buffer for the current row of a forward-only, read-only result
+ * set, used if the <code>useLazyRows</code> connection property is set. </p>
+ *
+ * <p> Values of integer, floating point and bit columns are kept as primitive
+ * bits instead of being wrapped in an {@link Integer}, {@link Long}, {@link
+ * Double} etc. when the row is read. A wrapper object is only created if the
+ * value is requested as an object, the primitive getters of {@link
+ * JtdsResultSet} convert the buffered bits directly. All other column types
+ * are decoded as usual. </p>
+ *
+ * <p> The conversions follow the rules implemented by {@link
+ * Support#convert(Object, Object, int, String)} for the corresponding wrapper
+ * types. </p>
+ */
+final class RowBuffer
+{
+
+   /**
+    * value kind of a column that is not pending (materialized or null)
+    */
+   private static final byte NONE    = 0;
+
+   /**
+    * value kind of a pending {@link Integer} value
+    */
+   static final byte         INT     = 1;
+
+   /**
+    * value kind of a pending {@link Long} value
+    */
+   static final byte         LONG    = 2;
+
+   /**
+    * value kind of a pending {@link Float} value
+    */
+   static final byte         FLOAT   = 3;
+
+   /**
+    * value kind of a pending {@link Double} value
+    */
+   static final byte         DOUBLE  = 4;
+
+   /**
+    * value kind of a pending {@link Boolean} value
+    */
+   static final byte         BOOLEAN = 5;
+
+   /**
+    * the column descriptors this buffer has been created for
+    */
+   private final ColInfo[]   _Columns;
+
+   /**
+    * flags indicating columns that can be buffered as primitive value
+    */
+   private final boolean[]   _Primitive;
+
+   /**
+    * value kind of each column in the current row
+    */
+   private final byte[]      _Kind;
+
+   /**
+    * primitive value bits of each column in the current row
+    */
+   private final long[]      _Bits;
+
+   /**
+    * Creates a row buffer for the given column descriptors.
+    *
+    * @param columns
+    *    the column descriptors of the result set
+    */
+   RowBuffer( ColInfo[] columns )
+   {
+      _Columns   = columns;
+      _Primitive = new boolean[columns.length];
+      _Kind      = new byte[columns.length];
+      _Bits      = new long[columns.length];
+
+      for( int i = 0; i < columns.length; i ++ )
+      {
+         _Primitive[i] = TdsData.isPrimitiveType( columns[i] );
+      }
+   }
+
+   /**
+    * @return
+    *    the column descriptors this buffer has been created for
+    */
+   ColInfo[] getColumns()
+   {
+      return _Columns;
+   }
+
+   /**
+    * Reads the next row from the server response, keeping the values of
+    * primitive columns in this buffer.
+    *
+    * @param connection
+    *    the connection
+    *
+    * @param in
+    *    the server response stream
+    *
+    * @param row
+    *    the row to receive all other values, entries for buffered columns are
+    *    set to {@code null}
+    *
+    * @param count
+    *    the number of leading columns to read
+    */
+   void readRow( JtdsConnection connection, ResponseStream in, Object[] row, int count )
+      throws IOException, ProtocolException
+   {
+      for( int i = 0; i < count; i ++ )
+      {
+         _Kind[i] = NONE;
+
+         if( _Primitive[i] )
+         {
+            row[i] = null;
+            TdsData.readPrimitive( in, _Columns[i], this, i );
+         }
+         else
+         {
+            row[i] = TdsData.readData( connection, in, _Columns[i] );
+         }
+      }
+   }
+
+   /**
+    * Stores a primitive value, called by {@link TdsData#readPrimitive}.
+    *
+    * @param index
+    *    the zero based column index
+    *
+    * @param kind
+    *    the value kind
+    *
+    * @param bits
+    *    the value bits (the value itself for integer types, the raw bits for
+    *    floating point types, 0 or 1 for booleans)
+    */
+   void set( int index, byte kind, long bits )
+   {
+      _Kind[index] = kind;
+      _Bits[index] = bits;
+   }
+
+   /**
+    * @param index
+    *    the zero based column index
+    *
+    * @return
+    *    {@code true} if the value of the column in the current row is buffered
+    *    and has not been materialized yet
+    */
+   boolean isPending( int index )
+   {
+      return _Kind[index] != NONE;
+   }
+
+   /**
+    * Creates the wrapper object for a pending column value and stores it in
+    * the row.
+    *
+    * @param index
+    *    the zero based column index
+    *
+    * @param row
+    *    the row data
+    *
+    * @return
+    *    the column value
+    */
+   Object materialize( int index, Object[] row )
+   {
+      if( _Kind[index] != NONE )
+      {
+         row[index]   = box( index );
+         _Kind[index] = NONE;
+      }
+
+      return row[index];
+   }
+
+   /**
+    * Materializes all pending values of the current row.
+    *
+    * @param row
+    *    the row data
+    */
+   void materialize( Object[] row )
+   {
+      for( int i = 0; i < _Kind.length; i ++ )
+      {
+         if( _Kind[i] != NONE )
+         {
+            materialize( i, row );
+         }
+      }
+   }
+
+   /**
+    * Creates the wrapper object for a pending value.
+    */
+   private Object box( int index )
+   {
+      switch( _Kind[index] )
+      {
+         case INT:
+            return Integer.valueOf( (int) _Bits[index] );
+
+         case LONG:
+            return Long.valueOf( _Bits[index] );
+
+         case FLOAT:
+            return Float.valueOf( Float.intBitsToFloat( (int) _Bits[index] ) );
+
+         case DOUBLE:
+            return Double.valueOf( Double.longBitsToDouble( _Bits[index] ) );
+
+         default:
+            return _Bits[index] != 0 ? Boolean.TRUE : Boolean.FALSE;
+      }
+   }
+
+   /**
+    * Retrieves a pending value as <code>long</code>, like <code>(Number)
+    * value).longValue()</code> would.
+    */
+   private long longValue( int index )
+   {
+      switch( _Kind[index] )
+      {
+         case FLOAT:
+            return (long) Float.intBitsToFloat( (int) _Bits[index] );
+
+         case DOUBLE:
+            return (long) Double.longBitsToDouble( _Bits[index] );
+
+         default:
+            return _Bits[index];
+      }
+   }
+
+   /**
+    * Retrieves a pending value as <code>double</code>, like <code>(Number)
+    * value).doubleValue()</code> would.
+    */
+   private double doubleValue( int index )
+   {
+      switch( _Kind[index] )
+      {
+         case FLOAT:
+            return Float.intBitsToFloat( (int) _Bits[index] );
+
+         case DOUBLE:
+            return Double.longBitsToDouble( _Bits[index] );
+
+         default:
+            return _Bits[index];
+      }
+   }
+
+   /**
+    * Checks that a value is within the given range.
+    */
+   private long checkRange( int index, long value, long min, long max, int jdbcType )
+      throws SQLException
+   {
+      if( value < min || value > max )
+      {
+         throw new SQLException( Messages.get( "error.convert.numericoverflow", box( index ), Support.getJdbcTypeName( jdbcType ) ), "22003" );
+      }
+
+      return value;
+   }
+
+   byte getByte( int index )
+      throws SQLException
+   {
+      return (byte) checkRange( index, longValue( index ), Byte.MIN_VALUE, Byte.MAX_VALUE, Types.TINYINT );
+   }
+
+   short getShort( int index )
+      throws SQLException
+   {
+      return (short) checkRange( index, longValue( index ), Short.MIN_VALUE, Short.MAX_VALUE, Types.SMALLINT );
+   }
+
+   int getInt( int index )
+      throws SQLException
+   {
+      return (int) checkRange( index, longValue( index ), Integer.MIN_VALUE, Integer.MAX_VALUE, Types.INTEGER );
+   }
+
+   long getLong( int index )
+   {
+      return longValue( index );
+   }
+
+   float getFloat( int index )
+   {
+      return _Kind[index] == LONG ? (float) _Bits[index] : (float) doubleValue( index );
+   }
+
+   double getDouble( int index )
+   {
+      return doubleValue( index );
+   }
+
+   boolean getBoolean( int index )
+   {
+      switch( _Kind[index] )
+      {
+         case FLOAT:
+         case DOUBLE:
+            // Number.intValue() != 0
+            return (int) doubleValue( index ) != 0;
+
+         default:
+            return (int) _Bits[index] != 0;
+      }
+   }
+
+}
@@ -21,7 +21,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import net.sourceforge.jtds.jdbc.cache.SimpleLRUCache;
+import net.sourceforge.jtds.jdbc.cache.ConcurrentLRUCache;
 
 /**
  * Process JDBC escape strings and parameter markers in the SQL string.
@@ -88,9 +88,29 @@ class SQLParser {
     }
 
    /**
-    * a LRU cache for the last 1000 parsed SQL statements
+    * maximum total length of all SQL statements in the cache, original and
+    * processed
     */
-   private final static SimpleLRUCache<ConInfo,CachedSQLQuery> _Cache = new SimpleLRUCache( 1000 );
+   final static int                                             CACHE_CHARS = 4 * 1024 * 1024;
+
+   /**
+    * a LRU cache for the last parsed SQL statements, bounded by their length
+    */
+   private final static ConcurrentLRUCache<ConInfo,CachedSQLQuery> _Cache = new ConcurrentLRUCache<>( CACHE_CHARS, 16, new ConcurrentLRUCache.Weigher<ConInfo,CachedSQLQuery>()
+   {
+      @Override
+      public int weigh( ConInfo key, CachedSQLQuery value )
+      {
+         int weight = key.sql.length();
+
+         for( String part : value.parsedSql )
+         {
+            weight += part == null ? 0 : part.length();
+         }
+
+         return weight;
+      }
+   } );
 
     /** Input buffer with SQL statement. */
     private final char[] in;
@@ -165,13 +185,12 @@ class SQLParser {
             // parse statement
             ret = new SQLParser( paramList, conInfo ).parse( extractTable );
 
-            // update LRU cache
-            _Cache.put( conInfo, new CachedSQLQuery( ret, paramList ) );
+            // update LRU cache, keeping a copy the caller cannot modify
+            _Cache.put( conInfo, new CachedSQLQuery( ret.clone(), paramList ) );
          }
          else
          {
-            // REVIEW: potentially insecure, the array could be modified be the caller, corrupting the cache
-            ret = cachedQuery.parsedSql;
+            ret = cachedQuery.parsedSql.clone();
 
             // create ParamInfo objects from CachedSQLQuery
             int length = cachedQuery.paramNames == null ? 0 : cachedQuery.paramNames.length;
@@ -186,6 +205,201 @@ class SQLParser {
       return ret;
    }
 
+   /**
+    * @return
+    *    the number of statements found in the parser cache
+    */
+   static long getCacheHits()
+   {
+      return _Cache.getHits();
+   }
+
+   /**
+    * @return
+    *    the number of statements not found in the parser cache and therefore
+    *    parsed
+    */
+   static long getCacheMisses()
+   {
+      return _Cache.getMisses();
+   }
+
+   /**
+    * <p> Checks whether a processed SQL statement is a simple single row
+    * insert that can be executed as a bulk load, i.e. has the form </p>
+    *
+    * <pre>
+    * INSERT [INTO] table (column, ...) VALUES (?, ...)
+    * </pre>
+    *
+    * <p> with one parameter marker per column and nothing else. Table and
+    * column names may be quoted or bracketed, the table name may be
+    * qualified. Quoted names are returned as they are, see {@link
+    * #unquoteName}. </p>
+    *
+    * @param sql
+    *    the SQL statement, as returned by {@link #parse}
+    *
+    * @return
+    *    the table name followed by the column names, or {@code null} if the
+    *    statement can't be executed as a bulk load
+    */
+   static String[] parseBulkInsert( String sql )
+   {
+      ArrayList<String> names = new ArrayList<>();
+      int[] pos = { 0 };
+
+      if( ! "insert".equalsIgnoreCase( nextBulkToken( sql, pos ) ) )
+         return null;
+
+      String token = nextBulkToken( sql, pos );
+
+      if( "into".equalsIgnoreCase( token ) )
+         token = nextBulkToken( sql, pos );
+
+      if( ! isBulkName( token ) )
+         return null;
+
+      // qualified table name
+      StringBuilder table = new StringBuilder( token );
+
+      while( ".".equals( token = nextBulkToken( sql, pos ) ) )
+      {
+         token = nextBulkToken( sql, pos );
+
+         if( ! isBulkName( token ) )
+            return null;
+
+         table.append( '.' ).append( token );
+      }
+
+      names.add( table.toString() );
+
+      if( ! "(".equals( token ) )
+         return null;
+
+      // column list
+      do
+      {
+         token = nextBulkToken( sql, pos );
+
+         if( ! isBulkName( token ) )
+            return null;
+
+         names.add( token );
+      }
+      while( ",".equals( token = nextBulkToken( sql, pos ) ) );
+
+      if( ! ")".equals( token ) || ! "values".equalsIgnoreCase( nextBulkToken( sql, pos ) ) || ! "(".equals( nextBulkToken( sql, pos ) ) )
+         return null;
+
+      // parameter markers
+      int markers = 0;
+
+      do
+      {
+         if( ! "?".equals( nextBulkToken( sql, pos ) ) )
+            return null;
+
+         markers ++;
+      }
+      while( ",".equals( token = nextBulkToken( sql, pos ) ) );
+
+      if( ! ")".equals( token ) || markers != names.size() - 1 )
+         return null;
+
+      token = nextBulkToken( sql, pos );
+
+      if( ";".equals( token ) )
+         token = nextBulkToken( sql, pos );
+
+      return token == null ? names.toArray( new String[names.size()] ) : null;
+   }
+
+   /**
+    * Returns the next token of a statement checked by {@link
+    * #parseBulkInsert}, i.e. a name, a quoted or bracketed name or a single
+    * other character.
+    *
+    * @param sql
+    *    the SQL statement
+    *
+    * @param pos
+    *    the current position, updated to the position after the token
+    *
+    * @return
+    *    the token or {@code null} at the end of the statement
+    */
+   private static String nextBulkToken( String sql, int[] pos )
+   {
+      int s = pos[0];
+
+      while( s < sql.length() && Character.isWhitespace( sql.charAt( s ) ) )
+         s ++;
+
+      if( s == sql.length() )
+      {
+         pos[0] = s;
+         return null;
+      }
+
+      char c = sql.charAt( s );
+      int e = s + 1;
+
+      if( c == '[' || c == '"' )
+      {
+         char close = c == '[' ? ']' : '"';
+
+         // a doubled closing character is part of the name
+         while( e < sql.length() && ( sql.charAt( e ) != close || e + 1 < sql.length() && sql.charAt( e + 1 ) == close ) )
+            e += sql.charAt( e ) == close ? 2 : 1;
+
+         if( e == sql.length() )
+            return null;
+
+         e ++;
+      }
+      else if( isIdentifier( c ) )
+      {
+         while( e < sql.length() && isIdentifier( sql.charAt( e ) ) )
+            e ++;
+      }
+
+      pos[0] = e;
+      return sql.substring( s, e );
+   }
+
+   /**
+    * Removes the brackets or quotes of a name returned by {@link
+    * #parseBulkInsert}, replacing escaped closing characters by single ones.
+    *
+    * @param name
+    *    the possibly quoted name
+    *
+    * @return
+    *    the name as stored by the server
+    */
+   static String unquoteName( String name )
+   {
+      char c = name.charAt( 0 );
+
+      if( c != '[' && c != '"' )
+         return name;
+
+      String close = c == '[' ? "]" : "\"";
+      return name.substring( 1, name.length() - 1 ).replace( close + close, close );
+   }
+
+   /**
+    * @return
+    *    whether the token returned by {@link #nextBulkToken} is a (possibly
+    *    quoted) name
+    */
+   private static boolean isBulkName( String token )
+   {
+      return token != null && ( token.charAt( 0 ) == '[' || token.charAt( 0 ) == '"' || isIdentifier( token.charAt( 0 ) ) );
+   }
+
     // --------------------------- Private Methods --------------------------------
 
     /** Lookup table to test if character is part of an identifier. */
@@ -17,22 +17,25 @@
 //
 package net.sourceforge.jtds.jdbc;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Simple semaphore class used to serialize access requests over the network
  * connection.
  * <p/>
- * Based on the code originally written by Doug Lea. Once JDK 1.5 is the
- * standard this class can be replaced by the
- * <code>java.util.concurrent.Sempahore</code> class.
+ * Originally based on the code written by Doug Lea, now a thin wrapper around
+ * <code>java.util.concurrent.Semaphore</code>. Waiting threads are parked
+ * instead of waiting on a monitor, so blocked virtual threads don't pin their
+ * carrier thread.
  *
  * @author  Mike Hutchinson
  * @version $Id: Semaphore.java,v 1.1 2004-12-20 15:51:17 alin_sinpalean Exp $
  */
 public class Semaphore {
     /**
-     * Current number of available permits.
+     * The underlying semaphore.
      */
-    protected long permits;
+    private final java.util.concurrent.Semaphore semaphore;
 
     /**
      * Create a Semaphore with the given initial number of permits. Using a
@@ -41,76 +44,28 @@ public class Semaphore {
      * number of releases has pushed the number of permits past 0.
      */
     public Semaphore(long initialPermits) {
-        permits = initialPermits;
+        semaphore = new java.util.concurrent.Semaphore(toInt(initialPermits));
     }
 
     /**
      * Wait until a permit is available, and take one.
      */
     public void acquire() throws InterruptedException {
-        if (Thread.interrupted()) {
-            throw new InterruptedException();
-        }
-
-        synchronized (this) {
-            try {
-                while (permits <= 0) {
-                    wait();
-                }
-                --permits;
-            } catch (InterruptedException ex) {
-                notify();
-                throw ex;
-            }
-        }
+        semaphore.acquire();
     }
 
     /**
      * Wait at most msecs millisconds for a permit.
      */
     public boolean attempt(long msecs) throws InterruptedException {
-        if (Thread.interrupted()) {
-            throw new InterruptedException();
-        }
-
-        synchronized (this) {
-            if (permits > 0) {
-                --permits;
-                return true;
-            } else if (msecs <= 0) {
-                return false;
-            } else {
-                try {
-                    long startTime = System.currentTimeMillis();
-                    long waitTime = msecs;
-
-                    while (true) {
-                        wait(waitTime);
-
-                        if (permits > 0) {
-                            --permits;
-                            return true;
-                        } else {
-                            waitTime = msecs - (System.currentTimeMillis() - startTime);
-                            if (waitTime <= 0) {
-                                return false;
-                            }
-                        }
-                    }
-                } catch (InterruptedException ex) {
-                    notify();
-                    throw ex;
-                }
-            }
-        }
+        return semaphore.tryAcquire(Math.max(msecs, 0), TimeUnit.MILLISECONDS);
     }
 
     /**
      * Release a permit.
      */
-    public synchronized void release() {
-        ++permits;
-        notify();
+    public void release() {
+        semaphore.release();
     }
 
     /**
@@ -123,22 +78,27 @@ public class Semaphore {
      *
      * @exception IllegalArgumentException if n is negative
      */
-    public synchronized void release(long n) {
+    public void release(long n) {
         if (n < 0) {
             throw new IllegalArgumentException("Negative argument");
         }
 
-        permits += n;
-        for (long i = 0; i < n; ++i) {
-            notify();
-        }
+        semaphore.release(toInt(n));
     }
 
     /**
      * Return the current number of available permits. Returns an accurate, but
      * possibly unstable value, that may change immediately after returning.
      */
-    public synchronized long permits() {
-        return permits;
+    public long permits() {
+        return semaphore.availablePermits();
+    }
+
+    /**
+     * Converts a number of permits, which is limited to the <code>int</code>
+     * range by the underlying semaphore.
+     */
+    private static int toInt(long permits) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, permits));
     }
 }
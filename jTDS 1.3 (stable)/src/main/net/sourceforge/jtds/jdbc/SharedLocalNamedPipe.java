@@ -42,7 +42,7 @@ public class SharedLocalNamedPipe extends SharedSocket {
      * @throws IOException if an I/O error occurs
      */
     public SharedLocalNamedPipe(JtdsConnection connection) throws IOException {
-        super(connection.getBufferDir(), connection.getTdsVersion(), connection.getServerType());
+        super(connection.getBufferDir(), connection.getMemoryBudget(), connection.getTdsVersion(), connection.getServerType());
 
         final String serverName = connection.getServerName();
         final String instanceName = connection.getInstanceName();
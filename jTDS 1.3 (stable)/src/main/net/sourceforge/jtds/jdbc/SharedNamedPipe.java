@@ -55,7 +55,7 @@ public class SharedNamedPipe extends SharedSocket {
      * @throws UnknownHostException if host cannot be found for the named pipe
      */
     public SharedNamedPipe(JtdsConnection connection) throws IOException {
-        super(connection.getBufferDir(), connection.getTdsVersion(), connection.getServerType());
+        super(connection.getBufferDir(), connection.getMemoryBudget(), connection.getTdsVersion(), connection.getServerType());
 
         // apply socketTimeout as responseTimeout
         int timeout = connection.getSocketTimeout() * 1000;
@@ -17,6 +17,7 @@
 
 package net.sourceforge.jtds.jdbc;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -24,16 +25,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.SocketFactory;
 
@@ -66,6 +68,19 @@ import net.sourceforge.jtds.util.Logger;
  * maximum buffer memory threshold has been passed. Small result sets that will fit
  * within a specified limit (default 8 packets) will continue to be held in memory
  * (even if the memory threshold has been passed) in the interests of efficiency.
+ * Cached packets are kept in a per-connection {@link PacketSpool}.
+ * <p>
+ * If the <code>pipeline</code> connection property is set, a request is sent
+ * without first reading the responses still outstanding for other virtual
+ * sockets. The virtual sockets waiting for a response are queued in request
+ * order; a reader encountering the response of a socket queued ahead of its
+ * own spools that response, just like a sender does in non-pipelined mode.
+ * Only one thread at a time reads from the network, without blocking access
+ * to the spooled packets of other virtual sockets.
+ * <p>
+ * All synchronization is done using <code>java.util.concurrent</code> locks
+ * instead of monitors, so that threads blocked in network I/O don't pin
+ * their carrier thread when running as virtual threads.
  *
  * @author
  *    Mike Hutchinson, Holger Rehn
@@ -80,32 +95,27 @@ class SharedSocket {
          */
         final int id;
         /**
-         * Memory resident packet queue.
-         */
-        final LinkedList pktQueue;
-        /**
-         * File object for disk packet queue.
+         * First packet queued in the connection's {@link PacketSpool}.
          */
-        File queueFile;
+        int firstPacket = PacketSpool.NONE;
         /**
-         * I/O Stream for disk packet queue.
+         * Last packet queued in the connection's {@link PacketSpool}.
          */
-        RandomAccessFile diskQueue;
+        int lastPacket = PacketSpool.NONE;
         /**
-         * Number of packets cached to disk.
+         * Total of input packets queued in memory or on disk.
          */
-        int pktsOnDisk;
+        int inputPkts;
         /**
-         * Total of input packets in memory or disk.
+         * Number of spool pages in memory used by this socket.
          */
-        int inputPkts;
+        int memPages;
         /**
          * Construct object to hold state information for each caller.
          * @param streamId the Response/Request stream id.
          */
         private VirtualSocket(int streamId) {
             id = streamId;
-            pktQueue = new LinkedList();
         }
     }
 
@@ -137,45 +147,56 @@ class SharedSocket {
      * Table of stream objects sharing this socket.
      */
     private final ConcurrentMap<Integer,VirtualSocket> _VirtualSockets = new ConcurrentHashMap<>();
+    /**
+     * Lock guarding the {@link #spool}, reads from the network and, unless
+     * in pipelined mode, writes to the network.
+     */
+    private final ReentrantLock ioLock = new ReentrantLock();
+    /**
+     * Signalled when packets have been spooled or the pipelined reader is
+     * done, guarded by {@link #ioLock}.
+     */
+    private final Condition spooled = ioLock.newCondition();
     /**
      * The virtual socket of the object that is expecting a response from the server.
      */
     private VirtualSocket responseOwner;
     /**
-     * Buffer for packet header.
+     * Virtual sockets expecting a response after the one of {@link
+     * #responseOwner}, in request order. Only used in pipelined mode.
      */
-    private final byte hdrBuf[] = new byte[TDS_HDR_LEN];
+    private final ArrayDeque<VirtualSocket> pipelined = new ArrayDeque<>();
     /**
-     * The directory to buffer data to.
+     * Whether requests are sent without reading outstanding responses first.
      */
-    private final File bufferDir;
-
-   /**
-    * total memory usage in all instances of the driver
-    */
-   private static AtomicInteger                       _MemUsage       = new AtomicInteger();
-
+    private boolean pipeline;
     /**
-     * Peak memory usage for debug purposes.
+     * Serializes writes to the network in pipelined mode, where senders don't
+     * hold the {@link #ioLock}.
      */
-    private static int peakMemUsage;
+    private final ReentrantLock sendLock = new ReentrantLock();
     /**
-     * Max memory limit to use for buffers.
-     * Only when this limit is exceeded will the driver
-     * start caching to disk.
+     * A request has been partially sent in pipelined mode.
      */
-    private static int memoryBudget = 100000; // 100K
+    private boolean sending;
     /**
-     * Minimum number of packets that will be cached in memory
-     * before the driver tries to write to disk even if
-     * memoryBudget has been exceeded.
+     * A thread is reading from the network in pipelined mode, guarded by
+     * {@link #ioLock}.
      */
-    private static int minMemPkts = 8;
+    private boolean reading;
+    /**
+     * Buffer for packet header.
+     */
+    private final byte hdrBuf[] = new byte[TDS_HDR_LEN];
     /**
-     * Global flag to indicate that security constraints mean
-     * that attempts to create work files will fail.
+     * Spool for packets read on behalf of other virtual sockets.
      */
-    private static boolean securityViolation;
+    private final PacketSpool spool;
+    /**
+     * Buffer used to read packets that have to be spooled.
+     */
+    private byte[] spoolBuffer;
+
     /**
      * Tds protocol version
      */
@@ -205,10 +226,10 @@ class SharedSocket {
      */
     private boolean cancelPending;
     /**
-     * Synchronization monitor for {@link #cancelPending} and
-     * {@link #responseOwner}.
+     * Lock guarding {@link #cancelPending}, {@link #responseOwner} and
+     * {@link #pipelined}.
      */
-    private final Object cancelMonitor = new Object();
+    private final ReentrantLock cancelLock = new ReentrantLock();
     /**
      * Buffer for TDS_DONE packets
      */
@@ -229,9 +250,14 @@ class SharedSocket {
      * Length of TDS packet header.
      */
     private static final int TDS_HDR_LEN   = 8;
+    /**
+     * Size of the read buffer of the network socket, large enough to usually
+     * serve the header and body of a packet with a single read.
+     */
+    private static final int SOCKET_BUFFER_SIZE = 8192;
 
-    protected SharedSocket(File bufferDir, int tdsVersion, int serverType) {
-    	this.bufferDir = bufferDir;
+    protected SharedSocket(File bufferDir, MemoryBudget budget, int tdsVersion, int serverType) {
+        this.spool = new PacketSpool(bufferDir, budget);
         this.tdsVersion = tdsVersion;
         this.serverType = serverType;
     }
@@ -244,15 +270,16 @@ class SharedSocket {
      * @throws IOException if socket open fails
      */
     SharedSocket(JtdsConnection connection) throws IOException, UnknownHostException {
-        this(connection.getBufferDir(), connection.getTdsVersion(), connection.getServerType());
+        this(connection.getBufferDir(), connection.getMemoryBudget(), connection.getTdsVersion(), connection.getServerType());
         host = connection.getServerName();
         port = connection.getPortNumber();
+        pipeline = connection.getPipeline();
         socket = createSocketForJDBC3(connection);
-        setOut(new DataOutputStream(socket.getOutputStream()));
-        setIn(new DataInputStream(socket.getInputStream()));
         socket.setTcpNoDelay(connection.getTcpNoDelay());
         socket.setSoTimeout(connection.getSocketTimeout() * 1000);
         socket.setKeepAlive(connection.getSocketKeepAlive());
+        setOut(new DataOutputStream(socket.getOutputStream()));
+        setIn(new DataInputStream(new BufferedInputStream(socket.getInputStream(), SOCKET_BUFFER_SIZE)));
     }
 
    /**
@@ -341,7 +368,7 @@ class SharedSocket {
         sslSocket.close();
         sslSocket = null;
         setOut(new DataOutputStream(socket.getOutputStream()));
-        setIn(new DataInputStream(socket.getInputStream()));
+        setIn(new DataInputStream(new BufferedInputStream(socket.getInputStream(), SOCKET_BUFFER_SIZE)));
     }
 
     /**
@@ -434,43 +461,6 @@ class SharedSocket {
         this.tdsVersion = tdsVersion;
     }
 
-    /**
-     * Set the global buffer memory limit for all instances of this driver.
-     *
-     * @param memoryBudget the global memory budget
-     */
-    static void setMemoryBudget(int memoryBudget) {
-        SharedSocket.memoryBudget = memoryBudget;
-    }
-
-    /**
-     * Get the global buffer memory limit for all instancs of this driver.
-     *
-     * @return the memory limit as an <code>int</code>
-     */
-    static int getMemoryBudget() {
-        return SharedSocket.memoryBudget;
-    }
-
-    /**
-     * Set the minimum number of packets to cache in memory before
-     * writing to disk.
-     *
-     * @param minMemPkts the minimum number of packets to cache
-     */
-    static void setMinMemPkts(int minMemPkts) {
-        SharedSocket.minMemPkts = minMemPkts;
-    }
-
-    /**
-     * Get the minimum number of memory cached packets.
-     *
-     * @return minimum memory packets as an <code>int</code>
-     */
-    static int getMinMemPkts() {
-        return SharedSocket.minMemPkts;
-    }
-
     /**
      * Get the connected status of this socket.
      *
@@ -490,43 +480,73 @@ class SharedSocket {
      *    {@code true} if a cancel is actually issued by this method call
      */
     boolean cancel( VirtualSocket vsock ) {
+        if (pipeline) {
+            //
+            // The cancel packet must not be written in between the packets
+            // of another request. The server cancels whatever request it is
+            // executing when the cancel arrives, so it's only sent if no other
+            // request is queued behind this one.
+            //
+            sendLock.lock();
+            cancelLock.lock();
+            try {
+                if (sending || !pipelined.isEmpty()) {
+                    return false;
+                }
+                return sendCancel(vsock);
+            } finally {
+                cancelLock.unlock();
+                sendLock.unlock();
+            }
+        }
         //
         // Need to synchronize packet send to avoid race conditions on
         // responsOwner and cancelPending
         //
-        synchronized (cancelMonitor) {
-            //
-            // Only send if response pending for the caller.
-            // Caller must have acquired connection mutex first.
-            // NB. This method will not work with local named pipes
-            // as this thread will be blocked in the write until the
-            // reading thread has returned from the read.
-            //
-            if (responseOwner == vsock && !cancelPending) {
-                try {
-                    //
-                    // Send a cancel packet.
-                    //
-                    cancelPending = true;
-                    doneBufferFrag = 0;
-                    byte[] cancel = new byte[TDS_HDR_LEN];
-                    cancel[0] = TdsCore.CANCEL_PKT;
-                    cancel[1] = 1;
-                    cancel[2] = 0;
-                    cancel[3] = 8;
-                    cancel[4] = 0;
-                    cancel[5] = 0;
-                    cancel[6] = (tdsVersion >= Driver.TDS70) ? (byte) 1 : 0;
-                    cancel[7] = 0;
-                    getOut().write(cancel, 0, TDS_HDR_LEN);
-                    getOut().flush();
-                    if (Logger.isActive()) {
-                        Logger.logPacket(vsock.id, false, cancel);
-                    }
-                    return true;
-                } catch (IOException e) {
-                    // Ignore error as network is probably dead anyway
+        cancelLock.lock();
+        try {
+            return sendCancel(vsock);
+        } finally {
+            cancelLock.unlock();
+        }
+    }
+
+    /**
+     * Send a TDS cancel packet if a response is pending for the caller. The
+     * caller has to hold the {@link #cancelLock}.
+     */
+    private boolean sendCancel( VirtualSocket vsock ) {
+        //
+        // Only send if response pending for the caller.
+        // Caller must have acquired connection mutex first.
+        // NB. This method will not work with local named pipes
+        // as this thread will be blocked in the write until the
+        // reading thread has returned from the read.
+        //
+        if (responseOwner == vsock && !cancelPending) {
+            try {
+                //
+                // Send a cancel packet.
+                //
+                cancelPending = true;
+                doneBufferFrag = 0;
+                byte[] cancel = new byte[TDS_HDR_LEN];
+                cancel[0] = TdsCore.CANCEL_PKT;
+                cancel[1] = 1;
+                cancel[2] = 0;
+                cancel[3] = 8;
+                cancel[4] = 0;
+                cancel[5] = 0;
+                cancel[6] = (tdsVersion >= Driver.TDS70) ? (byte) 1 : 0;
+                cancel[7] = 0;
+                getOut().write(cancel, 0, TDS_HDR_LEN);
+                getOut().flush();
+                if (Logger.isActive()) {
+                    Logger.logPacket(vsock.id, false, cancel);
                 }
+                return true;
+            } catch (IOException e) {
+                // Ignore error as network is probably dead anyway
             }
         }
         return false;
@@ -543,27 +563,21 @@ class SharedSocket {
    {
       if( Logger.isActive() )
       {
-         Logger.println( "TdsSocket: Max buffer memory used = " + (peakMemUsage / 1024) + "KB" );
+         Logger.println( "TdsSocket: Buffer memory " + MemoryBudget.getStatistics() );
       }
 
-      // see if any temporary files need deleting
-      for( VirtualSocket vsock : _VirtualSockets.values() )
+      _VirtualSockets.clear();
+
+      cancelLock.lock();
+
+      try
       {
-         if( vsock != null && vsock.diskQueue != null )
-         {
-            try
-            {
-               vsock.diskQueue.close();
-               vsock.queueFile.delete();
-            }
-            catch( IOException ioe )
-            {
-               // ignore errors
-            }
-         }
+         pipelined.clear();
+      }
+      finally
+      {
+         cancelLock.unlock();
       }
-
-      _VirtualSockets.clear();
 
       try
       {
@@ -580,6 +594,9 @@ class SharedSocket {
          {
             socket.close();
          }
+
+         // release spool memory and delete the spool file
+         spool.close();
       }
    }
 
@@ -609,20 +626,20 @@ class SharedSocket {
     */
    void closeStream( VirtualSocket vsock )
    {
-      // unregister virtual socket
-      _VirtualSockets.remove( vsock.id );
+      // under ioLock, so no packet read for the stream is spooled afterwards
+      ioLock.lock();
 
-      if( vsock.diskQueue != null )
+      try
       {
-         try
-         {
-            vsock.diskQueue.close();
-            vsock.queueFile.delete();
-         }
-         catch( IOException ioe )
-         {
-            // ignore errors
-         }
+         // unregister virtual socket
+         _VirtualSockets.remove( vsock.id );
+
+         // release any unread data
+         spool.discard( vsock );
+      }
+      finally
+      {
+         ioLock.unlock();
       }
    }
 
@@ -645,9 +662,13 @@ class SharedSocket {
      */
     byte[] sendNetPacket(VirtualSocket vsock, byte buffer[])
             throws IOException {
-        synchronized (_VirtualSockets) {
+        if (pipeline) {
+            return sendPipelined(vsock, buffer);
+        }
 
-            while (vsock.inputPkts > 0) {
+        ioLock.lock();
+        try {
+            if (vsock.inputPkts > 0) {
                 //
                 // There is unread data in the input buffers.
                 // As we are sending another packet we can just discard it now.
@@ -655,7 +676,7 @@ class SharedSocket {
                 if (Logger.isActive()) {
                     Logger.println("TdsSocket: Unread data in input packet queue");
                 }
-                dequeueInput(vsock);
+                spool.discard(vsock);
             }
 
             if (responseOwner != null) {
@@ -668,14 +689,15 @@ class SharedSocket {
                 boolean ourData = (responseOwner == vsock);
                 final VirtualSocket tmpSock = responseOwner;
                 do {
-                    // Reuse the buffer if it's our data; we don't need it
-                    tmpBuf = readPacket(ourData ? tmpBuf : null);
+                    // Reuse the buffer, spooled data is copied
+                    tmpBuf = readPacket(spoolBuffer);
+                    spoolBuffer = tmpBuf;
 
-                    if (!ourData) {
+                    if (!ourData && _VirtualSockets.containsKey(tmpSock.id)) {
                         // We need to save this input as it belongs to
                         // Another thread.
-                        enqueueInput(tmpSock, tmpBuf);
-                    }   // Any of our input is discarded.
+                        spool.enqueue(tmpSock, tmpBuf);
+                    }   // Any of our input or that of a closed stream is discarded.
                 } while (tmpBuf[1] == 0); // Read all data to complete TDS packet
             }
             //
@@ -684,13 +706,86 @@ class SharedSocket {
             //
             getOut().write(buffer, 0, getPktLen(buffer));
 
-            if (buffer[1] != 0) {
+            if ((buffer[1] & TdsCore.STATUS_EOM) != 0) {
                 getOut().flush();
                 // We are the response owner now
-                responseOwner = vsock;
+                cancelLock.lock();
+                try {
+                    responseOwner = vsock;
+                } finally {
+                    cancelLock.unlock();
+                }
             }
 
             return buffer;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Send a network packet in pipelined mode. Responses outstanding for
+     * other virtual sockets are left on the network, only an unread response
+     * for the sending socket itself has to be skipped first.
+     *
+     * @see #sendNetPacket
+     */
+    private byte[] sendPipelined(VirtualSocket vsock, byte buffer[])
+            throws IOException {
+        if (isPending(vsock) || vsock.inputPkts > 0) {
+            if (Logger.isActive()) {
+                Logger.println("TdsSocket: Discarding unread response of stream " + vsock.id);
+            }
+            // read up to the end of our own response, spooling others'
+            byte[] discard = null;
+            while (isPending(vsock)) {
+                discard = getPipelined(vsock, discard);
+            }
+            ioLock.lock();
+            try {
+                spool.discard(vsock);
+            } finally {
+                ioLock.unlock();
+            }
+        }
+
+        sendLock.lock();
+        try {
+            getOut().write(buffer, 0, getPktLen(buffer));
+
+            if ((buffer[1] & TdsCore.STATUS_EOM) != 0) {
+                getOut().flush();
+                sending = false;
+                // Queue up for the response
+                cancelLock.lock();
+                try {
+                    if (responseOwner == null) {
+                        responseOwner = vsock;
+                    } else {
+                        pipelined.add(vsock);
+                    }
+                } finally {
+                    cancelLock.unlock();
+                }
+            } else {
+                sending = true;
+            }
+
+            return buffer;
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a response is outstanding for a virtual socket.
+     */
+    private boolean isPending(VirtualSocket vsock) {
+        cancelLock.lock();
+        try {
+            return responseOwner == vsock || pipelined.contains(vsock);
+        } finally {
+            cancelLock.unlock();
         }
     }
 
@@ -711,11 +806,15 @@ class SharedSocket {
      *    if an I/O error occurs
      */
     byte[] getNetPacket(VirtualSocket vsock, byte buffer[]) throws IOException {
-        synchronized (_VirtualSockets) {
+        if (pipeline) {
+            return getPipelined(vsock, buffer);
+        }
 
+        ioLock.lock();
+        try {
             // Return any cached input
             if (vsock.inputPkts > 0) {
-                return dequeueInput(vsock);
+                return spool.dequeue(vsock, buffer);
             }
 
             // Nothing cached see if we are expecting network data
@@ -728,133 +827,100 @@ class SharedSocket {
 
             // Simple case we are reading our input directly from the server
             return readPacket(buffer);
+        } finally {
+            ioLock.unlock();
         }
     }
 
-   /**
-    * <p> Save a packet buffer in a memory queue or to a disk queue if the
-    * global memory limit for the driver has been exceeded. </p>
-    *
-    * @param vsock
-    *    the virtual socket owning this data
-    *
-    * @param buffer
-    *    the data to queue
-    */
-   private void enqueueInput( VirtualSocket vsock, byte[] buffer )
-      throws IOException
-   {
-      // check to see if we should start caching to disk
-      if( _MemUsage.get() + buffer.length > memoryBudget && vsock.pktQueue.size() >= minMemPkts && !securityViolation && vsock.diskQueue == null )
-      {
-         // try to create a disk file for the queue
-         try
-         {
-            vsock.queueFile = File.createTempFile( "jtds", ".tmp", bufferDir );
-            // vsock.queueFile.deleteOnExit(); memory leak, see http://bugs.java.com/bugdatabase/view_bug.do?bug_id=6664633
-            vsock.diskQueue = new RandomAccessFile( vsock.queueFile, "rw" );
-
-            // write current cache contents to disk and free memory
-            byte[] tmpBuf;
-
-            while( vsock.pktQueue.size() > 0 )
-            {
-               tmpBuf = (byte[]) vsock.pktQueue.removeFirst();
-               vsock.diskQueue.write( tmpBuf, 0, getPktLen( tmpBuf ) );
-               vsock.pktsOnDisk ++;
-            }
-         }
-         catch( java.lang.SecurityException se )
-         {
-            // not allowed to cache to disk so carry on in memory
-            securityViolation = true;
-            vsock.queueFile = null;
-            vsock.diskQueue = null;
-         }
-      }
-
-      if( vsock.diskQueue != null )
-      {
-         // cache file exists so append buffer to it
-         vsock.diskQueue.write( buffer, 0, getPktLen( buffer ) );
-         vsock.pktsOnDisk ++;
-      }
-      else
-      {
-         // will cache in memory
-         vsock.pktQueue.addLast( buffer );
-         int gm = _MemUsage.addAndGet( buffer.length );
+    /**
+     * Get a network packet in pipelined mode. One thread at a time reads from
+     * the network without holding the {@link #ioLock}; it
+     * spools the responses preceding its own one, so their owners can pick
+     * them up while the reader keeps waiting for its own response.
+     *
+     * @see #getNetPacket
+     */
+    private byte[] getPipelined(VirtualSocket vsock, byte buffer[]) throws IOException {
+        boolean interrupted = false;
 
-         if( gm > peakMemUsage )
-         {
-            peakMemUsage = gm;
-         }
-      }
+        try {
+            ioLock.lock();
+            try {
+                while (true) {
+                    // Return any cached input
+                    if (vsock.inputPkts > 0) {
+                        return spool.dequeue(vsock, buffer);
+                    }
 
-      vsock.inputPkts ++;
-   }
+                    if (!reading) {
+                        if (!isPending(vsock))
+                            throw new IOException( "Stream " + vsock.id + " attempting to read when no request has been sent" );
 
-   /**
-    * <p> Read a cached packet from the in memory queue or from a disk based
-    * queue. </p>
-    *
-    * @param vsock
-    *    the virtual socket owning this data
-    *
-    * @return
-    *    a buffer containing the packet
-    */
-   private byte[] dequeueInput( VirtualSocket vsock )
-      throws IOException
-   {
-      byte[] buffer = null;
+                        // We are the reader now
+                        reading = true;
+                        break;
+                    }
 
-      if( vsock.pktsOnDisk > 0 )
-      {
-         // data is cached on disk
-         if( vsock.diskQueue.getFilePointer() == vsock.diskQueue.length() )
-         {
-            // first read so rewind() file
-            vsock.diskQueue.seek( 0L );
-         }
+                    // The reader might be about to spool our data
 
-         vsock.diskQueue.readFully( hdrBuf, 0, TDS_HDR_LEN );
+                    try {
+                        spooled.await();
+                    } catch (InterruptedException e) {
+                        // JDBC can not be interrupted, keep waiting
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                ioLock.unlock();
+            }
 
-         int len = getPktLen( hdrBuf );
+            try {
+                while (true) {
+                    VirtualSocket owner;
+                    cancelLock.lock();
+                    try {
+                        owner = responseOwner;
+                    } finally {
+                        cancelLock.unlock();
+                    }
 
-         buffer = new byte[len];
-         System.arraycopy( hdrBuf, 0, buffer, 0, TDS_HDR_LEN );
-         vsock.diskQueue.readFully( buffer, TDS_HDR_LEN, len - TDS_HDR_LEN );
-         vsock.pktsOnDisk--;
+                    if (owner == vsock) {
+                        return readPacket(buffer);
+                    }
 
-         if( vsock.pktsOnDisk < 1 )
-         {
-            // file now empty so close and delete it
-            try
-            {
-               vsock.diskQueue.close();
-               vsock.queueFile.delete();
+                    // No response expected, neither for us nor for a
+                    // preceding request
+                    if (owner == null)
+                        throw new IOException( "Stream " + vsock.id + " attempting to read when no request has been sent" );
+
+                    // Spool the response to a preceding request
+                    spoolBuffer = readPacket(spoolBuffer);
+
+                    ioLock.lock();
+                    try {
+                        if (_VirtualSockets.containsKey(owner.id)) {
+                            spool.enqueue(owner, spoolBuffer);
+                            spooled.signalAll();
+                        }
+                    } finally {
+                        ioLock.unlock();
+                    }
+                }
+            } finally {
+                ioLock.lock();
+                try {
+                    reading = false;
+                    spooled.signalAll();
+                } finally {
+                    ioLock.unlock();
+                }
             }
-            finally
-            {
-               vsock.queueFile = null;
-               vsock.diskQueue = null;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
-         }
-      }
-      else if( vsock.pktQueue.size() > 0 )
-      {
-         buffer = (byte[]) vsock.pktQueue.removeFirst();
-         _MemUsage.addAndGet( -buffer.length );
-      }
-
-      if( buffer != null )
-      {
-         vsock.inputPkts --;
-      }
-
-      return buffer;
-   }
+        }
+    }
 
     /**
      * Read a physical TDS packet from the network.
@@ -919,7 +985,8 @@ class SharedSocket {
             buffer[1] = 1;
         }
 
-        synchronized (cancelMonitor) {
+        cancelLock.lock();
+        try {
             //
             // If a cancel request is outstanding check that the last TDS packet
             // is a TDS_DONE with the "cancek ACK" flag set. If it isn't set the
@@ -965,9 +1032,12 @@ class SharedSocket {
             }
 
             if (buffer[1] != 0) {
-                // End of response; connection now free
-                responseOwner = null;
+                // End of response; connection now free or the next pipelined
+                // request's response follows
+                responseOwner = pipelined.poll();
             }
+        } finally {
+            cancelLock.unlock();
         }
 
         return buffer;
@@ -0,0 +1,121 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * <p> Result of an asynchronously executed statement, see
+ * {@link JtdsStatement#executeAsync(String)}. </p>
+ *
+ * <p> Canceling a future that has not been started yet removes it from its
+ * connection's queue, so the statement is never executed. Canceling a running
+ * future with <code>mayInterruptIfRunning</code> set doesn't interrupt the
+ * executing thread, which would leave the connection in an undefined state,
+ * but cancels the request on the server using {@link JtdsStatement#cancel()},
+ * the same way a query timeout does. </p>
+ *
+ * <p> As for any {@link FutureTask}, {@link #isCancelled()} and {@link
+ * #isDone()} return <code>true</code> as soon as {@link #cancel(boolean)}
+ * succeeded, although a running statement only stops once the server has
+ * acknowledged the cancel. Until then the connection is still busy with the
+ * statement and the next queued statement isn't started; {@link #get()}
+ * doesn't wait for this but throws a <code>CancellationException</code>
+ * right away. </p>
+ */
+class StatementFuture<V> extends FutureTask<V>
+{
+
+   private final JtdsStatement         _Statement;
+
+   /**
+    * the executor the future has been queued with
+    */
+   private volatile ThreadPoolExecutor _Executor;
+
+   /**
+    * whether the statement execution has been started
+    */
+   private volatile boolean            _Started;
+
+   /**
+    * Creates a future for the given statement.
+    *
+    * @param statement
+    *    the statement executing the task
+    *
+    * @param task
+    *    the task executing the statement
+    */
+   StatementFuture( JtdsStatement statement, Callable<V> task )
+   {
+      super( task );
+      _Statement = statement;
+   }
+
+   /**
+    * Called by the connection before the future is queued.
+    *
+    * @param executor
+    *    the connection's executor for asynchronous statements
+    */
+   void setExecutor( ThreadPoolExecutor executor )
+   {
+      _Executor = executor;
+   }
+
+   @Override
+   public void run()
+   {
+      _Started = true;
+      super.run();
+   }
+
+   @Override
+   public boolean cancel( boolean mayInterruptIfRunning )
+   {
+      boolean cancelled = super.cancel( false );
+
+      if( cancelled && ! _Started )
+      {
+         ThreadPoolExecutor executor = _Executor;
+
+         if( executor != null )
+         {
+            executor.remove( this );
+         }
+      }
+      else if( cancelled && mayInterruptIfRunning )
+      {
+         try
+         {
+            _Statement.cancel();
+         }
+         catch( SQLException e )
+         {
+            // statement already closed, nothing to cancel
+         }
+      }
+
+      return cancelled;
+   }
+
+}
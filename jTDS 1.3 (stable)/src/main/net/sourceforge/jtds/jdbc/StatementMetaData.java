@@ -0,0 +1,174 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import net.sourceforge.jtds.jdbc.cache.ConcurrentLRUCache;
+
+/**
+ * <p> Connection independent meta data of a prepared SQL Server statement,
+ * shared by all connections to the same server and database using the same
+ * login and character set. </p>
+ *
+ * <p> Statement handles are only valid for the connection that prepared the
+ * statement and are still kept per connection in {@link ProcEntry}s, but the
+ * parameter definitions and result set meta data are the same for all these
+ * connections. Sharing them allows a connection to execute a statement with
+ * <code>noMetaData</code> set as soon as any other connection prepared it,
+ * instead of having to wait for the meta data returned by its own
+ * <code>sp_prepare</code>. </p>
+ *
+ * <p> Only used if the <code>shareMetaData</code> connection property is set.
+ * The cache is bounded to {@link #MAX_ENTRIES} entries, once it is full the
+ * least recently used entries are evicted. </p>
+ */
+final class StatementMetaData
+{
+
+   /**
+    * maximum number of statements cached
+    */
+   static final int                                                MAX_ENTRIES = 1000;
+
+   /**
+    * driver-wide cache, keyed by connection and statement key
+    */
+   private static final ConcurrentLRUCache<String,StatementMetaData> _Cache      = new ConcurrentLRUCache<>( MAX_ENTRIES, 16, new ConcurrentLRUCache.Weigher<String,StatementMetaData>()
+   {
+      @Override
+      public int weigh( String key, StatementMetaData value )
+      {
+         return 1;
+      }
+   } );
+
+   /**
+    * the <code>@P0 type,...</code> parameter definitions
+    */
+   private final String                                            _ParamDefinitions;
+
+   /**
+    * the result set meta data, <code>null</code> until known
+    */
+   private volatile ColInfo[]                                      _Columns;
+
+   private StatementMetaData( String paramDefinitions )
+   {
+      _ParamDefinitions = paramDefinitions;
+   }
+
+   /**
+    * Retrieves the shared meta data of a statement, creating a new entry
+    * without result set meta data if the statement hasn't been prepared yet.
+    *
+    * @param key
+    *    the connection key, see {@link JtdsConnection#getMetaDataKey()},
+    *    followed by the statement key as returned by
+    *    {@link Support#getStatementKey}
+    *
+    * @param params
+    *    the statement parameters, with native types already set
+    *
+    * @return
+    *    the shared meta data, never <code>null</code>
+    */
+   static StatementMetaData get( String key, ParamInfo[] params )
+   {
+      StatementMetaData meta = _Cache.get( key );
+
+      if( meta == null )
+      {
+         // the cache has no atomic put-if-absent, so make sure all connections
+         // preparing the same statement at the same time get the same entry
+         synchronized( _Cache )
+         {
+            meta = _Cache.get( key );
+
+            if( meta == null )
+            {
+               meta = new StatementMetaData( Support.getParameterDefinitions( params ) );
+               _Cache.put( key, meta );
+            }
+         }
+      }
+
+      return meta;
+   }
+
+   /**
+    * Removes all entries from the cache.
+    */
+   static void clear()
+   {
+      _Cache.clear();
+   }
+
+   /**
+    * @return
+    *    the number of statements currently cached
+    */
+   static int size()
+   {
+      return _Cache.size();
+   }
+
+   /**
+    * @return
+    *    the parameter definitions as used by <code>sp_prepare</code>,
+    *    <code>sp_prepexec</code> and <code>sp_executesql</code>
+    */
+   String getParamDefinitions()
+   {
+      return _ParamDefinitions;
+   }
+
+   /**
+    * @return
+    *    the result set meta data or <code>null</code> if no connection has
+    *    prepared the statement yet or the statement doesn't return a result
+    *    set
+    */
+   ColInfo[] getColumns()
+   {
+      return _Columns;
+   }
+
+   /**
+    * Shares the result set meta data returned by <code>sp_prepare</code>.
+    * If another connection already did the same, its meta data is kept and
+    * returned, so all connections use the same instances.
+    *
+    * @param columns
+    *    the result set meta data returned to the calling connection
+    *
+    * @return
+    *    the shared result set meta data
+    */
+   ColInfo[] share( ColInfo[] columns )
+   {
+      ColInfo[] shared = _Columns;
+
+      if( shared != null )
+      {
+         return shared;
+      }
+
+      _Columns = columns;
+      return columns;
+   }
+
+}
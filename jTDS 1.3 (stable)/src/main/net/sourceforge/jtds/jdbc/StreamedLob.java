@@ -0,0 +1,349 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.sql.SQLException;
+
+/**
+ * <p> A TEXT, NTEXT or IMAGE value in the last column of a row that has not
+ * been read from the server response yet, used if the <code>streamLobs</code>
+ * connection property is set. </p>
+ *
+ * <p> Values exceeding the <code>lobBuffer</code> size would otherwise be
+ * copied into a temporary file before the row is available. Instead, the
+ * value is left in the response and {@link #getBinaryStream()} or {@link
+ * #getCharacterStream()} read it directly from the network, using constant
+ * memory. If the value is requested in any other form, or the result set
+ * moves on before a stream has been requested, the value is {@link
+ * #materialize() materialized} into a {@link BlobImpl} or {@link ClobImpl}
+ * as usual. A stream returned earlier is closed when the result set moves
+ * on, any data not read by then is skipped. </p>
+ */
+final class StreamedLob
+{
+
+   /**
+    * the value is still in the response, nothing read yet
+    */
+   private static final int   PENDING   = 0;
+
+   /**
+    * a stream has been handed out and is reading the value
+    */
+   private static final int   STREAMING = 1;
+
+   /**
+    * the value has been materialized
+    */
+   private static final int   DONE      = 2;
+
+   /**
+    * the result set moved on before the stream was read completely
+    */
+   private static final int   CLOSED    = 3;
+
+   private final JtdsConnection _Connection;
+
+   private final ResponseStream _In;
+
+   private final ColInfo        _Column;
+
+   /**
+    * number of bytes of the value still in the response
+    */
+   private int                  _Remaining;
+
+   private int                  _State;
+
+   /**
+    * the materialized value, if any
+    */
+   private Object               _Value;
+
+   private StreamedLob( JtdsConnection connection, ResponseStream in, ColInfo column, int length )
+   {
+      _Connection = connection;
+      _In         = in;
+      _Column     = column;
+      _Remaining  = length;
+   }
+
+   /**
+    * Checks whether a column can be streamed, i.e. is a TEXT, NTEXT or IMAGE
+    * column sent by a TDS 7.0+ server.
+    *
+    * @param in
+    *    the server response
+    *
+    * @param column
+    *    the column descriptor
+    */
+   static boolean isStreamable( ResponseStream in, ColInfo column )
+   {
+      return in.getTdsVersion() >= Driver.TDS70 && TdsData.isStreamableType( column );
+   }
+
+   /**
+    * Reads the header of a streamable column value, see {@link
+    * #isStreamable}. Values not exceeding the <code>lobBuffer</code> size are
+    * read completely.
+    *
+    * @return
+    *    <code>null</code> for a <code>NULL</code> value, the {@link BlobImpl}
+    *    or {@link ClobImpl} for small values or a pending {@link StreamedLob}
+    */
+   static Object read( JtdsConnection connection, ResponseStream in, ColInfo column )
+      throws IOException
+   {
+      if( in.read() == 0 )
+      {
+         return null;
+      }
+
+      in.skip( 24 ); // skip textptr and timestamp
+
+      StreamedLob lob = new StreamedLob( connection, in, column, in.readInt() );
+      return lob._Remaining <= connection.getLobBuffer() ? lob.materialize() : lob;
+   }
+
+   /**
+    * Reads the value from the response into a {@link BlobImpl} or {@link
+    * ClobImpl}, unless done before.
+    *
+    * @return
+    *    the value
+    *
+    * @throws IOException
+    *    if a stream has already been requested or an I/O error occurs
+    */
+   Object materialize()
+      throws IOException
+   {
+      if( _Value != null )
+      {
+         return _Value;
+      }
+
+      if( _State != PENDING )
+      {
+         throw new IOException( "The LOB value has already been read as a stream" );
+      }
+
+      try
+      {
+         OutputStream out;
+
+         if( TdsData.isImageType( _Column ) )
+         {
+            BlobImpl blob = new BlobImpl( _Connection );
+            out = blob.setBinaryStream( 1 );
+            _Value = blob;
+         }
+         else
+         {
+            ClobImpl clob = new ClobImpl( _Connection );
+            out = clob.getBlobBuffer().setBinaryStream( 1, false );
+            _Value = clob;
+         }
+
+         if( ! TdsData.isImageType( _Column ) && ! TdsData.isUnicode( _Column ) )
+         {
+            // stored as UTF-16LE, as done by TdsData.readData()
+            Reader reader = getCharacterStream();
+            char[] chars = new char[1024];
+            byte[] bytes = new byte[chars.length * 2];
+
+            for( int count; ( count = reader.read( chars ) ) > 0; )
+            {
+               for( int i = 0; i < count; i ++ )
+               {
+                  bytes[i * 2]     = (byte) chars[i];
+                  bytes[i * 2 + 1] = (byte) ( chars[i] >> 8 );
+               }
+
+               out.write( bytes, 0, count * 2 );
+            }
+         }
+         else
+         {
+            InputStream in = getBinaryStream();
+            byte[] buffer = new byte[4096];
+
+            for( int count; ( count = in.read( buffer ) ) > 0; )
+            {
+               out.write( buffer, 0, count );
+            }
+         }
+
+         out.close();
+      }
+      catch( SQLException e )
+      {
+         // transform setBinaryStream SQLException
+         throw new IOException( e.getMessage() );
+      }
+
+      _State = DONE;
+      return _Value;
+   }
+
+   /**
+    * @return
+    *    whether the value is still in the response and may be read as a
+    *    stream
+    */
+   boolean isPending()
+   {
+      return _State == PENDING && _Value == null;
+   }
+
+   /**
+    * @return
+    *    whether the value has been handed out as a stream and cannot be
+    *    materialized anymore
+    */
+   boolean isStreamed()
+   {
+      return _State != PENDING && _Value == null;
+   }
+
+   /**
+    * @return
+    *    whether the value is a TEXT or NTEXT value
+    */
+   boolean isCharacterData()
+   {
+      return ! TdsData.isImageType( _Column );
+   }
+
+   /**
+    * Returns a stream reading the raw bytes of the value from the response.
+    * May only be called once, while the value is {@link #isPending pending}.
+    */
+   InputStream getBinaryStream()
+   {
+      _State = STREAMING;
+
+      return new InputStream()
+      {
+         @Override
+         public int read()
+            throws IOException
+         {
+            if( _State == CLOSED )
+            {
+               throw new IOException( "The LOB stream has been closed by moving to the next row" );
+            }
+
+            if( _Remaining == 0 )
+            {
+               return -1;
+            }
+
+            _Remaining --;
+            return _In.read();
+         }
+
+         @Override
+         public int read( byte[] b, int off, int len )
+            throws IOException
+         {
+            if( _State == CLOSED )
+            {
+               throw new IOException( "The LOB stream has been closed by moving to the next row" );
+            }
+
+            if( _Remaining == 0 )
+            {
+               return -1;
+            }
+
+            int count = _In.read( b, off, Math.min( len, _Remaining ) );
+
+            if( count > 0 )
+            {
+               _Remaining -= count;
+            }
+
+            return count;
+         }
+
+         /**
+          * Returns the number of bytes of the value left in the current
+          * packet, more data may still be on its way from the server.
+          */
+         @Override
+         public int available()
+         {
+            return _State == CLOSED ? 0 : Math.min( _Remaining, _In.available() );
+         }
+      };
+   }
+
+   /**
+    * Returns a reader decoding the value while reading it from the response.
+    * May only be called once, while the value is {@link #isPending pending}.
+    */
+   Reader getCharacterStream()
+      throws UnsupportedEncodingException
+   {
+      String charset;
+
+      if( TdsData.isUnicode( _Column ) )
+      {
+         charset = "UTF-16LE";
+      }
+      else
+      {
+         charset = _Column.charsetInfo != null ? _Column.charsetInfo.getCharset() : _Connection.getCharset();
+      }
+
+      return new InputStreamReader( getBinaryStream(), charset );
+   }
+
+   /**
+    * Called before the response is read any further. Materializes the value
+    * if no stream has been requested and the value is still needed,
+    * otherwise skips what has not been read by the stream.
+    *
+    * @param needed
+    *    whether the row may still be accessed, <code>false</code> if the
+    *    result set moves on to the next row
+    */
+   void finish( boolean needed )
+      throws IOException
+   {
+      if( needed && _State == PENDING && _Value == null )
+      {
+         materialize();
+      }
+      else if( _State != DONE && _Remaining > 0 )
+      {
+         _In.skip( _Remaining );
+         _Remaining = 0;
+         _State = CLOSED;
+      }
+   }
+
+}
@@ -0,0 +1,167 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbc;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * <p> A set of rows that can be bound to a prepared statement parameter using
+ * <code>setObject()</code> and used as a table in the SQL statement, e.g. to
+ * look up or update a large number of keys with a single statement: </p>
+ *
+ * <pre>
+ * PreparedStatement ps = con.prepareStatement(
+ *    "SELECT o.* FROM orders o JOIN ? k ON o.id = k.id" );
+ * ps.setObject( 1, new TableValue( new String[] { "id" }, null, ids ) );
+ * ResultSet rs = ps.executeQuery();
+ * </pre>
+ *
+ * <p> Table-valued parameters require TDS 7.3, so the rows are instead bulk
+ * loaded into a temporary table (the same way batched inserts are loaded if
+ * the <code>useBulkInsert</code> connection property is set), and the
+ * parameter marker is replaced by the name of that table. The table belongs
+ * to the statement, it is recreated for every execution and dropped when the
+ * statement is closed. </p>
+ *
+ * <p> The column types are either given explicitly as
+ * <code>java.sql.Types</code> constants, converting the values as
+ * <code>setObject(int, Object, int)</code> would, or are derived from the
+ * first non-null value of each column. Only types that can be bulk loaded are
+ * supported, i.e. no <code>TEXT</code>, <code>NTEXT</code> or
+ * <code>IMAGE</code> values, and all values of a column must map to the same
+ * server type. Table values are only supported by SQL Server 2000 and later
+ * and cannot be used in batches or stored procedure calls. </p>
+ */
+public final class TableValue
+{
+
+   private final String[]           _Names;
+
+   private final int[]              _Types;
+
+   private final Iterable<Object[]> _Iterable;
+
+   private Iterator<Object[]>       _Iterator;
+
+   /**
+    * Creates a table value that can be used for any number of executions.
+    *
+    * @param names
+    *    the column names
+    *
+    * @param types
+    *    the <code>java.sql.Types</code> of the columns or <code>null</code>
+    *    to derive the types from the values
+    *
+    * @param rows
+    *    the rows, each row holding one value per column
+    */
+   public TableValue( String[] names, int[] types, Iterable<Object[]> rows )
+   {
+      this( names, types, rows, null );
+   }
+
+   /**
+    * Creates a table value that reads the rows from an iterator, so it can
+    * only be used for a single execution.
+    *
+    * @param names
+    *    the column names
+    *
+    * @param types
+    *    the <code>java.sql.Types</code> of the columns or <code>null</code>
+    *    to derive the types from the values
+    *
+    * @param rows
+    *    the rows, each row holding one value per column
+    */
+   public TableValue( String[] names, int[] types, Iterator<Object[]> rows )
+   {
+      this( names, types, null, rows );
+   }
+
+   private TableValue( String[] names, int[] types, Iterable<Object[]> iterable, Iterator<Object[]> iterator )
+   {
+      if( names == null || names.length == 0 || types != null && types.length != names.length || iterable == null && iterator == null )
+      {
+         throw new IllegalArgumentException();
+      }
+
+      _Names    = names.clone();
+      _Types    = types == null ? null : types.clone();
+      _Iterable = iterable;
+      _Iterator = iterator;
+   }
+
+   /**
+    * @return
+    *    the column names
+    */
+   public String[] getNames()
+   {
+      return _Names.clone();
+   }
+
+   /**
+    * @return
+    *    the declared type of a column or <code>Types.NULL</code> if the type
+    *    is derived from the values
+    */
+   int getType( int column )
+   {
+      return _Types == null ? java.sql.Types.NULL : _Types[column];
+   }
+
+   /**
+    * @return
+    *    the number of columns
+    */
+   int getColumnCount()
+   {
+      return _Names.length;
+   }
+
+   /**
+    * @return
+    *    the column name, enclosed in brackets and with closing brackets
+    *    doubled, see {@link SQLParser#unquoteName}
+    */
+   String getQuotedName( int column )
+   {
+      return '[' + _Names[column].replace( "]", "]]" ) + ']';
+   }
+
+   /**
+    * @return
+    *    the rows, an exhausted iterator is returned if the rows have been
+    *    read from an iterator before
+    */
+   Iterator<Object[]> rows()
+   {
+      if( _Iterable != null )
+      {
+         return _Iterable.iterator();
+      }
+
+      Iterator<Object[]> rows = _Iterator;
+      _Iterator = Collections.<Object[]>emptyList().iterator();
+      return rows;
+   }
+
+}
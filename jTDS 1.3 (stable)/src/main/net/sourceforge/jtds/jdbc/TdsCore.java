@@ -28,7 +28,9 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.ietf.jgss.GSSContext;
 import org.ietf.jgss.GSSException;
@@ -176,6 +178,10 @@ public class TdsCore {
     public static final int MAX_PKT_SIZE = 32768;
     /** The size of the packet header. */
     public static final int PKT_HDR_LEN = 8;
+    /** Packet header status bit marking the last packet of a message. */
+    static final int STATUS_EOM = 0x01;
+    /** TDS 7.1 packet header status bit requesting a connection reset. */
+    static final int STATUS_RESETCONNECTION = 0x08;
     /** TDS 4.2 or 7.0 Query packet. */
     public static final byte QUERY_PKT = 1;
     /** TDS 4.2 or 5.0 Login packet. */
@@ -186,6 +192,8 @@ public class TdsCore {
     public static final byte REPLY_PKT = 4;
     /** TDS Cancel packet. */
     public static final byte CANCEL_PKT = 6;
+    /** TDS 7.0 Bulk load data packet. */
+    public static final byte BULK_PKT = 7;
     /** TDS MSDTC packet. */
     public static final byte MSDTC_PKT = 14;
     /** TDS 5.0 Query packet. */
@@ -204,6 +212,10 @@ public class TdsCore {
     public static final int SSL_NO_ENCRYPT = 2;
     /** SSL Mode - Server requested force encryption. */
     public static final int SSL_SERVER_FORCE_ENCRYPT = 3;
+    /** Pre login option - SSL mode. */
+    private static final int PRELOGIN_ENCRYPTION = 1;
+    /** Pre login option - instance name. */
+    private static final int PRELOGIN_INSTOPT = 2;
 
     //
     // Sub packet types
@@ -398,6 +410,8 @@ public class TdsCore {
     private final ResponseStream in;
     /** True if the server response is fully read. */
     private boolean endOfResponse = true;
+    /** True if the connection can't be used if the pending response reports an error. */
+    private boolean checkResponse;
     /** True if the current result set is at end of file. */
     private boolean endOfResults  = true;
     /** The array of column meta data objects for this result set. */
@@ -406,6 +420,12 @@ public class TdsCore {
     private ColInfo[] computedColumns;
     /** The array of column data objects in the current row. */
     private Object[] rowData;
+    /** The buffer for primitive values of the current row, if lazy decoding is used. */
+    private RowBuffer rowBuffer;
+    /** The columns of the result set streaming its last LOB column, if any. */
+    private ColInfo[] lobColumns;
+    /** The LOB value of the current row still in the response, if any. */
+    private StreamedLob pendingLob;
     /** The array of computed column data objects in the current row. */
     private Object[] computedRowData;
     /** The array of table names associated with this result. */
@@ -420,6 +440,10 @@ public class TdsCore {
     private ParamInfo[] parameters;
     /** The index of the next output parameter to populate. */
     private int nextParam = -1;
+    /** Statement to prepare with the next execution, see {@link #setPrepExec}. */
+    private ProcEntry prepExec;
+    /** Statement prepared by the current request, waiting for its handle. */
+    private ProcEntry prepExecSent;
     /** The head of the diagnostic messages chain. */
     private final SQLDiagnostic messages;
     /** Indicates that this object is closed. */
@@ -437,8 +461,16 @@ public class TdsCore {
     private int sslMode = SSL_NO_ENCRYPT;
     /** Indicates pending cancel that needs to be cleared. */
     private boolean cancelPending;
-    /** Synchronization monitor for {@link #cancelPending}. */
-    private final int[] cancelMonitor = new int[1];
+    /** Type of the pending cancel, {@link #ASYNC_CANCEL} or {@link #TIMEOUT_CANCEL}. */
+    private int cancelType;
+    /** Lock guarding {@link #cancelPending} and {@link #cancelType}. */
+    private final ReentrantLock cancelLock = new ReentrantLock();
+    /**
+     * Serializes the execution of requests. A lock rather than a monitor, so
+     * that threads blocked in network I/O while holding it don't pin their
+     * carrier thread when running as virtual threads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
 
     /**
      * flag set to {@code true} whenever a TDS_ERROR token is received
@@ -539,9 +571,47 @@ public class TdsCore {
      * @return the row data as an <code>Object</code> array
      */
     Object[] getRowData() {
+        if (rowBuffer != null && rowData != null && rowBuffer.getColumns() == columns) {
+            rowBuffer.materialize(rowData);
+        }
+
+        return rowData;
+    }
+
+    /**
+     * Retrieve the current result set data items without materializing values
+     * held in the {@link RowBuffer}. Entries for pending values are
+     * <code>null</code>.
+     *
+     * @return the row data as an <code>Object</code> array
+     */
+    Object[] getBufferedRowData() {
         return rowData;
     }
 
+    /**
+     * Enable lazy decoding of primitive column values for the rows of the
+     * current result set.
+     *
+     * @return the {@link RowBuffer} holding the primitive values of the current
+     *         row
+     */
+    RowBuffer getRowBuffer() {
+        if (rowBuffer == null || rowBuffer.getColumns() != columns) {
+            rowBuffer = new RowBuffer(columns);
+        }
+
+        return rowBuffer;
+    }
+
+    /**
+     * Enable streaming of large TEXT, NTEXT and IMAGE values in the last
+     * column of the rows of the current result set, see {@link StreamedLob}.
+     */
+    void streamLobs() {
+        lobColumns = columns;
+    }
+
     /**
      * Negotiate SSL settings with SQL 2000+ server.
      * <p/>
@@ -552,31 +622,60 @@ public class TdsCore {
      * <li>2 = No certificate no encryption possible.
      * <li>3 = Server requests force encryption.
      * </ol>
+     * <p/>
+     * If <code>checkInstance</code> is set, the pre login negotiation is
+     * also done with SSL off, to verify that the server is the instance
+     * named. Nothing is negotiated if the server reports a different
+     * instance.
+     *
      * @param instance The server instance name.
      * @param ssl The SSL URL property value.
+     * @param checkInstance Whether to verify the instance name.
+     * @return <code>false</code> if <code>checkInstance</code> is set and
+     *         the server is not the named instance.
      * @throws IOException
      */
-    void negotiateSSL(String instance, String ssl)
+    boolean negotiateSSL(String instance, String ssl, boolean checkInstance)
             throws IOException, SQLException {
+        byte[][] options;
+        boolean forceEncryption = ssl.equalsIgnoreCase(Ssl.SSL_REQUIRE) ||
+                ssl.equalsIgnoreCase(Ssl.SSL_AUTHENTICATE);
         if (!ssl.equalsIgnoreCase(Ssl.SSL_OFF)) {
-            if (ssl.equalsIgnoreCase(Ssl.SSL_REQUIRE) ||
-                    ssl.equalsIgnoreCase(Ssl.SSL_AUTHENTICATE)) {
-                sendPreLoginPacket(instance, true);
-                sslMode = readPreLoginPacket();
-                if (sslMode != SSL_CLIENT_FORCE_ENCRYPT &&
-                    sslMode != SSL_SERVER_FORCE_ENCRYPT) {
-                    throw new SQLException(
-                            Messages.get("error.ssl.encryptionoff"),
-                            "08S01");
-                }
+            sendPreLoginPacket(instance, forceEncryption
+                    ? SSL_CLIENT_FORCE_ENCRYPT : SSL_ENCRYPT_LOGIN);
+            options = readPreLoginPacket();
+        } else if (checkInstance) {
+            sendPreLoginPacket(instance, SSL_NO_ENCRYPT);
+            options = readPreLoginPacket();
+        } else {
+            return true;
+        }
+        if (checkInstance && options[PRELOGIN_INSTOPT] != null
+                && options[PRELOGIN_INSTOPT].length > 0
+                && options[PRELOGIN_INSTOPT][0] != 0) {
+            // The server is not the instance named
+            return false;
+        }
+        if (!ssl.equalsIgnoreCase(Ssl.SSL_OFF)) {
+            if (options[PRELOGIN_ENCRYPTION] != null
+                    && options[PRELOGIN_ENCRYPTION].length > 0) {
+                sslMode = options[PRELOGIN_ENCRYPTION][0];
             } else {
-                sendPreLoginPacket(instance, false);
-                sslMode = readPreLoginPacket();
+                // Response too short to include SSL mode!
+                sslMode = SSL_NO_ENCRYPT;
+            }
+            if (forceEncryption &&
+                    sslMode != SSL_CLIENT_FORCE_ENCRYPT &&
+                    sslMode != SSL_SERVER_FORCE_ENCRYPT) {
+                throw new SQLException(
+                        Messages.get("error.ssl.encryptionoff"),
+                        "08S01");
             }
             if (sslMode != SSL_NO_ENCRYPT) {
                 socket.enableEncryption(ssl);
             }
         }
+        return true;
     }
 
     /**
@@ -768,6 +867,21 @@ public class TdsCore {
         while (!endOfResponse) {
             nextToken();
         }
+
+        if (checkResponse) {
+            checkResponse = false;
+
+            if (messages.exceptions != null) {
+                SQLException e = messages.exceptions;
+                messages.exceptions = null;
+                // The session state is unknown, don't let anyone reuse it
+                connection.setClosed();
+                throw Support.linkException(
+                        new SQLException(
+                                Messages.get("error.connection.setup", e.getMessage()),
+                                "08S01"), e);
+            }
+        }
     }
 
     /**
@@ -831,6 +945,8 @@ public class TdsCore {
 
       try
       {
+         finishLob();
+
          byte x = endOfResponse ? TDS_DONE_TOKEN : (byte) in.peek();
 
          while( x != TDS_ROW_TOKEN && x != TDS_ALTROW && x != TDS_DONE_TOKEN && x != TDS_DONEINPROC_TOKEN && x != TDS_DONEPROC_TOKEN )
@@ -863,7 +979,8 @@ public class TdsCore {
      * <p>
      * Used by Sybase a no-op for Microsoft.
      */
-    synchronized void closeConnection() {
+    void closeConnection() {
+        lock.lock();
         try {
             if (tdsVersion == Driver.TDS50) {
                 socket.setTimeout(1000);
@@ -877,6 +994,8 @@ public class TdsCore {
         } catch (Exception e) {
             // Ignore any exceptions as this connection
             // is closing anyway.
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -891,6 +1010,16 @@ public class TdsCore {
                in.close();
            } finally {
                isClosed = true;
+
+               // Let the next execution of the statement retry sp_prepexec
+               if (prepExecSent != null) {
+                   prepExecSent.setType(ProcEntry.PREPEXEC);
+                   prepExecSent = null;
+               }
+               if (prepExec != null) {
+                   prepExec.setType(ProcEntry.PREPEXEC);
+                   prepExec = null;
+               }
            }
         }
     }
@@ -904,15 +1033,18 @@ public class TdsCore {
         Semaphore mutex = null;
         try {
             mutex = connection.getMutex();
-            synchronized (cancelMonitor) {
+            cancelLock.lock();
+            try {
                 if (!cancelPending && !endOfResponse) {
                     cancelPending = socket.cancel(out.getVirtualSocket());
                 }
                 // If a cancel request was sent, reset the end of response flag
                 if (cancelPending) {
-                    cancelMonitor[0] = timeout ? TIMEOUT_CANCEL : ASYNC_CANCEL;
+                    cancelType = timeout ? TIMEOUT_CANCEL : ASYNC_CANCEL;
                     endOfResponse = false;
                 }
+            } finally {
+                cancelLock.unlock();
             }
         } finally {
             if (mutex != null) {
@@ -921,6 +1053,22 @@ public class TdsCore {
         }
     }
 
+    /**
+     * Acquires the lock serializing request execution on this
+     * <code>TdsCore</code>, for callers that need to execute several requests
+     * atomically. Must be released using {@link #unlock()}.
+     */
+    void lock() {
+        lock.lock();
+    }
+
+    /**
+     * Releases the lock acquired by {@link #lock()}.
+     */
+    void unlock() {
+        lock.unlock();
+    }
+
    /**
     * <p> Submit a simple SQL statement to the server and discard all output.
     * </p>
@@ -950,6 +1098,45 @@ public class TdsCore {
       messages.checkErrors();
    }
 
+    /**
+     * Makes the server reset the session state before it processes the next
+     * request sent by this <code>TdsCore</code>.
+     *
+     * @see RequestStream#setResetConnection()
+     */
+    void setResetConnection() {
+        out.setResetConnection();
+    }
+
+    /**
+     * Marks the response to the request just sent as required to succeed.
+     * Whenever it is read by {@link #clearResponseQueue()}, an error it
+     * reports closes the connection, e.g. if settings sent without waiting
+     * for the response could not be applied.
+     */
+    void setCheckResponse() {
+        checkResponse = true;
+    }
+
+    /**
+     * Requests the statement sent by the next call to {@link #executeSQL} to
+     * be prepared by that same call, using <code>sp_prepexec</code> instead
+     * of a separate <code>sp_prepare</code> round trip. The handle returned
+     * as output parameter is stored in the given <code>ProcEntry</code> as
+     * soon as it is read from the response.
+     * <p/>
+     * If the next call doesn't execute the statement using
+     * <code>sp_executesql</code>, e.g. because it's part of a batch, or if
+     * no handle is returned, the entry is reset to
+     * {@link ProcEntry#PREPEXEC} so that a later execution can prepare it.
+     *
+     * @param proc the statement cache entry, of type {@link ProcEntry#PREPARE}
+     *             with no handle yet
+     */
+    void setPrepExec(ProcEntry proc) {
+        prepExec = proc;
+    }
+
     /**
      * Notifies the <code>TdsCore</code> that a batch is starting. This is so
      * that it knows to use <code>sp_executesql</code> for parameterized
@@ -977,19 +1164,65 @@ public class TdsCore {
      * @param sendNow      whether to send the request now or not
      * @throws SQLException if an error occurs
      */
-    synchronized void executeSQL(String sql,
-                                 String procName,
-                                 ParamInfo[] parameters,
-                                 boolean noMetaData,
-                                 int timeOut,
-                                 int maxRows,
-                                 int maxFieldSize,
-                                 boolean sendNow)
+    void executeSQL(String sql,
+                    String procName,
+                    ParamInfo[] parameters,
+                    boolean noMetaData,
+                    int timeOut,
+                    int maxRows,
+                    int maxFieldSize,
+                    boolean sendNow)
+            throws SQLException {
+        executeSQL(sql, procName, parameters, noMetaData, timeOut, maxRows,
+                maxFieldSize, sendNow, true);
+    }
+
+    /**
+     * Send an SQL batch to the server without waiting for the response. The
+     * response is read before the next request of this <code>TdsCore</code>
+     * or spooled by the next request of any other one.
+     *
+     * @param sql the SQL batch to execute
+     * @throws SQLException if the request could not be sent
+     * @see #setCheckResponse()
+     */
+    void sendSQL(String sql) throws SQLException {
+        executeSQL(sql, null, null, true, 0, -1, -1, true, false);
+    }
+
+    /**
+     * Send an SQL statement with optional parameters to the server.
+     *
+     * @param sql          SQL statement to execute
+     * @param procName     stored procedure to execute or <code>null</code>
+     * @param parameters   parameters for call or null
+     * @param noMetaData   suppress meta data for cursor calls
+     * @param timeOut      optional query timeout or 0
+     * @param maxRows      the maximum number of data rows to return (-1 to
+     *                     leave unaltered)
+     * @param maxFieldSize the maximum number of bytes in a column to return
+     *                     (-1 to leave unaltered)
+     * @param sendNow      whether to send the request now or not
+     * @param waitResponse whether to wait for the start of the response if
+     *                     the request is sent now
+     * @throws SQLException if an error occurs
+     */
+    private void executeSQL(String sql,
+                            String procName,
+                            ParamInfo[] parameters,
+                            boolean noMetaData,
+                            int timeOut,
+                            int maxRows,
+                            int maxFieldSize,
+                            boolean sendNow,
+                            boolean waitResponse)
             throws SQLException {
         boolean sendFailed = true; // Used to ensure mutex is released.
-        _ErrorReceived = false; // reset error token flag
 
+        lock.lock();
         try {
+            _ErrorReceived = false; // reset error token flag
+
             //
             // Obtain a lock on the connection giving exclusive access
             // to the network connection for this thread
@@ -1001,6 +1234,12 @@ public class TdsCore {
             clearResponseQueue();
             messages.exceptions = null;
 
+            if (prepExecSent != null) {
+                // previous sp_prepexec returned no handle
+                prepExecSent.setType(ProcEntry.PREPEXEC);
+                prepExecSent = null;
+            }
+
             //
             // Set the connection row count and text size if required.
             // Once set these will not be changed within a
@@ -1012,6 +1251,7 @@ public class TdsCore {
 
             messages.clearWarnings();
             returnStatus = null;
+            lobColumns = null;
             //
             // Normalize the parameters argument to simplify later checks
             //
@@ -1093,7 +1333,9 @@ public class TdsCore {
                     sendFailed = false;
                     endOfResponse = false;
                     endOfResults  = true;
-                    wait(timeOut);
+                    if (waitResponse) {
+                        wait(timeOut);
+                    }
                 } else {
                     sendFailed = false;
                 }
@@ -1115,6 +1357,12 @@ public class TdsCore {
             if (sendNow) {
                 inBatch = false;
             }
+            if (prepExec != null) {
+                // sp_prepexec not used by this request
+                prepExec.setType(ProcEntry.PREPEXEC);
+                prepExec = null;
+            }
+            lock.unlock();
         }
     }
 
@@ -1128,6 +1376,9 @@ public class TdsCore {
      *                             the Statement was created
      * @param resultSetConcurrency value of the resultSetConcurrency parameter
      *                             when the Statement was created
+     * @param paramDefinitions     the parameter definitions or
+     *                             <code>null</code> to build them from
+     *                             <code>params</code>
      * @return name of the procedure or prepared statement handle.
      * @exception SQLException
      */
@@ -1135,7 +1386,8 @@ public class TdsCore {
                             ParamInfo[] params,
                             boolean needCursor,
                             int resultSetType,
-                            int resultSetConcurrency)
+                            int resultSetConcurrency,
+                            String paramDefinitions)
             throws SQLException {
         //
         checkOpen();
@@ -1195,7 +1447,8 @@ public class TdsCore {
 
             // Setup parameter descriptor param
             prepParam[1] = new ParamInfo(Types.LONGVARCHAR,
-                    Support.getParameterDefinitions(params),
+                    paramDefinitions != null ? paramDefinitions
+                            : Support.getParameterDefinitions(params),
                     ParamInfo.UNICODE);
 
             // Setup sql statement param
@@ -1267,6 +1520,109 @@ public class TdsCore {
         return null;
     }
 
+    /**
+     * Bulk loads rows into a table on a Microsoft server, the same way
+     * <code>bcp</code> does.
+     * <p/>
+     * First an <code>INSERT BULK</code> statement describing the columns is
+     * executed, then all rows are sent in a single bulk load request. Both
+     * requests are sent while holding the connection mutex, as the server
+     * expects nothing but the rows after the <code>INSERT BULK</code>. The
+     * response to the bulk load request has to be processed using {@link
+     * #getBatchCounts}, its update count is the number of rows inserted.
+     *
+     * @param table   the target table
+     * @param columns the column descriptors, see {@link TdsData#getBulkColumns}
+     * @param rows    the parameters of the rows to insert
+     * @param timeOut optional query timeout or 0
+     * @throws SQLException if an error occurs
+     */
+    void bulkInsert(String table, ParamInfo[] columns, List rows, int timeOut)
+            throws SQLException {
+        checkOpen();
+        messages.clearWarnings();
+
+        StringBuilder sql = new StringBuilder(64 + columns.length * 32);
+        sql.append("INSERT BULK ").append(table).append(" (");
+
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i].name).append(' ').append(columns[i].sqlType);
+        }
+
+        sql.append(") WITH (CHECK_CONSTRAINTS, FIRE_TRIGGERS, KEEP_NULLS)");
+
+        Semaphore mutex = null;
+
+        lock.lock();
+        try {
+            _ErrorReceived = false;
+            mutex = connection.getMutex();
+            clearResponseQueue();
+            messages.exceptions = null;
+            parameters = null;
+            returnParam = null;
+            nextParam = -1;
+
+            out.setPacketType(QUERY_PKT);
+            out.write(sql.toString());
+            out.flush();
+            endOfResponse = false;
+            clearResponseQueue();
+            messages.checkErrors();
+
+            out.setPacketType(BULK_PKT);
+            out.write(TDS7_RESULT_TOKEN);
+            out.write((short) columns.length);
+
+            for (int i = 0; i < columns.length; i++) {
+                String name = SQLParser.unquoteName(columns[i].name);
+
+                out.write((short) 0);      // user type
+                out.write((short) 0x0009); // nullable, updateable
+                TdsData.writeBulkType(out, columns[i]);
+                out.write((byte) name.length());
+                out.write(name);
+            }
+
+            for (int r = 0; r < rows.size(); r++) {
+                ParamInfo[] row = (ParamInfo[]) rows.get(r);
+
+                out.write(TDS_ROW_TOKEN);
+
+                for (int i = 0; i < columns.length; i++) {
+                    TdsData.writeBulkValue(out, columns[i], row[i]);
+                }
+            }
+
+            out.write(TDS_DONE_TOKEN);
+            out.write((short) 0);
+            out.write((short) 0);
+            out.write(0);
+            out.flush();
+
+            mutex.release();
+            mutex = null;
+            endOfResponse = false;
+            endOfResults  = true;
+            wait(timeOut);
+        } catch (IOException ioe) {
+            connection.setClosed();
+            throw Support.linkException(
+                new SQLException(
+                       Messages.get(
+                                "error.generic.ioerror", ioe.getMessage()),
+                                    "08S01"), ioe);
+        } finally {
+            if (mutex != null) {
+                mutex.release();
+            }
+            lock.unlock();
+        }
+    }
+
     /**
      * Creates a light weight stored procedure on a Sybase server.
      *
@@ -1275,7 +1631,7 @@ public class TdsCore {
      * @return name of the procedure
      * @throws SQLException if an error occurs
      */
-    synchronized String sybasePrepare(String sql, ParamInfo[] params)
+    String sybasePrepare(String sql, ParamInfo[] params)
             throws SQLException {
         checkOpen();
         messages.clearWarnings();
@@ -1303,6 +1659,7 @@ public class TdsCore {
 
         Semaphore mutex = null;
 
+        lock.lock();
         try {
             mutex = connection.getMutex();
 
@@ -1346,6 +1703,7 @@ public class TdsCore {
             if (mutex != null) {
                 mutex.release();
             }
+            lock.unlock();
         }
     }
 
@@ -1355,7 +1713,7 @@ public class TdsCore {
      * @param procName the temporary procedure name
      * @throws SQLException if an error occurs
      */
-    synchronized void sybaseUnPrepare(String procName)
+    void sybaseUnPrepare(String procName)
             throws SQLException {
         checkOpen();
         messages.clearWarnings();
@@ -1366,6 +1724,7 @@ public class TdsCore {
         }
 
         Semaphore mutex = null;
+        lock.lock();
         try {
             mutex = connection.getMutex();
 
@@ -1398,6 +1757,7 @@ public class TdsCore {
             if (mutex != null) {
                 mutex.release();
             }
+            lock.unlock();
         }
     }
 
@@ -1410,57 +1770,62 @@ public class TdsCore {
      * @return a <code>byte[]</code> array containing the TM address data
      * @throws SQLException
      */
-    synchronized byte[] enlistConnection(int type, byte[] oleTranID) throws SQLException {
-        Semaphore mutex = null;
+    byte[] enlistConnection(int type, byte[] oleTranID) throws SQLException {
+        lock.lock();
         try {
-            mutex = connection.getMutex();
+            Semaphore mutex = null;
+            try {
+                mutex = connection.getMutex();
 
-            out.setPacketType(MSDTC_PKT);
-            out.write((short)type);
-            switch (type) {
-                case 0: // Get result set with location of MSTDC
-                    out.write((short)0);
-                    break;
-                case 1: // Set OLE transaction ID
-                    if (oleTranID != null) {
-                        out.write((short)oleTranID.length);
-                        out.write(oleTranID);
-                    } else {
-                        // Delist the connection from all transactions.
+                out.setPacketType(MSDTC_PKT);
+                out.write((short)type);
+                switch (type) {
+                    case 0: // Get result set with location of MSTDC
                         out.write((short)0);
-                    }
-                    break;
-            }
-            out.flush();
-            endOfResponse = false;
-            endOfResults  = true;
-        } catch (IOException ioe) {
-            connection.setClosed();
-            throw Support.linkException(
-                    new SQLException(
-                            Messages.get(
-                                    "error.generic.ioerror", ioe.getMessage()),
-                            "08S01"),
-                    ioe);
-        } finally {
-            if (mutex != null) {
-                mutex.release();
+                        break;
+                    case 1: // Set OLE transaction ID
+                        if (oleTranID != null) {
+                            out.write((short)oleTranID.length);
+                            out.write(oleTranID);
+                        } else {
+                            // Delist the connection from all transactions.
+                            out.write((short)0);
+                        }
+                        break;
+                }
+                out.flush();
+                endOfResponse = false;
+                endOfResults  = true;
+            } catch (IOException ioe) {
+                connection.setClosed();
+                throw Support.linkException(
+                        new SQLException(
+                                Messages.get(
+                                        "error.generic.ioerror", ioe.getMessage()),
+                                "08S01"),
+                        ioe);
+            } finally {
+                if (mutex != null) {
+                    mutex.release();
+                }
             }
-        }
 
-        byte[] tmAddress = null;
-        if (getMoreResults() && getNextRow()) {
-            if (rowData.length == 1) {
-                Object x = rowData[0];
-                if (x instanceof byte[]) {
-                    tmAddress = (byte[])x;
+            byte[] tmAddress = null;
+            if (getMoreResults() && getNextRow()) {
+                if (rowData.length == 1) {
+                    Object x = rowData[0];
+                    if (x instanceof byte[]) {
+                        tmAddress = (byte[])x;
+                    }
                 }
             }
-        }
 
-        clearResponseQueue();
-        messages.checkErrors();
-        return tmAddress;
+            clearResponseQueue();
+            messages.checkErrors();
+            return tmAddress;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -1616,10 +1981,10 @@ public class TdsCore {
      * <p>Packet contains; netlib version, ssl mode, instance
      * and process ID.
      * @param instance
-     * @param forceEncryption
+     * @param encryption the client SSL mode, e.g. {@link #SSL_NO_ENCRYPT}
      * @throws IOException
      */
-    private void sendPreLoginPacket(String instance, boolean forceEncryption)
+    private void sendPreLoginPacket(String instance, int encryption)
             throws IOException {
         out.setPacketType(PRELOGIN_PKT);
         // Write Netlib pointer
@@ -1642,8 +2007,8 @@ public class TdsCore {
         out.write((byte)0xFF);
         // Write fake net lib ID 8.341.0
         out.write(new byte[]{0x08, 0x00, 0x01, 0x55, 0x00, 0x00});
-        // Write force encryption flag
-        out.write((byte)(forceEncryption? 1: 0));
+        // Write encryption flag
+        out.write((byte)encryption);
         // Write instance name
         out.writeAscii(instance);
         out.write((byte)0);
@@ -1664,10 +2029,13 @@ public class TdsCore {
      * <li>2 = No certificate no encryption possible.
      * <li>3 = Server requests force encryption.
      * </ol>
-     * @return The server side SSL mode.
+     * <p>The instance option is 0 if the server is the instance named in the
+     * pre login packet, 1 otherwise.
+     * @return The option data indexed by option type, e.g.
+     *         {@link #PRELOGIN_ENCRYPTION} for the server side SSL mode.
      * @throws IOException
      */
-    private int readPreLoginPacket() throws IOException {
+    private byte[][] readPreLoginPacket() throws IOException {
         byte list[][] = new byte[8][];
         byte data[][] = new byte[8][];
         int recordCount = 0;
@@ -1699,12 +2067,13 @@ public class TdsCore {
                         Support.toHex(data[i]));
             }
         }
-        if (recordCount > 1) {
-            return data[1][0]; // This is the server side SSL mode
-        } else {
-            // Response too short to include SSL mode!
-            return SSL_NO_ENCRYPT;
+        byte options[][] = new byte[8][];
+        for (int i = 0; i < recordCount; i++) {
+            if ((list[i][0] & 0xFF) < options.length) {
+                options[list[i][0] & 0xFF] = data[i];
+            }
         }
+        return options;
     }
 
     /**
@@ -2352,6 +2721,8 @@ public class TdsCore {
 
       try
       {
+         finishLob();
+
          // handle result set splitting in case of computed results
          if( computedColumns != null )
          {
@@ -3045,7 +3416,16 @@ public class TdsCore {
         // parameter name beginning with '@'. Ignore any other spurious parameters
         // such as those returned from calls to writetext in the proc.
         //
-        if (parameters != null
+        if (prepExecSent != null && !funcReturnVal) {
+            // Handle returned by sp_prepexec, the statement's own parameters
+            // are never output parameters
+            if (value instanceof Integer) {
+                prepExecSent.setHandle(((Integer) value).intValue());
+            } else {
+                prepExecSent.setType(ProcEntry.PREPEXEC);
+            }
+            prepExecSent = null;
+        } else if (parameters != null
                 && (name.length() == 0 || name.startsWith("@"))) {
             if (tdsVersion >= Driver.TDS80 && funcReturnVal) {
                 // TDS 8 Allows function return values of types other than int
@@ -3206,13 +3586,73 @@ public class TdsCore {
      * @throws ProtocolException
      */
     private void tdsRowToken() throws IOException, ProtocolException {
-        for (int i = 0; i < columns.length; i++) {
-            rowData[i] =  TdsData.readData(connection, in, columns[i]);
+        int count = columns.length;
+
+        if (lobColumns == columns && StreamedLob.isStreamable(in, columns[count - 1])) {
+            // the last column is read on demand
+            count--;
+        }
+
+        if (rowBuffer != null && rowBuffer.getColumns() == columns) {
+            // lazy decoding enabled for this result set
+            rowBuffer.readRow(connection, in, rowData, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                rowData[i] =  TdsData.readData(connection, in, columns[i]);
+            }
+        }
+
+        if (count < columns.length) {
+            Object value = StreamedLob.read(connection, in, columns[count]);
+
+            if (value instanceof StreamedLob) {
+                pendingLob = (StreamedLob) value;
+            }
+
+            rowData[count] = value;
         }
 
         endOfResults = false;
     }
 
+    /**
+     * Reads the rest of a LOB value left in the response by
+     * {@link #tdsRowToken}, if any, before the response is read any further.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void finishLob() throws IOException {
+        if (pendingLob != null) {
+            StreamedLob lob = pendingLob;
+            pendingLob = null;
+            lob.finish(true);
+        }
+    }
+
+    /**
+     * Skips the rest of a LOB value left in the response by
+     * {@link #tdsRowToken}, if any, because the current row is not accessed
+     * anymore.
+     *
+     * @throws SQLException if an I/O error occurs
+     */
+    void discardLob() throws SQLException {
+        if (pendingLob != null) {
+            StreamedLob lob = pendingLob;
+            pendingLob = null;
+
+            try {
+                lob.finish(false);
+            } catch (IOException e) {
+                connection.setClosed();
+                throw Support.linkException(
+                        new SQLException(Messages.get("error.generic.ioerror",
+                                                      e.getMessage()),
+                                         "08S01"), e);
+            }
+        }
+    }
+
     /**
      * Process TDS 5.0 Params Token.
      * Stored procedure output parameters or data returned in parameter format
@@ -3695,15 +4135,18 @@ public class TdsCore {
         if ((currentToken.status & DONE_CANCEL) != 0) {
             // Synchronize resetting of the cancelPending flag to ensure it
             // doesn't happen during the sending of a cancel request
-            synchronized (cancelMonitor) {
+            cancelLock.lock();
+            try {
                 cancelPending = false;
                 // Only throw an exception if this was a cancel() call
-                if (cancelMonitor[0] == ASYNC_CANCEL) {
+                if (cancelType == ASYNC_CANCEL) {
                     messages.addException(
                         new SQLException(Messages.get("error.generic.cancelled",
                                                       "Statement"),
                                          "HY008"));
                 }
+            } finally {
+                cancelLock.unlock();
             }
         }
         else
@@ -3985,7 +4428,36 @@ public class TdsCore {
             prepareSql = EXECUTE_SQL;
         }
 
-        if (procName == null) {
+        if (procName == null && prepExec != null && prepareSql == PREPARE) {
+            // Prepare the statement with this execution, the handle will be
+            // returned as the first output parameter
+            int count = parameters == null ? 0 : parameters.length;
+            ParamInfo[] params = new ParamInfo[3 + count];
+
+            if (parameters != null) {
+                System.arraycopy(parameters, 0, params, 3, count);
+            }
+
+            params[0] = new ParamInfo(Types.INTEGER, null, ParamInfo.OUTPUT);
+            TdsData.getNativeType(connection, params[0]);
+
+            params[1] = new ParamInfo(Types.LONGVARCHAR,
+                    parameters == null ? "" : prepExec.getParamDefinitions() != null
+                            ? prepExec.getParamDefinitions()
+                            : Support.getParameterDefinitions(parameters),
+                    ParamInfo.UNICODE);
+            TdsData.getNativeType(connection, params[1]);
+
+            params[2] = new ParamInfo(Types.LONGVARCHAR,
+                    parameters == null ? sql : Support.substituteParamMarkers(sql, parameters),
+                    ParamInfo.UNICODE);
+            TdsData.getNativeType(connection, params[2]);
+
+            parameters = params;
+            procName = "sp_prepexec";
+            prepExecSent = prepExec;
+            prepExec = null;
+        } else if (procName == null) {
             // No procedure name so not a callable statement and also
             // not a temporary stored procedure call.
             if (parameters != null) {
@@ -22,6 +22,7 @@ import java.math.BigInteger;
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.List;
 
 import net.sourceforge.jtds.util.BlobBuffer;
 
@@ -1143,6 +1144,145 @@ public class TdsData {
         return null;
     }
 
+    /**
+     * Determine whether a column value can be read by {@link #readPrimitive}
+     * instead of {@link #readData}.
+     *
+     * @param ci the column meta data
+     * @return <code>true</code> for integer, floating point and bit columns
+     */
+    static boolean isPrimitiveType(ColInfo ci) {
+        switch (ci.tdsType) {
+            case SYBINTN:
+            case SYBINT1:
+            case SYBINT2:
+            case SYBINT4:
+            case SYBINT8:
+            case SYBREAL:
+            case SYBFLT8:
+            case SYBFLTN:
+            case SYBBIT:
+            case SYBBITN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Determine whether a column value can be streamed from the server
+     * response by a {@link StreamedLob} instead of being read by
+     * {@link #readData}.
+     *
+     * @param ci the column meta data
+     * @return <code>true</code> for TEXT, NTEXT and IMAGE columns
+     */
+    static boolean isStreamableType(ColInfo ci) {
+        switch (ci.tdsType) {
+            case SYBTEXT:
+            case SYBNTEXT:
+            case SYBIMAGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Determine whether a column is an IMAGE column.
+     *
+     * @param ci the column meta data
+     * @return <code>true</code> for IMAGE columns
+     */
+    static boolean isImageType(ColInfo ci) {
+        return ci.tdsType == SYBIMAGE;
+    }
+
+    /**
+     * Read a column value into a row buffer without creating a wrapper object.
+     * The column's type must be supported by {@link #isPrimitiveType}; null
+     * values leave the buffer entry unset.
+     *
+     * @param in  the server response stream
+     * @param ci  the column meta data
+     * @param row the row buffer to store the value in
+     * @param index the zero based column index
+     * @throws IOException if an I/O error occurs
+     */
+    static void readPrimitive(ResponseStream in, ColInfo ci, RowBuffer row, int index)
+            throws IOException {
+        int len;
+
+        switch (ci.tdsType) {
+            case SYBINTN:
+                switch (in.read()) {
+                    case 1:
+                        row.set(index, RowBuffer.INT, in.read() & 0xFF);
+                        break;
+                    case 2:
+                        row.set(index, RowBuffer.INT, in.readShort());
+                        break;
+                    case 4:
+                        row.set(index, RowBuffer.INT, in.readInt());
+                        break;
+                    case 8:
+                        row.set(index, RowBuffer.LONG, in.readLong());
+                        break;
+                }
+                break;
+
+            case SYBINT1:
+                row.set(index, RowBuffer.INT, in.read() & 0xFF);
+                break;
+
+            case SYBINT2:
+                row.set(index, RowBuffer.INT, in.readShort());
+                break;
+
+            case SYBINT4:
+                row.set(index, RowBuffer.INT, in.readInt());
+                break;
+
+            case SYBINT8:
+                row.set(index, RowBuffer.LONG, in.readLong());
+                break;
+
+            case SYBREAL:
+                row.set(index, RowBuffer.FLOAT, in.readInt());
+                break;
+
+            case SYBFLT8:
+                row.set(index, RowBuffer.DOUBLE, in.readLong());
+                break;
+
+            case SYBFLTN:
+                len = in.read();
+
+                if (len == 4) {
+                    row.set(index, RowBuffer.FLOAT, in.readInt());
+                } else if (len == 8) {
+                    row.set(index, RowBuffer.DOUBLE, in.readLong());
+                }
+                break;
+
+            case SYBBIT:
+                row.set(index, RowBuffer.BOOLEAN, (in.read() != 0) ? 1 : 0);
+                break;
+
+            case SYBBITN:
+                len = in.read();
+
+                if (len > 0) {
+                    row.set(index, RowBuffer.BOOLEAN, (in.read() != 0) ? 1 : 0);
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("TDS data type 0x"
+                        + Integer.toHexString(ci.tdsType & 0xFF) + " not supported");
+        }
+    }
+
     /**
      * Retrieve the signed status of the column.
      *
@@ -2534,6 +2674,259 @@ public class TdsData {
                         + Integer.toHexString(pi.tdsType));
         }
     }
+
+    /**
+     * Determines the column types used to bulk load a batch of rows, see
+     * {@link TdsCore#bulkInsert}. Each column gets the native type of its
+     * first non-null value, which must be one of the fixed size or short
+     * variable length types; all other non-null values of the column must
+     * have the same type. Decimal columns get the largest scale of all their
+     * values.
+     *
+     * @param connection the connection
+     * @param names      the column names
+     * @param rows       the parameters of the batched rows
+     * @return the column descriptors or <code>null</code> if the rows can't
+     *         be bulk loaded, e.g. because of text or image values
+     */
+    static ParamInfo[] getBulkColumns(JtdsConnection connection,
+                                      String[] names,
+                                      List rows)
+            throws SQLException {
+        ParamInfo[] columns = new ParamInfo[names.length];
+
+        for (int r = 0; r < rows.size(); r++) {
+            ParamInfo[] row = (ParamInfo[]) rows.get(r);
+
+            for (int c = 0; c < columns.length; c++) {
+                ParamInfo pi = row[c];
+
+                if (!pi.isSet || pi.isOutput) {
+                    return null;
+                }
+
+                getNativeType(connection, pi);
+
+                ParamInfo column = columns[c];
+
+                if (column == null || column.value == null && pi.value != null) {
+                    // the first (non-null) value determines the column type
+                    switch (pi.tdsType) {
+                        case SYBINTN:
+                        case SYBBITN:
+                        case SYBFLTN:
+                        case SYBDATETIMN:
+                        case SYBDECIMAL:
+                        case XSYBVARCHAR:
+                        case XSYBNVARCHAR:
+                        case XSYBVARBINARY:
+                            break;
+                        default:
+                            return null;
+                    }
+
+                    column = new ParamInfo(-1, pi.isUnicode);
+                    column.name = names[c];
+                    column.tdsType = pi.tdsType;
+                    column.sqlType = pi.sqlType;
+                    column.value = pi.value;
+                    column.scale = 0;
+                    column.collation = connection.getCollation();
+                    column.charsetInfo = connection.getCharsetInfo();
+                    columns[c] = column;
+                } else if (pi.value != null
+                        && (pi.tdsType != column.tdsType
+                            || pi.tdsType != SYBDECIMAL && !pi.sqlType.equals(column.sqlType))) {
+                    return null;
+                }
+
+                if (column.tdsType == SYBDECIMAL && pi.value != null) {
+                    if (pi.value instanceof BigDecimal) {
+                        column.scale = Math.max(column.scale, ((BigDecimal) pi.value).scale());
+                    } else if (!(pi.value instanceof Long)) {
+                        return null;
+                    }
+                }
+            }
+        }
+
+        for (int c = 0; c < columns.length; c++) {
+            ParamInfo column = columns[c];
+
+            if (column.tdsType == SYBDECIMAL) {
+                column.precision = connection.getMaxPrecision();
+                column.sqlType = "decimal(" + column.precision + ',' + column.scale + ')';
+
+                // all values must fit into the column precision at the column scale
+                for (int r = 0; r < rows.size(); r++) {
+                    Object value = ((ParamInfo[]) rows.get(r))[c].value;
+
+                    if (value instanceof BigDecimal
+                            && ((BigDecimal) value).precision() - ((BigDecimal) value).scale() + column.scale > column.precision) {
+                        return null;
+                    }
+                }
+            }
+
+            column.value = null;
+        }
+
+        return columns;
+    }
+
+    /**
+     * Writes the type of a bulk load column, as determined by {@link
+     * #getBulkColumns}, in the format of a <code>COLMETADATA</code> token.
+     *
+     * @param out    the server request stream
+     * @param column the column descriptor
+     */
+    static void writeBulkType(RequestStream out, ParamInfo column)
+            throws IOException {
+        out.write((byte) column.tdsType);
+
+        switch (column.tdsType) {
+            case SYBINTN:
+                out.write("bigint".equals(column.sqlType) ? (byte) 8 : (byte) 4);
+                break;
+
+            case SYBFLTN:
+                out.write("real".equals(column.sqlType) ? (byte) 4 : (byte) 8);
+                break;
+
+            case SYBBITN:
+                out.write((byte) 1);
+                break;
+
+            case SYBDATETIMN:
+                out.write((byte) 8);
+                break;
+
+            case SYBDECIMAL:
+                out.write(out.getMaxDecimalBytes());
+                out.write((byte) column.precision);
+                out.write((byte) column.scale);
+                break;
+
+            case XSYBVARCHAR:
+            case XSYBNVARCHAR:
+                out.write((short) MS_LONGVAR_MAX);
+
+                if (out.getTdsVersion() >= Driver.TDS80) {
+                    putCollation(out, column);
+                }
+                break;
+
+            case XSYBVARBINARY:
+                out.write((short) MS_LONGVAR_MAX);
+                break;
+
+            default:
+                throw new IllegalStateException("Unsupported bulk load TDS type "
+                        + Integer.toHexString(column.tdsType));
+        }
+    }
+
+    /**
+     * Writes a column value of a bulk load row, in the format of a
+     * <code>ROW</code> token. The value is written as the column type, which
+     * is compatible to the value's type as ensured by {@link
+     * #getBulkColumns}.
+     *
+     * @param out    the server request stream
+     * @param column the column descriptor
+     * @param pi     the parameter holding the value
+     */
+    static void writeBulkValue(RequestStream out, ParamInfo column, ParamInfo pi)
+            throws IOException {
+        byte[] buf;
+        String tmp;
+
+        switch (column.tdsType) {
+            case SYBINTN:
+                if (pi.value == null) {
+                    out.write((byte) 0);
+                } else if ("bigint".equals(column.sqlType)) {
+                    out.write((byte) 8);
+                    out.write(((Number) pi.value).longValue());
+                } else {
+                    out.write((byte) 4);
+                    out.write(((Number) pi.value).intValue());
+                }
+                break;
+
+            case SYBFLTN:
+                if (pi.value == null) {
+                    out.write((byte) 0);
+                } else if ("real".equals(column.sqlType)) {
+                    out.write((byte) 4);
+                    out.write(((Number) pi.value).floatValue());
+                } else {
+                    out.write((byte) 8);
+                    out.write(((Number) pi.value).doubleValue());
+                }
+                break;
+
+            case SYBBITN:
+                if (pi.value == null) {
+                    out.write((byte) 0);
+                } else {
+                    out.write((byte) 1);
+                    out.write((byte) (((Boolean) pi.value).booleanValue() ? 1 : 0));
+                }
+                break;
+
+            case SYBDATETIMN:
+                putDateTimeValue(out, (DateTime) pi.value);
+                break;
+
+            case SYBDECIMAL:
+                if (pi.value == null) {
+                    out.write((BigDecimal) null);
+                } else {
+                    BigDecimal value = pi.value instanceof Long
+                            ? BigDecimal.valueOf(((Long) pi.value).longValue())
+                            : (BigDecimal) pi.value;
+                    out.write(value.setScale(column.scale));
+                }
+                break;
+
+            case XSYBVARCHAR:
+                if (pi.value == null) {
+                    out.write((short) 0xFFFF);
+                } else {
+                    buf = pi.getBytes(column.charsetInfo.getCharset());
+                    out.write((short) buf.length);
+                    out.write(buf);
+                }
+                break;
+
+            case XSYBNVARCHAR:
+                if (pi.value == null) {
+                    out.write((short) 0xFFFF);
+                } else {
+                    tmp = pi.getString(column.charsetInfo.getCharset());
+                    out.write((short) (tmp.length() * 2));
+                    out.write(tmp);
+                }
+                break;
+
+            case XSYBVARBINARY:
+                if (pi.value == null) {
+                    out.write((short) 0xFFFF);
+                } else {
+                    buf = pi.getBytes(column.charsetInfo.getCharset());
+                    out.write((short) buf.length);
+                    out.write(buf);
+                }
+                break;
+
+            default:
+                throw new IllegalStateException("Unsupported bulk load TDS type "
+                        + Integer.toHexString(column.tdsType));
+        }
+    }
+
 //
 // ---------------------- Private methods from here -----------------------
 //
@@ -0,0 +1,330 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package net.sourceforge.jtds.jdbc.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * <p> LRU cache for any type of object, bounded by the total weight of its
+ * entries instead of their number. </p>
+ *
+ * <p> Unlike {@link SimpleLRUCache} the cache is split into a number of
+ * segments, each guarded by its own lock and holding an equal share of the
+ * maximum weight. Threads accessing different keys therefore rarely contend
+ * for the same lock. The eviction order is LRU per segment and only
+ * approximately LRU for the whole cache. </p>
+ *
+ * <p> Entries heavier than the share of a single segment are not cached at
+ * all. </p>
+ *
+ * @author
+ *    Holger Rehn
+ */
+public class ConcurrentLRUCache<K,V>
+{
+
+   // public nested interfaces /////////////////////////////////////////////////
+
+   /**
+    * <p> Calculates the weight of a cache entry. </p>
+    */
+   public interface Weigher<K,V>
+   {
+
+      /**
+       * @return
+       *    the weight of the entry, a value greater than or equal to 0
+       */
+      int weigh( K key, V value );
+
+   }
+
+   // private instance fields //////////////////////////////////////////////////
+
+   /**
+    * the segments, a power of 2
+    */
+   private final Segment<K,V>[] _Segments;
+
+   /**
+    * calculates the weight of new entries
+    */
+   private final Weigher<K,V>   _Weigher;
+
+   // public constructors //////////////////////////////////////////////////////
+
+   /**
+    * <p> Constructs a new cache with a limited total weight. </p>
+    *
+    * @param maxWeight
+    *    maximum total weight of all entries in this cache
+    *
+    * @param segments
+    *    the number of segments, rounded up to the next power of 2
+    *
+    * @param weigher
+    *    calculates the weight of an entry
+    */
+   @SuppressWarnings( "unchecked" )
+   public ConcurrentLRUCache( long maxWeight, int segments, Weigher<K,V> weigher )
+   {
+      int count = Integer.highestOneBit( Math.max( 1, segments ) * 2 - 1 );
+
+      _Segments = new Segment[count];
+      _Weigher  = weigher;
+
+      for( int i = 0; i < count; i ++ )
+      {
+         _Segments[i] = new Segment<>( maxWeight / count );
+      }
+   }
+
+   // public methods ///////////////////////////////////////////////////////////
+
+   /**
+    * <p> Adds an entry to the cache, evicting least recently used entries of
+    * the same segment if necessary. </p>
+    *
+    * @param key
+    *    key with which the specified value is to be associated
+    *
+    * @param value
+    *    value to be associated with the specified key
+    */
+   public void put( K key, V value )
+   {
+      segment( key ).put( key, value, _Weigher.weigh( key, value ) );
+   }
+
+   /**
+    * <p> Get the value associated with the given key, if any. </p>
+    *
+    * @param key
+    *    the key whose associated value is to be returned
+    *
+    * @return
+    *    the value to which the specified key is mapped, or {@code null} if this
+    *    cache contains no mapping for the key
+    */
+   public V get( K key )
+   {
+      return segment( key ).get( key );
+   }
+
+   /**
+    * <p> Removes all entries from the cache. </p>
+    */
+   public void clear()
+   {
+      for( Segment<K,V> segment : _Segments )
+      {
+         synchronized( segment )
+         {
+            segment._Map.clear();
+            segment._Weight = 0;
+         }
+      }
+   }
+
+   /**
+    * @return
+    *    the number of {@link #get} calls that found an entry
+    */
+   public long getHits()
+   {
+      long hits = 0;
+
+      for( Segment<K,V> segment : _Segments )
+      {
+         synchronized( segment )
+         {
+            hits += segment._Hits;
+         }
+      }
+
+      return hits;
+   }
+
+   /**
+    * @return
+    *    the number of {@link #get} calls that found no entry
+    */
+   public long getMisses()
+   {
+      long misses = 0;
+
+      for( Segment<K,V> segment : _Segments )
+      {
+         synchronized( segment )
+         {
+            misses += segment._Misses;
+         }
+      }
+
+      return misses;
+   }
+
+   /**
+    * @return
+    *    the total weight of all entries currently cached
+    */
+   public long getWeight()
+   {
+      long weight = 0;
+
+      for( Segment<K,V> segment : _Segments )
+      {
+         synchronized( segment )
+         {
+            weight += segment._Weight;
+         }
+      }
+
+      return weight;
+   }
+
+   /**
+    * @return
+    *    the number of entries currently cached
+    */
+   public int size()
+   {
+      int size = 0;
+
+      for( Segment<K,V> segment : _Segments )
+      {
+         synchronized( segment )
+         {
+            size += segment._Map.size();
+         }
+      }
+
+      return size;
+   }
+
+   // private methods //////////////////////////////////////////////////////////
+
+   /**
+    * <p> Selects the segment of a key, spreading the higher bits of the hash
+    * code so keys with hash codes only differing in these bits don't end up
+    * in the same segment. </p>
+    */
+   private Segment<K,V> segment( K key )
+   {
+      int hash = key.hashCode();
+      hash ^= hash >>> 16;
+      hash ^= hash >>> 8;
+      return _Segments[hash & _Segments.length - 1];
+   }
+
+   // private nested classes ///////////////////////////////////////////////////
+
+   /**
+    * <p> A part of the cache, guarded by its own monitor. </p>
+    */
+   private static class Segment<K,V>
+   {
+
+      /**
+       * entries in access order, each value paired with its weight
+       */
+      private final LinkedHashMap<K,Entry<V>> _Map = new LinkedHashMap<>( 16, 0.75f, true );
+
+      /**
+       * maximum total weight of this segment
+       */
+      private final long                      _MaxWeight;
+
+      /**
+       * total weight of all entries in this segment
+       */
+      private long                            _Weight;
+
+      private long                            _Hits;
+
+      private long                            _Misses;
+
+      Segment( long maxWeight )
+      {
+         _MaxWeight = maxWeight;
+      }
+
+      synchronized V get( K key )
+      {
+         Entry<V> entry = _Map.get( key );
+
+         if( entry == null )
+         {
+            _Misses ++;
+            return null;
+         }
+
+         _Hits ++;
+         return entry._Value;
+      }
+
+      synchronized void put( K key, V value, int weight )
+      {
+         Entry<V> old;
+
+         if( weight > _MaxWeight )
+         {
+            old = _Map.remove( key );
+         }
+         else
+         {
+            old = _Map.put( key, new Entry<>( value, weight ) );
+            _Weight += weight;
+         }
+
+         if( old != null )
+         {
+            _Weight -= old._Weight;
+         }
+
+         Iterator<Entry<V>> it = _Map.values().iterator();
+
+         while( _Weight > _MaxWeight && it.hasNext() )
+         {
+            _Weight -= it.next()._Weight;
+            it.remove();
+         }
+      }
+
+   }
+
+   /**
+    * <p> A cached value and its weight. </p>
+    */
+   private static class Entry<V>
+   {
+
+      final V   _Value;
+
+      final int _Weight;
+
+      Entry( V value, int weight )
+      {
+         _Value  = value;
+         _Weight = weight;
+      }
+
+   }
+
+}
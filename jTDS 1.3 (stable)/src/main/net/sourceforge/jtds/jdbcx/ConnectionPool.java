@@ -0,0 +1,782 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbcx;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.jtds.jdbc.JtdsConnection;
+import net.sourceforge.jtds.jdbc.Messages;
+import net.sourceforge.jtds.jdbc.Support;
+import net.sourceforge.jtds.jdbcx.proxy.ConnectionProxy;
+import net.sourceforge.jtds.util.Logger;
+
+/**
+ * <p> The connection pool behind a {@link JtdsPoolingDataSource}. </p>
+ *
+ * <p> All physical connections are kept in a copy-on-write list that is only
+ * modified when a connection is added or removed. Borrowing a connection
+ * atomically changes the state of a list entry from idle to in use, so the
+ * borrow and return paths don't take any locks. A thread first tries the
+ * connection it borrowed last, then scans the list and finally waits for a
+ * connection that is returned or created, which is handed over directly by
+ * the returning or creating thread. </p>
+ *
+ * <p> New connections are created by a single background thread, so a thread
+ * waiting for a connection isn't blocked by another thread's login. The same
+ * thread periodically validates idle connections using {@link
+ * JtdsConnection#isValid(int)}, closes connections that have been idle for too
+ * long and keeps the configured minimum of idle connections. </p>
+ *
+ * <p> A returned connection is restored to its initial state. If enabled and
+ * supported by the server, the session is reset by the server as part of the
+ * next request using {@link JtdsConnection#resetConnection()}. A failed reset
+ * closes the connection when its response is read, at the latest when the
+ * connection is returned again, which removes it from the pool. Otherwise an
+ * open transaction is rolled back and auto-commit mode, transaction
+ * isolation, catalog and read-only state are reset if changed. </p>
+ */
+final class ConnectionPool
+{
+
+   private static final int                     IDLE     = 0;
+
+   private static final int                     IN_USE   = 1;
+
+   /**
+    * state of an entry being validated or evicted by the housekeeping thread
+    */
+   private static final int                     RESERVED = 2;
+
+   private static final int                     REMOVED  = 3;
+
+   private final JtdsPoolingDataSource          _DataSource;
+
+   private final int                            _MaxSize;
+
+   private final int                            _MinIdle;
+
+   private final long                           _BorrowTimeout;
+
+   private final int                            _ValidationTimeout;
+
+   private final long                           _ValidationInterval;
+
+   private final long                           _IdleTimeout;
+
+   private final boolean                        _ResetConnection;
+
+   private final CopyOnWriteArrayList<PoolEntry> _Entries  = new CopyOnWriteArrayList<>();
+
+   /**
+    * the connection each thread borrowed last, weakly referenced to not keep
+    * removed connections reachable from long living threads
+    */
+   private final ThreadLocal<WeakReference<PoolEntry>> _Affinity = new ThreadLocal<>();
+
+   /**
+    * hands over returned or created connections to waiting threads
+    */
+   private final SynchronousQueue<PoolEntry>    _Handoff  = new SynchronousQueue<>( false );
+
+   private final ScheduledThreadPoolExecutor    _Executor;
+
+   /**
+    * number of connections, including those being created
+    */
+   private final AtomicInteger                  _Total    = new AtomicInteger();
+
+   private final AtomicInteger                  _Pending  = new AtomicInteger();
+
+   private final AtomicInteger                  _Waiters  = new AtomicInteger();
+
+   private final AtomicLong                     _Created  = new AtomicLong();
+
+   private final AtomicLong                     _Borrowed = new AtomicLong();
+
+   private final AtomicLong                     _Timeouts = new AtomicLong();
+
+   private final AtomicLong                     _Failures = new AtomicLong();
+
+   /**
+    * the error of the last failed attempt to create a connection
+    */
+   private volatile SQLException                _LastError;
+
+   private volatile boolean                     _Closed;
+
+   /**
+    * Creates a pool and starts creating the minimum number of idle
+    * connections.
+    *
+    * @param dataSource
+    *    the data source providing the physical connections
+    *
+    * @param maxSize
+    *    the maximum number of connections
+    *
+    * @param minIdle
+    *    the number of idle connections to keep
+    *
+    * @param borrowTimeout
+    *    the number of milliseconds to wait for a connection
+    *
+    * @param validationInterval
+    *    the number of seconds after which an idle connection is validated
+    *
+    * @param validationTimeout
+    *    the number of seconds to wait for a validation to complete
+    *
+    * @param idleTimeout
+    *    the number of seconds after which an idle connection is closed if
+    *    there are more than <code>minIdle</code> connections or 0 to keep idle
+    *    connections open
+    *
+    * @param resetConnection
+    *    whether returned connections are reset by the server
+    */
+   ConnectionPool( JtdsPoolingDataSource dataSource, int maxSize, int minIdle, long borrowTimeout, int validationInterval, int validationTimeout, int idleTimeout, boolean resetConnection )
+   {
+      _DataSource         = dataSource;
+      _MaxSize            = Math.max( 1, maxSize );
+      _MinIdle            = Math.max( 0, Math.min( minIdle, _MaxSize ) );
+      _BorrowTimeout      = Math.max( 0, borrowTimeout );
+      _ValidationInterval = TimeUnit.SECONDS.toNanos( Math.max( 1, validationInterval ) );
+      _ValidationTimeout  = Math.max( 0, validationTimeout );
+      _IdleTimeout        = idleTimeout > 0 ? TimeUnit.SECONDS.toNanos( idleTimeout ) : Long.MAX_VALUE;
+      _ResetConnection    = resetConnection;
+
+      _Executor = new ScheduledThreadPoolExecutor( 1, new ThreadFactory()
+      {
+         @Override
+         public Thread newThread( Runnable r )
+         {
+            Thread thread = new Thread( r, "jTDS connection pool" );
+            thread.setDaemon( true );
+            return thread;
+         }
+      } );
+
+      _Executor.scheduleWithFixedDelay( new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            housekeep();
+         }
+      }, _ValidationInterval, _ValidationInterval, TimeUnit.NANOSECONDS );
+
+      fill();
+   }
+
+   /**
+    * Borrows a connection from the pool.
+    *
+    * @return
+    *    a proxy for the connection, returning the connection to the pool when
+    *    closed
+    *
+    * @throws SQLException
+    *    if the pool has been closed or no connection became available within
+    *    the borrow timeout
+    */
+   Connection borrow()
+      throws SQLException
+   {
+      checkOpen();
+
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( _BorrowTimeout );
+
+      WeakReference<PoolEntry> last = _Affinity.get();
+      PoolEntry entry = last == null ? null : last.get();
+
+      if( entry != null && entry.transition( IDLE, IN_USE ) )
+      {
+         Connection con = checkout( entry );
+
+         if( con != null )
+         {
+            return con;
+         }
+      }
+
+      Connection con = scan();
+
+      if( con != null )
+      {
+         return con;
+      }
+
+      _Waiters.incrementAndGet();
+
+      try
+      {
+         fill();
+
+         for( long remaining = deadline - System.nanoTime(); ; remaining = deadline - System.nanoTime() )
+         {
+            // scan again, a connection may have been returned before this thread was counted as waiting
+            con = scan();
+
+            if( con != null )
+            {
+               return con;
+            }
+
+            if( remaining <= 0 )
+            {
+               break;
+            }
+
+            entry = _Handoff.poll( remaining, TimeUnit.NANOSECONDS );
+
+            if( entry != null && entry.transition( IDLE, IN_USE ) )
+            {
+               con = checkout( entry );
+
+               if( con != null )
+               {
+                  return con;
+               }
+            }
+
+            checkOpen();
+         }
+      }
+      catch( InterruptedException e )
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         _Waiters.decrementAndGet();
+      }
+
+      checkOpen();
+      _Timeouts.incrementAndGet();
+
+      SQLException timeout = new SQLException( Messages.get( "error.jdbcx.pooltimeout", String.valueOf( _BorrowTimeout ) ), "08001" );
+
+      if( _LastError != null )
+      {
+         Support.linkException( timeout, _LastError );
+      }
+
+      throw timeout;
+   }
+
+   /**
+    * Closes the pool and all idle connections, connections in use are closed
+    * as soon as they are returned.
+    */
+   void close()
+   {
+      _Closed = true;
+      _Executor.shutdownNow();
+
+      for( PoolEntry entry : _Entries )
+      {
+         if( entry.transition( IDLE, RESERVED ) )
+         {
+            evict( entry );
+         }
+      }
+   }
+
+   /**
+    * @return
+    *    the number of connections currently borrowed
+    */
+   int getActive()
+   {
+      return count( IN_USE );
+   }
+
+   /**
+    * @return
+    *    the number of idle connections
+    */
+   int getIdle()
+   {
+      return count( IDLE );
+   }
+
+   /**
+    * @return
+    *    the number of open connections, including those being created
+    */
+   int getTotal()
+   {
+      return _Total.get();
+   }
+
+   /**
+    * @return
+    *    the number of threads currently waiting for a connection
+    */
+   int getWaiters()
+   {
+      return _Waiters.get();
+   }
+
+   long getCreated()
+   {
+      return _Created.get();
+   }
+
+   long getBorrowed()
+   {
+      return _Borrowed.get();
+   }
+
+   long getTimeouts()
+   {
+      return _Timeouts.get();
+   }
+
+   long getValidationFailures()
+   {
+      return _Failures.get();
+   }
+
+   /**
+    * Tries to borrow any idle connection.
+    */
+   private Connection scan()
+   {
+      for( PoolEntry entry : _Entries )
+      {
+         if( entry.transition( IDLE, IN_USE ) )
+         {
+            Connection con = checkout( entry );
+
+            if( con != null )
+            {
+               return con;
+            }
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Hands out a connection that has been marked as in use by the calling
+    * thread.
+    *
+    * @return
+    *    a proxy for the connection or <code>null</code> if the connection has
+    *    been closed after a fatal error and has been removed from the pool
+    */
+   private Connection checkout( PoolEntry entry )
+   {
+      JtdsConnection con = entry.getJtdsConnection();
+
+      try
+      {
+         if( con.isClosed() )
+         {
+            evict( entry );
+            return null;
+         }
+      }
+      catch( SQLException e )
+      {
+         evict( entry );
+         return null;
+      }
+
+      WeakReference<PoolEntry> last = _Affinity.get();
+
+      if( last == null || last.get() != entry )
+      {
+         _Affinity.set( new WeakReference<>( entry ) );
+      }
+
+      _Borrowed.incrementAndGet();
+      return new ConnectionProxy( entry, con );
+   }
+
+   /**
+    * Returns a connection to the pool, called when the proxy handed out for
+    * it has been closed.
+    */
+   void release( PoolEntry entry )
+   {
+      if( entry.getState() != IN_USE )
+      {
+         // already evicted after a fatal error
+         return;
+      }
+
+      if( _Closed || ! entry.reset( _ResetConnection ) )
+      {
+         evict( entry );
+         return;
+      }
+
+      entry._LastUsed = entry._LastChecked = System.nanoTime();
+      entry.setState( IDLE );
+      handoff( entry );
+   }
+
+   /**
+    * Removes a connection from the pool and closes it.
+    */
+   void evict( PoolEntry entry )
+   {
+      if( entry.getAndSetState( REMOVED ) == REMOVED )
+      {
+         return;
+      }
+
+      _Entries.remove( entry );
+      _Total.decrementAndGet();
+
+      try
+      {
+         entry.close();
+      }
+      catch( SQLException e )
+      {
+         Logger.logException( e );
+      }
+
+      fill();
+   }
+
+   /**
+    * Offers an idle connection to the threads waiting for a connection until
+    * either one of them takes it or no thread is waiting anymore.
+    */
+   private void handoff( PoolEntry entry )
+   {
+      while( _Waiters.get() > 0 && entry.getState() == IDLE )
+      {
+         if( _Handoff.offer( entry ) )
+         {
+            return;
+         }
+
+         Thread.yield();
+      }
+   }
+
+   /**
+    * Starts creating connections as long as there are fewer than the maximum
+    * number and either more threads waiting than connections being created
+    * or fewer idle connections than the configured minimum.
+    */
+   private void fill()
+   {
+      int idle = count( IDLE );
+
+      while( ! _Closed )
+      {
+         int total   = _Total.get();
+         int pending = _Pending.get();
+
+         if( total >= _MaxSize || _Waiters.get() <= pending && idle + pending >= _MinIdle )
+         {
+            return;
+         }
+
+         if( _Total.compareAndSet( total, total + 1 ) )
+         {
+            _Pending.incrementAndGet();
+
+            try
+            {
+               _Executor.execute( new Runnable()
+               {
+                  @Override
+                  public void run()
+                  {
+                     create();
+                  }
+               } );
+            }
+            catch( RuntimeException e )
+            {
+               // the executor has been shut down by close()
+               _Pending.decrementAndGet();
+               _Total.decrementAndGet();
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * Creates a new connection and hands it over to a waiting thread, if any.
+    */
+   private void create()
+   {
+      PoolEntry entry;
+
+      try
+      {
+         entry = new PoolEntry( this, _DataSource.connect() );
+      }
+      catch( SQLException e )
+      {
+         Logger.logException( e );
+         _LastError = e;
+         _Pending.decrementAndGet();
+         _Total.decrementAndGet();
+         return;
+      }
+
+      _LastError = null;
+      _Created.incrementAndGet();
+      entry._LastUsed = entry._LastChecked = System.nanoTime();
+      _Entries.add( entry );
+      _Pending.decrementAndGet();
+
+      if( _Closed )
+      {
+         if( entry.transition( IDLE, RESERVED ) )
+         {
+            evict( entry );
+         }
+      }
+      else
+      {
+         handoff( entry );
+      }
+   }
+
+   /**
+    * Validates connections that have been idle for longer than the
+    * validation interval and closes connections that have been idle for
+    * longer than the idle timeout, as long as the minimum number of idle
+    * connections is kept.
+    */
+   private void housekeep()
+   {
+      for( PoolEntry entry : _Entries )
+      {
+         long    now     = System.nanoTime();
+         boolean expired = now - entry._LastUsed >= _IdleTimeout && _Entries.size() > _MinIdle;
+
+         if( ! expired && now - entry._LastChecked < _ValidationInterval || ! entry.transition( IDLE, RESERVED ) )
+         {
+            continue;
+         }
+
+         if( expired )
+         {
+            evict( entry );
+            continue;
+         }
+
+         boolean valid;
+
+         try
+         {
+            valid = entry.getJtdsConnection().isValid( _ValidationTimeout );
+         }
+         catch( SQLException e )
+         {
+            valid = false;
+         }
+
+         if( ! valid )
+         {
+            _Failures.incrementAndGet();
+            evict( entry );
+            continue;
+         }
+
+         // a successful validation restarts the validation interval but not the idle timeout
+         entry._LastChecked = now;
+         entry.setState( IDLE );
+         handoff( entry );
+      }
+
+      fill();
+   }
+
+   private int count( int state )
+   {
+      int count = 0;
+
+      for( PoolEntry entry : _Entries )
+      {
+         if( entry.getState() == state )
+         {
+            count ++;
+         }
+      }
+
+      return count;
+   }
+
+   private void checkOpen()
+      throws SQLException
+   {
+      if( _Closed )
+      {
+         throw new SQLException( Messages.get( "error.jdbcx.poolclosed" ), "08003" );
+      }
+   }
+
+   /**
+    * <p> A physical connection in the pool, together with its pool state and
+    * the connection state restored when the connection is returned. </p>
+    */
+   static final class PoolEntry extends PooledConnection
+   {
+
+      private final ConnectionPool _Pool;
+
+      private final AtomicInteger  _State = new AtomicInteger( IDLE );
+
+      private final boolean        _AutoCommit;
+
+      private final int            _Isolation;
+
+      private final String         _Catalog;
+
+      /**
+       * the value of {@link System#nanoTime()} when the connection was
+       * created or returned last
+       */
+      volatile long                _LastUsed;
+
+      /**
+       * the value of {@link System#nanoTime()} when the connection was
+       * created, returned or validated last
+       */
+      volatile long                _LastChecked;
+
+      PoolEntry( ConnectionPool pool, Connection connection )
+         throws SQLException
+      {
+         super( connection );
+
+         _Pool       = pool;
+         _AutoCommit = connection.getAutoCommit();
+         _Isolation  = connection.getTransactionIsolation();
+         _Catalog    = connection.getCatalog();
+      }
+
+      JtdsConnection getJtdsConnection()
+      {
+         return (JtdsConnection) connection;
+      }
+
+      int getState()
+      {
+         return _State.get();
+      }
+
+      void setState( int state )
+      {
+         _State.set( state );
+      }
+
+      int getAndSetState( int state )
+      {
+         return _State.getAndSet( state );
+      }
+
+      boolean transition( int expected, int state )
+      {
+         return _State.compareAndSet( expected, state );
+      }
+
+      /**
+       * Restores the initial state of the connection.
+       *
+       * @param server
+       *    whether to let the server reset the session, if supported
+       *
+       * @return
+       *    <code>false</code> if the connection could not be reset and must
+       *    not be used anymore
+       */
+      boolean reset( boolean server )
+      {
+         JtdsConnection con = getJtdsConnection();
+
+         try
+         {
+            if( con.isClosed() )
+            {
+               return false;
+            }
+
+            // the server rolls back itself, the settings below are then unchanged
+            if( ! ( server && con.resetConnection() ) && ! con.getAutoCommit() )
+            {
+               con.rollback();
+            }
+
+            con.setAutoCommit( _AutoCommit );
+            con.setTransactionIsolation( _Isolation );
+            con.setCatalog( _Catalog );
+            con.setReadOnly( false );
+            con.clearWarnings();
+            return true;
+         }
+         catch( SQLException e )
+         {
+            Logger.logException( e );
+            return false;
+         }
+      }
+
+      /**
+       * Returns the connection to the pool when the proxy is closed and
+       * removes it from the pool if it has been closed after a fatal error,
+       * instead of notifying registered listeners.
+       */
+      @Override
+      public void fireConnectionEvent( boolean closed, SQLException sqlException )
+      {
+         if( closed )
+         {
+            _Pool.release( this );
+            return;
+         }
+
+         try
+         {
+            if( getJtdsConnection().isClosed() )
+            {
+               _Pool.evict( this );
+            }
+         }
+         catch( SQLException e )
+         {
+            _Pool.evict( this );
+         }
+      }
+
+   }
+
+}
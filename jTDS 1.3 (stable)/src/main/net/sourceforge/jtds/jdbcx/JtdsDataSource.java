@@ -544,6 +544,16 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return getIntProperty( Driver.MAXSTATEMENTS );
    }
 
+   public void setMetaDataCacheTtl( int metaDataCacheTtl )
+   {
+      _Config.put( Driver.METADATACACHETTL, String.valueOf( metaDataCacheTtl ) );
+   }
+
+   public int getMetaDataCacheTtl()
+   {
+      return getIntProperty( Driver.METADATACACHETTL );
+   }
+
    public void setAppName( String appName )
    {
       _Config.put( Driver.APPNAME, appName );
@@ -634,6 +644,16 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return getIntProperty( Driver.BUFFERMINPACKETS );
    }
 
+   public void setCursorPrefetch( int cursorPrefetch )
+   {
+      _Config.put( Driver.CURSORPREFETCH, String.valueOf( cursorPrefetch ) );
+   }
+
+   public int getCursorPrefetch()
+   {
+      return getIntProperty( Driver.CURSORPREFETCH );
+   }
+
    public void setCacheMetaData( boolean cacheMetaData )
    {
       _Config.put( Driver.CACHEMETA, String.valueOf( cacheMetaData ) );
@@ -684,6 +704,86 @@ public class JtdsDataSource implements DataSource, ConnectionPoolDataSource, XAD
       return Boolean.valueOf( (String) _Config.get( Driver.USEJCIFS ) ).booleanValue();
    }
 
+   public void setBufferConnectionMemory( int bufferConnectionMemory )
+   {
+      _Config.put( Driver.BUFFERCONNECTIONMEMORY, String.valueOf( bufferConnectionMemory ) );
+   }
+
+   public int getBufferConnectionMemory()
+   {
+      return getIntProperty( Driver.BUFFERCONNECTIONMEMORY );
+   }
+
+   public void setUseLazyRows( boolean useLazyRows )
+   {
+      _Config.put( Driver.USELAZYROWS, String.valueOf( useLazyRows ) );
+   }
+
+   public boolean getUseLazyRows()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.USELAZYROWS ) ).booleanValue();
+   }
+
+   public void setPipeline( boolean pipeline )
+   {
+      _Config.put( Driver.PIPELINE, String.valueOf( pipeline ) );
+   }
+
+   public boolean getPipeline()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.PIPELINE ) ).booleanValue();
+   }
+
+   public void setUseBulkInsert( boolean useBulkInsert )
+   {
+      _Config.put( Driver.USEBULKINSERT, String.valueOf( useBulkInsert ) );
+   }
+
+   public boolean getUseBulkInsert()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.USEBULKINSERT ) ).booleanValue();
+   }
+
+   public void setUsePrepExec( boolean usePrepExec )
+   {
+      _Config.put( Driver.USEPREPEXEC, String.valueOf( usePrepExec ) );
+   }
+
+   public boolean getUsePrepExec()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.USEPREPEXEC ) ).booleanValue();
+   }
+
+   public void setStreamLobs( boolean streamLobs )
+   {
+      _Config.put( Driver.STREAMLOBS, String.valueOf( streamLobs ) );
+   }
+
+   public boolean getStreamLobs()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.STREAMLOBS ) ).booleanValue();
+   }
+
+   public void setWarmStart( boolean warmStart )
+   {
+      _Config.put( Driver.WARMSTART, String.valueOf( warmStart ) );
+   }
+
+   public boolean getWarmStart()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.WARMSTART ) ).booleanValue();
+   }
+
+   public void setShareMetaData( boolean shareMetaData )
+   {
+      _Config.put( Driver.SHAREMETA, String.valueOf( shareMetaData ) );
+   }
+
+   public boolean getShareMetaData()
+   {
+      return Boolean.valueOf( (String) _Config.get( Driver.SHAREMETA ) ).booleanValue();
+   }
+
    private void addNonNullProperties( Properties props, String user, String password )
    {
       Iterator it = _Config.entrySet().iterator();
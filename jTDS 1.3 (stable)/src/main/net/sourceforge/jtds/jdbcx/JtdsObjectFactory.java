@@ -61,9 +61,11 @@ public class JtdsObjectFactory implements ObjectFactory
             Driver.BINDADDRESS,
             Driver.BUFFERDIR,
             Driver.BUFFERMAXMEMORY,
+            Driver.BUFFERCONNECTIONMEMORY,
             Driver.BUFFERMINPACKETS,
             Driver.CACHEMETA,
             Driver.CHARSET,
+            Driver.CURSORPREFETCH,
             Driver.DATABASENAME,
             Driver.DOMAIN,
             Driver.INSTANCE,
@@ -74,27 +76,35 @@ public class JtdsObjectFactory implements ObjectFactory
             Driver.LOGINTIMEOUT,
             Driver.MACADDRESS,
             Driver.MAXSTATEMENTS,
+            Driver.METADATACACHETTL,
             Driver.NAMEDPIPE,
             Driver.PACKETSIZE,
             Driver.PASSWORD,
+            Driver.PIPELINE,
             Driver.PORTNUMBER,
             Driver.PREPARESQL,
             Driver.PROGNAME,
             Driver.SERVERNAME,
             Driver.SERVERTYPE,
+            Driver.SHAREMETA,
             Driver.SOTIMEOUT,
             Driver.SOKEEPALIVE,
             Driver.PROCESSID,
             Driver.SSL,
+            Driver.STREAMLOBS,
             Driver.TCPNODELAY,
+            Driver.USEBULKINSERT,
             Driver.TDS,
             Driver.USECURSORS,
             Driver.USEJCIFS,
             Driver.USENTLMV2,
             Driver.USEKERBEROS,
             Driver.USELOBS,
+            Driver.USELAZYROWS,
+            Driver.USEPREPEXEC,
             Driver.USER,
             Driver.SENDSTRINGPARAMETERSASUNICODE,
+            Driver.WARMSTART,
             Driver.WSID,
             Driver.XAEMULATION
          } );
@@ -0,0 +1,337 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.sourceforge.jtds.jdbcx;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * <p> A {@link JtdsDataSource} that pools the connections returned by {@link
+ * #getConnection()}, so no external connection pool is required. </p>
+ *
+ * <p> Closing a connection returns it to the pool, after restoring the state
+ * it had when it was opened. On SQL Server 2000 and later the server resets
+ * the session as part of the next request, otherwise an open transaction is
+ * rolled back and auto-commit mode, transaction isolation, catalog and
+ * read-only state are restored. Idle connections are validated in the background with
+ * a lightweight ping instead of a test query. The pool is created when the
+ * first connection is requested, later changes of the pool settings have no
+ * effect. </p>
+ *
+ * <p> Connections requested for an explicit user name and password, pooled
+ * connections and XA connections are created without pooling, as they are by
+ * {@link JtdsDataSource}. </p>
+ */
+public class JtdsPoolingDataSource extends JtdsDataSource
+{
+
+   /**
+    * serial version UID
+    */
+   static final long                         serialVersionUID    = 01000001L;
+
+   private int                               _MaxPoolSize        = 10;
+
+   private int                               _MinIdle;
+
+   private long                              _BorrowTimeout      = 30000;
+
+   private int                               _ValidationInterval = 30;
+
+   private int                               _ValidationTimeout  = 5;
+
+   private int                               _IdleTimeout        = 600;
+
+   private boolean                           _ResetConnection    = true;
+
+   private transient volatile ConnectionPool _Pool;
+
+   private transient boolean                 _Closed;
+
+   /**
+    * Constructs a new pooling DataSource.
+    */
+   public JtdsPoolingDataSource()
+   {
+   }
+
+   /**
+    * Borrows a connection from the pool, waiting up to the borrow timeout if
+    * all connections are in use.
+    *
+    * @return
+    *    a pooled database connection, returned to the pool when closed
+    *
+    * @throws SQLException
+    *    if the data source has been closed or no connection became available
+    *    in time
+    */
+   @Override
+   public Connection getConnection()
+      throws SQLException
+   {
+      return pool().borrow();
+   }
+
+   /**
+    * Closes all idle connections and stops pooling, connections in use are
+    * closed when they are returned.
+    */
+   public synchronized void close()
+   {
+      _Closed = true;
+
+      if( _Pool != null )
+      {
+         _Pool.close();
+      }
+   }
+
+   /**
+    * Creates a new physical connection for the pool.
+    */
+   Connection connect()
+      throws SQLException
+   {
+      return super.getConnection( getUser(), getPassword() );
+   }
+
+   private ConnectionPool pool()
+   {
+      ConnectionPool pool = _Pool;
+
+      if( pool == null )
+      {
+         synchronized( this )
+         {
+            pool = _Pool;
+
+            if( pool == null )
+            {
+               pool = new ConnectionPool( this, _MaxPoolSize, _MinIdle, _BorrowTimeout, _ValidationInterval, _ValidationTimeout, _IdleTimeout, _ResetConnection );
+
+               if( _Closed )
+               {
+                  pool.close();
+               }
+
+               _Pool = pool;
+            }
+         }
+      }
+
+      return pool;
+   }
+
+   //
+   // Pool settings
+   //
+
+   /**
+    * @param maxPoolSize
+    *    the maximum number of connections, 10 by default
+    */
+   public void setMaxPoolSize( int maxPoolSize )
+   {
+      _MaxPoolSize = maxPoolSize;
+   }
+
+   public int getMaxPoolSize()
+   {
+      return _MaxPoolSize;
+   }
+
+   /**
+    * @param minIdle
+    *    the number of idle connections kept open, none by default
+    */
+   public void setMinIdle( int minIdle )
+   {
+      _MinIdle = minIdle;
+   }
+
+   public int getMinIdle()
+   {
+      return _MinIdle;
+   }
+
+   /**
+    * @param borrowTimeout
+    *    the number of milliseconds {@link #getConnection()} waits for a
+    *    connection, 30 seconds by default
+    */
+   public void setBorrowTimeout( long borrowTimeout )
+   {
+      _BorrowTimeout = borrowTimeout;
+   }
+
+   public long getBorrowTimeout()
+   {
+      return _BorrowTimeout;
+   }
+
+   /**
+    * @param validationInterval
+    *    the number of seconds a connection may be idle before it's validated,
+    *    30 by default
+    */
+   public void setValidationInterval( int validationInterval )
+   {
+      _ValidationInterval = validationInterval;
+   }
+
+   public int getValidationInterval()
+   {
+      return _ValidationInterval;
+   }
+
+   /**
+    * @param validationTimeout
+    *    the number of seconds to wait for the server to answer a validation,
+    *    5 by default
+    */
+   public void setValidationTimeout( int validationTimeout )
+   {
+      _ValidationTimeout = validationTimeout;
+   }
+
+   public int getValidationTimeout()
+   {
+      return _ValidationTimeout;
+   }
+
+   /**
+    * @param idleTimeout
+    *    the number of seconds after which idle connections exceeding the
+    *    minimum number of idle connections are closed, 10 minutes by default
+    *    or 0 to keep them open
+    */
+   public void setIdleTimeout( int idleTimeout )
+   {
+      _IdleTimeout = idleTimeout;
+   }
+
+   public int getIdleTimeout()
+   {
+      return _IdleTimeout;
+   }
+
+   /**
+    * @param resetConnection
+    *    whether the server resets the session of a returned connection,
+    *    <code>true</code> by default; the reset also discards temporary
+    *    tables and statements prepared on the connection, so disabling it
+    *    allows prepared statements to be reused across borrows
+    */
+   public void setResetConnection( boolean resetConnection )
+   {
+      _ResetConnection = resetConnection;
+   }
+
+   public boolean getResetConnection()
+   {
+      return _ResetConnection;
+   }
+
+   //
+   // Pool metrics
+   //
+
+   /**
+    * @return
+    *    the number of connections currently borrowed
+    */
+   public int getActiveConnections()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getActive();
+   }
+
+   /**
+    * @return
+    *    the number of idle connections
+    */
+   public int getIdleConnections()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getIdle();
+   }
+
+   /**
+    * @return
+    *    the number of open connections, including connections being created
+    */
+   public int getTotalConnections()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getTotal();
+   }
+
+   /**
+    * @return
+    *    the number of threads currently waiting for a connection
+    */
+   public int getThreadsAwaitingConnection()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getWaiters();
+   }
+
+   /**
+    * @return
+    *    the number of connections created by the pool
+    */
+   public long getConnectionsCreated()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getCreated();
+   }
+
+   /**
+    * @return
+    *    the number of times a connection has been borrowed
+    */
+   public long getConnectionsBorrowed()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getBorrowed();
+   }
+
+   /**
+    * @return
+    *    the number of times {@link #getConnection()} failed because no
+    *    connection became available within the borrow timeout
+    */
+   public long getBorrowTimeouts()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getTimeouts();
+   }
+
+   /**
+    * @return
+    *    the number of idle connections that failed validation and have been
+    *    closed
+    */
+   public long getValidationFailures()
+   {
+      ConnectionPool pool = _Pool;
+      return pool == null ? 0 : pool.getValidationFailures();
+   }
+
+}
@@ -71,8 +71,10 @@ public class ConnectionProxy implements Connection {
             return;
         }
 
-        _pooledConnection.fireConnectionEvent(true, null);
+        // Mark the proxy closed first, the connection may be handed out
+        // again as soon as the event has been fired
         _closed = true;
+        _pooledConnection.fireConnectionEvent(true, null);
     }
 
     /**
@@ -762,12 +764,18 @@ public class ConnectionProxy implements Connection {
         throw new AbstractMethodError();
     }
 
-    /* (non-Javadoc)
+    /**
+     * Delgates calls to the connection; returns <code>false</code> once the
+     * proxy has been closed.
+     *
      * @see java.sql.Connection#isValid(int)
      */
     public boolean isValid(int timeout) throws SQLException {
-        // TODO Auto-generated method stub
-        throw new AbstractMethodError();
+        if (_closed) {
+            return false;
+        }
+
+        return _connection.isValid(timeout);
     }
 
     /* (non-Javadoc)
@@ -28,26 +28,32 @@ import net.sourceforge.jtds.jdbc.Messages;
  * <p/>
  * The data can be purely memory based until the size exceeds the value
  * dictated by the <code>lobBuffer</code> URL property after which it will be
- * written to disk. The disk array is accessed randomly one page (1024 bytes)
- * at a time.
+ * written to disk. The disk file is accessed through a small cache of up to
+ * <code>MAX_PAGES</code> pages, the page size is chosen each time the file is
+ * opened, between <code>MIN_PAGE_SIZE</code> and <code>MAX_PAGE_SIZE</code>
+ * depending on the length of the data.
  * <p/>
  * This class is not synchronized and concurrent open input and output
  * streams can conflict.
  * <p/>
  * Tuning hints:
  * <ol>
- *   <li>The <code>PAGE_SIZE</code> governs how much data is buffered when
- *     reading or writing data a byte at a time. 1024 bytes seems to work well
- *     but if very large objects are being written a byte at a time 4096 may be
- *     better. <b>NB.</b> ensure that the <code>PAGE_MASK</code> and
- *     <code>BYTE_MASK</code> fields are also adjusted to match.
+ *   <li>The page size governs how much data is buffered when reading or
+ *     writing data a byte at a time. Small BLOBs use pages of
+ *     <code>MIN_PAGE_SIZE</code> bytes, large BLOBs pages of
+ *     <code>MAX_PAGE_SIZE</code> bytes. Each open BLOB file holds up to
+ *     <code>MAX_PAGES</code> pages in memory, so random access to a few
+ *     distinct areas (e.g. searching a pattern while reading) does not cause
+ *     a page to be written and read for every access.
  *   <li>Reading or writing byte arrays that are greater than or equal to the
  *     page size will go directly to or from the random access file cutting out
  *     an ArrayCopy operation.
- *   <li>If BLOBs are being buffered exclusively in memory you may wish to
- *     adjust the <code>MAX_BUF_INC</code> value. Every time the buffer is
- *     expanded the existing contents are copied and this may get expensive
- *     with very large BLOBs.
+ *   <li>Pages beyond the end of the data written to disk so far are never
+ *     read from the file, so appending data (the usual case when a BLOB is
+ *     read from the server) only writes each page once.
+ *   <li>If BLOBs are being buffered exclusively in memory the buffer doubles
+ *     in size every time it has to be expanded, so the existing contents are
+ *     copied only a logarithmic number of times.
  *   <li>The BLOB file will be kept open for as long as there are open input or
  *     output streams. Therefore BLOB streams should be explicitly closed as
  *     soon as they are finished with.
@@ -63,28 +69,28 @@ public class BlobBuffer {
      */
     private static final byte[] EMPTY_BUFFER = new byte[0];
     /**
-     * Default page size (must be power of 2).
+     * Initial size of the in memory buffer.
      */
-    private static final int PAGE_SIZE = 1024;
+    private static final int INITIAL_BUF_SIZE = 1024;
     /**
-     * Mask for page component of read/write pointer.
+     * Minimum page size (must be power of 2).
      */
-    private static final int PAGE_MASK = 0xFFFFFC00;
+    private static final int MIN_PAGE_SIZE = 4096;
     /**
-     * Mask for page offset component of R/W pointer.
+     * Maximum page size (must be power of 2).
      */
-    private static final int BYTE_MASK = 0x000003FF;
+    private static final int MAX_PAGE_SIZE = 32768;
     /**
-     * Maximum buffer increment.
+     * Maximum number of pages held in memory while the BLOB file is open.
      */
-    private static final int MAX_BUF_INC = 16384;
+    private static final int MAX_PAGES = 4;
     /**
      * Invalid page marker.
      */
     private static final int INVALID_PAGE = -1;
 
     /**
-     * The BLOB buffer or the current page buffer.
+     * The in memory BLOB buffer, empty if the data is stored on disk.
      */
     private byte[] buffer;
     /**
@@ -92,9 +98,48 @@ public class BlobBuffer {
      */
     private int length;
     /**
-     * The number of the current page in memory.
+     * The pages in memory, <code>null</code> if the BLOB file is closed.
+     * Pages are allocated on first use.
+     */
+    private byte[][] pages;
+    /**
+     * The offset in the BLOB file of each page in memory.
+     */
+    private int[] pageAddress;
+    /**
+     * Indicates which pages in memory must be saved.
+     */
+    private boolean[] pageDirty;
+    /**
+     * The last access of each page in memory, for LRU replacement.
+     */
+    private long[] pageUsed;
+    /**
+     * Access counter, incremented whenever another page becomes the current
+     * page.
+     */
+    private long useCount;
+    /**
+     * The index of the most recently used page.
      */
     private int currentPage;
+    /**
+     * The size of the pages in memory (power of 2).
+     */
+    private int pageSize;
+    /**
+     * Mask for page component of read/write pointer.
+     */
+    private int pageMask;
+    /**
+     * The offset following the last byte read, to detect sequential reads.
+     */
+    private int readEnd;
+    /**
+     * The number of bytes written to the BLOB file so far; pages beyond this
+     * offset do not have to be read from disk.
+     */
+    private int fileLength;
     /**
      * The name of the temporary BLOB disk file.
      */
@@ -103,10 +148,6 @@ public class BlobBuffer {
      * The RA file object reference or null if closed.
      */
     private RandomAccessFile raFile;
-    /**
-     * Indicates page in memory must be saved.
-     */
-    private boolean bufferDirty;
     /**
      * Count of callers that have opened the BLOB file.
      */
@@ -176,8 +217,9 @@ public class BlobBuffer {
             if (length > 0) {
                 raFile.write(buffer, 0, length);
             }
-            buffer = new byte[PAGE_SIZE];
-            currentPage = INVALID_PAGE;
+            fileLength = length;
+            buffer = EMPTY_BUFFER;
+            allocatePages();
             openCount = 0;
         } catch (SecurityException e) {
             blobFile = null;
@@ -208,8 +250,8 @@ public class BlobBuffer {
             // reopen file
             raFile = new RandomAccessFile(blobFile, "rw");
             openCount = 1;
-            currentPage = INVALID_PAGE;
-            buffer = new byte[PAGE_SIZE];
+            fileLength = (int) raFile.length();
+            allocatePages();
             return;
         }
         if (raFile != null) {
@@ -217,12 +259,125 @@ public class BlobBuffer {
         }
     }
 
+    /**
+     * Sets up an empty page cache, with a page size suitable for the current
+     * length of the data.
+     */
+    private void allocatePages() {
+        pageSize = Math.min(MAX_PAGE_SIZE,
+                Math.max(MIN_PAGE_SIZE, Integer.highestOneBit(length >>> 5)));
+        pageMask = -pageSize;
+        pages = new byte[MAX_PAGES][];
+        pageAddress = new int[MAX_PAGES];
+        pageDirty = new boolean[MAX_PAGES];
+        pageUsed = new long[MAX_PAGES];
+        for (int i = 0; i < MAX_PAGES; i++) {
+            pageAddress[i] = INVALID_PAGE;
+        }
+        currentPage = 0;
+        readEnd = 0;
+    }
+
+    /**
+     * Releases the page cache.
+     */
+    private void releasePages() {
+        pages = null;
+        pageAddress = null;
+        pageDirty = null;
+        pageUsed = null;
+    }
+
+    /**
+     * Returns the index of the page in memory containing the specified
+     * location, reading the page if required.
+     * <p/>
+     * If all pages are in use the least recently used page is replaced,
+     * after writing it to disk if it has been changed. As the current page is
+     * always the most recently used one, pages only have to be stamped when
+     * they become the current page.
+     *
+     * @param ptr the offset in the buffer
+     * @return the index of the page in memory
+     * @throws IOException if an I/O error occurs
+     */
+    private int page(int ptr) throws IOException {
+        int address = ptr & pageMask;
+        if (pageAddress[currentPage] == address) {
+            return currentPage;
+        }
+        int victim = currentPage;
+        for (int i = 0; i < MAX_PAGES; i++) {
+            if (pageAddress[i] == address) {
+                victim = i;
+                break;
+            }
+            if (pages[i] == null
+                    || pages[victim] != null && pageUsed[i] < pageUsed[victim]) {
+                victim = i;
+            }
+        }
+        if (pageAddress[victim] != address) {
+            if (pages[victim] == null) {
+                pages[victim] = new byte[pageSize];
+            } else if (pageDirty[victim]) {
+                writePage(pageAddress[victim]);
+            }
+            loadPage(victim, address);
+        }
+        currentPage = victim;
+        pageUsed[victim] = ++useCount;
+        return victim;
+    }
+
+    /**
+     * Checks whether any page in memory overlaps a region of the BLOB file.
+     *
+     * @param ptr the start of the region
+     * @param len the length of the region
+     */
+    private boolean isCached(int ptr, int len) {
+        for (int i = 0; i < MAX_PAGES; i++) {
+            if (overlaps(i, ptr, len)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fills a page in memory with the data at the specified offset of the
+     * BLOB file.
+     * <p/>
+     * Nothing is read if the page lies beyond the data written to disk so
+     * far, e.g. when data is appended.
+     *
+     * @param index   the index of the page in memory
+     * @param address the page offset in the BLOB file
+     * @throws IOException if an I/O error occurs
+     */
+    private void loadPage(int index, int address) throws IOException {
+        pageAddress[index] = INVALID_PAGE;
+        pageDirty[index] = false;
+        if (address < fileLength) {
+            byte[] page = pages[index];
+            int len = Math.min(pageSize, fileLength - address);
+            raFile.seek(address);
+            // Repeat reading until buffer is filled or EOF is reached
+            int count = 0, res;
+            do {
+                res = raFile.read(page, count, len - count);
+                count += (res == -1) ? 0 : res;
+            } while (count < len && res != -1);
+        }
+        pageAddress[index] = address;
+    }
+
     /**
      * Reads byte from the BLOB buffer at the specified location.
      * <p/>
      * The read pointer is partitioned into a page number and an offset within
-     * the page. This routine will read new pages as required. The page size
-     * must be a power of 2 and is currently set to 1024 bytes.
+     * the page. This routine will read new pages as required.
      *
      * @param readPtr the offset in the buffer of the required byte
      * @return the byte value as an <code>int</code> or -1 if at EOF
@@ -234,14 +389,14 @@ public class BlobBuffer {
             return -1;
         }
         if (raFile != null) {
-            // Paged storage as a file exists
-            if (currentPage != (readPtr & PAGE_MASK)) {
-                // Requested page not in memory so read it
-                readPage(readPtr);
+            // Paged storage as a file exists, use the byte offset to return
+            // the correct byte from the page.
+            int index = currentPage;
+            if (pageAddress[index] != (readPtr & pageMask)) {
+                // Requested page not current so look it up
+                index = page(readPtr);
             }
-            // Use the byte offset to return the correct
-            // byte from the page.
-            return buffer[readPtr & BYTE_MASK] & 0xFF;
+            return pages[index][readPtr & ~pageMask] & 0xFF;
         } else {
             // In memory buffer just return byte.
             return buffer[readPtr] & 0xFF;
@@ -277,13 +432,17 @@ public class BlobBuffer {
         if (raFile != null) {
             // Need to read from disk file
             len = Math.min(length - readPtr, len);
-            if (len >= PAGE_SIZE) {
-                // This is a big write so we optimize by reading directly
-                // from the RA File.
-                if (bufferDirty) {
-                    writePage(currentPage);
+            boolean sequential = readPtr == readEnd;
+            readEnd = readPtr + len;
+            if (len >= pageSize || !sequential && !isCached(readPtr, len)) {
+                // This is a big or a random read so we optimize by reading
+                // directly from the RA File, after saving any changed pages.
+                // Random reads would hardly benefit from reading whole pages.
+                for (int i = 0; i < MAX_PAGES; i++) {
+                    if (pageDirty[i] && overlaps(i, readPtr, len)) {
+                        writePage(pageAddress[i]);
+                    }
                 }
-                currentPage = INVALID_PAGE;
                 raFile.seek(readPtr);
                 raFile.readFully(bytes, offset, len);
             } else {
@@ -292,12 +451,9 @@ public class BlobBuffer {
                 //
                 int count = len;
                 while (count > 0) {
-                    if (currentPage != (readPtr & PAGE_MASK)) {
-                        // Requested page not in memory so read it
-                        readPage(readPtr);
-                    }
-                    int inBuffer = Math.min(PAGE_SIZE - (readPtr & BYTE_MASK), count);
-                    System.arraycopy(buffer, readPtr & BYTE_MASK, bytes, offset, inBuffer);
+                    byte[] page = pages[page(readPtr)];
+                    int inBuffer = Math.min(pageSize - (readPtr & ~pageMask), count);
+                    System.arraycopy(page, readPtr & ~pageMask, bytes, offset, inBuffer);
                     offset += inBuffer;
                     readPtr += inBuffer;
                     count -= inBuffer;
@@ -316,8 +472,7 @@ public class BlobBuffer {
      * Inserts a byte into the buffer at the specified location.
      * <p/>
      * The write pointer is partitioned into a page number and an offset within
-     * the page. This routine will write new pages as required. The page size
-     * must be a power of 2 and is currently set to 1024 bytes.
+     * the page. This routine will write new pages as required.
      *
      * @param writePtr the offset in the buffer of the required byte
      * @param b        the byte value to write
@@ -332,7 +487,7 @@ public class BlobBuffer {
             }
             // We are writing beyond the current length
             // of the buffer and need to update the total length.
-            if (++length < 0) {
+            if (length + 1 < 0) {
                 // We have wrapped 31 bits!
                 // This should ensure that the disk file is limited to 2GB.
                 // If in memory JVM will probably have failed by now anyway.
@@ -342,13 +497,10 @@ public class BlobBuffer {
 
         if (raFile != null) {
             // OK we have a disk based buffer
-            if (currentPage != (writePtr & PAGE_MASK)) {
-                // The page we need is not in memory
-                readPage(writePtr);
-            }
-            buffer[writePtr & BYTE_MASK] = (byte) b;
-            // Ensure change will saved if buffer is replaced
-            bufferDirty = true;
+            int index = page(writePtr);
+            pages[index][writePtr & ~pageMask] = (byte) b;
+            // Ensure change will saved if page is replaced
+            pageDirty[index] = true;
         } else {
             // In memory buffer only (only used here if disk unavailable
             if (writePtr >= buffer.length) {
@@ -356,6 +508,9 @@ public class BlobBuffer {
             }
             buffer[writePtr] = (byte) b;
         }
+        if (writePtr == length) {
+            length++;
+        }
     }
 
     /**
@@ -390,31 +545,32 @@ public class BlobBuffer {
         if (raFile != null) {
             // dealing with disk storage (normal case)
             //
-            if (len >= PAGE_SIZE) {
+            if (len >= pageSize) {
                 // This is a big write so we optimize by writing directly
-                // to the RA File.
-                if (bufferDirty) {
-                    writePage(currentPage);
-                }
-                currentPage = INVALID_PAGE;
+                // to the RA File, and update any pages in memory it covers.
                 raFile.seek(writePtr);
                 raFile.write(bytes, offset, len);
+                fileLength = Math.max(fileLength, writePtr + len);
+                for (int i = 0; i < MAX_PAGES; i++) {
+                    if (overlaps(i, writePtr, len)) {
+                        int from = Math.max(writePtr, pageAddress[i]);
+                        int to = Math.min(writePtr + len, pageAddress[i] + pageSize);
+                        System.arraycopy(bytes, offset + from - writePtr,
+                                pages[i], from - pageAddress[i], to - from);
+                    }
+                }
                 writePtr += len;
             } else {
                 // Small writes so use the page buffer for
                 // effeciency.
                 int count = len;
                 while (count > 0) {
-                    // Paged storage as a file exists
-                    if (currentPage != (writePtr & PAGE_MASK)) {
-                        // Requested page not in memory so read it
-                        readPage(writePtr);
-                    }
+                    int index = page(writePtr);
                     int inBuffer = Math.min(
-                            PAGE_SIZE - (writePtr & BYTE_MASK), count);
-                    System.arraycopy(bytes, offset, buffer,
-                            writePtr & BYTE_MASK, inBuffer);
-                    bufferDirty = true;
+                            pageSize - (writePtr & ~pageMask), count);
+                    System.arraycopy(bytes, offset, pages[index],
+                            writePtr & ~pageMask, inBuffer);
+                    pageDirty[index] = true;
                     offset += inBuffer;
                     writePtr += inBuffer;
                     count -= inBuffer;
@@ -434,57 +590,64 @@ public class BlobBuffer {
     }
 
     /**
-     * Reads in the specified page from the disk buffer.
+     * Checks whether a page in memory overlaps a region of the BLOB file.
+     *
+     * @param index the index of the page in memory
+     * @param ptr   the start of the region
+     * @param len   the length of the region
+     */
+    private boolean overlaps(int index, int ptr, int len) {
+        int address = pageAddress[index];
+        return address != INVALID_PAGE
+                && address < ptr + len && ptr < address + pageSize;
+    }
+
+    /**
+     * Reads in the page containing the specified location from the disk
+     * buffer, unless it is already in memory.
      * <p/>
-     * Any existing dirty page is first saved to disk.
+     * If all pages in memory are in use, the least recently used one is first
+     * saved to disk if it has been changed.
      *
-     * @param page the page number
+     * @param page the offset of the page or any location within it
      * @throws IOException if an I/O error occurs
      */
     public void readPage(int page) throws IOException {
-        page = page & PAGE_MASK;
-        if (bufferDirty) {
-            writePage(currentPage);
-        }
-        if (page > raFile.length()) {
+        if (page > length) {
             throw new IOException("readPage: Invalid page number " + page);
         }
-        currentPage = page;
-        // Locate and read requested page
-        // NB. Page may not be completely filled.
-        raFile.seek(currentPage);
-        // Repeat reading until buffer is filled or EOF is reached
-        int count = 0, res;
-        do {
-            res = raFile.read(buffer, count, buffer.length - count);
-            count += (res == -1) ? 0 : res;
-        } while (count < PAGE_SIZE && res != -1);
+        page(page);
     }
 
     /**
-     * Writes the specified page to the disk buffer.
+     * Writes the specified page to the disk buffer, if it is in memory.
+     * <p/>
+     * Only the part of the page holding valid data is written.
      *
-     * @param page the page number
+     * @param page the offset of the page or any location within it
      * @throws IOException if an I/O error occurs
      */
     public void writePage(int page) throws IOException {
-        page = page & PAGE_MASK;
-        if (page > raFile.length()) {
-            throw new IOException("writePage: Invalid page number " + page);
-        }
-        if (buffer.length != PAGE_SIZE) {
-            throw new IllegalStateException("writePage: buffer size invalid");
+        page = page & pageMask;
+        for (int i = 0; i < MAX_PAGES; i++) {
+            if (pageAddress[i] == page) {
+                int len = Math.min(pageSize, length - page);
+                if (len > 0) {
+                    raFile.seek(page);
+                    raFile.write(pages[i], 0, len);
+                    fileLength = Math.max(fileLength, page + len);
+                }
+                pageDirty[i] = false;
+                return;
+            }
         }
-        raFile.seek(page);
-        raFile.write(buffer);
-        bufferDirty = false;
     }
 
     /**
      * Logically closes the file or physically close it if the open count is
      * now zero.
      * <p/>
-     * Any updated buffer in memory is flushed to disk before the file is
+     * Any updated pages in memory are flushed to disk before the file is
      * closed.
      *
      * @throws IOException if an I/O error occurs
@@ -492,14 +655,15 @@ public class BlobBuffer {
     public void close() throws IOException {
         if (openCount > 0) {
             if (--openCount == 0 && raFile != null) {
-                if (bufferDirty) {
-                    writePage(currentPage);
+                for (int i = 0; i < MAX_PAGES; i++) {
+                    if (pageDirty[i]) {
+                        writePage(pageAddress[i]);
+                    }
                 }
                 raFile.close();
                 raFile = null;
-                // Allow buffer to be garbage collected
-                buffer = EMPTY_BUFFER;
-                currentPage = INVALID_PAGE;
+                // Allow pages to be garbage collected
+                releasePages();
             }
         }
     }
@@ -507,20 +671,20 @@ public class BlobBuffer {
     /**
      * Increases the size of the in memory buffer for situations where disk
      * storage of BLOB is not possible.
+     * <p/>
+     * The buffer is at least doubled in size, so the cost of copying the
+     * existing contents is amortized over the data appended.
      *
      * @param minSize the minimum size of buffer required
      */
     public void growBuffer(int minSize) {
         if (buffer.length == 0) {
             // Assign initial buffer
-            buffer = new byte[Math.max(PAGE_SIZE, minSize)];
+            buffer = new byte[Math.max(INITIAL_BUF_SIZE, minSize)];
         } else {
-            byte[] tmp;
-            if (buffer.length * 2 > minSize && buffer.length <= MAX_BUF_INC) {
-                tmp = new byte[buffer.length * 2];
-            } else {
-                tmp = new byte[minSize + MAX_BUF_INC];
-            }
+            long size = Math.max(minSize, (long) buffer.length * 2);
+            byte[] tmp = new byte[(int) Math.min(size,
+                    Math.max(minSize, Integer.MAX_VALUE - 8))];
             // Copy over existing data
             System.arraycopy(buffer, 0, tmp, 0, buffer.length);
             buffer = tmp; // Assign new buffer.
@@ -1203,7 +1367,7 @@ public class BlobBuffer {
                 blobFile = null;
                 raFile = null;
                 openCount = 0;
-                currentPage = INVALID_PAGE;
+                releasePages();
             }
         }
     }
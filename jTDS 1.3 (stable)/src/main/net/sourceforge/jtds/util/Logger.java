@@ -111,7 +111,7 @@ public class Logger {
         line.append("----- Stream #");
         line.append(streamId);
         line.append(in ? " read" : " send");
-        line.append((pkt[1] != 0) ? " last " : " ");
+        line.append(((pkt[1] & 1) != 0) ? " last " : " ");
 
         switch (pkt[0]) {
             case 1:
@@ -17,8 +17,11 @@
 //
 package net.sourceforge.jtds.util;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Simple timer class used to implement login and query timeouts.
@@ -28,12 +31,33 @@ import java.util.ListIterator;
  * <p/>
  * It provides both a singleton implementation and a default constructor for
  * the case when more than one timer thread is desired.
+ * <p/>
+ * Timer requests are kept in hashed timing wheels, so setting and cancelling
+ * a timer takes constant time no matter how many timers are outstanding.
+ * To keep threads setting and cancelling timers from contending for a single
+ * lock there is one wheel per {@link #SHARDS shard}, selected by the calling
+ * thread. Timers expire with a resolution of {@link #TICK} milliseconds and
+ * the thread only wakes up once per tick while any timer is pending.
  *
  * @author Alin Sinpalean
  * @author Mike Hutchinson
  * @version $Id: TimerThread.java,v 1.5.2.3 2010-05-17 09:16:06 ickzon Exp $
  */
 public class TimerThread extends Thread {
+    /** Resolution of the timer in milliseconds. */
+    static final int TICK = 10;
+    /** Number of buckets per wheel, a power of 2. */
+    static final int WHEEL_SIZE = 1024;
+    /** Number of wheels, a power of 2. */
+    static final int SHARDS = 8;
+
+    /** State of a pending timer request. */
+    private static final int PENDING = 0;
+    /** State of a cancelled timer request. */
+    private static final int CANCELLED = 1;
+    /** State of an expired timer request. */
+    private static final int EXPIRED = 2;
+
     /**
      * Interface to be implemented by classes that request timer services.
      */
@@ -47,12 +71,22 @@ public class TimerThread extends Thread {
     /**
      * Internal class associating a login or query timeout value with a target
      * <code>TimerListener</code>.
+     * <p/>
+     * Requests are linked into the bucket of their wheel they are due in.
      */
     private static class TimerRequest {
-        /** The time when this timeout will expire. */
-        final long time;
+        /** The tick when this timeout will expire. */
+        long tick;
         /** Target to notify when the timeout expires. */
         final TimerListener target;
+        /** The wheel this request was added to. */
+        final Shard shard;
+        /** Previous request in the same bucket. */
+        TimerRequest prev;
+        /** Next request in the same bucket. */
+        TimerRequest next;
+        /** One of PENDING, CANCELLED or EXPIRED, guarded by the shard lock. */
+        volatile int state;
 
         /**
          * Create a <code>TimerRequest</code>.
@@ -60,35 +94,143 @@ public class TimerThread extends Thread {
          * @param timeout the desired timeout in milliseconds
          * @param target  the target object; one of <code>SharedSocket</code> or
          *                <code>TdsCore</code>
+         * @param shard   the wheel to add the request to
          * @throws IllegalArgumentException if the timeout is negative or 0
          */
-        TimerRequest(int timeout, TimerListener target) {
+        TimerRequest(int timeout, TimerListener target, Shard shard) {
             if (timeout <= 0) {
                 throw new IllegalArgumentException("Invalid timeout parameter "
                         + timeout);
             }
-            this.time = System.currentTimeMillis() + (timeout);
+            // Round up, a timer must never expire too early
+            this.tick = (currentMillis() + timeout + TICK - 1) / TICK;
             this.target = target;
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * A hashed timing wheel, i.e. an array of buckets each holding a doubly
+     * linked list of the requests due in any tick mapped to that bucket.
+     */
+    private static class Shard {
+        /** Lock guarding all fields of this shard and its requests. */
+        final ReentrantLock lock = new ReentrantLock();
+        /** The first request of each bucket. */
+        final TimerRequest[] buckets = new TimerRequest[WHEEL_SIZE];
+        /** The next tick to be processed. */
+        long tick = currentTick();
+        /** Number of pending requests. */
+        int size;
+        /** Total number of pending requests of the owning timer. */
+        final AtomicInteger pending;
+
+        Shard(AtomicInteger pending) {
+            this.pending = pending;
+        }
+
+        /**
+         * Adds a request to its bucket, never to one already processed.
+         */
+        void add(TimerRequest t) {
+            if (size == 0) {
+                // Not processed while empty, catch up
+                tick = Math.max(tick, currentTick());
+            }
+            t.tick = Math.max(t.tick, tick);
+
+            int b = (int) t.tick & WHEEL_SIZE - 1;
+            t.next = buckets[b];
+            if (t.next != null) {
+                t.next.prev = t;
+            }
+            buckets[b] = t;
+            size++;
+        }
+
+        /**
+         * Removes a request from its bucket.
+         */
+        void remove(TimerRequest t) {
+            if (t.prev != null) {
+                t.prev.next = t.next;
+            } else {
+                buckets[(int) t.tick & WHEEL_SIZE - 1] = t.next;
+            }
+            if (t.next != null) {
+                t.next.prev = t.prev;
+            }
+            t.prev = t.next = null;
+            size--;
+        }
+
+        /**
+         * Removes all requests due up to the given tick, visiting each bucket
+         * at most once.
+         *
+         * @param now     the current tick
+         * @param expired list to add the expired requests to
+         */
+        void expire(long now, ArrayList expired) {
+            long last = Math.min(now, tick + WHEEL_SIZE - 1);
+
+            for (long crt = tick; crt <= last && size > 0; crt++) {
+                TimerRequest t = buckets[(int) crt & WHEEL_SIZE - 1];
+                while (t != null) {
+                    TimerRequest next = t.next;
+                    if (t.tick <= now) {
+                        remove(t);
+                        t.state = EXPIRED;
+                        expired.add(t);
+                    }
+                    t = next;
+                }
+            }
+
+            tick = now + 1;
+        }
+
+        /**
+         * Discards all pending requests.
+         */
+        void clear() {
+            for (int b = 0; b < WHEEL_SIZE; b++) {
+                for (TimerRequest t = buckets[b]; t != null; t = t.next) {
+                    t.state = CANCELLED;
+                }
+                buckets[b] = null;
+            }
+            pending.addAndGet(-size);
+            size = 0;
         }
     }
 
     /** Singleton instance. */
-    private static TimerThread instance;
+    private static volatile TimerThread instance;
 
-    /** List of <code>TimerRequest</code>s to execute, ordered by time. */
-    private final LinkedList timerList = new LinkedList();
-    /** Time when the first request time out should occur. */
-    private long nextTimeout;
+    /** Time base of all ticks. */
+    private static final long START = System.nanoTime();
+
+    /** The timing wheels. */
+    private final Shard[] shards = new Shard[SHARDS];
+    /** Total number of pending requests. */
+    private final AtomicInteger pending = new AtomicInteger();
 
     /**
      * Singleton getter.
      */
-    public static synchronized TimerThread getInstance() {
-        if (instance == null) {
-            instance = new TimerThread();
-            instance.start();
+    public static TimerThread getInstance() {
+        TimerThread timer = instance;
+        if (timer == null) {
+            synchronized (TimerThread.class) {
+                if (instance == null) {
+                    instance = new TimerThread();
+                    instance.start();
+                }
+                timer = instance;
+            }
         }
-        return instance;
+        return timer;
     }
 
     /**
@@ -99,53 +241,77 @@ public class TimerThread extends Thread {
         super("jTDS TimerThread");
         // Ensure that this thread does not prevent the VM from exiting
         this.setDaemon(true);
+
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(pending);
+        }
+    }
+
+    /**
+     * Retrieves the milliseconds elapsed since the time base.
+     */
+    static long currentMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - START);
+    }
+
+    /**
+     * Retrieves the current tick.
+     */
+    static long currentTick() {
+        return currentMillis() / TICK;
     }
 
     /**
      * Execute the <code>TimerThread</code> main loop.
      */
     public void run() {
-        synchronized (timerList) {
-            boolean run = true;
-            while (run) {
-                try {
-                    long ms;
-                    while ((ms = nextTimeout - System.currentTimeMillis()) > 0 || nextTimeout == 0) {
-                        // positive timeout, wait appropriately
-                        timerList.wait(nextTimeout==0 ? 0 : ms);
-                    }
+        ArrayList expired = new ArrayList();
 
-                    // Fire expired timeout requests
-                    long time = System.currentTimeMillis();
-                    while (!timerList.isEmpty()) {
-                        // Examine the head of the list and see
-                        // if the timer has expired.
-                        TimerRequest t = (TimerRequest) timerList.getFirst();
-                        if (t.time > time) {
-                            break; // No timers have expired
-                        }
-                        // Notify target of timeout
-                        t.target.timerExpired();
-                        // Remove the fired timeout request
-                        timerList.removeFirst();
-                    }
+        while (!isInterrupted()) {
+            if (pending.get() == 0) {
+                // Nothing to do, wait for setTimer()
+                LockSupport.park(this);
+                continue;
+            }
+
+            long now = currentTick();
 
-                    // Determine next timeout
-                    updateNextTimeout();
-                } catch (InterruptedException e) {
-                    // stopThread() called, or thread interrupted externally
-                    run = false;
-                    timerList.clear();
+            for (int i = 0; i < SHARDS; i++) {
+                Shard shard = shards[i];
+                shard.lock.lock();
+                try {
+                    shard.expire(now, expired);
+                } finally {
+                    shard.lock.unlock();
                 }
             }
+
+            // Notify targets outside of the locks, cancelling may block
+            pending.addAndGet(-expired.size());
+            for (int i = 0; i < expired.size(); i++) {
+                ((TimerRequest) expired.get(i)).target.timerExpired();
+            }
+            expired.clear();
+
+            // Sleep until the start of the next tick
+            long next = (now + 1) * TICK * 1000000L + START;
+            LockSupport.parkNanos(this, next - System.nanoTime());
+        }
+
+        // stopThread() called, or thread interrupted externally
+        for (int i = 0; i < SHARDS; i++) {
+            Shard shard = shards[i];
+            shard.lock.lock();
+            try {
+                shard.clear();
+            } finally {
+                shard.lock.unlock();
+            }
         }
     }
 
     /**
      * Add a timer request to the queue.
-     * <p/>
-     * The queue is ordered by time so that the head of the list is always the
-     * first timer to expire.
      *
      * @param timeout the interval in milliseconds after which the timer will
      *                expire
@@ -154,36 +320,21 @@ public class TimerThread extends Thread {
      *         <code>cancelTimer</code>
      */
     public Object setTimer(int timeout, TimerListener l) {
+        Shard shard = shards[(int) Thread.currentThread().getId() & SHARDS - 1];
+
         // Create a new timer request
-        TimerRequest t = new TimerRequest(timeout, l);
+        TimerRequest t = new TimerRequest(timeout, l, shard);
 
-        synchronized (timerList) {
-            if (timerList.isEmpty()) {
-                // List was empty, just add new request
-                timerList.add(t);
-            } else {
-                // Tiny optimization; new requests will usually go to the end
-                TimerRequest crt = (TimerRequest) timerList.getLast();
-                if (t.time >= crt.time) {
-                    timerList.addLast(t);
-                } else {
-                    // Iterate the list and insert it into the right place
-                    for (ListIterator li = timerList.listIterator(); li.hasNext(); ) {
-                        crt = (TimerRequest) li.next();
-                        if (t.time < crt.time) {
-                            li.previous();
-                            li.add(t);
-                            break;
-                        }
-                    }
-                }
-            }
+        // Wake up the timer if it was idle
+        if (pending.getAndIncrement() == 0) {
+            LockSupport.unpark(this);
+        }
 
-            // If this request is now the first in the list, interrupt timer
-            if (timerList.getFirst() == t) {
-                nextTimeout = t.time;
-                timerList.notifyAll();
-            }
+        shard.lock.lock();
+        try {
+            shard.add(t);
+        } finally {
+            shard.lock.unlock();
         }
 
         // Return the created request as timer handle
@@ -200,13 +351,19 @@ public class TimerThread extends Thread {
     public boolean cancelTimer(Object handle) {
         TimerRequest t = (TimerRequest) handle;
 
-        synchronized (timerList) {
-            boolean result = timerList.remove(t);
-            if (nextTimeout == t.time) {
-                updateNextTimeout();
+        t.shard.lock.lock();
+        try {
+            if (t.state != PENDING) {
+                return false;
             }
-            return result;
+            t.shard.remove(t);
+            t.state = CANCELLED;
+        } finally {
+            t.shard.lock.unlock();
         }
+
+        t.shard.pending.decrementAndGet();
+        return true;
     }
 
     /**
@@ -229,16 +386,6 @@ public class TimerThread extends Thread {
      * @return <code>true</code> if timer has expired
      */
     public boolean hasExpired(Object handle) {
-        TimerRequest t = (TimerRequest) handle;
-
-        synchronized (timerList) {
-            return !timerList.contains(t);
-        }
-    }
-
-    /** Internal method that updates the value of {@link #nextTimeout}. */
-    private void updateNextTimeout() {
-        nextTimeout = timerList.isEmpty() ? 0
-                : ((TimerRequest) timerList.getFirst()).time;
+        return ((TimerRequest) handle).state != PENDING;
     }
 }
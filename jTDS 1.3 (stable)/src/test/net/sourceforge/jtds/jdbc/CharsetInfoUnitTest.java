@@ -0,0 +1,67 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link CharsetInfo} class.
+ */
+public class CharsetInfoUnitTest extends TestCase {
+
+    public CharsetInfoUnitTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Test that the usual single and multi-byte code pages allow the ASCII
+     * fast path and the resolved charset matches the charset name.
+     */
+    public void testAsciiCompatible() {
+        String[] names = {"iso_1", "cp1250", "cp1252", "cp437", "cp932", "cp936", "utf8"};
+
+        for (int i = 0; i < names.length; i++) {
+            CharsetInfo info = CharsetInfo.getCharset(names[i]);
+            assertTrue(names[i], info.isAsciiCompatible());
+            assertEquals(names[i], Charset.forName(info.getCharset()), info.getJavaCharset());
+        }
+    }
+
+    /**
+     * Test that the reusable decoder and encoder convert like the
+     * <code>String</code> methods do, including unmappable characters.
+     */
+    public void testCoders() throws Exception {
+        CharsetInfo info = CharsetInfo.getCharset("cp1252");
+        String value = "abc \u00E4\u20AC\u0160 \u4E00";
+
+        byte[] expected = value.getBytes("Cp1252");
+        ByteBuffer bytes = info.newEncoder().encode(CharBuffer.wrap(value));
+        assertEquals(expected.length, bytes.remaining());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], bytes.get(i));
+        }
+
+        assertEquals(new String(expected, "Cp1252"),
+                info.newDecoder().decode(ByteBuffer.wrap(expected)).toString());
+    }
+}
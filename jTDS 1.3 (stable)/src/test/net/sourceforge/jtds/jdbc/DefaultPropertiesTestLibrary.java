@@ -239,6 +239,45 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
         }
     }
 
+    /**
+     * Test the <code>streamLobs</code> property.
+     */
+    public void test_streamLobs() {
+        String fieldName = "streamLobs";
+        String messageKey = Driver.STREAMLOBS;
+        String expectedValue = DefaultProperties.STREAMLOBS;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>shareMetaData</code> property.
+     */
+    public void test_shareMetaData() {
+        String fieldName = "shareMetaData";
+        String messageKey = Driver.SHAREMETA;
+        String expectedValue = DefaultProperties.SHAREMETA;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>warmStart</code> property.
+     */
+    public void test_warmStart() {
+        String fieldName = "warmStart";
+        String messageKey = Driver.WARMSTART;
+        String expectedValue = DefaultProperties.WARM_START;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
     /**
      * Test the <code>processId</code> property.
      */
@@ -306,6 +345,19 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
         }
     }
 
+    /**
+     * Test the <code>pipeline</code> property.
+     */
+    public void test_pipeline() {
+        String fieldName = "pipeline";
+        String messageKey = Driver.PIPELINE;
+        String expectedValue = DefaultProperties.PIPELINE;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
 
     /**
      * Test the <code>prepareSql</code> property.
@@ -390,6 +442,45 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
         }
     }
 
+    /**
+     * Test the <code>bufferConnectionMemory</code> property.
+     */
+    public void test_bufferConnectionMemory() {
+        String fieldName = "bufferConnectionMemory";
+        String messageKey = Driver.BUFFERCONNECTIONMEMORY;
+        String expectedValue = DefaultProperties.BUFFER_CONNECTION_MEMORY;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>cursorPrefetch</code> property.
+     */
+    public void test_cursorPrefetch() {
+        String fieldName = "cursorPrefetch";
+        String messageKey = Driver.CURSORPREFETCH;
+        String expectedValue = DefaultProperties.CURSOR_PREFETCH;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>metaDataCacheTtl</code> property.
+     */
+    public void test_metaDataCacheTtl() {
+        String fieldName = "metaDataCacheTtl";
+        String messageKey = Driver.METADATACACHETTL;
+        String expectedValue = DefaultProperties.METADATA_CACHE_TTL;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
     /**
      * Test the <code>bufferMinPackets</code> property.
      */
@@ -429,6 +520,19 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
         }
     }
 
+    /**
+     * Test the <code>useBulkInsert</code> property.
+     */
+    public void test_useBulkInsert() {
+        String fieldName = "useBulkInsert";
+        String messageKey = Driver.USEBULKINSERT;
+        String expectedValue = DefaultProperties.USEBULKINSERT;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
     /**
      * Test the <code>useCursors</code> property.
      */
@@ -469,6 +573,32 @@ public abstract class DefaultPropertiesTestLibrary extends TestCase {
         }
     }
 
+    /**
+     * Test the <code>useLazyRows</code> property.
+     */
+    public void test_useLazyRows() {
+        String fieldName = "useLazyRows";
+        String messageKey = Driver.USELAZYROWS;
+        String expectedValue = DefaultProperties.USELAZYROWS;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
+    /**
+     * Test the <code>usePrepExec</code> property.
+     */
+    public void test_usePrepExec() {
+        String fieldName = "usePrepExec";
+        String messageKey = Driver.USEPREPEXEC;
+        String expectedValue = DefaultProperties.USEPREPEXEC;
+        assertDefaultPropertyByServerType(URL_SQLSERVER, messageKey, fieldName, expectedValue);
+        if (!isOnlySqlServerTests()) {
+            assertDefaultPropertyByServerType(URL_SYBASE, messageKey, fieldName, expectedValue);
+        }
+    }
+
     /**
      * Test the <code>wsid</code> property.
      */
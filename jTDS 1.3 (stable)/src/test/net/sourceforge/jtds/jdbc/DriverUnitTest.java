@@ -202,6 +202,13 @@ public class DriverUnitTest extends UnitTestBase {
         expectedChoicesMap.put(Messages.get(Driver.SENDSTRINGPARAMETERSASUNICODE), expectedBooleanChoices);
         expectedChoicesMap.put(Messages.get(Driver.CACHEMETA), expectedBooleanChoices);
         expectedChoicesMap.put(Messages.get(Driver.USECURSORS), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.STREAMLOBS), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.WARMSTART), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.SHAREMETA), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.USEPREPEXEC), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.USEBULKINSERT), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.PIPELINE), expectedBooleanChoices);
+        expectedChoicesMap.put(Messages.get(Driver.USELAZYROWS), expectedBooleanChoices);
         expectedChoicesMap.put(Messages.get(Driver.USELOBS), expectedBooleanChoices);
 
         final Map infoMap = new HashMap();
@@ -0,0 +1,109 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.Connection;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import net.sourceforge.jtds.tools.FakeTdsServer;
+
+/**
+ * Tests for the instance ports cached by {@link EndpointCache}, run against
+ * two {@link FakeTdsServer}s pretending to be the instances ONE and TWO.
+ */
+public class EndpointCacheUnitTest extends TestCase {
+
+    private FakeTdsServer one;
+    private FakeTdsServer two;
+    private Properties info;
+
+    public EndpointCacheUnitTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        one = new FakeTdsServer(0, "8.0");
+        one.setInstance("ONE");
+        one.start();
+        two = new FakeTdsServer(0, "8.0");
+        two.setInstance("TWO");
+        two.start();
+
+        info = new Properties();
+        info.setProperty("user", "sa");
+        info.setProperty("password", "");
+    }
+
+    protected void tearDown() throws Exception {
+        one.close();
+        two.close();
+    }
+
+    /**
+     * Caches the port of instance ONE for the URL given with the port of
+     * instance TWO and the instance name <code>instance</code>.
+     *
+     * @return the cache key
+     */
+    private String cacheInstanceOne(String instance) throws Exception {
+        JtdsConnection con = (JtdsConnection) new Driver().connect(
+                "jdbc:jtds:sqlserver://127.0.0.1:" + one.getPort(), info);
+        String key = EndpointCache.key(Driver.SQLSERVER, "127.0.0.1",
+                two.getPort(), instance, false, con.getTdsVersion());
+        EndpointCache.put(key, new EndpointCache(one.getPort(), null, 38,
+                con.getTdsVersion(), con.getDatabaseProductVersion()));
+        con.close();
+        return key;
+    }
+
+    /**
+     * Test that a cached port is used if the instance listening on it is
+     * the one named.
+     */
+    public void testCachedPort() throws Exception {
+        String key = cacheInstanceOne("ONE");
+        long logins = one.getLogins();
+
+        Connection con = new Driver().connect("jdbc:jtds:sqlserver://127.0.0.1:"
+                + two.getPort() + ";instance=ONE;warmStart=true", info);
+        con.close();
+
+        assertEquals(logins + 1, one.getLogins());
+        assertEquals(0, two.getLogins());
+        assertEquals(one.getPort(), EndpointCache.get(key).getPort());
+    }
+
+    /**
+     * Test that a cached port another instance listens on now is discarded
+     * and the port is looked up again, falling back to the port configured
+     * without the SQL Server Browser service.
+     */
+    public void testStalePort() throws Exception {
+        String key = cacheInstanceOne("TWO");
+        long logins = one.getLogins();
+
+        Connection con = new Driver().connect("jdbc:jtds:sqlserver://127.0.0.1:"
+                + two.getPort() + ";instance=TWO;warmStart=true", info);
+        con.close();
+
+        assertEquals(logins, one.getLogins());
+        assertEquals(1, two.getLogins());
+        assertEquals(two.getPort(), EndpointCache.get(key).getPort());
+    }
+}
@@ -0,0 +1,163 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the memory accounting of the {@link PacketSpool} and
+ * {@link MemoryBudget} classes.
+ */
+public class PacketSpoolUnitTest extends TestCase {
+
+    private static final int QUOTA = 16 * PacketSpool.SEGMENT_SIZE;
+
+    private MemoryBudget budget;
+    private SharedSocket socket;
+    private PacketSpool spool;
+    private long globalUsage;
+
+    public PacketSpoolUnitTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        budget = new MemoryBudget(0, QUOTA, 0);
+        socket = new SharedSocket(null, budget, Driver.TDS80, Driver.SQLSERVER);
+        spool = new PacketSpool(null, budget);
+        globalUsage = MemoryBudget.getGlobalUsage();
+    }
+
+    protected void tearDown() {
+        spool.close();
+    }
+
+    /**
+     * Test that reservations are accounted for the connection and globally,
+     * and that a denied reservation doesn't change the usage.
+     */
+    public void testReserveRelease() {
+        assertTrue(budget.tryReserve(1000));
+        assertEquals(1000, budget.getUsage());
+        assertEquals(globalUsage + 1000, MemoryBudget.getGlobalUsage());
+
+        assertFalse(budget.tryReserve(QUOTA));
+        assertEquals(1000, budget.getUsage());
+        assertEquals(globalUsage + 1000, MemoryBudget.getGlobalUsage());
+
+        // forced reservations ignore the quota
+        budget.reserve(QUOTA);
+        assertEquals(QUOTA + 1000, budget.getUsage());
+
+        budget.release(QUOTA + 1000);
+        assertEquals(0, budget.getUsage());
+        assertEquals(globalUsage, MemoryBudget.getGlobalUsage());
+    }
+
+    /**
+     * Test that all memory is released once the spool is empty and reserved
+     * again when the spool is reused.
+     */
+    public void testTrim() throws Exception {
+        SharedSocket.VirtualSocket vsock = newVirtualSocket();
+
+        spool.enqueue(vsock, packet(1, 4096));
+        assertEquals(PacketSpool.SEGMENT_SIZE, budget.getUsage());
+        assertEquals(globalUsage + PacketSpool.SEGMENT_SIZE, MemoryBudget.getGlobalUsage());
+
+        assertPacket(1, 4096, spool.dequeue(vsock, null));
+        assertEquals(0, budget.getUsage());
+        assertEquals(globalUsage, MemoryBudget.getGlobalUsage());
+
+        // reuse of the spool reserves the memory again
+        spool.enqueue(vsock, packet(2, 512));
+        assertEquals(PacketSpool.SEGMENT_SIZE, budget.getUsage());
+        assertPacket(2, 512, spool.dequeue(vsock, null));
+        assertEquals(0, budget.getUsage());
+        assertNull(spool.dequeue(vsock, null));
+    }
+
+    /**
+     * Test that the memory of several segments is released by discarding
+     * all packets, even if another virtual socket used the spool before.
+     */
+    public void testDiscard() throws Exception {
+        SharedSocket.VirtualSocket vsock1 = newVirtualSocket();
+        SharedSocket.VirtualSocket vsock2 = newVirtualSocket();
+        int packets = 3 * PacketSpool.SEGMENT_PAGES;
+
+        for (int i = 0; i < packets; i++) {
+            spool.enqueue(i % 2 == 0 ? vsock1 : vsock2, packet(i, 512));
+        }
+
+        assertEquals(3 * PacketSpool.SEGMENT_SIZE, budget.getUsage());
+
+        spool.discard(vsock1);
+        assertTrue(budget.getUsage() > 0);
+
+        for (int i = 1; i < packets; i += 2) {
+            assertPacket(i, 512, spool.dequeue(vsock2, null));
+        }
+
+        assertEquals(0, budget.getUsage());
+        assertEquals(globalUsage, MemoryBudget.getGlobalUsage());
+    }
+
+    /**
+     * Test that closing the spool releases all memory still in use.
+     */
+    public void testClose() throws Exception {
+        SharedSocket.VirtualSocket vsock = newVirtualSocket();
+
+        spool.enqueue(vsock, packet(1, 512));
+        spool.enqueue(vsock, packet(2, 512));
+        assertPacket(1, 512, spool.dequeue(vsock, null));
+        assertEquals(PacketSpool.SEGMENT_SIZE, budget.getUsage());
+
+        spool.close();
+        assertEquals(0, budget.getUsage());
+        assertEquals(globalUsage, MemoryBudget.getGlobalUsage());
+    }
+
+    private SharedSocket.VirtualSocket newVirtualSocket() {
+        return socket.getRequestStream(4096, TdsData.DEFAULT_PRECISION_38).getVirtualSocket();
+    }
+
+    /**
+     * Creates a packet of the given length, filled with the given value.
+     */
+    private static byte[] packet(int value, int len) {
+        byte[] buffer = new byte[len];
+        Arrays.fill(buffer, (byte) value);
+        buffer[0] = TdsCore.REPLY_PKT;
+        buffer[1] = (byte) TdsCore.STATUS_EOM;
+        buffer[2] = (byte) (len >> 8);
+        buffer[3] = (byte) len;
+        return buffer;
+    }
+
+    private static void assertPacket(int value, int len, byte[] buffer) {
+        assertEquals(len, SharedSocket.getPktLen(buffer));
+
+        for (int i = 8; i < len; i++) {
+            assertEquals(value & 0xFF, buffer[i] & 0xFF);
+        }
+    }
+}
@@ -1309,6 +1309,163 @@ public class PreparedStatementTest extends TestBase {
         }
     }
 
+    /**
+     * Test joining a table with a {@link TableValue}, reusing the statement
+     * with different rows.
+     */
+    public void testTableValueJoin() throws Exception {
+        if (!isMSSQL()) {
+            return;
+        }
+
+        Statement st = con.createStatement();
+        st.execute("create table #testTableValueJoin (id int primary key, name varchar(10))");
+        for (int i = 1; i <= 5; i++) {
+            st.execute("insert into #testTableValueJoin values (" + i + ", 'n" + i + "')");
+        }
+        st.close();
+
+        List<Object[]> keys = new ArrayList<Object[]>();
+        keys.add(new Object[] {new Integer(1)});
+        keys.add(new Object[] {new Integer(3)});
+        keys.add(new Object[] {new Integer(5)});
+        keys.add(new Object[] {new Integer(7)});
+
+        PreparedStatement ps = con.prepareStatement("select t.name from #testTableValueJoin t join ? k on t.id = k.[a]]b] where t.id > ? order by t.id");
+        ps.setObject(1, new TableValue(new String[] {"a]b"}, null, keys));
+        ps.setInt(2, 1);
+
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals("n3", rs.getString(1));
+        assertTrue(rs.next());
+        assertEquals("n5", rs.getString(1));
+        assertFalse(rs.next());
+        rs.close();
+
+        keys.clear();
+        keys.add(new Object[] {new Integer(2)});
+        ps.setInt(2, 0);
+
+        rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals("n2", rs.getString(1));
+        assertFalse(rs.next());
+        rs.close();
+        ps.close();
+    }
+
+    /**
+     * Test an empty {@link TableValue}, with and without declared types.
+     */
+    public void testTableValueEmpty() throws Exception {
+        if (!isMSSQL()) {
+            return;
+        }
+
+        PreparedStatement ps = con.prepareStatement("select count(*) from ? t");
+
+        ps.setObject(1, new TableValue(new String[] {"id"}, new int[] {Types.INTEGER}, new ArrayList<Object[]>()));
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+
+        ps.setObject(1, new TableValue(new String[] {"id", "name"}, null, new ArrayList<Object[]>().iterator()));
+        rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+        ps.close();
+    }
+
+    /**
+     * Test a {@link TableValue} column holding only <code>null</code> values,
+     * its type can't be derived from the values.
+     */
+    public void testTableValueNullOnly() throws Exception {
+        if (!isMSSQL()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] {new Integer(1), null});
+        rows.add(new Object[] {new Integer(2), null});
+
+        PreparedStatement ps = con.prepareStatement("select count(*), count(v), max(id) from ? t");
+        ps.setObject(1, new TableValue(new String[] {"id", "v"}, null, rows));
+
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        assertEquals(0, rs.getInt(2));
+        assertEquals(2, rs.getInt(3));
+        rs.close();
+        ps.close();
+    }
+
+    /**
+     * Test a {@link TableValue} with columns of different types, including a
+     * column with values of different Java types converted to the type of
+     * the first value, and that values that can't be converted are rejected.
+     */
+    public void testTableValueMixedTypes() throws Exception {
+        if (!isMSSQL()) {
+            return;
+        }
+
+        Timestamp ts = Timestamp.valueOf("2010-05-01 12:30:45.0");
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] {new Integer(1), "abc", new BigDecimal("1.5"), ts, Boolean.TRUE, new byte[] {1, 2}, new Double(0.5)});
+        rows.add(new Object[] {new Long(2), null, new BigDecimal("22.25"), null, Boolean.FALSE, null, new Double(-1)});
+        rows.add(new Object[] {new Short((short) 3), "", null, ts, null, new byte[0], null});
+
+        PreparedStatement ps = con.prepareStatement("select i, s, d, ts, b, bin, f from ? t order by i");
+        ps.setObject(1, new TableValue(new String[] {"i", "s", "d", "ts", "b", "bin", "f"}, null, rows));
+
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        assertEquals("abc", rs.getString(2));
+        assertEquals(new BigDecimal("1.50"), rs.getBigDecimal(3));
+        assertEquals(ts, rs.getTimestamp(4));
+        assertTrue(rs.getBoolean(5));
+        assertTrue(Arrays.equals(new byte[] {1, 2}, rs.getBytes(6)));
+        assertEquals(0.5, rs.getDouble(7), 0);
+
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        assertNull(rs.getString(2));
+        assertEquals(new BigDecimal("22.25"), rs.getBigDecimal(3));
+        assertNull(rs.getTimestamp(4));
+        assertFalse(rs.getBoolean(5));
+        assertFalse(rs.wasNull());
+        assertNull(rs.getBytes(6));
+        assertEquals(-1, rs.getDouble(7), 0);
+
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        assertEquals("", rs.getString(2));
+        assertNull(rs.getBigDecimal(3));
+        assertEquals(ts, rs.getTimestamp(4));
+        rs.getBoolean(5);
+        assertTrue(rs.wasNull());
+        assertEquals(0, rs.getBytes(6).length);
+        assertFalse(rs.next());
+        rs.close();
+
+        rows.add(new Object[] {"four", null, null, null, null, null, null});
+
+        try {
+            ps.executeQuery();
+            fail("value converted to int");
+        } catch (SQLException e) {
+            // expected, "four" is no integer
+        }
+
+        ps.close();
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(PreparedStatementTest.class);
     }
@@ -0,0 +1,152 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import net.sourceforge.jtds.jdbcx.JtdsPoolingDataSource;
+import net.sourceforge.jtds.tools.FakeTdsServer;
+
+/**
+ * Tests for {@link JtdsConnection#resetConnection()}, run against a
+ * {@link FakeTdsServer}.
+ */
+public class ResetConnectionUnitTest extends TestCase {
+
+    private FakeTdsServer server;
+    private JtdsConnection con;
+
+    public ResetConnectionUnitTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        server = new FakeTdsServer(0, "8.0");
+        server.setResult(1, 1, 0);
+        server.start();
+
+        Properties info = new Properties();
+        info.setProperty("user", "sa");
+        info.setProperty("password", "");
+        con = (JtdsConnection) new Driver().connect(
+                "jdbc:jtds:sqlserver://127.0.0.1:" + server.getPort(), info);
+    }
+
+    protected void tearDown() throws Exception {
+        con.close();
+        server.close();
+    }
+
+    /**
+     * Makes the server fail the settings batch sent with the reset.
+     */
+    private void failReset() {
+        server.script("SET TRANSACTION", server.tokens()
+                .error(50000, 16, "reset failed")
+                .done(FakeTdsServer.DONE_ERROR, 0));
+    }
+
+    /**
+     * Test that the reset is requested by the status bit of a single request
+     * that is sent without waiting for the response, and that the client side
+     * state is restored.
+     */
+    public void testResetBit() throws Exception {
+        con.setAutoCommit(false);
+        con.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        con.setReadOnly(true);
+        long requests = server.getRequests();
+        assertEquals(0, server.getResets());
+
+        server.setLatency(1000);
+        long start = System.currentTimeMillis();
+        assertTrue(con.resetConnection());
+        assertTrue(System.currentTimeMillis() - start < 500);
+        server.setLatency(0);
+
+        assertTrue(con.getAutoCommit());
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED,
+                con.getTransactionIsolation());
+        assertFalse(con.isReadOnly());
+
+        ResultSet rs = con.createStatement().executeQuery("SELECT 1");
+        assertTrue(rs.next());
+        rs.close();
+
+        assertEquals(requests + 2, server.getRequests());
+        assertEquals(1, server.getResets());
+    }
+
+    /**
+     * Test that a failed reset closes the connection when the response is
+     * read by the next request of the connection.
+     */
+    public void testResetFailure() throws Exception {
+        failReset();
+        assertTrue(con.resetConnection());
+
+        try {
+            con.setAutoCommit(false);
+            fail("Failed reset not reported");
+        } catch (SQLException e) {
+            assertEquals("08S01", e.getSQLState());
+        }
+        assertTrue(con.isClosed());
+    }
+
+    /**
+     * Test that a pooled connection that failed to reset is removed from the
+     * pool when the borrower's next request reads the response.
+     */
+    public void testPoolEviction() throws Exception {
+        JtdsPoolingDataSource ds = new JtdsPoolingDataSource();
+        ds.setServerName("127.0.0.1");
+        ds.setPortNumber(server.getPort());
+        ds.setUser("sa");
+        ds.setPassword("");
+        try {
+            failReset();
+            ds.getConnection().close();
+            assertEquals(1, ds.getTotalConnections());
+
+            Connection pooled = ds.getConnection();
+            try {
+                pooled.setAutoCommit(false);
+                fail("Failed reset not reported");
+            } catch (SQLException e) {
+                assertEquals("08S01", e.getSQLState());
+            }
+            pooled.close();
+            assertEquals(1, ds.getConnectionsCreated());
+            assertEquals(0, ds.getTotalConnections());
+
+            pooled = ds.getConnection();
+            ResultSet rs = pooled.createStatement().executeQuery("SELECT 1");
+            assertTrue(rs.next());
+            rs.close();
+            pooled.close();
+            assertEquals(2, ds.getConnectionsCreated());
+        } finally {
+            ds.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the bulk insert detection of the {@link SQLParser} class.
+ */
+public class SQLParserUnitTest extends TestCase {
+
+    public SQLParserUnitTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Test simple inserts, with and without <code>INTO</code>.
+     */
+    public void testParseBulkInsert() {
+        assertBulkInsert("INSERT INTO t (a, b) VALUES (?, ?)", new String[] {"t", "a", "b"});
+        assertBulkInsert("insert t(a)values(?)", new String[] {"t", "a"});
+        assertBulkInsert(" INSERT  INTO  t ( a , b )  VALUES ( ? , ? ) ", new String[] {"t", "a", "b"});
+    }
+
+    /**
+     * Test quoted, bracketed and qualified table and column names.
+     */
+    public void testQualifiedNames() {
+        assertBulkInsert("INSERT INTO [dbo].t ([a b], \"c\") VALUES (?, ?)", new String[] {"[dbo].t", "[a b]", "\"c\""});
+        assertBulkInsert("INSERT INTO db.[dbo].[t] (a) VALUES (?)", new String[] {"db.[dbo].[t]", "a"});
+        assertBulkInsert("INSERT INTO db..t (a) VALUES (?)", null);
+        assertBulkInsert("INSERT INTO #t (a) VALUES (?)", new String[] {"#t", "a"});
+    }
+
+    /**
+     * Test that doubled closing brackets or quotes are part of the name.
+     */
+    public void testEscapes() {
+        assertBulkInsert("INSERT INTO [a]]b] ([c]]]) VALUES (?)", new String[] {"[a]]b]", "[c]]]"});
+        assertBulkInsert("INSERT INTO \"a\"\"b\" (\"c]\") VALUES (?)", new String[] {"\"a\"\"b\"", "\"c]\""});
+        assertBulkInsert("INSERT INTO [a (b) VALUES (?)", null);
+
+        assertEquals("a]b", SQLParser.unquoteName("[a]]b]"));
+        assertEquals("c]", SQLParser.unquoteName("[c]]]"));
+        assertEquals("a\"b", SQLParser.unquoteName("\"a\"\"b\""));
+        assertEquals("c]]", SQLParser.unquoteName("\"c]]\""));
+        assertEquals("t", SQLParser.unquoteName("t"));
+    }
+
+    /**
+     * Test that the number of parameter markers has to match the number of
+     * columns.
+     */
+    public void testMarkerCount() {
+        assertBulkInsert("INSERT INTO t (a, b) VALUES (?)", null);
+        assertBulkInsert("INSERT INTO t (a) VALUES (?, ?)", null);
+        assertBulkInsert("INSERT INTO t (a, b) VALUES (?, 1)", null);
+    }
+
+    /**
+     * Test that a single trailing semicolon is accepted but nothing else.
+     */
+    public void testTrailingTokens() {
+        assertBulkInsert("INSERT INTO t (a) VALUES (?);", new String[] {"t", "a"});
+        assertBulkInsert("INSERT INTO t (a) VALUES (?) ; ", new String[] {"t", "a"});
+        assertBulkInsert("INSERT INTO t (a) VALUES (?);;", null);
+        assertBulkInsert("INSERT INTO t (a) VALUES (?) SELECT 1", null);
+        assertBulkInsert("INSERT INTO t (a) VALUES (?), (?)", null);
+    }
+
+    /**
+     * Test statements that are no single row inserts.
+     */
+    public void testNoInsert() {
+        assertBulkInsert("UPDATE t SET a = ?", null);
+        assertBulkInsert("INSERT INTO t VALUES (?)", null);
+        assertBulkInsert("INSERT INTO t (a) SELECT ?", null);
+        assertBulkInsert("", null);
+    }
+
+    private static void assertBulkInsert(String sql, String[] expected) {
+        String[] actual = SQLParser.parseBulkInsert(sql);
+
+        if (expected == null) {
+            assertNull(sql, actual);
+        } else {
+            assertNotNull(sql, actual);
+            assertEquals(sql, Arrays.asList(expected), Arrays.asList(actual));
+        }
+    }
+}
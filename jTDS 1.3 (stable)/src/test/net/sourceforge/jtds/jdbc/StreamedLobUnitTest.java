@@ -0,0 +1,163 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import net.sourceforge.jtds.tools.FakeTdsServer;
+
+/**
+ * Tests for LOB values streamed from the network by {@link StreamedLob},
+ * run against a {@link FakeTdsServer}.
+ */
+public class StreamedLobUnitTest extends TestCase {
+
+    /** Size of the <code>lobBuffer</code>, smaller than the large values. */
+    private static final int LOB_BUFFER = 1024;
+
+    private FakeTdsServer server;
+    private Connection con;
+    private byte[] large1;
+    private byte[] large2;
+    private byte[] small;
+    private String text;
+
+    public StreamedLobUnitTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        Random random = new Random(1);
+        large1 = new byte[100000];
+        large2 = new byte[70000];
+        small = new byte[100];
+        random.nextBytes(large1);
+        random.nextBytes(large2);
+        random.nextBytes(small);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        text = sb.toString();
+
+        server = new FakeTdsServer(0, "8.0");
+        server.script("SELECT IMG", server.tokens().intColumn("id").imageColumn("data")
+                .row(1, large1).row(2, large2).row(3, small).done(3));
+        server.script("SELECT TXT", server.tokens().intColumn("id").ntextColumn("data")
+                .row(1, text).done(1));
+        server.start();
+
+        Properties info = new Properties();
+        info.setProperty("user", "sa");
+        info.setProperty("password", "");
+        con = new Driver().connect("jdbc:jtds:sqlserver://127.0.0.1:" + server.getPort()
+                + ";streamLobs=true;lobBuffer=" + LOB_BUFFER, info);
+    }
+
+    protected void tearDown() throws Exception {
+        con.close();
+        server.close();
+    }
+
+    /**
+     * Test reading values larger than <code>lobBuffer</code> through the
+     * streams, and that <code>available()</code> doesn't report data not
+     * received yet.
+     */
+    public void testReadStream() throws Exception {
+        ResultSet rs = con.createStatement().executeQuery("SELECT IMG");
+        assertTrue(rs.next());
+
+        InputStream in = rs.getBinaryStream(2);
+        assertTrue(in.available() < large1.length);
+
+        byte[] data = new byte[large1.length];
+        byte[] chunk = new byte[1000];
+        int total = 0;
+        for (int count; (count = in.read(chunk)) > 0; ) {
+            System.arraycopy(chunk, 0, data, total, count);
+            total += count;
+            assertTrue(in.available() <= large1.length - total);
+        }
+        assertEquals(large1.length, total);
+        assertTrue(Arrays.equals(large1, data));
+        assertEquals(0, in.available());
+        rs.close();
+
+        rs = con.createStatement().executeQuery("SELECT TXT");
+        assertTrue(rs.next());
+
+        Reader reader = rs.getCharacterStream(2);
+        StringBuilder sb = new StringBuilder();
+        char[] chars = new char[777];
+        for (int count; (count = reader.read(chars)) > 0; ) {
+            sb.append(chars, 0, count);
+        }
+        assertEquals(text, sb.toString());
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    /**
+     * Test that moving to the next row skips the rest of a partially read
+     * value, and a value no stream has been requested for.
+     */
+    public void testSkipByNext() throws Exception {
+        ResultSet rs = con.createStatement().executeQuery("SELECT IMG");
+        assertTrue(rs.next());
+
+        InputStream in = rs.getBinaryStream(2);
+        byte[] data = new byte[10];
+        assertEquals(10, in.read(data));
+        assertTrue(Arrays.equals(Arrays.copyOf(large1, 10), data));
+
+        // the rest of the first value is skipped
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+
+        try {
+            in.read(data);
+            fail("Stream of the previous row is still readable");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the second value is never requested
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        assertTrue(Arrays.equals(small, rs.getBytes(2)));
+        assertFalse(rs.next());
+        rs.close();
+
+        // the connection is still usable
+        rs = con.createStatement().executeQuery("SELECT IMG");
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        assertTrue(Arrays.equals(large2, rs.getBytes(2)));
+        rs.close();
+    }
+}
@@ -0,0 +1,108 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.jdbc.cache;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link ConcurrentLRUCache} class.
+ */
+public class ConcurrentLRUCacheUnitTest extends TestCase {
+
+    /** Weighs entries by the length of their value. */
+    private static final ConcurrentLRUCache.Weigher<Integer,String> LENGTH =
+            new ConcurrentLRUCache.Weigher<Integer,String>() {
+                public int weigh(Integer key, String value) {
+                    return value.length();
+                }
+            };
+
+    public ConcurrentLRUCacheUnitTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Test that hits and misses are counted.
+     */
+    public void testCounters() {
+        ConcurrentLRUCache<Integer,String> cache = new ConcurrentLRUCache<Integer,String>(100, 4, LENGTH);
+
+        assertNull(cache.get(1));
+        cache.put(1, "one");
+        assertEquals("one", cache.get(1));
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getWeight());
+    }
+
+    /**
+     * Test that the least recently used entries are evicted once the
+     * weight limit is exceeded.
+     */
+    public void testEviction() {
+        ConcurrentLRUCache<Integer,String> cache = new ConcurrentLRUCache<Integer,String>(10, 1, LENGTH);
+
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        cache.get(1);
+        cache.put(3, "cccc");
+
+        assertEquals("aaaa", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("cccc", cache.get(3));
+        assertEquals(8, cache.getWeight());
+
+        // replacing an entry replaces its weight
+        cache.put(3, "cc");
+        assertEquals(6, cache.getWeight());
+    }
+
+    /**
+     * Test that entries heavier than a segment are not cached.
+     */
+    public void testOversized() {
+        ConcurrentLRUCache<Integer,String> cache = new ConcurrentLRUCache<Integer,String>(16, 2, LENGTH);
+
+        cache.put(1, "0123456789");
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getWeight());
+
+        cache.put(1, "01234567");
+        assertEquals("01234567", cache.get(1));
+    }
+
+    /**
+     * Test that clearing the cache removes all entries and their weight.
+     */
+    public void testClear() {
+        ConcurrentLRUCache<Integer,String> cache = new ConcurrentLRUCache<Integer,String>(100, 4, LENGTH);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "value");
+        }
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertNull(cache.get(3));
+    }
+}
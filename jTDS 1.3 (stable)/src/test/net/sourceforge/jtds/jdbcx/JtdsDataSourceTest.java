@@ -157,6 +157,65 @@ public class JtdsDataSourceTest extends UnitTestBase {
          }
      }
 
+     /**
+      * Test that {@link JtdsPoolingDataSource} reuses a returned connection
+      * after restoring its state and fails once closed.
+      */
+     public void testPooling() throws Exception {
+         JtdsPoolingDataSource ds = new JtdsPoolingDataSource();
+         ds.setServerName(TestBase.props.getProperty(Messages.get(Driver.SERVERNAME)));
+         ds.setUser(TestBase.props.getProperty(Messages.get(Driver.USER)));
+         ds.setPassword(TestBase.props.getProperty(Messages.get(Driver.PASSWORD)));
+         ds.setDatabaseName(TestBase.props.getProperty(Messages.get(Driver.DATABASENAME)));
+         ds.setTds(TestBase.props.getProperty(Messages.get(Driver.TDS)));
+         ds.setServerType("2".equals(TestBase.props.getProperty(Messages.get(Driver.SERVERTYPE))) ? 2 : 1);
+         try {
+             ds.setPortNumber(Integer.parseInt(
+                     TestBase.props.getProperty(Messages.get(Driver.PORTNUMBER))));
+         } catch (Exception ex) {
+             // Ignore
+         }
+         ds.setMaxPoolSize(1);
+         ds.setBorrowTimeout(2000);
+
+         try {
+             Connection c = ds.getConnection();
+             c.setAutoCommit(false);
+             c.setReadOnly(true);
+
+             try {
+                 ds.getConnection();
+                 fail("Borrowed more than maxPoolSize connections");
+             } catch (SQLException ex) {
+                 assertEquals("08001", ex.getSQLState());
+             }
+
+             c.close();
+             assertFalse(c.isValid(0));
+
+             c = ds.getConnection();
+             assertTrue(c.getAutoCommit());
+             assertFalse(c.isReadOnly());
+             assertTrue(c.isValid(5));
+             c.close();
+
+             assertEquals(1, ds.getConnectionsCreated());
+             assertEquals(2, ds.getConnectionsBorrowed());
+             assertEquals(1, ds.getBorrowTimeouts());
+             assertEquals(1, ds.getIdleConnections());
+             assertEquals(0, ds.getActiveConnections());
+         } finally {
+             ds.close();
+         }
+
+         try {
+             ds.getConnection();
+             fail("Borrowed a connection from a closed pool");
+         } catch (SQLException ex) {
+             assertEquals("08003", ex.getSQLState());
+         }
+     }
+
      /**
       * Test connecting without specifying TDS version.
       * <p/>
@@ -78,7 +78,9 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertNull  ( ds.getBindAddress() );
       assertNull  ( ds.getBufferDir() );
       assertEquals( 0, ds.getBufferMaxMemory() );
+      assertEquals( 0, ds.getBufferConnectionMemory() );
       assertEquals( 0, ds.getBufferMinPackets() );
+      assertEquals( 0, ds.getCursorPrefetch() );
       assertFalse ( ds.getCacheMetaData() );
       assertNull  ( ds.getCharset() );
       assertNull  ( ds.getDatabaseName() );
@@ -91,6 +93,7 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertEquals( 0, ds.getLoginTimeout() );
       assertNull  ( ds.getMacAddress() );
       assertEquals( 0, ds.getMaxStatements() );
+      assertEquals( 0, ds.getMetaDataCacheTtl() );
       assertEquals( false, ds.getNamedPipe() );
       assertEquals( 0, ds.getPacketSize() );
       assertNull  ( ds.getPassword() );
@@ -112,6 +115,13 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertFalse ( ds.getUseNTLMV2() );
       assertNull  ( ds.getUser() );
       assertNull  ( ds.getWsid() );
+      assertFalse ( ds.getUseLazyRows() );
+      assertFalse ( ds.getPipeline() );
+      assertFalse ( ds.getUseBulkInsert() );
+      assertFalse ( ds.getUsePrepExec() );
+      assertFalse ( ds.getStreamLobs() );
+      assertFalse ( ds.getWarmStart() );
+      assertFalse ( ds.getShareMetaData() );
       assertFalse ( ds.getXaEmulation() );
    }
 
@@ -127,9 +137,11 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       defaults.put( Driver.BINDADDRESS                  , DefaultProperties.BIND_ADDRESS          );
       defaults.put( Driver.BUFFERDIR                    , DefaultProperties.BUFFER_DIR            );
       defaults.put( Driver.BUFFERMAXMEMORY              , DefaultProperties.BUFFER_MAX_MEMORY     );
+      defaults.put( Driver.BUFFERCONNECTIONMEMORY       , DefaultProperties.BUFFER_CONNECTION_MEMORY );
       defaults.put( Driver.BUFFERMINPACKETS             , DefaultProperties.BUFFER_MIN_PACKETS    );
       defaults.put( Driver.CACHEMETA                    , DefaultProperties.CACHEMETA             );
       defaults.put( Driver.CHARSET                      , DefaultProperties.CHARSET               );
+      defaults.put( Driver.CURSORPREFETCH               , DefaultProperties.CURSOR_PREFETCH       );
       defaults.put( Driver.DATABASENAME                 , DefaultProperties.DATABASE_NAME         );
       defaults.put( Driver.DOMAIN                       , DefaultProperties.DOMAIN                );
       defaults.put( Driver.INSTANCE                     , DefaultProperties.INSTANCE              );
@@ -140,9 +152,11 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       defaults.put( Driver.LOGINTIMEOUT                 , DefaultProperties.LOGIN_TIMEOUT         );
       defaults.put( Driver.MACADDRESS                   , DefaultProperties.MAC_ADDRESS           );
       defaults.put( Driver.MAXSTATEMENTS                , DefaultProperties.MAX_STATEMENTS        );
+      defaults.put( Driver.METADATACACHETTL             , DefaultProperties.METADATA_CACHE_TTL    );
       defaults.put( Driver.NAMEDPIPE                    , DefaultProperties.NAMED_PIPE            );
       defaults.put( Driver.PACKETSIZE                   , DefaultProperties.PACKET_SIZE_42        );
       defaults.put( Driver.PASSWORD                     , DefaultProperties.PASSWORD              );
+      defaults.put( Driver.PIPELINE                     , DefaultProperties.PIPELINE              );
       defaults.put( Driver.PORTNUMBER                   , DefaultProperties.PORT_NUMBER_SQLSERVER );
       defaults.put( Driver.PREPARESQL                   , DefaultProperties.PREPARE_SQLSERVER     );
       defaults.put( Driver.PROCESSID                    , DefaultProperties.PROCESS_ID            );
@@ -150,14 +164,20 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       defaults.put( Driver.SENDSTRINGPARAMETERSASUNICODE, DefaultProperties.USE_UNICODE           );
       defaults.put( Driver.SERVERNAME                   , "SERVERNAME"                            );
       defaults.put( Driver.SERVERTYPE                   , String.valueOf( Driver.SQLSERVER )      );
+      defaults.put( Driver.SHAREMETA                    , DefaultProperties.SHAREMETA             );
       defaults.put( Driver.SOKEEPALIVE                  , DefaultProperties.SOCKET_KEEPALIVE      );
       defaults.put( Driver.SOTIMEOUT                    , DefaultProperties.SOCKET_TIMEOUT        );
       defaults.put( Driver.SSL                          , DefaultProperties.SSL                   );
+      defaults.put( Driver.STREAMLOBS                   , DefaultProperties.STREAMLOBS            );
+      defaults.put( Driver.WARMSTART                    , DefaultProperties.WARM_START            );
       defaults.put( Driver.TCPNODELAY                   , DefaultProperties.TCP_NODELAY           );
+      defaults.put( Driver.USEBULKINSERT                , DefaultProperties.USEBULKINSERT         );
       defaults.put( Driver.TDS                          , DefaultProperties.TDS_VERSION_42        );
       defaults.put( Driver.USECURSORS                   , DefaultProperties.USECURSORS            );
       defaults.put( Driver.USEJCIFS                     , DefaultProperties.USEJCIFS              );
       defaults.put( Driver.USELOBS                      , DefaultProperties.USELOBS               );
+      defaults.put( Driver.USELAZYROWS                  , DefaultProperties.USELAZYROWS           );
+      defaults.put( Driver.USEPREPEXEC                  , DefaultProperties.USEPREPEXEC           );
       defaults.put( Driver.USENTLMV2                    , DefaultProperties.USENTLMV2             );
       defaults.put( Driver.USEKERBEROS                  , DefaultProperties.USEKERBEROS           );
       defaults.put( Driver.USER                         , DefaultProperties.USER                  );
@@ -180,7 +200,9 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       ds.setBatchSize                    ( 123456 ); assertEquals( 123456, ds.getBatchSize()                     );
       ds.setBindAddress                  ( "1234" ); assertEquals( "1234", ds.getBindAddress()                   );
       ds.setBufferMaxMemory              ( 123456 ); assertEquals( 123456, ds.getBufferMaxMemory()               );
+      ds.setBufferConnectionMemory       ( 123456 ); assertEquals( 123456, ds.getBufferConnectionMemory()        );
       ds.setBufferMinPackets             ( 123456 ); assertEquals( 123456, ds.getBufferMinPackets()              );
+      ds.setCursorPrefetch               ( 123456 ); assertEquals( 123456, ds.getCursorPrefetch()                );
       ds.setCacheMetaData                ( true   ); assertEquals( true  , ds.getCacheMetaData()                 );
       ds.setCharset                      ( "1234" ); assertEquals( "1234", ds.getCharset()                       );
       ds.setDatabaseName                 ( "1234" ); assertEquals( "1234", ds.getDatabaseName()                  );
@@ -193,6 +215,7 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       ds.setLoginTimeout                 ( 123456 ); assertEquals( 123456, ds.getLoginTimeout()                  );
       ds.setMacAddress                   ( "1234" ); assertEquals( "1234", ds.getMacAddress()                    );
       ds.setMaxStatements                ( 123456 ); assertEquals( 123456, ds.getMaxStatements()                 );
+      ds.setMetaDataCacheTtl             ( 123456 ); assertEquals( 123456, ds.getMetaDataCacheTtl()              );
       ds.setNamedPipe                    ( true   ); assertEquals( true  , ds.getNamedPipe()                     );
       ds.setPacketSize                   ( 123456 ); assertEquals( 123456, ds.getPacketSize()                    );
       ds.setPassword                     ( "1234" ); assertEquals( "1234", ds.getPassword()                      );
@@ -215,6 +238,13 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       ds.setUser                         ( "1234" ); assertEquals( "1234", ds.getUser()                          );
       ds.setWsid                         ( "1234" ); assertEquals( "1234", ds.getWsid()                          );
       ds.setXaEmulation                  ( false  ); assertEquals( false , ds.getXaEmulation()                   );
+      ds.setUseLazyRows                  ( true   ); assertEquals( true  , ds.getUseLazyRows()                   );
+      ds.setPipeline                     ( true   ); assertEquals( true  , ds.getPipeline()                      );
+      ds.setUseBulkInsert                ( true   ); assertEquals( true  , ds.getUseBulkInsert()                 );
+      ds.setUsePrepExec                  ( true   ); assertEquals( true  , ds.getUsePrepExec()                   );
+      ds.setStreamLobs                   ( true   ); assertEquals( true  , ds.getStreamLobs()                    );
+      ds.setWarmStart                    ( true   ); assertEquals( true  , ds.getWarmStart()                     );
+      ds.setShareMetaData                ( true   ); assertEquals( true  , ds.getShareMetaData()                 );
    }
 
    private void checkDefaults( JtdsDataSource ds )
@@ -225,7 +255,9 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertEquals( DefaultProperties.BATCH_SIZE_SQLSERVER , String.valueOf( ds.getBatchSize()                     ) );
       assertEquals( DefaultProperties.BIND_ADDRESS         , String.valueOf( ds.getBindAddress()                   ) );
       assertEquals( DefaultProperties.BUFFER_MAX_MEMORY    , String.valueOf( ds.getBufferMaxMemory()               ) );
+      assertEquals( DefaultProperties.BUFFER_CONNECTION_MEMORY, String.valueOf( ds.getBufferConnectionMemory()     ) );
       assertEquals( DefaultProperties.BUFFER_MIN_PACKETS   , String.valueOf( ds.getBufferMinPackets()              ) );
+      assertEquals( DefaultProperties.CURSOR_PREFETCH      , String.valueOf( ds.getCursorPrefetch()                ) );
       assertEquals( DefaultProperties.CACHEMETA            , String.valueOf( ds.getCacheMetaData()                 ) );
       assertEquals( DefaultProperties.CHARSET              , String.valueOf( ds.getCharset()                       ) );
       assertEquals( DefaultProperties.DATABASE_NAME        , String.valueOf( ds.getDatabaseName()                  ) );
@@ -238,6 +270,7 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertEquals( DefaultProperties.LOGIN_TIMEOUT        , String.valueOf( ds.getLoginTimeout()                  ) );
       assertEquals( DefaultProperties.MAC_ADDRESS          , String.valueOf( ds.getMacAddress()                    ) );
       assertEquals( DefaultProperties.MAX_STATEMENTS       , String.valueOf( ds.getMaxStatements()                 ) );
+      assertEquals( DefaultProperties.METADATA_CACHE_TTL   , String.valueOf( ds.getMetaDataCacheTtl()              ) );
       assertEquals( DefaultProperties.NAMED_PIPE           , String.valueOf( ds.getNamedPipe()                     ) );
       assertEquals( DefaultProperties.PACKET_SIZE_42       , String.valueOf( ds.getPacketSize()                    ) );
       assertEquals( DefaultProperties.PASSWORD             , String.valueOf( ds.getPassword()                      ) );
@@ -260,6 +293,13 @@ public class JtdsObjectFactoryTest extends UnitTestBase
       assertEquals( DefaultProperties.USER                 , String.valueOf( ds.getUser()                          ) );
       assertEquals( DefaultProperties.WSID                 , String.valueOf( ds.getWsid()                          ) );
       assertEquals( DefaultProperties.XAEMULATION          , String.valueOf( ds.getXaEmulation()                   ) );
+      assertEquals( DefaultProperties.USELAZYROWS          , String.valueOf( ds.getUseLazyRows()                   ) );
+      assertEquals( DefaultProperties.PIPELINE             , String.valueOf( ds.getPipeline()                      ) );
+      assertEquals( DefaultProperties.USEBULKINSERT        , String.valueOf( ds.getUseBulkInsert()                 ) );
+      assertEquals( DefaultProperties.USEPREPEXEC          , String.valueOf( ds.getUsePrepExec()                   ) );
+      assertEquals( DefaultProperties.STREAMLOBS           , String.valueOf( ds.getStreamLobs()                    ) );
+      assertEquals( DefaultProperties.WARM_START           , String.valueOf( ds.getWarmStart()                     ) );
+      assertEquals( DefaultProperties.SHAREMETA            , String.valueOf( ds.getShareMetaData()                 ) );
    }
 
 }
\ No newline at end of file
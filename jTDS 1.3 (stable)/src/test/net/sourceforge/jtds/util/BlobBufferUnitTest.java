@@ -0,0 +1,151 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+package net.sourceforge.jtds.util;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link BlobBuffer} class, comparing the contents of
+ * disk and memory based buffers with a plain byte array after random
+ * updates.
+ */
+public class BlobBufferUnitTest extends TestCase {
+
+    public BlobBufferUnitTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Test appending data byte by byte and in arrays of varying size, then
+     * reading it back through a reopened file.
+     */
+    public void testAppend() throws Exception {
+        BlobBuffer blob = new BlobBuffer(new File(System.getProperty("java.io.tmpdir")), 100);
+        byte[] data = new byte[300000];
+        new Random(1).nextBytes(data);
+
+        OutputStream out = blob.setBinaryStream(1, false);
+        int pos = 0;
+        for (int len = 1; pos + len <= data.length; len = len * 3 % 70001 + 1) {
+            if (len % 2 == 0) {
+                out.write(data, pos, len);
+            } else {
+                for (int i = 0; i < len; i++) {
+                    out.write(data[pos + i]);
+                }
+            }
+            pos += len;
+        }
+        out.write(data, pos, data.length - pos);
+        out.close();
+
+        assertEquals(data.length, blob.getLength());
+        assertTrue(Arrays.equals(data, blob.getBytes(1, data.length)));
+
+        InputStream in = blob.getBinaryStream(false);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i] & 0xFF, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+        blob.truncate(0);
+    }
+
+    /**
+     * Test random updates, reads and truncation against a byte array.
+     */
+    public void testRandomUpdates() throws Exception {
+        checkRandomUpdates(new BlobBuffer(new File(System.getProperty("java.io.tmpdir")), 100));
+        checkRandomUpdates(new BlobBuffer(null, 100));
+    }
+
+    private void checkRandomUpdates(BlobBuffer blob) throws Exception {
+        Random random = new Random(2);
+        byte[] expected = new byte[0];
+
+        for (int round = 0; round < 20; round++) {
+            OutputStream out = blob.setBinaryStream(1, false);
+            blob.open();
+
+            for (int op = 0; op < 200; op++) {
+                int ptr = random.nextInt(expected.length + 1);
+                int len = random.nextInt(4) == 0 ? random.nextInt(100000) : random.nextInt(300);
+                byte[] bytes = new byte[len];
+                random.nextBytes(bytes);
+
+                if (random.nextBoolean()) {
+                    if (len == 1) {
+                        blob.write(ptr, bytes[0]);
+                    } else {
+                        blob.write(ptr, bytes, 0, len);
+                    }
+                    if (ptr + len > expected.length) {
+                        expected = Arrays.copyOf(expected, ptr + len);
+                    }
+                    System.arraycopy(bytes, 0, expected, ptr, len);
+                } else if (random.nextInt(20) == 0) {
+                    blob.truncate(ptr);
+                    expected = Arrays.copyOf(expected, ptr);
+                    if (ptr == 0) {
+                        break;
+                    }
+                } else {
+                    int count = blob.read(ptr, bytes, 0, len);
+                    if (ptr == expected.length || len == 0) {
+                        assertTrue(count <= 0);
+                    } else {
+                        assertEquals(Math.min(len, expected.length - ptr), count);
+                        for (int i = 0; i < count; i++) {
+                            assertEquals(expected[ptr + i], bytes[i]);
+                        }
+                        assertEquals(expected[ptr] & 0xFF, blob.read(ptr));
+                    }
+                }
+            }
+
+            blob.close();
+            out.close();
+
+            assertEquals(expected.length, blob.getLength());
+            assertTrue(Arrays.equals(expected, blob.getBytes(1, expected.length)));
+        }
+
+        blob.truncate(0);
+    }
+
+    /**
+     * Test searching a pattern in a disk based buffer.
+     */
+    public void testPosition() throws Exception {
+        BlobBuffer blob = new BlobBuffer(new File(System.getProperty("java.io.tmpdir")), 100);
+        byte[] data = new byte[200000];
+        data[150000] = 1;
+        data[150001] = 2;
+        blob.setBytes(1, data, 0, data.length, true);
+
+        assertEquals(150000, blob.position(new byte[] {0, 1, 2}, 1));
+        assertEquals(-1, blob.position(new byte[] {2, 1}, 1));
+        blob.truncate(0);
+    }
+}
@@ -0,0 +1,1590 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+
+package net.sourceforge.jtds.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> In-process fake SQL Server, speaking just enough TDS 7.0/7.1 to let the
+ * driver log in and execute statements against canned responses. Intended for
+ * end-to-end throughput measurements (see {@link LoadTest}) without a real
+ * server. </p>
+ *
+ * <p> Every login is acknowledged, every SQL batch or RPC request is answered
+ * with the token stream scripted for the longest matching SQL prefix (the
+ * statement of <code>sp_executesql</code> calls and of statements prepared
+ * by <code>sp_prepare</code> or <code>sp_prepexec</code>, the procedure name
+ * for other RPC requests) or with the default response otherwise.
+ * The default response is a result set of configurable size, see {@link
+ * #setResult(int, int, int)}. Responses are packetized once and replayed
+ * as-is, so the server itself costs next to nothing per request. </p>
+ *
+ * <pre>
+ * FakeTdsServer server = new FakeTdsServer( 0, "8.0" );
+ * server.script( "SELECT COUNT(*)", server.tokens().intColumn( "" ).row( 42 ).done( 1 ) );
+ * server.setLatency( 1 );
+ * server.start();
+ * ... "jdbc:jtds:sqlserver://localhost:" + server.getPort() ...
+ * server.close();
+ * </pre>
+ */
+public class FakeTdsServer
+{
+
+   /**
+    * <code>DONE</code> status flags
+    */
+   public static final int                  DONE_MORE     = 0x01,
+                                            DONE_ERROR    = 0x02,
+                                            DONE_COUNT    = 0x10,
+                                            DONE_ATTN     = 0x20;
+
+   /**
+    * size of the response packets
+    */
+   static final int                         PACKET_SIZE   = 4096;
+
+   /**
+    * TDS packet types
+    */
+   static final int                         QUERY_PKT     = 0x01,
+                                            RPC_PKT       = 0x03,
+                                            REPLY_PKT     = 0x04,
+                                            CANCEL_PKT    = 0x06,
+                                            BULK_PKT      = 0x07,
+                                            MSLOGIN_PKT   = 0x10,
+                                            PRELOGIN_PKT  = 0x12;
+
+   /**
+    * server collation, SQL_Latin1_General_CP1_CI_AS
+    */
+   static final byte[]                      COLLATION     = { 0x09, 0x04, (byte) 0xD0, 0x00, 0x34 };
+
+   /**
+    * procedure IDs used by TDS 7.1 clients instead of procedure names
+    */
+   static final String[]                    PROCEDURES    = { null, "sp_cursor", "sp_cursoropen", "sp_cursorprepare", "sp_cursorexecute", "sp_cursorprepexec",
+                                                              "sp_cursorunprepare", "sp_cursorfetch", "sp_cursoroption", "sp_cursorclose", "sp_executesql",
+                                                              "sp_prepare", "sp_execute", "sp_prepexec", "sp_prepexecrpc", "sp_unprepare" };
+
+   private static final Charset             UCS2          = Charset.forName( "UTF-16LE" );
+
+   private static final Charset             ASCII         = Charset.forName( "US-ASCII" );
+
+   /**
+    * <code>true</code> for TDS 7.1 (SQL Server 2000), <code>false</code> for
+    * TDS 7.0 (SQL Server 7.0)
+    */
+   private final boolean                    _Tds71;
+
+   private final ServerSocket               _Server;
+
+   /**
+    * scripted responses by SQL prefix, upper case
+    */
+   private final Map<String,byte[]>         _Scripts      = new ConcurrentHashMap<>();
+
+   /**
+    * the currently open client connections
+    */
+   private final Set<Socket>                _Clients      = Collections.newSetFromMap( new ConcurrentHashMap<Socket,Boolean>() );
+
+   private final AtomicLong                 _Logins       = new AtomicLong();
+
+   private final AtomicLong                 _Requests     = new AtomicLong();
+
+   private final AtomicLong                 _Resets       = new AtomicLong();
+
+   private final AtomicLong                 _BulkRows     = new AtomicLong();
+
+   /**
+    * the SQL text of the statements prepared by <code>sp_prepare</code> or
+    * <code>sp_prepexec</code>, by handle
+    */
+   private final Map<Integer,String>        _Prepared     = new ConcurrentHashMap<>();
+
+   private final AtomicInteger              _Handles      = new AtomicInteger();
+
+   /**
+    * the open cursors by handle, each holding the index of the next row and
+    * the number of the first row of the last block fetched
+    */
+   private final Map<Integer,int[]>         _Cursors      = new ConcurrentHashMap<>();
+
+   private final AtomicInteger              _CursorHandles = new AtomicInteger();
+
+   /**
+    * the size of the result set configured by {@link #setResult}, served by
+    * cursors
+    */
+   private volatile int[]                   _Result       = { 0, 1, 0 };
+
+   private volatile byte[]                  _Default;
+
+   private volatile int                     _Latency;
+
+   private volatile int                     _LoginLatency;
+
+   /**
+    * the instance name reported in the <code>PRELOGIN</code> response,
+    * <code>null</code> to accept any
+    */
+   private volatile String                  _Instance;
+
+   private volatile String                  _Log;
+
+   private int                              _LogNumber;
+
+   /**
+    * Creates a server listening on the loopback interface.
+    *
+    * @param port
+    *    the port to listen on, 0 for any free port
+    *
+    * @param tds
+    *    the TDS version to acknowledge at login, <code>"7.0"</code> or
+    *    <code>"8.0"</code> (TDS 7.1)
+    */
+   public FakeTdsServer( int port, String tds )
+      throws IOException
+   {
+      switch( tds )
+      {
+         case "7.0": _Tds71 = false; break;
+         case "8.0": _Tds71 = true;  break;
+         default   : throw new IllegalArgumentException( "unsupported TDS version " + tds );
+      }
+
+      _Server = new ServerSocket( port, 128, InetAddress.getLoopbackAddress() );
+
+      // responses the driver relies on
+      script( "SELECT @@MAX_PRECISION", tokens().intColumn( "" ).row( 38 ).done( 1 ) );
+      script( "SET "                  , tokens().done( 0, 0 ) );
+      script( "IF @@TRANCOUNT"        , tokens().done( 0, 0 ) );
+      script( "BEGIN TRAN"            , tokens().done( 0, 0 ) );
+      script( "COMMIT"                , tokens().done( 0, 0 ) );
+      script( "ROLLBACK"              , tokens().done( 0, 0 ) );
+      script( "USE "                  , tokens().done( 0, 0 ) );
+      script( "INSERT "               , tokens().done( 1 ) );
+      script( "INSERT BULK "          , tokens().done( 0, 0 ) );
+      script( "UPDATE "               , tokens().done( 1 ) );
+      script( "DELETE "               , tokens().done( 1 ) );
+
+      setResult( 1, 1, 0 );
+   }
+
+   /**
+    * Returns the port the server is listening on.
+    */
+   public int getPort()
+   {
+      return _Server.getLocalPort();
+   }
+
+   /**
+    * Returns the number of logins processed so far.
+    */
+   public long getLogins()
+   {
+      return _Logins.get();
+   }
+
+   /**
+    * Returns the number of SQL batch and RPC requests processed so far.
+    */
+   public long getRequests()
+   {
+      return _Requests.get();
+   }
+
+   /**
+    * Returns the number of requests received with the RESETCONNECTION status
+    * bit set in their first packet.
+    */
+   public long getResets()
+   {
+      return _Resets.get();
+   }
+
+   /**
+    * Returns the number of statements prepared so far.
+    */
+   public int getPrepares()
+   {
+      return _Handles.get();
+   }
+
+   /**
+    * Returns the number of rows received in bulk load requests so far.
+    */
+   public long getBulkRows()
+   {
+      return _BulkRows.get();
+   }
+
+   /**
+    * Creates a token stream builder for the TDS version of this server.
+    */
+   public Tokens tokens()
+   {
+      return new Tokens( _Tds71 );
+   }
+
+   /**
+    * Scripts the response to all requests starting with the given SQL text
+    * (case insensitive, leading white space ignored) or calling the given
+    * stored procedure. The longest matching prefix wins.
+    *
+    * @param prefix
+    *    the SQL prefix or procedure name
+    *
+    * @param response
+    *    the token stream to reply with, terminated by a final
+    *    <code>DONE</code> token
+    */
+   public void script( String prefix, Tokens response )
+   {
+      _Scripts.put( prefix.toUpperCase(), packetize( response.toByteArray() ) );
+   }
+
+   /**
+    * Sets the default response, sent for all requests without a scripted
+    * response.
+    *
+    * @param response
+    *    the token stream to reply with, terminated by a final
+    *    <code>DONE</code> token
+    */
+   public void setDefault( Tokens response )
+   {
+      _Default = packetize( response.toByteArray() );
+   }
+
+   /**
+    * Sets the default response to a result set with an <code>INT</code>
+    * column followed by <code>NVARCHAR</code> columns.
+    *
+    * @param rows
+    *    the number of rows
+    *
+    * @param columns
+    *    the total number of columns
+    *
+    * @param width
+    *    the length of the string values, in characters
+    */
+   public void setResult( int rows, int columns, int width )
+   {
+      _Result = new int[] { rows, columns, width };
+      setDefault( result( tokens(), 0, rows ).done( rows ) );
+   }
+
+   /**
+    * Appends the rows <code>from</code> (inclusive) to <code>to</code>
+    * (exclusive) of the result set configured by {@link #setResult}.
+    */
+   private Tokens result( Tokens tokens, int from, int to )
+   {
+      int columns = _Result[1];
+      int width = _Result[2];
+
+      tokens.intColumn( "id" );
+
+      for( int c = 1; c < columns; c ++ )
+      {
+         tokens.nvarcharColumn( "c" + c, Math.max( width, 1 ) );
+      }
+
+      StringBuilder value = new StringBuilder( width );
+
+      for( int i = 0; i < width; i ++ )
+      {
+         value.append( (char) ( 'a' + i % 26 ) );
+      }
+
+      Object[] row = new Object[columns];
+      for( int c = 1; c < columns; c ++ )
+      {
+         row[c] = value.toString();
+      }
+
+      for( int r = from; r < to; r ++ )
+      {
+         row[0] = r;
+         tokens.row( row );
+      }
+
+      return tokens;
+   }
+
+   /**
+    * Sets the delay before each response to a SQL batch or RPC request. The
+    * delay emulates a network round trip, requests sent back-to-back by the
+    * client are answered back-to-back after the delay.
+    *
+    * @param millis
+    *    the delay in milliseconds
+    */
+   public void setLatency( int millis )
+   {
+      _Latency = millis;
+   }
+
+   /**
+    * Sets the delay before each login response.
+    *
+    * @param millis
+    *    the delay in milliseconds
+    */
+   public void setLoginLatency( int millis )
+   {
+      _LoginLatency = millis;
+   }
+
+   /**
+    * Sets the name of the instance the server pretends to be; a
+    * <code>PRELOGIN</code> naming another instance is answered with a
+    * mismatch.
+    *
+    * @param instance
+    *    the instance name, <code>null</code> to accept any
+    */
+   public void setInstance( String instance )
+   {
+      _Instance = instance;
+   }
+
+   /**
+    * Enables logging of all packets using a {@link PacketLogger}, each
+    * connection is logged to its own file.
+    *
+    * @param prefix
+    *    prefix of the log file names, <code>null</code> to disable logging
+    */
+   public void setLog( String prefix )
+   {
+      _Log = prefix;
+   }
+
+   /**
+    * Starts accepting connections, in a background thread.
+    */
+   public void start()
+   {
+      Thread acceptor = new Thread( "FakeTdsServer:" + getPort() )
+      {
+         @Override
+         public void run()
+         {
+            FakeTdsServer.this.run();
+         }
+      };
+
+      acceptor.setDaemon( true );
+      acceptor.start();
+   }
+
+   /**
+    * Accepts connections until the server is closed, each connection is
+    * served by its own thread.
+    */
+   public void run()
+   {
+      try
+      {
+         while( true )
+         {
+            Socket client = _Server.accept();
+            client.setTcpNoDelay( true );
+            _Clients.add( client );
+
+            Thread handler = new Thread( new Handler( client ), "FakeTdsServer:" + getPort() + ":" + client.getPort() );
+            handler.setDaemon( true );
+            handler.start();
+         }
+      }
+      catch( IOException e )
+      {
+         // server socket closed
+      }
+   }
+
+   /**
+    * Stops the server and closes all client connections.
+    */
+   public void close()
+      throws IOException
+   {
+      _Server.close();
+
+      for( Socket client : _Clients )
+      {
+         client.close();
+      }
+   }
+
+   /**
+    * Splits a token stream into reply packets.
+    */
+   static byte[] packetize( byte[] tokens )
+   {
+      ByteArrayOutputStream packets = new ByteArrayOutputStream( tokens.length + tokens.length / 256 + 8 );
+      int payload = PACKET_SIZE - 8;
+      int number = 1;
+
+      for( int offset = 0; offset < tokens.length || offset == 0; offset += payload, number ++ )
+      {
+         int length = Math.min( payload, tokens.length - offset );
+         int total = length + 8;
+
+         packets.write( REPLY_PKT );
+         packets.write( offset + length >= tokens.length ? 1 : 0 );
+         packets.write( total >> 8 );
+         packets.write( total );
+         packets.write( 0 );
+         packets.write( 0 );
+         packets.write( number );
+         packets.write( 0 );
+         packets.write( tokens, offset, length );
+      }
+
+      return packets.toByteArray();
+   }
+
+   /**
+    * Returns the scripted response for a request.
+    */
+   byte[] response( String request )
+   {
+      String text = request.trim().toUpperCase();
+      byte[] response = _Default;
+      int match = -1;
+
+      for( Map.Entry<String,byte[]> script : _Scripts.entrySet() )
+      {
+         String prefix = script.getKey();
+
+         if( prefix.length() > match && text.startsWith( prefix ) )
+         {
+            response = script.getValue();
+            match = prefix.length();
+         }
+      }
+
+      return response;
+   }
+
+   /**
+    * Builds the login response.
+    *
+    * @param database
+    *    the database requested by the client, empty for the default
+    */
+   byte[] login( String database )
+   {
+      if( database.length() == 0 )
+      {
+         database = "master";
+      }
+
+      Tokens tokens = tokens().envChange( 1, database, "master" );
+
+      if( _Tds71 )
+      {
+         tokens.collation( COLLATION );
+      }
+      else
+      {
+         tokens.envChange( 3, "iso_1", "iso_1" );
+      }
+
+      return packetize( tokens.loginAck( "Microsoft SQL Server", _Tds71 ? 8 : 7, 0, 2039 )
+                              .envChange( 4, Integer.toString( PACKET_SIZE ), Integer.toString( PACKET_SIZE ) )
+                              .done( 0, 0 ).toByteArray() );
+   }
+
+   /**
+    * Builds the response to a <code>PRELOGIN</code> packet, declining
+    * encryption and checking the instance name sent by the client.
+    *
+    * @param data
+    *    the <code>PRELOGIN</code> packet data
+    */
+   byte[] preLogin( byte[] data )
+   {
+      String instance = "";
+
+      for( int i = 0; ( data[i] & 0xFF ) != 0xFF; i += 5 )
+      {
+         if( data[i] == 0x02 )
+         {
+            int offset = ( data[i + 1] & 0xFF ) << 8 | data[i + 2] & 0xFF;
+            int length = ( data[i + 3] & 0xFF ) << 8 | data[i + 4] & 0xFF;
+            instance = new String( data, offset, Math.max( length - 1, 0 ), ASCII );
+         }
+      }
+
+      String expected = _Instance;
+      boolean match = expected == null || instance.isEmpty() || instance.equalsIgnoreCase( expected );
+
+      byte[] tokens = {
+         0x00, 0x00, 0x10, 0x00, 0x06, // VERSION at 16, 6 bytes
+         0x01, 0x00, 0x16, 0x00, 0x01, // ENCRYPTION at 22, 1 byte
+         0x02, 0x00, 0x17, 0x00, 0x01, // INSTOPT at 23, 1 byte
+         (byte) 0xFF,                  // terminator
+         0x08, 0x00, 0x07, (byte) 0xF7, 0x00, 0x00,
+         0x02,                         // ENCRYPT_NOT_SUP
+         (byte) ( match ? 0x00 : 0x01 )
+      };
+
+      return packetize( tokens );
+   }
+
+   /**
+    * Serves a single client connection.
+    */
+   private class Handler implements Runnable
+   {
+
+      private final Socket                      _Socket;
+
+      private PacketLogger                      _Logger;
+
+      private OutputStream                      _Out;
+
+      /**
+       * responses waiting for their latency to pass, with their due time
+       */
+      private BlockingQueue<Object[]>           _Delayed;
+
+      Handler( Socket socket )
+      {
+         _Socket = socket;
+      }
+
+      @Override
+      public void run()
+      {
+         try( Socket socket = _Socket )
+         {
+            String log = _Log;
+
+            if( log != null )
+            {
+               synchronized( FakeTdsServer.this )
+               {
+                  _Logger = new PacketLogger( log + _LogNumber ++ + ".log" );
+               }
+            }
+
+            DataInputStream in = new DataInputStream( socket.getInputStream() );
+            _Out = socket.getOutputStream();
+            ByteArrayOutputStream message = new ByteArrayOutputStream( PACKET_SIZE );
+            byte[] header = new byte[8];
+
+            while( true )
+            {
+               // read a complete request, all packets up to the last one
+               int type;
+               message.reset();
+
+               do
+               {
+                  try
+                  {
+                     in.readFully( header );
+                  }
+                  catch( EOFException e )
+                  {
+                     return;
+                  }
+
+                  if( message.size() == 0 && ( header[1] & 0x08 ) != 0 )
+                  {
+                     _Resets.incrementAndGet();
+                  }
+
+                  type = header[0] & 0xFF;
+                  int length = ( header[2] & 0xFF ) << 8 | header[3] & 0xFF;
+                  byte[] packet = new byte[length];
+                  System.arraycopy( header, 0, packet, 0, 8 );
+                  in.readFully( packet, 8, length - 8 );
+                  message.write( packet, 8, length - 8 );
+                  log( packet );
+               }
+               while( ( header[1] & 1 ) == 0 );
+
+               byte[] data = message.toByteArray();
+               byte[] response;
+               int latency = 0;
+
+               switch( type )
+               {
+                  case PRELOGIN_PKT:
+                     response = preLogin( data );
+                     break;
+
+                  case MSLOGIN_PKT:
+                     latency = _LoginLatency;
+                     _Logins.incrementAndGet();
+                     response = login( string( data, 36 + 8 * 4 ) );
+                     break;
+
+                  case QUERY_PKT:
+                     latency = _Latency;
+                     _Requests.incrementAndGet();
+                     response = response( new String( data, UCS2 ) );
+                     break;
+
+                  case RPC_PKT:
+                     latency = _Latency;
+                     _Requests.incrementAndGet();
+                     response = rpc( data );
+                     break;
+
+                  case BULK_PKT:
+                     latency = _Latency;
+                     _Requests.incrementAndGet();
+                     int rows = bulkRows( data );
+
+                     if( rows < 0 )
+                     {
+                        // unsupported column type, drop the connection
+                        return;
+                     }
+
+                     _BulkRows.addAndGet( rows );
+                     response = packetize( tokens().done( rows ).toByteArray() );
+                     break;
+
+                  case CANCEL_PKT:
+                     response = packetize( tokens().done( DONE_ATTN, 0 ).toByteArray() );
+                     break;
+
+                  default:
+                     // not supported, drop the connection
+                     return;
+               }
+
+               send( response, latency );
+            }
+         }
+         catch( IOException e )
+         {
+            // connection closed
+         }
+         finally
+         {
+            _Clients.remove( _Socket );
+
+            if( _Delayed != null )
+            {
+               _Delayed.add( new Object[0] );
+            }
+         }
+      }
+
+      /**
+       * Sends a response after the given latency. Further requests are read
+       * and processed meanwhile, like on a high latency network link, but
+       * responses are always sent in request order.
+       */
+      private void send( byte[] response, int latency )
+         throws IOException
+      {
+         if( _Delayed == null && latency <= 0 )
+         {
+            write( response );
+            return;
+         }
+
+         if( _Delayed == null )
+         {
+            _Delayed = new LinkedBlockingQueue<>();
+
+            Thread writer = new Thread( Thread.currentThread().getName() + ":writer" )
+            {
+               @Override
+               public void run()
+               {
+                  try
+                  {
+                     while( true )
+                     {
+                        Object[] delayed = _Delayed.take();
+
+                        if( delayed.length == 0 )
+                        {
+                           return;
+                        }
+
+                        long wait = (Long) delayed[0] - System.nanoTime();
+
+                        // sleeping for less than the timer resolution would
+                        // delay back-to-back responses one by one
+                        if( wait > 1000000 )
+                        {
+                           Thread.sleep( wait / 1000000, (int) ( wait % 1000000 ) );
+                        }
+
+                        write( (byte[]) delayed[1] );
+                     }
+                  }
+                  catch( IOException | InterruptedException e )
+                  {
+                     // connection closed
+                  }
+               }
+            };
+
+            writer.setDaemon( true );
+            writer.start();
+         }
+
+         _Delayed.add( new Object[] { System.nanoTime() + latency * 1000000L, response } );
+      }
+
+      private void write( byte[] response )
+         throws IOException
+      {
+         _Out.write( response );
+         _Out.flush();
+         log( response );
+      }
+
+      private void log( byte[] packets )
+      {
+         if( _Logger != null )
+         {
+            synchronized( _Logger )
+            {
+               _Logger.log( packets );
+            }
+         }
+      }
+
+   }
+
+   /**
+    * Reads a string referenced by an offset/length pair of a login packet.
+    */
+   static String string( byte[] login, int pointer )
+   {
+      int offset = ( login[pointer]     & 0xFF ) | ( login[pointer + 1] & 0xFF ) << 8;
+      int length = ( login[pointer + 2] & 0xFF ) | ( login[pointer + 3] & 0xFF ) << 8;
+      return new String( login, offset, length * 2, UCS2 );
+   }
+
+   /**
+    * Returns the response to an RPC request: the scripted response for the
+    * SQL text executed by a <code>sp_executesql</code>,
+    * <code>sp_prepexec</code> or <code>sp_execute</code> request, or for
+    * the procedure name of any other request. <code>sp_prepare</code> and
+    * <code>sp_prepexec</code> return a new statement handle.
+    */
+   byte[] rpc( byte[] rpc )
+   {
+      int[] pos = new int[1];
+      String name = procedure( rpc, pos );
+
+      switch( name )
+      {
+         case "sp_cursoropen":
+         case "sp_cursorfetch":
+         case "sp_cursorclose":
+            return packetize( cursor( name, rpc, pos ) );
+
+         case "sp_executesql":
+         {
+            Object sql = parameter( rpc, pos );
+            return response( sql instanceof String ? (String) sql : name );
+         }
+
+         case "sp_prepare":
+         case "sp_prepexec":
+         {
+            parameter( rpc, pos ); // handle
+            parameter( rpc, pos ); // parameter definitions
+            Object sql = parameter( rpc, pos );
+
+            if( ! ( sql instanceof String ) )
+            {
+               return response( name );
+            }
+
+            Integer handle = Integer.valueOf( _Handles.incrementAndGet() );
+            _Prepared.put( handle, (String) sql );
+
+            if( "sp_prepare".equals( name ) )
+            {
+               return packetize( tokens().returnValue( handle.intValue() ).done( 0, 0 ).toByteArray() );
+            }
+
+            // the handle in a packet of its own, followed by the scripted response
+            byte[] first = packetize( tokens().returnValue( handle.intValue() ).toByteArray() );
+            byte[] rest = response( (String) sql );
+            byte[] response = Arrays.copyOf( first, first.length + rest.length );
+            System.arraycopy( rest, 0, response, first.length, rest.length );
+            response[1] = 0;
+            return response;
+         }
+
+         case "sp_execute":
+         {
+            Object handle = parameter( rpc, pos );
+            String sql = handle != null ? _Prepared.get( handle ) : null;
+            return response( sql != null ? sql : name );
+         }
+
+         default:
+            return response( name );
+      }
+   }
+
+   /**
+    * Reads the procedure name or ID of an RPC request and skips the option
+    * flags.
+    *
+    * @param pos
+    *    the position of the request, updated to the position of the first
+    *    parameter
+    */
+   static String procedure( byte[] rpc, int[] pos )
+   {
+      int p = pos[0];
+      int length = ( rpc[p] & 0xFF ) | ( rpc[p + 1] & 0xFF ) << 8;
+      String name;
+
+      if( length == 0xFFFF )
+      {
+         int id = ( rpc[p + 2] & 0xFF ) | ( rpc[p + 3] & 0xFF ) << 8;
+         name = id < PROCEDURES.length ? PROCEDURES[id] : "#" + id;
+         p += 4;
+      }
+      else
+      {
+         name = new String( rpc, p + 2, length * 2, UCS2 );
+         p += 2 + length * 2;
+      }
+
+      // skip option flags
+      pos[0] = p + 2;
+      return name;
+   }
+
+   /**
+    * Emulates the cursor procedures used by the driver for a forward only
+    * cursor over the result set configured by {@link #setResult}, whatever
+    * the statement. <code>sp_cursorfetch</code> only supports
+    * <code>FETCH_NEXT</code> and <code>FETCH_INFO</code>, the latter sent in
+    * the same request is processed as well.
+    *
+    * @return
+    *    the token stream
+    */
+   byte[] cursor( String name, byte[] rpc, int[] pos )
+   {
+      Tokens tokens = tokens();
+
+      switch( name )
+      {
+         case "sp_cursoropen":
+         {
+            parameter( rpc, pos ); // cursor handle
+            parameter( rpc, pos ); // statement
+            int scrollOpt = (Integer) parameter( rpc, pos );
+            int ccOpt = (Integer) parameter( rpc, pos );
+            int rows = (Integer) parameter( rpc, pos );
+
+            int handle = _CursorHandles.incrementAndGet();
+            int[] cursor = new int[] { 0, 1 };
+            _Cursors.put( handle, cursor );
+
+            // fast forward cursors return the first block right away
+            cursor[0] = ( scrollOpt & 0x2000 ) != 0 ? Math.min( rows, _Result[0] ) : 0;
+            result( tokens, 0, cursor[0] ).done( DONE_MORE | DONE_COUNT, cursor[0] );
+            tokens.returnStatus( 0 ).returnValue( handle ).returnValue( scrollOpt ).returnValue( ccOpt ).returnValue( -1 );
+            break;
+         }
+
+         case "sp_cursorfetch":
+         {
+            int[] cursor = _Cursors.get( parameter( rpc, pos ) );
+            int type = (Integer) parameter( rpc, pos );
+            parameter( rpc, pos ); // row number
+            Object rows = parameter( rpc, pos );
+
+            if( type == 0x100 )
+            {
+               // FETCH_INFO: the position of the last block, unknown row count
+               tokens.returnStatus( 0 ).returnValue( cursor[1] ).returnValue( -1 );
+            }
+            else
+            {
+               int from = cursor[0];
+               cursor[0] = Math.min( from + (Integer) rows, _Result[0] );
+               cursor[1] = from + 1;
+               result( tokens, from, cursor[0] ).done( DONE_MORE | DONE_COUNT, cursor[0] - from );
+               tokens.returnStatus( 0 );
+            }
+            break;
+         }
+
+         default:
+            _Cursors.remove( parameter( rpc, pos ) );
+            tokens.returnStatus( 0 );
+      }
+
+      // another RPC in the same request
+      if( pos[0] < rpc.length && ( rpc[pos[0]] & 0xFF ) == 0x80 )
+      {
+         pos[0] ++;
+         byte[] first = tokens.done( DONE_MORE, 0 ).toByteArray();
+         byte[] rest = cursor( procedure( rpc, pos ), rpc, pos );
+         byte[] both = Arrays.copyOf( first, first.length + rest.length );
+         System.arraycopy( rest, 0, both, first.length, rest.length );
+         return both;
+      }
+
+      return tokens.done( 0, 0 ).toByteArray();
+   }
+
+   /**
+    * Reads an RPC parameter.
+    *
+    * @param pos
+    *    the position of the parameter, updated to the position of the next
+    *    one
+    *
+    * @return
+    *    the value, an <code>Integer</code> or a <code>String</code>, or
+    *    <code>null</code> for a null value or a type not supported here
+    */
+   Object parameter( byte[] rpc, int[] pos )
+   {
+      int p = pos[0];
+
+      if( p >= rpc.length )
+      {
+         return null;
+      }
+
+      // skip name and status
+      p += 1 + ( rpc[p] & 0xFF ) * 2 + 1;
+
+      int type = rpc[p ++] & 0xFF;
+      int collation = _Tds71 ? 5 : 0;
+      int length;
+      Object value;
+
+      switch( type )
+      {
+         case Tokens.SYBINTN:
+            length = rpc[p + 1] & 0xFF;
+            p += 2;
+            value = length == 4 ? Integer.valueOf( ( rpc[p] & 0xFF ) | ( rpc[p + 1] & 0xFF ) << 8 | ( rpc[p + 2] & 0xFF ) << 16 | ( rpc[p + 3] & 0xFF ) << 24 ) : null;
+            break;
+
+         case Tokens.XSYBNVARCHAR:
+            p += 2 + collation;
+            length = ( rpc[p] & 0xFF ) | ( rpc[p + 1] & 0xFF ) << 8;
+            p += 2;
+
+            if( length == 0xFFFF )
+            {
+               length = 0;
+               value = null;
+            }
+            else
+            {
+               value = new String( rpc, p, length, UCS2 );
+            }
+            break;
+
+         case Tokens.SYBNTEXT:
+            p += 4 + collation;
+            length = ( rpc[p] & 0xFF ) | ( rpc[p + 1] & 0xFF ) << 8 | ( rpc[p + 2] & 0xFF ) << 16 | ( rpc[p + 3] & 0xFF ) << 24;
+            p += 4;
+            value = new String( rpc, p, length, UCS2 );
+            break;
+
+         default:
+            pos[0] = rpc.length;
+            return null;
+      }
+
+      pos[0] = p + length;
+      return value;
+   }
+
+   /**
+    * Returns the number of rows sent in a bulk load request, a
+    * <code>COLMETADATA</code> token followed by <code>ROW</code> tokens, or
+    * -1 if a column has a type not supported here.
+    */
+   int bulkRows( byte[] bulk )
+   {
+      int columns = ( bulk[1] & 0xFF ) | ( bulk[2] & 0xFF ) << 8;
+      boolean[] shortLength = new boolean[columns];
+      int pos = 3;
+
+      for( int c = 0; c < columns; c ++ )
+      {
+         // skip user type and flags
+         pos += 4;
+
+         switch( bulk[pos ++] & 0xFF )
+         {
+            case Tokens.SYBINTN:
+            case Tokens.SYBBITN:
+            case Tokens.SYBFLTN:
+            case Tokens.SYBDATETIMN:
+               pos += 1;
+               break;
+
+            case Tokens.SYBDECIMAL:
+               pos += 3;
+               break;
+
+            case Tokens.XSYBVARCHAR:
+            case Tokens.XSYBNVARCHAR:
+               pos += 2 + ( _Tds71 ? 5 : 0 );
+               shortLength[c] = true;
+               break;
+
+            case Tokens.XSYBVARBINARY:
+               pos += 2;
+               shortLength[c] = true;
+               break;
+
+            default:
+               return -1;
+         }
+
+         // skip column name
+         pos += 1 + ( bulk[pos] & 0xFF ) * 2;
+      }
+
+      int rows = 0;
+
+      // ROW tokens up to the final DONE token
+      while( ( bulk[pos ++] & 0xFF ) == 0xD1 )
+      {
+         for( int c = 0; c < columns; c ++ )
+         {
+            if( shortLength[c] )
+            {
+               int length = ( bulk[pos] & 0xFF ) | ( bulk[pos + 1] & 0xFF ) << 8;
+               pos += 2 + ( length == 0xFFFF ? 0 : length );
+            }
+            else
+            {
+               pos += 1 + ( bulk[pos] & 0xFF );
+            }
+         }
+
+         rows ++;
+      }
+
+      return rows;
+   }
+
+   /**
+    * <p> Builds server token streams. </p>
+    *
+    * <p> Column declarations are collected until the first row or
+    * <code>DONE</code> token is written, after a <code>DONE</code> token
+    * another result can be declared. </p>
+    */
+   public static final class Tokens
+   {
+
+      static final int                    SYBIMAGE      = 0x22,
+                                          SYBINTN       = 0x26,
+                                          SYBNTEXT      = 0x63,
+                                          SYBBITN       = 0x68,
+                                          SYBDECIMAL    = 0x6A,
+                                          SYBFLTN       = 0x6D,
+                                          SYBDATETIMN   = 0x6F,
+                                          XSYBVARBINARY = 0xA5,
+                                          XSYBVARCHAR   = 0xA7,
+                                          XSYBNVARCHAR  = 0xE7;
+
+      private final boolean               _Tds71;
+
+      private final ByteArrayOutputStream _Tokens       = new ByteArrayOutputStream();
+
+      /**
+       * type, size and name of the pending column declarations
+       */
+      private final List<Object[]>        _Columns      = new ArrayList<>();
+
+      /**
+       * type and size of the columns of the current result
+       */
+      private int[][]                     _Current      = new int[0][];
+
+      Tokens( boolean tds71 )
+      {
+         _Tds71 = tds71;
+      }
+
+      /**
+       * Declares an <code>INT</code> column.
+       */
+      public Tokens intColumn( String name )
+      {
+         return column( name, SYBINTN, 4 );
+      }
+
+      /**
+       * Declares an <code>INT IDENTITY</code> column.
+       */
+      public Tokens identityColumn( String name )
+      {
+         return column( name, SYBINTN, 4, 0x11 );
+      }
+
+      /**
+       * Declares a <code>BIGINT</code> column.
+       */
+      public Tokens bigintColumn( String name )
+      {
+         return column( name, SYBINTN, 8 );
+      }
+
+      /**
+       * Declares a <code>FLOAT</code> column.
+       */
+      public Tokens floatColumn( String name )
+      {
+         return column( name, SYBFLTN, 8 );
+      }
+
+      /**
+       * Declares a <code>VARCHAR</code> column, values are sent as
+       * <code>Cp1252</code>.
+       */
+      public Tokens varcharColumn( String name, int length )
+      {
+         return column( name, XSYBVARCHAR, length );
+      }
+
+      /**
+       * Declares a <code>NVARCHAR</code> column.
+       */
+      public Tokens nvarcharColumn( String name, int length )
+      {
+         return column( name, XSYBNVARCHAR, length * 2 );
+      }
+
+      /**
+       * Declares a <code>NTEXT</code> column.
+       */
+      public Tokens ntextColumn( String name )
+      {
+         return column( name, SYBNTEXT, 0x7FFFFFFF );
+      }
+
+      /**
+       * Declares an <code>IMAGE</code> column, values have to be
+       * <code>byte[]</code>s.
+       */
+      public Tokens imageColumn( String name )
+      {
+         return column( name, SYBIMAGE, 0x7FFFFFFF );
+      }
+
+      private Tokens column( String name, int type, int size )
+      {
+         return column( name, type, size, 0x01 );
+      }
+
+      private Tokens column( String name, int type, int size, int flags )
+      {
+         _Columns.add( new Object[] { type, size, name, flags } );
+         return this;
+      }
+
+      /**
+       * Appends a row, the values have to match the declared column types.
+       *
+       * @param values
+       *    the column values, numbers or strings, {@code null} for SQL NULL
+       */
+      public Tokens row( Object... values )
+      {
+         writeMetaData();
+
+         if( values.length != _Current.length )
+         {
+            throw new IllegalArgumentException( "expected " + _Current.length + " values" );
+         }
+
+         _Tokens.write( 0xD1 );
+
+         for( int c = 0; c < _Current.length; c ++ )
+         {
+            int type = _Current[c][0];
+            int size = _Current[c][1];
+            Object value = values[c];
+
+            if( value == null )
+            {
+               if( type == XSYBVARCHAR || type == XSYBNVARCHAR )
+               {
+                  writeLE( 0xFFFF, 2 );
+               }
+               else
+               {
+                  _Tokens.write( 0 );
+               }
+            }
+            else if( type == SYBINTN )
+            {
+               _Tokens.write( size );
+               writeLE( ( (Number) value ).longValue(), size );
+            }
+            else if( type == SYBFLTN )
+            {
+               _Tokens.write( 8 );
+               writeLE( Double.doubleToLongBits( ( (Number) value ).doubleValue() ), 8 );
+            }
+            else if( type == SYBNTEXT || type == SYBIMAGE )
+            {
+               byte[] bytes = type == SYBIMAGE ? (byte[]) value : value.toString().getBytes( UCS2 );
+               _Tokens.write( 16 );
+               _Tokens.write( new byte[16 + 8], 0, 24 ); // text pointer and timestamp
+               writeLE( bytes.length, 4 );
+               _Tokens.write( bytes, 0, bytes.length );
+            }
+            else
+            {
+               byte[] bytes = value.toString().getBytes( type == XSYBVARCHAR ? Charset.forName( "Cp1252" ) : UCS2 );
+               writeLE( bytes.length, 2 );
+               _Tokens.write( bytes, 0, bytes.length );
+            }
+         }
+
+         return this;
+      }
+
+      /**
+       * Appends a <code>DONE</code> token with a row count and no more results
+       * following.
+       *
+       * @param count
+       *    the row or update count
+       */
+      public Tokens done( int count )
+      {
+         return done( DONE_COUNT, count );
+      }
+
+      /**
+       * Appends a <code>DONE</code> token.
+       *
+       * @param status
+       *    the status flags, a combination of the <code>DONE_*</code>
+       *    constants
+       *
+       * @param count
+       *    the row or update count
+       */
+      public Tokens done( int status, int count )
+      {
+         writeMetaData();
+         boolean select = _Current.length > 0;
+         _Current = new int[0][];
+
+         _Tokens.write( 0xFD );
+         writeLE( status, 2 );
+         writeLE( select ? 0xC1 : 0xC5, 2 ); // SELECT or UPDATE, the driver ignores update counts of SELECTs
+         writeLE( count, 4 );
+         return this;
+      }
+
+      /**
+       * Appends a <code>RETURNSTATUS</code> token.
+       */
+      public Tokens returnStatus( int status )
+      {
+         _Tokens.write( 0x79 );
+         writeLE( status, 4 );
+         return this;
+      }
+
+      /**
+       * Appends a <code>RETURNVALUE</code> token for an <code>INT</code>
+       * output parameter.
+       */
+      public Tokens returnValue( int value )
+      {
+         _Tokens.write( 0xAC );
+         writeLE( 0, 2 ); // ordinal
+         _Tokens.write( 0 ); // name
+         _Tokens.write( 1 ); // output parameter
+         writeLE( 0, 4 ); // user type and flags
+         _Tokens.write( SYBINTN );
+         _Tokens.write( 4 );
+         _Tokens.write( 4 );
+         writeLE( value, 4 );
+         return this;
+      }
+
+      /**
+       * Appends an error message, has to be followed by a <code>DONE</code>
+       * token with the {@link #DONE_ERROR} flag.
+       *
+       * @param number
+       *    the error number
+       *
+       * @param severity
+       *    the severity, 11 or higher
+       *
+       * @param message
+       *    the message text
+       */
+      public Tokens error( int number, int severity, String message )
+      {
+         ByteArrayOutputStream token = new ByteArrayOutputStream();
+         writeLE( token, number, 4 );
+         token.write( 1 ); // state
+         token.write( severity );
+         writeLE( token, message.length(), 2 );
+         writeUCS2( token, message );
+         token.write( 0 ); // server name
+         token.write( 0 ); // procedure name
+         writeLE( token, 1, 2 ); // line
+
+         _Tokens.write( 0xAA );
+         writeLE( token.size(), 2 );
+         _Tokens.write( token.toByteArray(), 0, token.size() );
+         return this;
+      }
+
+      /**
+       * Appends a string valued <code>ENVCHANGE</code> token.
+       *
+       * @param type
+       *    the type of the change, e.g. 1 for the database, 3 for the charset
+       *    or 4 for the packet size
+       */
+      Tokens envChange( int type, String value, String old )
+      {
+         _Tokens.write( 0xE3 );
+         writeLE( 3 + value.length() * 2 + old.length() * 2, 2 );
+         _Tokens.write( type );
+         _Tokens.write( value.length() );
+         writeUCS2( _Tokens, value );
+         _Tokens.write( old.length() );
+         writeUCS2( _Tokens, old );
+         return this;
+      }
+
+      /**
+       * Appends a collation <code>ENVCHANGE</code> token.
+       */
+      Tokens collation( byte[] collation )
+      {
+         _Tokens.write( 0xE3 );
+         writeLE( 3 + collation.length, 2 );
+         _Tokens.write( 7 );
+         _Tokens.write( collation.length );
+         _Tokens.write( collation, 0, collation.length );
+         _Tokens.write( 0 );
+         return this;
+      }
+
+      /**
+       * Appends a <code>LOGINACK</code> token.
+       */
+      Tokens loginAck( String product, int major, int minor, int build )
+      {
+         _Tokens.write( 0xAD );
+         writeLE( 10 + product.length() * 2, 2 );
+         _Tokens.write( 1 ); // SQL Server
+         _Tokens.write( 7 );
+         _Tokens.write( _Tds71 ? 1 : 0 );
+         _Tokens.write( 0 );
+         _Tokens.write( 0 );
+         _Tokens.write( product.length() );
+         writeUCS2( _Tokens, product );
+         _Tokens.write( major );
+         _Tokens.write( minor );
+         _Tokens.write( build >> 8 );
+         _Tokens.write( build );
+         return this;
+      }
+
+      /**
+       * Returns the token stream built so far.
+       */
+      public byte[] toByteArray()
+      {
+         return _Tokens.toByteArray();
+      }
+
+      private void writeMetaData()
+      {
+         if( _Columns.isEmpty() )
+         {
+            return;
+         }
+
+         _Current = new int[_Columns.size()][];
+         _Tokens.write( 0x81 );
+         writeLE( _Columns.size(), 2 );
+
+         for( int c = 0; c < _Current.length; c ++ )
+         {
+            Object[] column = _Columns.get( c );
+            int type = (Integer) column[0];
+            int size = (Integer) column[1];
+            String name = (String) column[2];
+            int flags = (Integer) column[3];
+
+            _Current[c] = new int[] { type, size };
+
+            writeLE( 0, 2 ); // user type
+            writeLE( flags, 2 ); // nullable, identity
+            _Tokens.write( type );
+
+            if( type == XSYBVARCHAR || type == XSYBNVARCHAR )
+            {
+               writeLE( size, 2 );
+
+               if( _Tds71 )
+               {
+                  _Tokens.write( COLLATION, 0, COLLATION.length );
+               }
+            }
+            else if( type == SYBNTEXT || type == SYBIMAGE )
+            {
+               writeLE( size, 4 );
+
+               if( _Tds71 && type == SYBNTEXT )
+               {
+                  _Tokens.write( COLLATION, 0, COLLATION.length );
+               }
+
+               writeLE( 0, 2 ); // table name
+            }
+            else
+            {
+               _Tokens.write( size );
+            }
+
+            _Tokens.write( name.length() );
+            writeUCS2( _Tokens, name );
+         }
+
+         _Columns.clear();
+      }
+
+      private void writeLE( long value, int bytes )
+      {
+         writeLE( _Tokens, value, bytes );
+      }
+
+      private static void writeLE( ByteArrayOutputStream out, long value, int bytes )
+      {
+         for( int i = 0; i < bytes; i ++ )
+         {
+            out.write( (int) ( value >> 8 * i ) );
+         }
+      }
+
+      private static void writeUCS2( ByteArrayOutputStream out, String value )
+      {
+         byte[] bytes = value.getBytes( UCS2 );
+         out.write( bytes, 0, bytes.length );
+      }
+
+   }
+
+   /**
+    * Runs a standalone server.
+    *
+    * <pre>
+    * FakeTdsServer [-port 1433] [-tds 8.0] [-rows 1] [-columns 1] [-width 0] [-latency 0] [-log prefix]
+    * </pre>
+    */
+   public static void main( String[] args )
+      throws IOException
+   {
+      Map<String,String> options = new LinkedHashMap<>();
+      options.put( "-port"   , "1433" );
+      options.put( "-tds"    , "8.0"  );
+      options.put( "-rows"   , "1"    );
+      options.put( "-columns", "1"    );
+      options.put( "-width"  , "0"    );
+      options.put( "-latency", "0"    );
+      options.put( "-log"    , null   );
+      parseArgs( args, options );
+
+      FakeTdsServer server = new FakeTdsServer( Integer.parseInt( options.get( "-port" ) ), options.get( "-tds" ) );
+      server.setResult( Integer.parseInt( options.get( "-rows" ) ), Integer.parseInt( options.get( "-columns" ) ), Integer.parseInt( options.get( "-width" ) ) );
+      server.setLatency( Integer.parseInt( options.get( "-latency" ) ) );
+      server.setLog( options.get( "-log" ) );
+
+      System.out.println( "Listening on port " + server.getPort() );
+      server.run();
+   }
+
+   /**
+    * Parses <code>-name value</code> style command line arguments.
+    *
+    * @param options
+    *    the known options and their default values, updated in place
+    */
+   static void parseArgs( String[] args, Map<String,String> options )
+   {
+      for( int i = 0; i < args.length; i ++ )
+      {
+         if( ! options.containsKey( args[i] ) || i + 1 == args.length )
+         {
+            throw new IllegalArgumentException( "usage: " + options );
+         }
+
+         options.put( args[i], args[++ i] );
+      }
+   }
+
+}
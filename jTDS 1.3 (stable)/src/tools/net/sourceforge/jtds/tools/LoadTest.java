@@ -0,0 +1,372 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+
+package net.sourceforge.jtds.tools;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.jtds.jdbc.Driver;
+
+/**
+ * <p> End-to-end load test, driving {@link Driver#connect} against an
+ * in-process {@link FakeTdsServer} (or any other server given by
+ * <code>-host</code> and <code>-port</code>). </p>
+ *
+ * <p> Three phases are run one after the other, each for the given number
+ * of seconds with the given number of threads: </p>
+ *
+ * <ul>
+ *   <li> <b>connect</b>, opening and closing connections </li>
+ *   <li> <b>statements</b>, executing updates on one connection per thread
+ *        (or a single connection shared by all threads) </li>
+ *   <li> <b>rows</b>, executing queries on one connection per thread (or a
+ *        single shared connection) and reading all columns of all rows </li>
+ * </ul>
+ *
+ * <pre>
+ * LoadTest [-threads 4] [-seconds 5] [-tds 8.0] [-rows 100] [-columns 4] [-width 20]
+ *          [-latency 0] [-prepared false] [-shared false] [-pipeline false]
+ *          [-prepareSQL 2] [-prepexec false]
+ *          [-host host -port port -user user -password password]
+ * </pre>
+ *
+ * <p> <code>-shared true -pipeline true</code> measures the effect of the
+ * <code>pipeline</code> connection property for short requests sent by
+ * concurrent threads over a high latency link. </p>
+ *
+ * <p> The results are printed as one <code>name: value unit</code> line per
+ * phase. </p>
+ */
+public class LoadTest
+{
+
+   private final Driver     _Driver = new Driver();
+
+   private final String     _Url;
+
+   private final Properties _Info;
+
+   private final int        _Threads;
+
+   private final long       _Millis;
+
+   private final boolean    _Prepared;
+
+   private final boolean    _Shared;
+
+   /**
+    * Creates a load test.
+    *
+    * @param url
+    *    the connection URL
+    *
+    * @param info
+    *    the connection properties
+    *
+    * @param threads
+    *    the number of concurrent threads
+    *
+    * @param seconds
+    *    the duration of each phase
+    *
+    * @param prepared
+    *    whether to use prepared statements instead of plain statements
+    *
+    * @param shared
+    *    whether all threads share a single connection
+    */
+   public LoadTest( String url, Properties info, int threads, int seconds, boolean prepared, boolean shared )
+   {
+      _Url      = url;
+      _Info     = info;
+      _Threads  = threads;
+      _Millis   = seconds * 1000L;
+      _Prepared = prepared;
+      _Shared   = shared;
+   }
+
+   /**
+    * Measures the connect rate.
+    *
+    * @return
+    *    connections opened (and closed) per second
+    */
+   public double connect()
+      throws Exception
+   {
+      return run( new Task()
+      {
+         @Override
+         long execute( Connection connection )
+            throws SQLException
+         {
+            _Driver.connect( _Url, _Info ).close();
+            return 1;
+         }
+      }, false );
+   }
+
+   /**
+    * Measures the statement rate, using updates returning no result set.
+    *
+    * @return
+    *    statements executed per second
+    */
+   public double statements()
+      throws Exception
+   {
+      return run( new Task()
+      {
+         @Override
+         long execute( Connection connection )
+            throws SQLException
+         {
+            if( _Prepared )
+            {
+               try( PreparedStatement ps = connection.prepareStatement( "UPDATE load SET value = ? WHERE id = ?" ) )
+               {
+                  ps.setInt( 1, 1 );
+                  ps.setInt( 2, 2 );
+                  ps.executeUpdate();
+               }
+            }
+            else
+            {
+               try( Statement st = connection.createStatement() )
+               {
+                  st.executeUpdate( "UPDATE load SET value = 1 WHERE id = 2" );
+               }
+            }
+
+            return 1;
+         }
+      }, true );
+   }
+
+   /**
+    * Measures the row rate, reading all columns using
+    * <code>getObject()</code>.
+    *
+    * @return
+    *    rows read per second
+    */
+   public double rows()
+      throws Exception
+   {
+      return run( new Task()
+      {
+         @Override
+         long execute( Connection connection )
+            throws SQLException
+         {
+            long rows = 0;
+
+            try( PreparedStatement ps = _Prepared ? connection.prepareStatement( "SELECT * FROM load WHERE id > ?" ) : null;
+                 Statement st = _Prepared ? null : connection.createStatement() )
+            {
+               if( ps != null )
+               {
+                  ps.setInt( 1, 0 );
+               }
+
+               try( ResultSet rs = ps != null ? ps.executeQuery() : st.executeQuery( "SELECT * FROM load" ) )
+               {
+                  int columns = rs.getMetaData().getColumnCount();
+
+                  while( rs.next() )
+                  {
+                     for( int c = 1; c <= columns; c ++ )
+                     {
+                        rs.getObject( c );
+                     }
+
+                     rows ++;
+                  }
+               }
+            }
+
+            return rows;
+         }
+      }, true );
+   }
+
+   /**
+    * Runs a task repeatedly in all threads until the time is up.
+    *
+    * @param connected
+    *    whether each thread needs a connection, its own one unless
+    *    connections are shared
+    *
+    * @return
+    *    the summed up task results per second
+    */
+   private double run( final Task task, final boolean connected )
+      throws Exception
+   {
+      final AtomicLong total = new AtomicLong();
+      final Exception[] failure = new Exception[1];
+      final long end = System.currentTimeMillis() + _Millis;
+      Thread[] threads = new Thread[_Threads];
+      final Connection shared = connected && _Shared ? _Driver.connect( _Url, _Info ) : null;
+
+      long start = System.nanoTime();
+
+      for( int t = 0; t < threads.length; t ++ )
+      {
+         threads[t] = new Thread( "LoadTest-" + t )
+         {
+            @Override
+            public void run()
+            {
+               try( Connection own = connected && shared == null ? _Driver.connect( _Url, _Info ) : null )
+               {
+                  Connection connection = shared != null ? shared : own;
+                  long count = 0;
+
+                  while( System.currentTimeMillis() < end )
+                  {
+                     count += task.execute( connection );
+                  }
+
+                  total.addAndGet( count );
+               }
+               catch( Exception e )
+               {
+                  synchronized( failure )
+                  {
+                     failure[0] = e;
+                  }
+               }
+            }
+         };
+
+         threads[t].start();
+      }
+
+      for( Thread thread : threads )
+      {
+         thread.join();
+      }
+
+      long nanos = System.nanoTime() - start;
+
+      if( shared != null )
+      {
+         shared.close();
+      }
+
+      synchronized( failure )
+      {
+         if( failure[0] != null )
+         {
+            throw failure[0];
+         }
+      }
+
+      return total.get() * 1e9 / nanos;
+   }
+
+   /**
+    * A unit of work, repeated until the time is up.
+    */
+   private abstract static class Task
+   {
+
+      /**
+       * @param connection
+       *    the connection of the current thread, if requested
+       *
+       * @return
+       *    the number of units processed
+       */
+      abstract long execute( Connection connection )
+         throws SQLException;
+
+   }
+
+   public static void main( String[] args )
+      throws Exception
+   {
+      Map<String,String> options = new LinkedHashMap<>();
+      options.put( "-threads"   , "4"     );
+      options.put( "-seconds"   , "5"     );
+      options.put( "-tds"       , "8.0"   );
+      options.put( "-rows"      , "100"   );
+      options.put( "-columns"   , "4"     );
+      options.put( "-width"     , "20"    );
+      options.put( "-latency"   , "0"     );
+      options.put( "-prepared"  , "false" );
+      options.put( "-shared"    , "false" );
+      options.put( "-pipeline"  , "false" );
+      options.put( "-prepareSQL", "2"     );
+      options.put( "-prepexec"  , "false" );
+      options.put( "-host"      , null    );
+      options.put( "-port"      , "1433"  );
+      options.put( "-user"      , "sa"    );
+      options.put( "-password"  , ""      );
+      FakeTdsServer.parseArgs( args, options );
+
+      FakeTdsServer server = null;
+      String host = options.get( "-host" );
+      int port = Integer.parseInt( options.get( "-port" ) );
+
+      if( host == null )
+      {
+         server = new FakeTdsServer( 0, options.get( "-tds" ) );
+         server.setResult( Integer.parseInt( options.get( "-rows" ) ), Integer.parseInt( options.get( "-columns" ) ), Integer.parseInt( options.get( "-width" ) ) );
+         server.setLatency( Integer.parseInt( options.get( "-latency" ) ) );
+         server.start();
+
+         host = "127.0.0.1";
+         port = server.getPort();
+      }
+
+      Properties info = new Properties();
+      info.setProperty( "user"    , options.get( "-user"     ) );
+      info.setProperty( "password", options.get( "-password" ) );
+
+      String url = "jdbc:jtds:sqlserver://" + host + ":" + port + ";tds=" + options.get( "-tds" ) + ";prepareSQL=" + options.get( "-prepareSQL" )
+                 + ";usePrepExec=" + options.get( "-prepexec" ) + ";pipeline=" + options.get( "-pipeline" );
+
+      LoadTest test = new LoadTest( url, info, Integer.parseInt( options.get( "-threads" ) ), Integer.parseInt( options.get( "-seconds" ) ),
+                                    Boolean.parseBoolean( options.get( "-prepared" ) ), Boolean.parseBoolean( options.get( "-shared" ) ) );
+
+      try
+      {
+         System.out.println( String.format( "connect   : %12.1f connections/s", test.connect()    ) );
+         System.out.println( String.format( "statements: %12.1f statements/s" , test.statements() ) );
+         System.out.println( String.format( "rows      : %12.1f rows/s"       , test.rows()       ) );
+      }
+      finally
+      {
+         if( server != null )
+         {
+            server.close();
+         }
+      }
+   }
+
+}
@@ -86,7 +86,7 @@ public class SqlForwarder {
                     }
                     output[direction].write(data);
                     log.log(data);
-                    if (data[1] != 0) {
+                    if ((data[1] & 1) != 0) {
                         direction = 1 - direction;
                     }
                 }
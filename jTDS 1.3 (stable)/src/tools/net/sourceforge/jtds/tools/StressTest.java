@@ -0,0 +1,197 @@
+// jTDS JDBC Driver for Microsoft SQL Server and Sybase
+// Copyright (C) 2004 The jTDS Project
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+
+package net.sourceforge.jtds.tools;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.sourceforge.jtds.jdbc.Driver;
+
+/**
+ * <p> Stress test running a large number of threads, by default 10,000
+ * virtual threads, over a small pool of connections to an in-process
+ * {@link FakeTdsServer}. </p>
+ *
+ * <p> Each thread borrows a connection from the pool, executes a query with
+ * the given server latency, reads all rows and returns the connection. The
+ * test fails if any query fails or if not all threads are done within the
+ * timeout, e.g. because virtual threads blocked in network I/O pin their
+ * carrier threads and starve the others. </p>
+ *
+ * <pre>
+ * StressTest [-threads 10000] [-pool 16] [-iterations 1] [-timeout 120] [-virtual true]
+ *            [-tds 8.0] [-rows 10] [-latency 1] [-pipeline false]
+ * </pre>
+ *
+ * <p> Virtual threads need a Java 21 runtime, on older runtimes platform
+ * threads are used instead. On Java 21 to 23, run with
+ * <code>-Djdk.tracePinnedThreads=short</code> to report any pinning. </p>
+ */
+public class StressTest
+{
+
+   public static void main( String[] args )
+      throws Exception
+   {
+      Map<String,String> options = new LinkedHashMap<>();
+      options.put( "-threads"   , "10000" );
+      options.put( "-pool"      , "16"    );
+      options.put( "-iterations", "1"     );
+      options.put( "-timeout"   , "120"   );
+      options.put( "-virtual"   , "true"  );
+      options.put( "-tds"       , "8.0"   );
+      options.put( "-rows"      , "10"    );
+      options.put( "-latency"   , "1"     );
+      options.put( "-pipeline"  , "false" );
+      FakeTdsServer.parseArgs( args, options );
+
+      final int threads = Integer.parseInt( options.get( "-threads" ) );
+      final int iterations = Integer.parseInt( options.get( "-iterations" ) );
+      int poolSize = Integer.parseInt( options.get( "-pool" ) );
+
+      FakeTdsServer server = new FakeTdsServer( 0, options.get( "-tds" ) );
+      server.setResult( Integer.parseInt( options.get( "-rows" ) ), 2, 20 );
+      server.setLatency( Integer.parseInt( options.get( "-latency" ) ) );
+      server.start();
+
+      Properties info = new Properties();
+      info.setProperty( "user"    , "sa" );
+      info.setProperty( "password", ""   );
+
+      String url = "jdbc:jtds:sqlserver://127.0.0.1:" + server.getPort() + ";tds=" + options.get( "-tds" ) + ";pipeline=" + options.get( "-pipeline" );
+
+      final BlockingQueue<Connection> pool = new ArrayBlockingQueue<>( poolSize );
+      Driver driver = new Driver();
+
+      for( int i = 0; i < poolSize; i ++ )
+      {
+         pool.add( driver.connect( url, info ) );
+      }
+
+      final CountDownLatch done = new CountDownLatch( threads );
+      final AtomicInteger rows = new AtomicInteger();
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+      Runnable task = new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               for( int i = 0; i < iterations; i ++ )
+               {
+                  Connection connection = pool.take();
+
+                  try( Statement st = connection.createStatement();
+                       ResultSet rs = st.executeQuery( "SELECT * FROM stress" ) )
+                  {
+                     while( rs.next() )
+                     {
+                        rs.getString( 2 );
+                        rows.incrementAndGet();
+                     }
+                  }
+                  finally
+                  {
+                     pool.put( connection );
+                  }
+               }
+            }
+            catch( InterruptedException | SQLException e )
+            {
+               failure.compareAndSet( null, e );
+            }
+            finally
+            {
+               done.countDown();
+            }
+         }
+      };
+
+      Object builder = Boolean.parseBoolean( options.get( "-virtual" ) ) ? virtualThreadBuilder() : null;
+      Method unstarted = builder != null ? Class.forName( "java.lang.Thread$Builder" ).getMethod( "unstarted", Runnable.class ) : null;
+      System.out.println( "Starting " + threads + ( builder != null ? " virtual" : " platform" ) + " threads over " + poolSize + " connections" );
+
+      long start = System.nanoTime();
+
+      for( int t = 0; t < threads; t ++ )
+      {
+         Thread thread = builder != null ? (Thread) unstarted.invoke( builder, task ) : new Thread( task, "StressTest-" + t );
+         thread.start();
+      }
+
+      boolean completed = done.await( Long.parseLong( options.get( "-timeout" ) ), TimeUnit.SECONDS );
+      long millis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+      for( Connection connection : pool )
+      {
+         connection.close();
+      }
+
+      server.close();
+
+      if( failure.get() != null )
+      {
+         System.out.println( "FAILED: " + failure.get() );
+         System.exit( 1 );
+      }
+
+      if( ! completed )
+      {
+         System.out.println( "FAILED: " + done.getCount() + " of " + threads + " threads not done after " + millis + " ms" );
+         System.exit( 1 );
+      }
+
+      System.out.println( String.format( "%d queries, %d rows in %d ms, %.1f queries/s", (long) threads * iterations, rows.get(), millis, threads * iterations * 1000.0 / Math.max( millis, 1 ) ) );
+   }
+
+   /**
+    * Creates a builder for virtual threads, which are only available since
+    * Java 21.
+    *
+    * @return
+    *    the <code>Thread.Builder</code> or <code>null</code> if virtual
+    *    threads are not supported
+    */
+   private static Object virtualThreadBuilder()
+   {
+      try
+      {
+         return Thread.class.getMethod( "ofVirtual" ).invoke( null );
+      }
+      catch( ReflectiveOperationException e )
+      {
+         return null;
+      }
+   }
+
+}